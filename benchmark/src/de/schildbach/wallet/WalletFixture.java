@@ -0,0 +1,113 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import com.google.common.primitives.Ints;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.SegwitAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Synthetic wallets for benchmarking. Transactions are a mix of receives, payments with change and transfers to
+ * self, spread over many keys and leaving many unspent outputs.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletFixture {
+    public static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    /** Number of receive addresses the transactions are spread over. */
+    private static final int NUM_ADDRESSES = 1000;
+
+    private static final Coin FEE = Coin.valueOf(1000);
+    private static final Coin MIN_SPEND = FEE.multiply(10);
+    private static final Address FOREIGN_ADDRESS = SegwitAddress.fromKey(PARAMS,
+            ECKey.fromPrivate(BigInteger.valueOf(1000000)));
+
+    public static Wallet create(final int numTransactions) {
+        Context.propagate(new Context(PARAMS));
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final List<Address> addresses = new ArrayList<>(NUM_ADDRESSES);
+        for (int i = 0; i < NUM_ADDRESSES; i++)
+            addresses.add(wallet.freshReceiveAddress());
+
+        final Random random = new Random(0);
+        final Queue<TransactionOutput> unspent = new ArrayDeque<>();
+        final List<Transaction> transactions = new ArrayList<>(numTransactions);
+        for (int i = 0; i < numTransactions; i++) {
+            final Address address = addresses.get(i % NUM_ADDRESSES);
+            final Transaction tx = new Transaction(PARAMS);
+            // dust is left unspent
+            while (!unspent.isEmpty() && unspent.peek().getValue().isLessThan(MIN_SPEND))
+                unspent.poll();
+            if (i % 4 < 2 || unspent.isEmpty()) {
+                // receive from a foreign transaction
+                tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                        new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(Ints.toByteArray(i)))));
+                tx.addOutput(Coin.valueOf(100000 + random.nextInt(1000000)), address);
+            } else {
+                // pay to a foreign address or to self, with change
+                final TransactionOutput spent = unspent.poll();
+                tx.addInput(spent);
+                spent.markAsSpent(tx.getInput(0));
+                final Coin change = spent.getValue().divide(2);
+                tx.addOutput(spent.getValue().subtract(change).subtract(FEE),
+                        i % 4 == 2 ? FOREIGN_ADDRESS : addresses.get((i * 7) % NUM_ADDRESSES));
+                tx.addOutput(change, address);
+            }
+            for (final TransactionOutput output : tx.getOutputs())
+                if (!output.getScriptPubKey().getToAddress(PARAMS).equals(FOREIGN_ADDRESS))
+                    unspent.add(output);
+            tx.getConfidence().setAppearedAtChainHeight(i / 10 + 1);
+            tx.setUpdateTime(new Date(1500000000000L + i * 60000L));
+            transactions.add(tx);
+        }
+
+        for (final Transaction tx : transactions) {
+            boolean fullySpent = true;
+            for (final TransactionOutput output : tx.getOutputs())
+                if (output.isAvailableForSpending() && output.isMine(wallet))
+                    fullySpent = false;
+            wallet.addWalletTransaction(new WalletTransaction(fullySpent ? Pool.SPENT : Pool.UNSPENT, tx));
+        }
+        wallet.setLastBlockSeenHash(Sha256Hash.of(Ints.toByteArray(numTransactions)));
+        wallet.setLastBlockSeenHeight(numTransactions / 10 + 1);
+        return wallet;
+    }
+}
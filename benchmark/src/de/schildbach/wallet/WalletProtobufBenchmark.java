@@ -0,0 +1,77 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and saves wallets in the protobuf format, like on app start and autosave.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletProtobufBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int numTransactions;
+
+    private Wallet wallet;
+    private byte[] walletBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        wallet = WalletFixture.create(numTransactions);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new WalletProtobufSerializer().writeWallet(wallet, os);
+        walletBytes = os.toByteArray();
+    }
+
+    @Benchmark
+    public Wallet load() throws UnreadableWalletException {
+        return new WalletProtobufSerializer().readWallet(new ByteArrayInputStream(walletBytes));
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(walletBytes.length);
+        new WalletProtobufSerializer().writeWallet(wallet, os);
+        return os.toByteArray();
+    }
+}
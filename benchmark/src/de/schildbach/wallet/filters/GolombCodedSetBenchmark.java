@@ -0,0 +1,110 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching the scripts of a wallet against basic block filters, which is what compact filter sync spends
+ * its CPU on. Scripts are random, so they almost never match and each filter is decoded in full, like for most
+ * blocks. Matching all scripts at once is compared to matching them one by one.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GolombCodedSetBenchmark {
+    /** Number of elements per filter; blocks on mainnet have a few thousand. */
+    @Param({ "1000", "5000" })
+    public int filterSize;
+
+    /** Number of wallet scripts, including the lookahead. */
+    @Param({ "100", "1000" })
+    public int numScripts;
+
+    /** Number of distinct filters cycled through, so that decoding doesn't just hit the same bits. */
+    private static final int NUM_FILTERS = 16;
+    /** Size of the typical output script. */
+    private static final int SCRIPT_SIZE = 25;
+
+    private final List<GolombCodedSet> filters = new ArrayList<>(NUM_FILTERS);
+    private final List<byte[]> scripts = new ArrayList<>();
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(0);
+        for (int i = 0; i < NUM_FILTERS; i++) {
+            final long k0 = random.nextLong();
+            final long k1 = random.nextLong();
+            final byte[] encoded = GolombCodedSet.encode(randomScripts(random, filterSize), k0, k1,
+                    BlockFilter.BASIC_P, BlockFilter.BASIC_M);
+            filters.add(new GolombCodedSet(encoded, k0, k1, BlockFilter.BASIC_P, BlockFilter.BASIC_M));
+        }
+        scripts.addAll(randomScripts(random, numScripts));
+    }
+
+    @Benchmark
+    public boolean matchAny() {
+        return nextFilter().matchAny(scripts);
+    }
+
+    @Benchmark
+    public boolean matchEach() {
+        final GolombCodedSet filter = nextFilter();
+        for (final byte[] script : scripts)
+            if (filter.match(script))
+                return true;
+        return false;
+    }
+
+    private GolombCodedSet nextFilter() {
+        next = (next + 1) % NUM_FILTERS;
+        return filters.get(next);
+    }
+
+    private static List<byte[]> randomScripts(final Random random, final int count) {
+        final List<byte[]> scripts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final byte[] script = new byte[SCRIPT_SIZE];
+            random.nextBytes(script);
+            scripts.add(script);
+        }
+        return scripts;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import com.google.common.primitives.Ints;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.store.SPVBlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the indexed block store to the SPV block store of bitcoinj, which keeps the most recent blocks in a ring.
+ * The chain fits into the ring, so both stores can answer all lookups.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexedBlockStoreBenchmark {
+    @Param({ "spv", "indexed" })
+    public String storeType;
+
+    @Param({ "1000", "9000" })
+    public int numBlocks;
+
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+    private static final int SPV_CAPACITY = 10000;
+
+    private List<StoredBlock> chain;
+    private File file;
+    private BlockStore store;
+    private final Random random = new Random(0);
+
+    @Setup(Level.Trial)
+    public void setupChain() throws BlockStoreException {
+        Context.propagate(new Context(PARAMS));
+        final StoredBlock genesis = new StoredBlock(PARAMS.getGenesisBlock().cloneAsHeader(),
+                PARAMS.getGenesisBlock().getWork(), 0);
+        chain = new ArrayList<>(numBlocks);
+        StoredBlock block = genesis;
+        for (int i = 0; i < numBlocks; i++) {
+            // stores don't verify proof of work, so headers need not be solved
+            final Block header = new Block(PARAMS, Block.BLOCK_VERSION_GENESIS, block.getHeader().getHash(),
+                    Sha256Hash.of(Ints.toByteArray(i)), 1500000000L + i * 600L,
+                    block.getHeader().getDifficultyTarget(), 0, Collections.emptyList());
+            block = block.build(header);
+            chain.add(block);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupStore() throws IOException, BlockStoreException {
+        file = File.createTempFile("blockstore", null);
+        file.delete();
+        store = open(file);
+        fill(store);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownStore() throws BlockStoreException {
+        store.close();
+        file.delete();
+    }
+
+    /** Puts the whole chain into a new store, like syncing from a checkpoint. */
+    @Benchmark
+    public BlockStore putChain() throws IOException, BlockStoreException {
+        final File file = File.createTempFile("blockstore", null);
+        file.delete();
+        final BlockStore store = open(file);
+        try {
+            fill(store);
+            return store;
+        } finally {
+            store.close();
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public StoredBlock getByHash() throws BlockStoreException {
+        return store.get(chain.get(random.nextInt(numBlocks)).getHeader().getHash());
+    }
+
+    @Benchmark
+    public StoredBlock getChainHead() throws BlockStoreException {
+        return store.getChainHead();
+    }
+
+    /** Looks up a block of the best chain by height, e.g. for showing the confirmations of a transaction. */
+    @Benchmark
+    public StoredBlock getByHeight() throws BlockStoreException {
+        final int height = 1 + random.nextInt(numBlocks);
+        if (store instanceof IndexedBlockStore)
+            return ((IndexedBlockStore) store).get(height);
+        StoredBlock block = store.getChainHead();
+        while (block.getHeight() > height)
+            block = block.getPrev(store);
+        return block;
+    }
+
+    private void fill(final BlockStore store) throws BlockStoreException {
+        for (final StoredBlock block : chain) {
+            store.put(block);
+            store.setChainHead(block);
+        }
+    }
+
+    private BlockStore open(final File file) throws BlockStoreException {
+        return storeType.equals("indexed") ? new IndexedBlockStore(PARAMS, file)
+                : new SPVBlockStore(PARAMS, file, SPV_CAPACITY, true);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import de.schildbach.wallet.WalletFixture;
+import okio.BufferedSink;
+import okio.Okio;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.wallet.Wallet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the transaction history of a wallet into a sink that discards the output. Run with {@code -prof gc} to see
+ * that allocation per transaction stays constant.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionExporterBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int numTransactions;
+
+    @Param({ "CSV", "JSON" })
+    public TransactionExporter.Format format;
+
+    private List<Transaction> transactions;
+    private List<TransactionEntry> entries;
+    private TransactionInfoCache infoCache;
+
+    @Setup
+    public void setup() {
+        final Wallet wallet = WalletFixture.create(numTransactions);
+        infoCache = new TransactionInfoCache(wallet, wallet);
+        transactions = new ArrayList<>(wallet.getTransactions(false));
+        entries = new ArrayList<>(transactions.size());
+        for (final Transaction tx : transactions) {
+            final TransactionInfo info = infoCache.get(tx);
+            entries.add(new TransactionEntry(tx.getTxId().toString(), tx.getUpdateTime().getTime(), false,
+                    info.sent ? TransactionEntry.DIRECTION_SENT : TransactionEntry.DIRECTION_RECEIVED,
+                    info.value.value, "BUILDING", 1, 0, info.address != null ? info.address.toString() : null,
+                    null));
+        }
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        final BufferedSink sink = Okio.buffer(Okio.blackhole());
+        final TransactionExporter exporter = new TransactionExporter(sink, format, true, null);
+        exporter.begin();
+        for (int i = 0; i < transactions.size(); i++) {
+            final Transaction tx = transactions.get(i);
+            exporter.write(entries.get(i), tx, infoCache.get(tx));
+        }
+        exporter.end();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import de.schildbach.wallet.WalletFixture;
+import de.schildbach.wallet.addressbook.AddressBookEntry;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.bitcoinj.wallet.Wallet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the transactions of a wallet by label, memo word, transaction id and amount, like typing into the search
+ * field of the transaction list does.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionSearchIndexBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int numTransactions;
+
+    private static final String[] MEMO_WORDS = { "rent", "coffee", "groceries", "invoice", "refund", "salary",
+            "donation", "loan" };
+    private static final MonetaryFormat FORMAT = MonetaryFormat.MBTC;
+
+    private TransactionSearchIndex index;
+    private Map<String, AddressBookEntry> addressBook;
+    private String txIdPrefix;
+
+    @Setup
+    public void setup() {
+        final Wallet wallet = WalletFixture.create(numTransactions);
+        index = new TransactionSearchIndex();
+        final List<AddressBookEntry> labels = new ArrayList<>();
+        int i = 0;
+        for (final Transaction tx : wallet.getTransactions(false)) {
+            final TransactionInfo info = TransactionInfo.of(tx, wallet, wallet);
+            final String address = info.address != null ? info.address.toString() : null;
+            final int direction = info.sent ? TransactionEntry.DIRECTION_SENT : TransactionEntry.DIRECTION_RECEIVED;
+            index.put(new TransactionEntry(tx.getTxId().toString(), tx.getUpdateTime().getTime(), false, direction,
+                    info.value.value, "BUILDING", 1, 0, address, MEMO_WORDS[i % MEMO_WORDS.length] + " #" + i));
+            if (address != null && i % 100 == 0)
+                labels.add(new AddressBookEntry(address, "Contact " + i));
+            if (txIdPrefix == null)
+                txIdPrefix = tx.getTxId().toString().substring(0, 6);
+            i++;
+        }
+        addressBook = AddressBookEntry.asMap(labels);
+    }
+
+    @Benchmark
+    public List<TransactionEntry> memoWord() {
+        return index.search("coff", null, addressBook, FORMAT, null);
+    }
+
+    @Benchmark
+    public List<TransactionEntry> label() {
+        return index.search("contact", null, addressBook, FORMAT, null);
+    }
+
+    @Benchmark
+    public List<TransactionEntry> txId() {
+        return index.search(txIdPrefix, null, addressBook, FORMAT, null);
+    }
+
+    @Benchmark
+    public List<TransactionEntry> amountRange() {
+        return index.search("1-2", TransactionEntry.DIRECTION_RECEIVED, addressBook, FORMAT, null);
+    }
+
+    @Benchmark
+    public List<TransactionEntry> combined() {
+        return index.search("rent >5", null, addressBook, FORMAT, null);
+    }
+}
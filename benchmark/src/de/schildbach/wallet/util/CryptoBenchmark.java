@@ -0,0 +1,68 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import de.schildbach.wallet.WalletFixture;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypts and decrypts a backup of a wallet with 1000 transactions.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoBenchmark {
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    private byte[] plainBytes;
+    private String encrypted;
+
+    @Setup
+    public void setup() throws IOException {
+        plainBytes = new WalletProtobufSerializer().walletToProto(WalletFixture.create(1000)).toByteArray();
+        encrypted = Crypto.encrypt(plainBytes, PASSWORD);
+    }
+
+    @Benchmark
+    public String encrypt() throws IOException {
+        return Crypto.encrypt(plainBytes, PASSWORD);
+    }
+
+    @Benchmark
+    public byte[] decryptBytes() throws IOException {
+        return Crypto.decryptBytes(encrypted, PASSWORD);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import de.schildbach.wallet.WalletFixture;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.wallet.Wallet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifies all transactions of a wallet, like building the transaction list does.
+ *
+ * @author Andreas Schildbach
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletUtilsBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int numTransactions;
+
+    private Wallet wallet;
+    private List<Transaction> sent;
+    private List<Transaction> transactions;
+
+    @Setup
+    public void setup() {
+        wallet = WalletFixture.create(numTransactions);
+        transactions = new ArrayList<>(wallet.getTransactions(false));
+        sent = new ArrayList<>();
+        for (final Transaction tx : transactions)
+            if (tx.getValue(wallet).signum() < 0)
+                sent.add(tx);
+    }
+
+    @Benchmark
+    public void isEntirelySelf(final Blackhole blackhole) {
+        for (final Transaction tx : transactions)
+            blackhole.consume(WalletUtils.isEntirelySelf(tx, wallet));
+    }
+
+    @Benchmark
+    public void getToAddressOfSent(final Blackhole blackhole) {
+        for (final Transaction tx : sent)
+            blackhole.consume(WalletUtils.getToAddressOfSent(tx, wallet));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the content last pushed to each app widget, so that pushing unchanged content can be skipped.
+ *
+ * @author Andreas Schildbach
+ */
+final class AppWidgetContents {
+    private final Map<Integer, String> lastContents = new HashMap<>();
+
+    /**
+     * The remote views of a widget are fully determined by these.
+     */
+    static String of(final String currencyCode, final CharSequence balance, final @Nullable CharSequence localBalance,
+            final int minWidth) {
+        return currencyCode + '|' + balance + '|' + localBalance + '|' + minWidth;
+    }
+
+    /**
+     * Records the given content for the given widget.
+     *
+     * @param force
+     *            if the content should be pushed even if unchanged, e.g. because the system asked for it
+     * @return if the content needs to be pushed
+     */
+    synchronized boolean update(final int appWidgetId, final String content, final boolean force) {
+        final String lastContent = lastContents.put(appWidgetId, content);
+        return force || !content.equals(lastContent);
+    }
+
+    synchronized void remove(final int appWidgetId) {
+        lastContents.remove(appWidgetId);
+    }
+}
@@ -60,6 +60,8 @@ public class Configuration {
     public static final String PREFS_KEY_REMIND_BALANCE_TIME = "remind_balance_time";
     public static final String PREFS_KEY_DISCLAIMER = "disclaimer";
     public static final String PREFS_KEY_BLUETOOTH_ADDRESS = "bluetooth_address";
+    public static final String PREFS_KEY_CATCH_UP_SYNC = "catch_up_sync";
+    public static final String PREFS_KEY_INDEXED_BLOCK_STORE = "indexed_block_store";
 
     private static final String PREFS_KEY_LAST_VERSION = "last_version";
     private static final String PREFS_KEY_LAST_USED = "last_used";
@@ -150,9 +152,26 @@ public class Configuration {
 
     public enum SyncMode {
         CONNECTION_FILTER,
+        COMPACT_FILTERS,
         FULL
     }
 
+    /**
+     * Catch up on long offline gaps headers first, from several peers in parallel. Experimental, so it needs to be
+     * enabled in the diagnostics.
+     */
+    public boolean getCatchUpSync() {
+        return prefs.getBoolean(PREFS_KEY_CATCH_UP_SYNC, false);
+    }
+
+    /**
+     * Keep all block headers since the checkpoint, rather than just the most recent ones. Experimental, so it needs
+     * to be enabled in the diagnostics. Only applies when the block chain is created, e.g. after a reset.
+     */
+    public boolean getIndexedBlockStore() {
+        return prefs.getBoolean(PREFS_KEY_INDEXED_BLOCK_STORE, false);
+    }
+
     public Set<HostAndPort> getTrustedPeers() {
         final String trustedPeersStr = prefs.getString(PREFS_KEY_TRUSTED_PEERS, "");
         final Set<HostAndPort> trustedPeers = new HashSet<>();
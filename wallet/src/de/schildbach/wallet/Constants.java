@@ -79,6 +79,15 @@ public final class Constants {
         /** How often the wallet is autosaved. */
         public static final long WALLET_AUTOSAVE_DELAY_MS = 3 * DateUtils.SECOND_IN_MILLIS;
 
+        /** Filename of the wallet journal, containing changes since the last full save. */
+        public static final String WALLET_JOURNAL_FILENAME = "wallet-journal" + FILENAME_NETWORK_SUFFIX;
+
+        /** Size of the wallet journal at which it is compacted into a full save. */
+        public static final long WALLET_JOURNAL_COMPACT_THRESHOLD = 1024 * 1024;
+
+        /** Whether full saves of the wallet are gzip compressed. Uncompressed saves remain readable by other tools. */
+        public static final boolean WALLET_SNAPSHOT_COMPRESSED = false;
+
         /** Filename of the automatic key backup (old format, can only be read). */
         public static final String WALLET_KEY_BACKUP_BASE58 = "key-backup-base58" + FILENAME_NETWORK_SUFFIX;
 
@@ -88,23 +97,39 @@ public final class Constants {
         /** Filename of the manual wallet backup. */
         public static final String EXTERNAL_WALLET_BACKUP = "bitcoin-wallet-backup" + FILENAME_NETWORK_SUFFIX;
 
+        /** Filename of the transaction history export, without extension. */
+        public static final String EXTERNAL_TRANSACTIONS_EXPORT = "bitcoin-wallet-transactions"
+                + FILENAME_NETWORK_SUFFIX;
+
         /** Filename of the block store for storing the chain. */
         public static final String BLOCKCHAIN_FILENAME = "blockchain" + FILENAME_NETWORK_SUFFIX;
 
         /** Capacity of the block store. */
         public static final int BLOCKCHAIN_STORE_CAPACITY = 10000;
 
-        /** Name of the asset containing the block checkpoints. */
-        public static final String CHECKPOINTS_ASSET = "checkpoints.txt";
+        /** Filename of the indexed block store for storing the chain. */
+        public static final String BLOCKCHAIN_INDEXED_FILENAME = "headers" + FILENAME_NETWORK_SUFFIX;
+
+        /** Name of the asset containing the block checkpoints, compiled from checkpoints.txt. */
+        public static final String CHECKPOINTS_ASSET = "checkpoints.bin";
 
         /** Name of the asset containing hardcoded fees. */
         public static final String FEES_ASSET = "fees.txt";
 
+        /** Name of the asset containing hardcoded fees, compiled from fees.txt. */
+        public static final String FEES_BINARY_ASSET = "fees.bin";
+
+        /** Filename of the cache of peer hostnames. */
+        public static final String REVERSE_DNS_CACHE = "reverse-dns-cache.txt";
+
         /** Filename of the dynamic fees file. */
         public static final String FEES_FILENAME = "fees" + FILENAME_NETWORK_SUFFIX + ".txt";
 
-        /** Name of the asset containing Electrum servers. */
-        public static final String ELECTRUM_SERVERS_ASSET = "electrum-servers.txt";
+        /** Name of the asset containing Electrum servers, compiled from electrum-servers.txt. */
+        public static final String ELECTRUM_SERVERS_ASSET = "electrum-servers.bin";
+
+        /** Filename of the recorded startup timelines. */
+        public static final String STARTUP_TRACES_FILENAME = "startup-traces.txt";
     }
 
     /** URL to fetch version alerts from. */
@@ -183,6 +208,17 @@ public final class Constants {
 
     public static final long AUTOCLOSE_DELAY_MS = 1000;
 
+    /** Maximum number of threads for running startup work in parallel */
+    public static final int STARTUP_THREADS_MAX = 4;
+
+    /** Number of startup timelines to keep */
+    public static final int STARTUP_TRACES_MAX = 10;
+    /** Startup timelines are ended by the first peer connection, or after this time */
+    public static final long STARTUP_TRACE_TIMEOUT_MS = DateUtils.MINUTE_IN_MILLIS;
+
+    /** Spent transactions are moved to the archive once they and their spending transactions are this deep */
+    public static final int ARCHIVE_MIN_DEPTH = 1000;
+
     /** A balance above this amount will show a warning */
     public static final Coin TOO_MUCH_BALANCE_THRESHOLD = Coin.COIN.divide(32);
     /** A balance above this amount will cause the donate option to be shown */
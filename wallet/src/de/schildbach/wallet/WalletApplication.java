@@ -28,12 +28,16 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.media.AudioAttributes;
 import android.media.AudioManager;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
 import android.os.Looper;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
@@ -41,21 +45,38 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
+import de.schildbach.wallet.archive.ArchivedTransactionCache;
+import de.schildbach.wallet.archive.TransactionArchive;
+import de.schildbach.wallet.assets.WordlistAsset;
+import de.schildbach.wallet.archive.TransactionArchiveDatabase;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
+import de.schildbach.wallet.transactions.TransactionMirror;
+import de.schildbach.wallet.transactions.TransactionsDatabase;
+import de.schildbach.wallet.data.BalanceSnapshot;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.service.BlockchainState;
 import de.schildbach.wallet.ui.Event;
+import de.schildbach.wallet.util.Assets;
 import de.schildbach.wallet.util.Bluetooth;
 import de.schildbach.wallet.util.CrashReporter;
+import de.schildbach.wallet.util.ReverseDnsCache;
+import de.schildbach.wallet.util.StartupTrace;
 import de.schildbach.wallet.util.Toast;
+import de.schildbach.wallet.util.WalletHistory;
+import de.schildbach.wallet.util.WalletJournal;
 import de.schildbach.wallet.util.WalletUtils;
 import org.bitcoinj.core.VersionMessage;
 import org.bitcoinj.crypto.MnemonicCode;
 import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Protos;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
-import org.bitcoinj.wallet.WalletFiles;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,7 +86,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -75,15 +99,26 @@ public class WalletApplication extends Application {
     private ActivityManager activityManager;
 
     private File walletFile;
-    private WalletFiles walletFiles;
+    private File walletJournalFile;
+    private WalletJournal walletJournal;
+    private SettableFuture<Wallet> walletWithHistory;
+    private TransactionArchive transactionArchive;
+    private ArchivedTransactionCache archivedTransactions;
+    private MutableLiveData<TransactionInfoCache> transactionInfo;
+    private volatile TransactionInfoCache transactionInfoCache;
+    private TransactionMirror transactionMirror;
+    private ReverseDnsCache reverseDnsCache;
     private Configuration config;
+    private BalanceSnapshot balanceSnapshot;
 
     public final MutableLiveData<BlockchainState> blockchainState = new MutableLiveData<>();
     public final MutableLiveData<Integer> peerState = new MutableLiveData<>();
     public final MutableLiveData<Event<Void>> walletChanged = new MutableLiveData<>();
 
     public static final long TIME_CREATE_APPLICATION = System.currentTimeMillis();
-    private static final String BIP39_WORDLIST_FILENAME = "bip39-wordlist.txt";
+    private static final String BIP39_WORDLIST_FILENAME = "bip39-wordlist.bin";
+    /** Number of archived transactions kept parsed, a few pages of the transaction list. */
+    private static final int ARCHIVED_TRANSACTIONS_CACHE_SIZE = 200;
 
     private static final Logger log = LoggerFactory.getLogger(WalletApplication.class);
 
@@ -94,7 +129,13 @@ public class WalletApplication extends Application {
 
     @Override
     public void onCreate() {
+        StartupTrace.init(new File(getFilesDir(), Constants.Files.STARTUP_TRACES_FILENAME),
+                Constants.STARTUP_TRACES_MAX);
+        final StartupTrace.Span onCreateSpan = StartupTrace.begin("WalletApplication.onCreate");
+
+        StartupTrace.Span span = StartupTrace.begin("Logging.init");
         Logging.init(getFilesDir());
+        span.end();
 
         Threading.throwOnLockCycles();
         org.bitcoinj.core.Context.enableStrictMode();
@@ -105,9 +146,12 @@ public class WalletApplication extends Application {
 
         super.onCreate();
 
+        span = StartupTrace.begin("CrashReporter.init");
         CrashReporter.init(getCacheDir());
+        span.end();
 
         final PackageInfo packageInfo = packageInfo();
+        StartupTrace.setLabel(versionLine(packageInfo));
 
         Threading.uncaughtExceptionHandler = (thread, throwable) -> {
             log.info("bitcoinj uncaught exception", throwable);
@@ -117,6 +161,7 @@ public class WalletApplication extends Application {
         activityManager = getSystemService(ActivityManager.class);
 
         walletFile = getFileStreamPath(Constants.Files.WALLET_FILENAME_PROTOBUF);
+        walletJournalFile = getFileStreamPath(Constants.Files.WALLET_JOURNAL_FILENAME);
 
         final Configuration config = getConfiguration();
         config.updateLastVersionCode(packageInfo.versionCode);
@@ -125,9 +170,19 @@ public class WalletApplication extends Application {
         if (bluetoothAdapter != null)
             config.updateLastBluetoothAddress(Bluetooth.getAddress(bluetoothAdapter));
 
+        span = StartupTrace.begin("cleanupFiles");
         cleanupFiles();
+        span.end();
 
+        span = StartupTrace.begin("initNotificationManager");
         initNotificationManager();
+        span.end();
+
+        // the wallet is loaded on first use, but the wordlist is needed by then anyway
+        walletLoader.loadWordlist();
+
+        onCreateSpan.end();
+        new Handler().postDelayed(() -> AsyncTask.execute(StartupTrace::finish), Constants.STARTUP_TRACE_TIMEOUT_MS);
     }
 
     public synchronized Configuration getConfiguration() {
@@ -136,6 +191,12 @@ public class WalletApplication extends Application {
         return config;
     }
 
+    public synchronized BalanceSnapshot getBalanceSnapshot() {
+        if (balanceSnapshot == null)
+            balanceSnapshot = new BalanceSnapshot(getSharedPreferences(BalanceSnapshot.PREFS_NAME, MODE_PRIVATE));
+        return balanceSnapshot;
+    }
+
     @WorkerThread
     public Wallet getWallet() {
         final Stopwatch watch = Stopwatch.createStarted();
@@ -147,87 +208,287 @@ public class WalletApplication extends Application {
             throw new RuntimeException(x);
         } finally {
             watch.stop();
-            if (Looper.myLooper() == Looper.getMainLooper())
+            if (Looper.myLooper() == Looper.getMainLooper()) {
                 log.warn("main thread blocked for " + watch + " when using getWallet()", new RuntimeException());
+                StartupTrace.record("getWallet() blocking main thread", watch.elapsed(TimeUnit.MICROSECONDS),
+                        TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+    @WorkerThread
+    public Wallet getWalletWithHistory() {
+        final SettableFuture<Wallet> future = SettableFuture.create();
+        getWalletWithHistoryAsync(wallet -> future.set(wallet));
+        try {
+            return future.get();
+        } catch (final InterruptedException | ExecutionException x) {
+            throw new RuntimeException(x);
         }
     }
 
+    private final ListeningExecutorService startupExecutor = MoreExecutors.listeningDecorator(newStartupExecutor());
     private final Executor getWalletExecutor = Executors.newSingleThreadExecutor(new ContextPropagatingThreadFactory("get wallet"));
+    private final Executor inflateHistoryExecutor = Executors.newSingleThreadExecutor(new ContextPropagatingThreadFactory("inflate wallet history"));
     private final Object getWalletLock = new Object();
+    private final WalletLoader<ParsedWallet> walletLoader = new WalletLoader<>(startupExecutor, this::initMnemonicCode,
+            this::parseWallet, parsedWallet -> {
+                synchronized (getWalletLock) {
+                    publishWallet(parsedWallet);
+                }
+            });
+
+    private static ExecutorService newStartupExecutor() {
+        final int numThreads = Math.min(Constants.STARTUP_THREADS_MAX, Runtime.getRuntime().availableProcessors());
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ContextPropagatingThreadFactory("startup"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Small pool for running independent startup work in parallel, e.g. loading the wallet and opening the block
+     * store. Join using the returned futures only where there is a real data dependency.
+     */
+    public ListeningExecutorService getStartupExecutor() {
+        return startupExecutor;
+    }
+
+    /**
+     * Deeply confirmed, fully spent transactions that have been moved out of the wallet.
+     */
+    public synchronized TransactionArchive getTransactionArchive() {
+        if (transactionArchive == null)
+            transactionArchive = new TransactionArchive(
+                    TransactionArchiveDatabase.getDatabase(this).archivedTransactionDao());
+        return transactionArchive;
+    }
+
+    /**
+     * Archived transactions, parsed on demand. Loaded along with the transaction info cache.
+     */
+    private synchronized ArchivedTransactionCache getArchivedTransactions() {
+        if (archivedTransactions == null)
+            archivedTransactions = new ArchivedTransactionCache(getTransactionArchive(), Constants.NETWORK_PARAMETERS,
+                    ARCHIVED_TRANSACTIONS_CACHE_SIZE, txId -> {
+                        final TransactionInfoCache infoCache = transactionInfoCache;
+                        if (infoCache != null)
+                            infoCache.remove(txId); // drop what was derived from the parsed transaction
+                    });
+        return archivedTransactions;
+    }
+
+    /**
+     * Cache of derived facts of the wallet, including archived transactions. Created on first use, and posted again
+     * if the wallet is replaced.
+     */
+    public synchronized LiveData<TransactionInfoCache> getTransactionInfo() {
+        if (transactionInfo == null) {
+            transactionInfo = new MutableLiveData<>();
+            getWalletWithHistoryAsync(wallet -> newTransactionInfo(wallet, false));
+        }
+        return transactionInfo;
+    }
+
+    @WorkerThread
+    private void newTransactionInfo(final Wallet wallet, final boolean replaced) {
+        final ArchivedTransactionCache archivedTransactions = getArchivedTransactions();
+        archivedTransactions.load();
+        final TransactionInfoCache infoCache = new TransactionInfoCache(wallet,
+                archivedTransactions.transactionBag(wallet));
+        infoCache.addWalletListener();
+        final TransactionInfoCache previousInfoCache;
+        final TransactionMirror transactionMirror;
+        synchronized (this) {
+            previousInfoCache = transactionInfoCache;
+            transactionInfoCache = infoCache;
+            transactionMirror = this.transactionMirror;
+            transactionInfo.postValue(infoCache);
+        }
+        if (previousInfoCache != null)
+            previousInfoCache.removeWalletListener();
+        if (transactionMirror != null) {
+            if (replaced)
+                transactionMirror.replace(infoCache);
+            else
+                transactionMirror.attach(infoCache);
+        }
+    }
+
+    /**
+     * Database mirror of all transactions, for paging through them. Mirroring starts on first use, as soon as the
+     * transaction info cache is available.
+     */
+    public synchronized TransactionMirror getTransactionMirror() {
+        if (transactionMirror == null) {
+            transactionMirror = new TransactionMirror(TransactionsDatabase.getDatabase(this).transactionDao(),
+                    getTransactionArchive(), getArchivedTransactions());
+            if (transactionInfoCache != null)
+                transactionMirror.attach(transactionInfoCache);
+            else
+                getTransactionInfo();
+        }
+        return transactionMirror;
+    }
+
+    /**
+     * Hostnames of peers, kept across visits to the network monitor.
+     */
+    public synchronized ReverseDnsCache getReverseDnsCache() {
+        if (reverseDnsCache == null)
+            reverseDnsCache = new ReverseDnsCache(ReverseDnsCache.SYSTEM_RESOLVER,
+                    new File(getCacheDir(), Constants.Files.REVERSE_DNS_CACHE));
+        return reverseDnsCache;
+    }
 
     @AnyThread
     public void getWalletAsync(final OnWalletLoadedListener listener) {
-        getWalletExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                synchronized (getWalletLock) {
-                    initMnemonicCode();
-                    if (walletFiles == null)
-                        loadWalletFromProtobuf();
-                }
-                listener.onWalletLoaded(walletFiles.getWallet());
+        final ListenableFuture<?> loaded = walletLoader.loadWallet();
+        loaded.addListener(() -> {
+            Futures.getUnchecked(loaded); // rethrows loading problems
+            final Wallet wallet;
+            synchronized (getWalletLock) {
+                wallet = walletJournal.getWallet();
             }
+            listener.onWalletLoaded(wallet);
+        }, getWalletExecutor);
+    }
 
-            @WorkerThread
-            private void loadWalletFromProtobuf() {
-                Wallet wallet;
-                if (walletFile.exists()) {
-                    try (final FileInputStream walletStream = new FileInputStream(walletFile)) {
-                        final Stopwatch watch = Stopwatch.createStarted();
-                        wallet = new WalletProtobufSerializer().readWallet(walletStream);
-                        watch.stop();
-
-                        if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
-                            throw new UnreadableWalletException(
-                                    "bad wallet network parameters: " + wallet.getParams().getId());
-
-                        log.info("wallet loaded from: '{}', took {}", walletFile, watch);
-                    } catch (final IOException | UnreadableWalletException x) {
-                        log.warn("problem loading wallet, auto-restoring: " + walletFile, x);
-                        wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
-                        if (wallet != null)
-                            new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
-                    }
-                    if (!wallet.isConsistent()) {
-                        log.warn("inconsistent wallet, auto-restoring: " + walletFile);
-                        wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
-                        if (wallet != null)
-                            new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
-                    }
-
-                    if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
-                        throw new Error("bad wallet network parameters: " + wallet.getParams().getId());
-
-                    wallet.cleanup();
-                    walletFiles = wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                            TimeUnit.MILLISECONDS, null);
-                } else {
-                    final Stopwatch watch = Stopwatch.createStarted();
-                    wallet = Wallet.createDeterministic(Constants.NETWORK_PARAMETERS,
-                            Constants.DEFAULT_OUTPUT_SCRIPT_TYPE);
-                    walletFiles = wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                            TimeUnit.MILLISECONDS, null);
-                    autosaveWalletNow(); // persist...
-                    WalletUtils.autoBackupWallet(WalletApplication.this, wallet); // ...and backup asap
-                    watch.stop();
-                    log.info("fresh {} wallet created, took {}", Constants.DEFAULT_OUTPUT_SCRIPT_TYPE, watch);
+    private static final class ParsedWallet {
+        final Wallet wallet;
+        @Nullable
+        final WalletHistory history;
+        @Nullable
+        final TransactionArchive.Archiving archiving;
+
+        ParsedWallet(final Wallet wallet, @Nullable final WalletHistory history,
+                @Nullable final TransactionArchive.Archiving archiving) {
+            this.wallet = wallet;
+            this.history = history;
+            this.archiving = archiving;
+        }
+    }
 
-                    config.armBackupReminder();
-                }
+    /**
+     * Parses the wallet file, or restores from the automatic backup if it's unreadable.
+     *
+     * @return parsed wallet, or {@code null} if there is no wallet file yet
+     */
+    @WorkerThread
+    @Nullable
+    private ParsedWallet parseWallet() {
+        if (!walletFile.exists())
+            return null;
+        final StartupTrace.Span span = StartupTrace.begin("parseWallet");
+        Wallet wallet;
+        WalletHistory history = null;
+        TransactionArchive.Archiving archiving = null;
+        try {
+            final Stopwatch watch = Stopwatch.createStarted();
+            final Protos.Wallet walletProto = WalletJournal.readWalletProto(walletFile, walletJournalFile);
+            if (!Constants.NETWORK_PARAMETERS.getId().equals(walletProto.getNetworkIdentifier()))
+                throw new UnreadableWalletException(
+                        "bad wallet network parameters: " + walletProto.getNetworkIdentifier());
+            final StartupTrace.Span archiveSpan = StartupTrace.begin("archiveTransactions");
+            // newly eligible transactions are archived only once the wallet turns out consistent
+            archiving = getTransactionArchive().prepare(walletProto, Constants.ARCHIVE_MIN_DEPTH);
+            archiveSpan.end();
+            history = WalletHistory.split(TransactionArchive.withoutTransactions(walletProto,
+                    archiving.getArchivedTxIds()));
+            wallet = new WalletProtobufSerializer().readWallet(Constants.NETWORK_PARAMETERS, null,
+                    history.getPhaseOne());
+            watch.stop();
+
+            log.info("wallet loaded from: '{}', deferring {} history transactions, took {}", walletFile,
+                    history.size(), watch);
+        } catch (final IOException | UnreadableWalletException x) {
+            log.warn("problem loading wallet, auto-restoring: " + walletFile, x);
+            history = null;
+            archiving = null;
+            wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
+            if (wallet != null)
+                new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
+        }
+        // consistency of a partially loaded wallet is checked once its history is inflated
+        if (history == null && !wallet.isConsistent()) {
+            log.warn("inconsistent wallet, auto-restoring: " + walletFile);
+            wallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
+            if (wallet != null)
+                new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
+        }
+
+        if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
+            throw new Error("bad wallet network parameters: " + wallet.getParams().getId());
+        span.end();
+        return new ParsedWallet(wallet, history, archiving);
+    }
+
+    @WorkerThread
+    private void publishWallet(@Nullable final ParsedWallet parsedWallet) {
+        walletWithHistory = SettableFuture.create();
+        if (parsedWallet != null) {
+            final Wallet wallet = parsedWallet.wallet;
+            if (parsedWallet.history != null) {
+                // don't let the journal snapshot a wallet that is missing its history
+                walletJournal = autosave(wallet, true);
+                walletJournal.transactionsRemoved(parsedWallet.archiving.getArchivedTxIds());
+                inflateHistory(wallet, walletJournal, parsedWallet.history, parsedWallet.archiving,
+                        walletWithHistory);
+            } else {
+                wallet.cleanup();
+                walletJournal = autosave(wallet, false);
+                walletWithHistory.set(wallet);
             }
+        } else {
+            final Stopwatch watch = Stopwatch.createStarted();
+            final Wallet wallet = Wallet.createDeterministic(Constants.NETWORK_PARAMETERS,
+                    Constants.DEFAULT_OUTPUT_SCRIPT_TYPE);
+            walletJournal = autosave(wallet, false);
+            walletWithHistory.set(wallet);
+            autosaveWalletNow(); // persist...
+            WalletUtils.autoBackupWallet(WalletApplication.this, wallet); // ...and backup asap
+            watch.stop();
+            log.info("fresh {} wallet created, took {}", Constants.DEFAULT_OUTPUT_SCRIPT_TYPE, watch);
 
-            private void initMnemonicCode() {
-                if (MnemonicCode.INSTANCE == null) {
-                    try {
-                        final Stopwatch watch = Stopwatch.createStarted();
-                        MnemonicCode.INSTANCE = new MnemonicCode(getAssets().open(BIP39_WORDLIST_FILENAME), null);
-                        watch.stop();
-                        log.info("BIP39 wordlist loaded from: '{}', took {}", BIP39_WORDLIST_FILENAME, watch);
-                    } catch (final IOException x) {
-                        throw new Error(x);
-                    }
-                }
+            config.armBackupReminder();
+        }
+    }
+
+    @WorkerThread
+    private void initMnemonicCode() {
+        if (MnemonicCode.INSTANCE == null) {
+            try {
+                final Stopwatch watch = Stopwatch.createStarted();
+                final StartupTrace.Span span = StartupTrace.begin("initMnemonicCode");
+                final WordlistAsset wordlist = new WordlistAsset(Assets.map(getAssets(), BIP39_WORDLIST_FILENAME));
+                MnemonicCode.INSTANCE = new MnemonicCode(wordlist.openText(), null);
+                span.end();
+                watch.stop();
+                log.info("BIP39 wordlist loaded from: '{}', took {}", BIP39_WORDLIST_FILENAME, watch);
+            } catch (final IOException x) {
+                throw new Error(x);
             }
+        }
+    }
+
+    /**
+     * Like {@link #getWalletAsync(OnWalletLoadedListener)}, but waits until the spent and dead transaction history
+     * has been inflated into the wallet. Use this if you need all transactions, rather than just the balance.
+     */
+    @AnyThread
+    public void getWalletWithHistoryAsync(final OnWalletLoadedListener listener) {
+        getWalletAsync(wallet -> {
+            final SettableFuture<Wallet> future;
+            synchronized (getWalletLock) {
+                future = walletWithHistory;
+            }
+            future.addListener(() -> {
+                try {
+                    listener.onWalletLoaded(future.get());
+                } catch (final InterruptedException | ExecutionException x) {
+                    throw new RuntimeException(x);
+                }
+            }, MoreExecutors.directExecutor());
         });
     }
 
@@ -235,12 +496,67 @@ public class WalletApplication extends Application {
         void onWalletLoaded(Wallet wallet);
     }
 
+    private void inflateHistory(final Wallet wallet, final WalletJournal journal, final WalletHistory history,
+            final TransactionArchive.Archiving archiving, final SettableFuture<Wallet> future) {
+        inflateHistoryExecutor.execute(() -> {
+            final StartupTrace.Span span = StartupTrace.begin("inflateHistory");
+            boolean consistent;
+            try {
+                history.inflateInto(wallet);
+                consistent = wallet.isConsistent();
+            } catch (final UnreadableWalletException x) {
+                log.warn("problem inflating wallet history", x);
+                consistent = false;
+            } finally {
+                span.end();
+            }
+            if (!consistent) {
+                log.warn("inconsistent wallet, auto-restoring: " + walletFile);
+                final Wallet restoredWallet = WalletUtils.restoreWalletFromAutoBackup(WalletApplication.this);
+                if (restoredWallet != null) {
+                    new Toast(WalletApplication.this).postLongToast(R.string.toast_wallet_reset);
+                    // replacing the wallet completes the future
+                    new Handler(Looper.getMainLooper()).post(() -> replaceWallet(restoredWallet));
+                } else {
+                    // keep compaction held, so the journal doesn't snapshot the inconsistent wallet
+                    log.error("no backup to restore from, continuing with inconsistent wallet");
+                    future.set(wallet);
+                }
+                return;
+            }
+
+            archiving.commit();
+            final int numPending = wallet.getPendingTransactions().size();
+            wallet.cleanup();
+            journal.releaseCompaction();
+            if (wallet.getPendingTransactions().size() != numPending)
+                autosaveWalletNow(); // cleanup doesn't fire wallet events
+            future.set(wallet);
+        });
+    }
+
+    private WalletJournal autosave(final Wallet wallet, final boolean holdCompaction) {
+        return new WalletJournal(wallet, walletFile, walletJournalFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
+                TimeUnit.MILLISECONDS, Constants.Files.WALLET_JOURNAL_COMPACT_THRESHOLD,
+                Constants.Files.WALLET_SNAPSHOT_COMPRESSED, holdCompaction);
+    }
+
+    /**
+     * Schedules a journal flush, for changes that don't fire wallet events, such as issuing a fresh address.
+     */
+    public void autosaveWalletLater() {
+        synchronized (getWalletLock) {
+            if (walletJournal != null)
+                walletJournal.saveLater();
+        }
+    }
+
     public void autosaveWalletNow() {
         final Stopwatch watch = Stopwatch.createStarted();
         synchronized (getWalletLock) {
-            if (walletFiles != null) {
+            if (walletJournal != null) {
                 try {
-                    walletFiles.saveNow();
+                    walletJournal.saveNow();
                     watch.stop();
                     log.info("wallet saved to: '{}', took {}", walletFile, watch);
                 } catch (final IOException x) {
@@ -257,11 +573,21 @@ public class WalletApplication extends Application {
             newWallet.upgradeToDeterministic(Constants.UPGRADE_OUTPUT_SCRIPT_TYPE, null);
         BlockchainService.resetBlockchain(this);
 
-        final Wallet oldWallet = getWallet();
+        getWallet();
+        getTransactionArchive().clear(); // archived transactions belong to the previous wallet
+        getBalanceSnapshot().clear();
         synchronized (getWalletLock) {
-            oldWallet.shutdownAutosaveAndWait(); // this will also prevent BlockchainService to save
-            walletFiles = newWallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS,
-                    TimeUnit.MILLISECONDS, null);
+            walletJournal.shutdownAndWait(); // this will also prevent BlockchainService to save
+            walletJournal = autosave(newWallet, false);
+            autosaveWalletNow();
+            final SettableFuture<Wallet> previousWalletWithHistory = walletWithHistory;
+            walletWithHistory = SettableFuture.create();
+            walletWithHistory.set(newWallet);
+            previousWalletWithHistory.set(newWallet); // in case history was still inflating
+        }
+        synchronized (this) {
+            if (transactionInfo != null)
+                getWalletExecutor.execute(() -> newTransactionInfo(newWallet, true));
         }
         config.maybeIncrementBestChainHeightEver(newWallet.getLastBlockSeenHeight());
         WalletUtils.autoBackupWallet(this, newWallet);
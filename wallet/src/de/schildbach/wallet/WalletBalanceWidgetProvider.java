@@ -24,13 +24,18 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.Spannable;
 import android.text.Spanned;
 import android.text.style.ForegroundColorSpan;
 import android.text.style.StrikethroughSpan;
 import android.view.View;
 import android.widget.RemoteViews;
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
 import de.schildbach.wallet.exchangerate.ExchangeRatesRepository;
 import de.schildbach.wallet.ui.RequestCoinsActivity;
@@ -61,6 +66,13 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
 
     private static final StrikethroughSpan STRIKE_THRU_SPAN = new StrikethroughSpan();
 
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Object UPDATE_TOKEN = new Object();
+    private static final AppWidgetContents lastContents = new AppWidgetContents();
+
+    /** Delay for coalescing bursts of widget updates, e.g. balance and exchange rate changing together. */
+    private static final long UPDATE_COALESCE_MS = 250;
+
     private static final Logger log = LoggerFactory.getLogger(WalletBalanceWidgetProvider.class);
 
     @Override
@@ -68,13 +80,12 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
         final PendingResult result = goAsync();
         executor.execute(() -> {
             final WalletApplication application = (WalletApplication) context.getApplicationContext();
-            final Coin balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
-            final Configuration config = application.getConfiguration();
-            final ExchangeRatesRepository exchangeRatesRepository = ExchangeRatesRepository.get(application);
-            final ExchangeRateEntry exchangeRate = config.isEnableExchangeRates() ?
-                    exchangeRatesRepository.exchangeRateDao().findByCurrencyCode(config.getExchangeCurrencyCode()) : null;
-            updateWidgets(context, appWidgetManager, appWidgetIds, balance, exchangeRate != null ?
-                    exchangeRate.exchangeRate() : null);
+            final Coin balance = loadBalance(application);
+            final ExchangeRate exchangeRate = loadExchangeRate(application);
+            for (final int appWidgetId : appWidgetIds) {
+                final Bundle options = getAppWidgetOptions(appWidgetManager, appWidgetId);
+                updateWidget(context, appWidgetManager, appWidgetId, options, balance, exchangeRate, true);
+            }
             result.finish();
         });
     }
@@ -88,44 +99,70 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
         final PendingResult result = goAsync();
         executor.execute(() -> {
             final WalletApplication application = (WalletApplication) context.getApplicationContext();
-            final Coin balance = application.getWallet().getBalance(BalanceType.ESTIMATED);
-            final Configuration config = application.getConfiguration();
-            final ExchangeRatesRepository exchangeRatesRepository = ExchangeRatesRepository.get(application);
-            final ExchangeRateEntry exchangeRate = config.isEnableExchangeRates() ?
-                    exchangeRatesRepository.exchangeRateDao().findByCurrencyCode(config.getExchangeCurrencyCode()) : null;
-            updateWidget(context, appWidgetManager, appWidgetId, newOptions, balance, exchangeRate != null ?
-                    exchangeRate.exchangeRate() : null);
+            final Coin balance = loadBalance(application);
+            final ExchangeRate exchangeRate = loadExchangeRate(application);
+            updateWidget(context, appWidgetManager, appWidgetId, newOptions, balance, exchangeRate, true);
             result.finish();
         });
     }
 
+    @Override
+    public void onDeleted(final Context context, final int[] appWidgetIds) {
+        for (final int appWidgetId : appWidgetIds)
+            lastContents.remove(appWidgetId);
+    }
+
+    @WorkerThread
+    private static Coin loadBalance(final WalletApplication application) {
+        return application.getBalanceSnapshot().getBalance(BalanceType.ESTIMATED, application::getWallet);
+    }
+
+    @WorkerThread
+    private static @Nullable ExchangeRate loadExchangeRate(final WalletApplication application) {
+        final Configuration config = application.getConfiguration();
+        if (!config.isEnableExchangeRates())
+            return null;
+        final String currencyCode = config.getExchangeCurrencyCode();
+        final ExchangeRate exchangeRate = application.getBalanceSnapshot().getExchangeRate(currencyCode);
+        if (exchangeRate != null)
+            return exchangeRate;
+        final ExchangeRateEntry exchangeRateEntry =
+                ExchangeRatesRepository.get(application).exchangeRateDao().findByCurrencyCode(currencyCode);
+        return exchangeRateEntry != null ? exchangeRateEntry.exchangeRate() : null;
+    }
+
+    /**
+     * Updates all widgets with the given values. Bursts of calls are coalesced, and widgets whose content didn't
+     * change are skipped.
+     */
+    @MainThread
     public static void updateWidgets(final Context context, final Coin balance,
             final @Nullable ExchangeRate exchangeRate) {
+        handler.removeCallbacksAndMessages(UPDATE_TOKEN);
+        handler.postAtTime(() -> updateWidgetsNow(context, balance, exchangeRate), UPDATE_TOKEN,
+                SystemClock.uptimeMillis() + UPDATE_COALESCE_MS);
+    }
+
+    private static void updateWidgetsNow(final Context context, final Coin balance,
+            final @Nullable ExchangeRate exchangeRate) {
         final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
         final ComponentName providerName = new ComponentName(context, WalletBalanceWidgetProvider.class);
 
         try {
             final int[] appWidgetIds = appWidgetManager.getAppWidgetIds(providerName);
-            if (appWidgetIds.length > 0)
-                WalletBalanceWidgetProvider.updateWidgets(context, appWidgetManager, appWidgetIds, balance,
-                        exchangeRate);
+            for (final int appWidgetId : appWidgetIds) {
+                final Bundle options = getAppWidgetOptions(appWidgetManager, appWidgetId);
+                updateWidget(context, appWidgetManager, appWidgetId, options, balance, exchangeRate, false);
+            }
         } catch (final RuntimeException x) // system server dead?
         {
             log.warn("cannot update app widgets", x);
         }
     }
 
-    private static void updateWidgets(final Context context, final AppWidgetManager appWidgetManager,
-            final int[] appWidgetIds, final Coin balance, final @Nullable ExchangeRate exchangeRate) {
-        for (final int appWidgetId : appWidgetIds) {
-            final Bundle options = getAppWidgetOptions(appWidgetManager, appWidgetId);
-            updateWidget(context, appWidgetManager, appWidgetId, options, balance, exchangeRate);
-        }
-    }
-
     private static void updateWidget(final Context context, final AppWidgetManager appWidgetManager,
             final int appWidgetId, final Bundle appWidgetOptions, final Coin balance,
-            final @Nullable ExchangeRate exchangeRate) {
+            final @Nullable ExchangeRate exchangeRate, final boolean force) {
         final WalletApplication application = (WalletApplication) context.getApplicationContext();
         final Configuration config = application.getConfiguration();
         final MonetaryFormat btcFormat = config.getFormat();
@@ -147,9 +184,16 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
             localBalanceStr = null;
         }
 
+        // skip pushing the remote views if nothing changed
+        final String currencyCode = btcFormat.code();
+        final int minWidth = appWidgetOptions != null ?
+                appWidgetOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH) : -1;
+        if (!lastContents.update(appWidgetId,
+                AppWidgetContents.of(currencyCode, balanceStr, localBalanceStr, minWidth), force))
+            return;
+
         final RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.wallet_balance_widget_content);
 
-        final String currencyCode = btcFormat.code();
         if (MonetaryFormat.CODE_BTC.equals(currencyCode))
             views.setImageViewResource(R.id.widget_wallet_prefix, R.drawable.currency_symbol_btc);
         else if (MonetaryFormat.CODE_MBTC.equals(currencyCode))
@@ -162,7 +206,6 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
         views.setTextViewText(R.id.widget_wallet_balance_local, localBalanceStr);
 
         if (appWidgetOptions != null) {
-            final int minWidth = appWidgetOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
             views.setViewVisibility(R.id.widget_app_icon, minWidth > 400 ? View.VISIBLE : View.GONE);
             views.setViewVisibility(R.id.widget_button_request, minWidth > 300 ? View.VISIBLE : View.GONE);
             views.setViewVisibility(R.id.widget_button_send, minWidth > 300 ? View.VISIBLE : View.GONE);
@@ -0,0 +1,81 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import androidx.annotation.Nullable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Loads the wallet on first demand, rather than on every start of the app: many starts, like widget updates or boot
+ * broadcasts, never look at the wallet. The BIP39 wordlist can be warmed up on its own ahead of that. Loading the
+ * wallet parses the wallet file in parallel to the wordlist, and publishes the wallet once both are done.
+ *
+ * @author Andreas Schildbach
+ */
+final class WalletLoader<T> {
+    interface Publisher<T> {
+        void publish(@Nullable T parsedWallet);
+    }
+
+    private final ListeningExecutorService executor;
+    private final Runnable wordlistLoader;
+    private final Callable<T> walletParser;
+    private final Publisher<T> walletPublisher;
+
+    // guarded by this
+    private ListenableFuture<?> wordlistLoaded;
+    private ListenableFuture<?> walletLoaded;
+
+    WalletLoader(final ListeningExecutorService executor, final Runnable wordlistLoader,
+            final Callable<T> walletParser, final Publisher<T> walletPublisher) {
+        this.executor = executor;
+        this.wordlistLoader = wordlistLoader;
+        this.walletParser = walletParser;
+        this.walletPublisher = walletPublisher;
+    }
+
+    /**
+     * Starts loading the wordlist, unless it is already loading or loaded.
+     */
+    synchronized ListenableFuture<?> loadWordlist() {
+        if (wordlistLoaded == null)
+            wordlistLoaded = executor.submit(wordlistLoader);
+        return wordlistLoaded;
+    }
+
+    /**
+     * Starts loading the wallet, unless it is already loading or loaded.
+     *
+     * @return future that completes once the wallet has been published
+     */
+    synchronized ListenableFuture<?> loadWallet() {
+        if (walletLoaded == null) {
+            final ListenableFuture<?> wordlist = loadWordlist();
+            final ListenableFuture<T> parsedWallet = executor.submit(walletParser);
+            walletLoaded = Futures.whenAllSucceed(wordlist, parsedWallet).call(() -> {
+                walletPublisher.publish(Futures.getDone(parsedWallet));
+                return null;
+            }, executor);
+        }
+        return walletLoaded;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.annotation.Nullable;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBag;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Archived transactions, parsed one by one as they are looked up, e.g. for the rows currently displayed or being
+ * exported. Only the most recently used transactions are kept, so the archive is never held in memory as a whole.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ArchivedTransactionCache {
+    public interface EvictionListener {
+        void onEvicted(Sha256Hash txId);
+    }
+
+    private final TransactionArchive archive;
+    private final NetworkParameters params;
+    private final int maxSize;
+    @Nullable
+    private final EvictionListener evictionListener;
+    private volatile Set<Sha256Hash> txIds = Collections.emptySet();
+    private final Map<Sha256Hash, Transaction> transactions = new LinkedHashMap<Sha256Hash, Transaction>(16,
+            0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, Transaction> eldest) {
+            if (size() <= maxSize)
+                return false;
+            if (evictionListener != null)
+                evictionListener.onEvicted(eldest.getKey());
+            return true;
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(ArchivedTransactionCache.class);
+
+    /**
+     * @param maxSize
+     *            number of parsed transactions to keep
+     * @param evictionListener
+     *            notified when a transaction is dropped, so that anything derived from it can be dropped as well
+     */
+    public ArchivedTransactionCache(final TransactionArchive archive, final NetworkParameters params,
+            final int maxSize, @Nullable final EvictionListener evictionListener) {
+        this.archive = archive;
+        this.params = params;
+        this.maxSize = maxSize;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Reads the ids of all archived transactions, so that lookups of other transactions don't hit the database.
+     */
+    public void load() {
+        txIds = Collections.unmodifiableSet(archive.getTxIds());
+        clear();
+    }
+
+    public Set<Sha256Hash> getTxIds() {
+        return txIds;
+    }
+
+    public boolean contains(final Sha256Hash txId) {
+        return txIds.contains(txId);
+    }
+
+    /**
+     * Looks up an archived transaction, parsing it if it isn't cached. Its inputs are not connected.
+     */
+    @Nullable
+    public Transaction get(final Sha256Hash txId) {
+        if (!txIds.contains(txId))
+            return null;
+        synchronized (transactions) {
+            final Transaction cached = transactions.get(txId);
+            if (cached != null)
+                return cached;
+            try {
+                final Transaction tx = archive.get(params, txId);
+                if (tx != null)
+                    transactions.put(txId, tx);
+                return tx;
+            } catch (final IOException | UnreadableWalletException x) {
+                log.warn("problem parsing archived transaction " + txId, x);
+                return null;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (transactions) {
+            transactions.clear();
+        }
+    }
+
+    /**
+     * Returns a view of the given wallet that looks up archived transactions in its spent pool, so that values of
+     * archived transactions and of transactions spending archived outputs can be determined.
+     */
+    public TransactionBag transactionBag(final Wallet wallet) {
+        return ArchivedTransactions.transactionBag(wallet, lookup);
+    }
+
+    /**
+     * Lookup-only map of the archived transactions, parsing them on demand.
+     */
+    private final Map<Sha256Hash, Transaction> lookup = new AbstractMap<Sha256Hash, Transaction>() {
+        @Override
+        public Transaction get(final Object key) {
+            return key instanceof Sha256Hash ? ArchivedTransactionCache.this.get((Sha256Hash) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return key instanceof Sha256Hash && txIds.contains(key);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return txIds.isEmpty();
+        }
+
+        @Override
+        public Set<Entry<Sha256Hash, Transaction>> entrySet() {
+            throw new UnsupportedOperationException("archived transactions cannot be enumerated");
+        }
+    };
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Dao
+public interface ArchivedTransactionDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertOrUpdate(List<ArchivedTransactionEntry> entries);
+
+    @Query("SELECT txid FROM archived_transactions")
+    List<String> getTxIds();
+
+    @Query("SELECT * FROM archived_transactions ORDER BY update_time DESC")
+    List<ArchivedTransactionEntry> getAll();
+
+    @Query("SELECT * FROM archived_transactions WHERE txid = :txId")
+    ArchivedTransactionEntry findByTxId(String txId);
+
+    @Query("SELECT * FROM archived_transactions ORDER BY update_time DESC")
+    LiveData<List<ArchivedTransactionEntry>> findAll();
+
+    @Query("SELECT COUNT(*) FROM archived_transactions")
+    int count();
+
+    @Query("DELETE FROM archived_transactions")
+    void deleteAll();
+}
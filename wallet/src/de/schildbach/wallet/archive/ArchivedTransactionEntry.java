@@ -0,0 +1,71 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Entity(tableName = ArchivedTransactionEntry.TABLE_NAME)
+public class ArchivedTransactionEntry {
+    public static final String TABLE_NAME = "archived_transactions";
+
+    @NonNull
+    @PrimaryKey
+    @ColumnInfo(name = "txid")
+    private String txId;
+
+    @ColumnInfo(name = "update_time")
+    private long updateTime;
+
+    @ColumnInfo(name = "height")
+    private int height;
+
+    /** transaction as serialized by the wallet protobuf */
+    @NonNull
+    @ColumnInfo(name = "transaction")
+    private byte[] transaction;
+
+    public ArchivedTransactionEntry(final String txId, final long updateTime, final int height,
+            final byte[] transaction) {
+        this.txId = txId;
+        this.updateTime = updateTime;
+        this.height = height;
+        this.transaction = transaction;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte[] getTransaction() {
+        return transaction;
+    }
+}
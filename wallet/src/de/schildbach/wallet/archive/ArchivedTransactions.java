@@ -0,0 +1,189 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.annotation.Nullable;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBag;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Archived transactions parsed all at once, connected among each other.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ArchivedTransactions {
+    private final Map<Sha256Hash, Transaction> transactions;
+
+    public static final ArchivedTransactions EMPTY = new ArchivedTransactions(Collections.emptyMap());
+
+    private ArchivedTransactions(final Map<Sha256Hash, Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    public static ArchivedTransactions parse(final NetworkParameters params,
+            final List<ArchivedTransactionEntry> entries)
+            throws InvalidProtocolBufferException, UnreadableWalletException {
+        if (entries.isEmpty())
+            return EMPTY;
+        final List<Protos.Transaction> transactions = new ArrayList<>(entries.size());
+        final Set<ByteString> present = new HashSet<>(entries.size());
+        for (final ArchivedTransactionEntry entry : entries) {
+            final Protos.Transaction tx = Protos.Transaction.parseFrom(entry.getTransaction());
+            transactions.add(tx);
+            present.add(tx.getHash());
+        }
+
+        // parse into a scratch wallet, so that the archived transactions are connected by the serializer
+        final Protos.Wallet archiveProto = Protos.Wallet.newBuilder().setNetworkIdentifier(params.getId())
+                .addAllTransaction(TransactionArchive.stripSpentBy(transactions, present)).build();
+        final Wallet scratch = new WalletProtobufSerializer().readWallet(params, null, archiveProto);
+        final Map<Sha256Hash, Transaction> parsed = new HashMap<>(entries.size());
+        for (final WalletTransaction wtx : scratch.getWalletTransactions())
+            parsed.put(wtx.getTransaction().getTxId(), wtx.getTransaction());
+        return new ArchivedTransactions(Collections.unmodifiableMap(parsed));
+    }
+
+    @Nullable
+    public Transaction get(final Sha256Hash txId) {
+        return transactions.get(txId);
+    }
+
+    public Collection<Transaction> getTransactions() {
+        return transactions.values();
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * Looks up the transaction in the given wallet first, then in the archive.
+     */
+    @Nullable
+    public Transaction getTransaction(final Wallet wallet, final Sha256Hash txId) {
+        final Transaction tx = wallet.getTransaction(txId);
+        return tx != null ? tx : transactions.get(txId);
+    }
+
+    /**
+     * Returns a view of the given wallet that includes the archived transactions in its spent pool, so that values of
+     * archived transactions and of transactions spending archived outputs can be determined.
+     */
+    public TransactionBag transactionBag(final Wallet wallet) {
+        return transactionBag(wallet, transactions);
+    }
+
+    /**
+     * Returns a view of the given wallet that includes the given archived transactions in its spent pool. The pool
+     * is only used for lookups.
+     */
+    static TransactionBag transactionBag(final Wallet wallet, final Map<Sha256Hash, Transaction> archived) {
+        if (archived.isEmpty())
+            return wallet;
+        return new TransactionBag() {
+            private final Map<Sha256Hash, Transaction> spent = new SpentPool(wallet, archived);
+
+            @Override
+            public boolean isPubKeyHashMine(final byte[] pubKeyHash, @Nullable final Script.ScriptType scriptType) {
+                return wallet.isPubKeyHashMine(pubKeyHash, scriptType);
+            }
+
+            @Override
+            public boolean isWatchedScript(final Script script) {
+                return wallet.isWatchedScript(script);
+            }
+
+            @Override
+            public boolean isPubKeyMine(final byte[] pubKey) {
+                return wallet.isPubKeyMine(pubKey);
+            }
+
+            @Override
+            public boolean isPayToScriptHashMine(final byte[] payToScriptHash) {
+                return wallet.isPayToScriptHashMine(payToScriptHash);
+            }
+
+            @Override
+            public Map<Sha256Hash, Transaction> getTransactionPool(final Pool pool) {
+                return pool == Pool.SPENT ? spent : wallet.getTransactionPool(pool);
+            }
+        };
+    }
+
+    /**
+     * Read-only spent pool of a wallet, extended by archived transactions, optimized for lookups. The wallet's own pool
+     * maps aren't guarded, so lookups go through {@link Wallet#getTransaction(Sha256Hash)}, which takes the wallet
+     * lock. This returns any transaction of the wallet that isn't dead, regardless of its pool; for connecting inputs,
+     * which is all the pool is used for, that makes no difference.
+     */
+    private static final class SpentPool extends AbstractMap<Sha256Hash, Transaction> {
+        private final Wallet wallet;
+        private final Map<Sha256Hash, Transaction> archived;
+
+        SpentPool(final Wallet wallet, final Map<Sha256Hash, Transaction> archived) {
+            this.wallet = wallet;
+            this.archived = archived;
+        }
+
+        @Override
+        public Transaction get(final Object key) {
+            if (!(key instanceof Sha256Hash))
+                return null;
+            final Transaction tx = wallet.getTransaction((Sha256Hash) key);
+            if (tx != null && tx.getConfidence().getConfidenceType() != TransactionConfidence.ConfidenceType.DEAD)
+                return tx;
+            return archived.get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<Sha256Hash, Transaction>> entrySet() {
+            final Map<Sha256Hash, Transaction> union = new HashMap<>(archived);
+            for (final WalletTransaction wtx : wallet.getWalletTransactions())
+                if (wtx.getPool() == Pool.SPENT)
+                    union.put(wtx.getTransaction().getTxId(), wtx.getTransaction());
+            return Collections.unmodifiableMap(union).entrySet();
+        }
+    }
+}
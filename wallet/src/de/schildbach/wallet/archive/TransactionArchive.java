@@ -0,0 +1,315 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves deeply confirmed, fully spent transactions out of the wallet into the archive database, so that the live
+ * wallet stays small, and merges them back where the full history is needed.
+ *
+ * A transaction is archived only if all transactions spending its outputs are deeply confirmed as well, and only
+ * together with all of its funding transactions that are part of the wallet. This way no transaction remaining in
+ * the live wallet has an output spent by an archived transaction, and a reorg cannot make an archived output
+ * spendable again. Remaining transactions spending archived outputs just see those inputs as unconnected.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionArchive {
+    private final ArchivedTransactionDao dao;
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    public TransactionArchive(final ArchivedTransactionDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Archives the transactions of the given wallet protobuf that have become eligible.
+     *
+     * @return ids of all transactions of the wallet protobuf that are archived, including the ones that have been
+     *         archived earlier; these should be removed from the live wallet
+     */
+    public Set<Sha256Hash> archive(final Protos.Wallet walletProto, final int minDepth) {
+        final Archiving archiving = prepare(walletProto, minDepth);
+        final Set<Sha256Hash> txIds = new HashSet<>(archiving.getArchivedTxIds());
+        txIds.addAll(archiving.commit());
+        return txIds;
+    }
+
+    /**
+     * Determines which transactions of the given wallet protobuf have been archived earlier, and which have become
+     * eligible. Nothing is written to the archive until {@link Archiving#commit()}, so this can be done before the
+     * wallet is known to be consistent.
+     */
+    public Archiving prepare(final Protos.Wallet walletProto, final int minDepth) {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final Set<ByteString> archived = new HashSet<>();
+        try {
+            for (final String txId : dao.getTxIds())
+                archived.add(WalletProtobufSerializer.hashToByteString(Sha256Hash.wrap(txId)));
+        } catch (final RuntimeException x) {
+            log.warn("problem reading transaction archive, not archiving", x);
+            return new Archiving(Collections.emptySet(), Collections.emptyList());
+        }
+
+        final Set<Sha256Hash> present = new HashSet<>();
+        final List<ArchivedTransactionEntry> entries = new ArrayList<>();
+        final Set<ByteString> eligible = select(walletProto, archived, minDepth);
+        for (final Protos.Transaction tx : walletProto.getTransactionList()) {
+            if (archived.contains(tx.getHash()))
+                present.add(WalletProtobufSerializer.byteStringToHash(tx.getHash()));
+            else if (eligible.contains(tx.getHash()))
+                entries.add(new ArchivedTransactionEntry(WalletProtobufSerializer.byteStringToHash(tx.getHash())
+                        .toString(), tx.getUpdatedAt(), tx.getConfidence().getAppearedAtHeight(), tx.toByteArray()));
+        }
+        watch.stop();
+        log.info("{} transactions eligible for archiving, leaving {} archived transactions out of wallet, took {}",
+                entries.size(), present.size(), watch);
+        return new Archiving(present, entries);
+    }
+
+    /**
+     * Result of {@link #prepare(Protos.Wallet, int)}.
+     */
+    public final class Archiving {
+        private final Set<Sha256Hash> archivedTxIds;
+        private final List<ArchivedTransactionEntry> entries;
+
+        private Archiving(final Set<Sha256Hash> archivedTxIds, final List<ArchivedTransactionEntry> entries) {
+            this.archivedTxIds = archivedTxIds;
+            this.entries = entries;
+        }
+
+        /**
+         * @return ids of the transactions of the wallet protobuf that have been archived earlier; these should be
+         *         removed from the live wallet
+         */
+        public Set<Sha256Hash> getArchivedTxIds() {
+            return archivedTxIds;
+        }
+
+        /**
+         * Writes the eligible transactions to the archive. Call this only once the wallet is known to be consistent.
+         * The newly archived transactions are left out of the wallet the next time it is loaded.
+         *
+         * @return ids of the newly archived transactions, or an empty set if they couldn't be written
+         */
+        public Set<Sha256Hash> commit() {
+            if (entries.isEmpty())
+                return Collections.emptySet();
+            try {
+                dao.insertOrUpdate(entries);
+            } catch (final RuntimeException x) {
+                log.warn("problem archiving transactions, keeping them in wallet", x);
+                return Collections.emptySet();
+            }
+            final Set<Sha256Hash> txIds = new HashSet<>(entries.size());
+            for (final ArchivedTransactionEntry entry : entries)
+                txIds.add(Sha256Hash.wrap(entry.getTxId()));
+            log.info("{} transactions newly archived", txIds.size());
+            return txIds;
+        }
+    }
+
+    /**
+     * Adds all archived transactions to the given wallet protobuf, e.g. for exporting the full wallet.
+     */
+    public Protos.Wallet mergeInto(final Protos.Wallet walletProto) throws InvalidProtocolBufferException {
+        final List<ArchivedTransactionEntry> entries = dao.getAll();
+        if (entries.isEmpty())
+            return walletProto;
+        final Set<ByteString> present = new HashSet<>();
+        for (final Protos.Transaction tx : walletProto.getTransactionList())
+            present.add(tx.getHash());
+        final List<Protos.Transaction> transactions = new ArrayList<>(walletProto.getTransactionList());
+        for (final ArchivedTransactionEntry entry : entries) {
+            final Protos.Transaction tx = Protos.Transaction.parseFrom(entry.getTransaction());
+            if (present.add(tx.getHash()))
+                transactions.add(tx);
+        }
+        return walletProto.toBuilder().clearTransaction().addAllTransaction(stripSpentBy(transactions, present))
+                .build();
+    }
+
+    /**
+     * Looks up a single archived transaction. Its inputs are not connected.
+     */
+    @Nullable
+    public Transaction get(final NetworkParameters params, final Sha256Hash txId)
+            throws IOException, UnreadableWalletException {
+        final ArchivedTransactionEntry entry = dao.findByTxId(txId.toString());
+        if (entry == null)
+            return null;
+        return ArchivedTransactions.parse(params, Collections.singletonList(entry)).get(txId);
+    }
+
+    /**
+     * Parses all archived transactions at once. Only meant for one-off tasks, as the archive can be large; use
+     * {@link ArchivedTransactionCache} for looking at some of them.
+     */
+    public ArchivedTransactions load(final NetworkParameters params)
+            throws InvalidProtocolBufferException, UnreadableWalletException {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final ArchivedTransactions archived = ArchivedTransactions.parse(params, dao.getAll());
+        watch.stop();
+        log.info("{} archived transactions parsed, took {}", archived.size(), watch);
+        return archived;
+    }
+
+    /**
+     * Reads the ids of all archived transactions, without parsing them.
+     */
+    public Set<Sha256Hash> getTxIds() {
+        final List<String> txIdStrings = dao.getTxIds();
+        final Set<Sha256Hash> txIds = new HashSet<>(txIdStrings.size());
+        for (final String txId : txIdStrings)
+            txIds.add(Sha256Hash.wrap(txId));
+        return txIds;
+    }
+
+    public boolean isEmpty() {
+        return dao.count() == 0;
+    }
+
+    /**
+     * Empties the archive, e.g. because the wallet has been replaced.
+     */
+    public void clear() {
+        dao.deleteAll();
+        log.info("transaction archive cleared");
+    }
+
+    /**
+     * Selects the transactions of the given wallet protobuf that can be archived, not considering the given excluded
+     * transactions.
+     */
+    static Set<ByteString> select(final Protos.Wallet walletProto, final Set<ByteString> excluded,
+            final int minDepth) {
+        final Set<ByteString> eligible = new HashSet<>();
+        if (!walletProto.hasLastSeenBlockHeight())
+            return eligible;
+        final int lastSeenHeight = walletProto.getLastSeenBlockHeight();
+        final Map<ByteString, Protos.Transaction> all = new HashMap<>(walletProto.getTransactionCount());
+        for (final Protos.Transaction tx : walletProto.getTransactionList())
+            if (!excluded.contains(tx.getHash()))
+                all.put(tx.getHash(), tx);
+
+        txs: for (final Protos.Transaction tx : all.values()) {
+            if (tx.getPool() != Protos.Transaction.Pool.SPENT || !isDeep(tx, lastSeenHeight, minDepth))
+                continue;
+            for (final Protos.TransactionOutput output : tx.getTransactionOutputList()) {
+                if (!output.hasSpentByTransactionHash())
+                    continue;
+                final Protos.Transaction spendingTx = all.get(output.getSpentByTransactionHash());
+                if (spendingTx == null || !isDeep(spendingTx, lastSeenHeight, minDepth))
+                    continue txs;
+            }
+            eligible.add(tx.getHash());
+        }
+
+        // funding transactions must go first, repeat until no more transactions drop out
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final Iterator<ByteString> i = eligible.iterator(); i.hasNext();) {
+                for (final Protos.TransactionInput input : all.get(i.next()).getTransactionInputList()) {
+                    final ByteString fundingTx = input.getTransactionOutPointHash();
+                    if (all.containsKey(fundingTx) && !eligible.contains(fundingTx)) {
+                        i.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return eligible;
+    }
+
+    private static boolean isDeep(final Protos.Transaction tx, final int lastSeenHeight, final int minDepth) {
+        final Protos.TransactionConfidence confidence = tx.getConfidence();
+        return confidence.getType() == Protos.TransactionConfidence.Type.BUILDING && confidence.hasAppearedAtHeight()
+                && lastSeenHeight - confidence.getAppearedAtHeight() + 1 >= minDepth;
+    }
+
+    /**
+     * Removes the given transactions from a wallet protobuf.
+     */
+    public static Protos.Wallet withoutTransactions(final Protos.Wallet walletProto,
+            final Collection<Sha256Hash> txIds) {
+        if (txIds.isEmpty())
+            return walletProto;
+        final Set<ByteString> removed = new HashSet<>(txIds.size());
+        for (final Sha256Hash txId : txIds)
+            removed.add(WalletProtobufSerializer.hashToByteString(txId));
+        final List<Protos.Transaction> transactions = new ArrayList<>(walletProto.getTransactionCount());
+        final Set<ByteString> present = new HashSet<>();
+        for (final Protos.Transaction tx : walletProto.getTransactionList()) {
+            if (!removed.contains(tx.getHash())) {
+                transactions.add(tx);
+                present.add(tx.getHash());
+            }
+        }
+        return walletProto.toBuilder().clearTransaction().addAllTransaction(stripSpentBy(transactions, present))
+                .build();
+    }
+
+    /**
+     * Clears spent-by links to transactions that are not present, as the wallet protobuf cannot be read otherwise.
+     */
+    static List<Protos.Transaction> stripSpentBy(final List<Protos.Transaction> transactions,
+            final Set<ByteString> present) {
+        final List<Protos.Transaction> stripped = new ArrayList<>(transactions.size());
+        for (final Protos.Transaction tx : transactions) {
+            Protos.Transaction.Builder builder = null;
+            for (int i = 0; i < tx.getTransactionOutputCount(); i++) {
+                final Protos.TransactionOutput output = tx.getTransactionOutput(i);
+                if (output.hasSpentByTransactionHash() && !present.contains(output.getSpentByTransactionHash())) {
+                    if (builder == null)
+                        builder = tx.toBuilder();
+                    builder.setTransactionOutput(i,
+                            output.toBuilder().clearSpentByTransactionHash().clearSpentByTransactionIndex());
+                }
+            }
+            stripped.add(builder != null ? builder.build() : tx);
+        }
+        return stripped;
+    }
+}
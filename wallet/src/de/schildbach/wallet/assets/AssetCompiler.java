@@ -0,0 +1,77 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles the text assets into their binary formats at build time. Each {@code name.txt} is compiled into
+ * {@code name.bin} in the output directory. Run by the {@code compile*BinaryAssets} tasks of the build, with the
+ * output directory followed by the asset directories of the variant as arguments. Asset directories are given in
+ * increasing priority, so a text asset is taken from the last directory that has it, like the merge of the assets
+ * does.
+ *
+ * @author Andreas Schildbach
+ */
+public final class AssetCompiler {
+    private interface Compiler {
+        void compile(InputStream text, OutputStream out) throws IOException;
+    }
+
+    private static final Map<String, Compiler> COMPILERS = new LinkedHashMap<>();
+
+    static {
+        COMPILERS.put("checkpoints.txt", CheckpointsAsset::compile);
+        COMPILERS.put("bip39-wordlist.txt", WordlistAsset::compile);
+        COMPILERS.put("fees.txt", FeesAsset::compile);
+        COMPILERS.put("electrum-servers.txt", ElectrumServersAsset::compile);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File outputDir = new File(args[0]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IOException("cannot create " + outputDir);
+        for (final Map.Entry<String, Compiler> entry : COMPILERS.entrySet()) {
+            File textFile = null;
+            for (int i = args.length - 1; i >= 1 && textFile == null; i--) {
+                final File file = new File(args[i], entry.getKey());
+                if (file.isFile())
+                    textFile = file;
+            }
+            if (textFile == null)
+                continue;
+            final File binaryFile = new File(outputDir, entry.getKey().replaceFirst("\\.txt$", ".bin"));
+            try (final InputStream in = new FileInputStream(textFile);
+                 final OutputStream out = new FileOutputStream(binaryFile)) {
+                entry.getValue().compile(in, out);
+            } catch (final IOException x) {
+                binaryFile.delete();
+                throw new IOException("cannot compile " + textFile, x);
+            }
+            System.out.println("compiled " + textFile + " (" + textFile.length() + " bytes) into " + binaryFile
+                    + " (" + binaryFile.length() + " bytes)");
+        }
+    }
+}
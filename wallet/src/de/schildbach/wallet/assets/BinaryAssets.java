@@ -0,0 +1,63 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Common header of the binary assets: a four character magic followed by a format version.
+ *
+ * @author Andreas Schildbach
+ */
+final class BinaryAssets {
+    /** Size of the header, in bytes. */
+    static final int HEADER_SIZE = 8;
+
+    private BinaryAssets() {
+    }
+
+    static void writeHeader(final DataOutputStream out, final String magic, final int version) throws IOException {
+        out.write(magic.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(version);
+    }
+
+    /**
+     * Checks the header of the given binary asset and returns a read-only view of it, positioned after the header.
+     */
+    static ByteBuffer checkHeader(final ByteBuffer asset, final String magic, final int version) throws IOException {
+        final ByteBuffer buffer = asset.asReadOnlyBuffer();
+        if (buffer.remaining() < HEADER_SIZE)
+            throw new IOException("truncated header");
+        final byte[] magicBytes = new byte[magic.length()];
+        buffer.get(magicBytes);
+        if (!magic.equals(new String(magicBytes, StandardCharsets.US_ASCII)))
+            throw new IOException("unexpected magic: " + new String(magicBytes, StandardCharsets.US_ASCII));
+        final int actualVersion = buffer.getInt();
+        if (actualVersion != version)
+            throw new IOException("unsupported version: " + actualVersion);
+        return buffer.slice();
+    }
+
+    static void checkSize(final ByteBuffer buffer, final int size) throws IOException {
+        if (buffer.remaining() < size)
+            throw new IOException("truncated: " + buffer.remaining() + " < " + size + " bytes");
+    }
+}
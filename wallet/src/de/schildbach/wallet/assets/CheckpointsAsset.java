@@ -0,0 +1,135 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Block checkpoints as fixed-width records, sorted by block time. Each record is a compact {@link StoredBlock}, so
+ * looking up the checkpoint for a wallet birthdate is a binary search over the asset, without parsing the others.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CheckpointsAsset {
+    private static final String MAGIC = "CKPT";
+    private static final int VERSION = 1;
+    private static final String TEXT_MAGIC = "TXT CHECKPOINTS 1";
+    private static final int RECORD_SIZE = StoredBlock.COMPACT_SERIALIZED_SIZE;
+    /** Offset of the block time within a record: chain work, height, block version, previous hash, merkle root. */
+    private static final int TIME_OFFSET = 12 + 4 + 4 + 32 + 32;
+
+    private final ByteBuffer records;
+    private final int size;
+
+    public CheckpointsAsset(final ByteBuffer asset) throws IOException {
+        final ByteBuffer buffer = BinaryAssets.checkHeader(asset, MAGIC, VERSION);
+        BinaryAssets.checkSize(buffer, 4);
+        this.size = buffer.getInt();
+        BinaryAssets.checkSize(buffer, size * RECORD_SIZE);
+        this.records = buffer.slice();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimeSecs(final int index) {
+        return Integer.reverseBytes(records.getInt(index * RECORD_SIZE + TIME_OFFSET)) & 0xffffffffL;
+    }
+
+    public StoredBlock get(final NetworkParameters params, final int index) {
+        final ByteBuffer record = records.duplicate();
+        record.position(index * RECORD_SIZE);
+        return StoredBlock.deserializeCompact(params, record);
+    }
+
+    /**
+     * Returns the last checkpoint before the given time, or the genesis block if there is none. Behaves like
+     * {@link org.bitcoinj.core.CheckpointManager#getCheckpointBefore(long)}.
+     */
+    public StoredBlock getCheckpointBefore(final NetworkParameters params, final long timeSecs) {
+        checkArgument(timeSecs > params.getGenesisBlock().getTimeSeconds());
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (getTimeSecs(mid) <= timeSecs)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        if (high >= 0)
+            return get(params, high);
+        final Block genesis = params.getGenesisBlock().cloneAsHeader();
+        return new StoredBlock(genesis, genesis.getWork(), 0);
+    }
+
+    /**
+     * Compiles the textual checkpoints format of bitcoinj into this format.
+     */
+    public static void compile(final InputStream text, final OutputStream out) throws IOException {
+        final List<byte[]> records = new ArrayList<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.US_ASCII));
+        final String magic = reader.readLine();
+        if (!TEXT_MAGIC.equals(magic))
+            throw new IOException("unexpected magic: " + magic);
+        try {
+            final int numSignatures = Integer.parseInt(reader.readLine().trim());
+            for (int i = 0; i < numSignatures; i++)
+                reader.readLine(); // signatures are not checked
+            final int numCheckpoints = Integer.parseInt(reader.readLine().trim());
+            for (int i = 0; i < numCheckpoints; i++) {
+                final String line = reader.readLine();
+                if (line == null)
+                    throw new IOException("expected " + numCheckpoints + " checkpoints, got " + i);
+                final byte[] record = Base64.getDecoder().decode(line.trim());
+                if (record.length != RECORD_SIZE)
+                    throw new IOException("unexpected checkpoint size: " + record.length);
+                records.add(record);
+            }
+        } catch (final NullPointerException | IllegalArgumentException x) {
+            throw new IOException("cannot parse checkpoints", x);
+        }
+        // stable, so that checkpoints with the same time keep their order
+        records.sort(Comparator.comparingLong(record -> Integer.reverseBytes(ByteBuffer.wrap(record)
+                .getInt(TIME_OFFSET)) & 0xffffffffL));
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        BinaryAssets.writeHeader(dataOut, MAGIC, VERSION);
+        dataOut.writeInt(records.size());
+        for (final byte[] record : records)
+            dataOut.write(record);
+        dataOut.flush();
+    }
+}
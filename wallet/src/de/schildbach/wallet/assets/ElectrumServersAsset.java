@@ -0,0 +1,162 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import androidx.annotation.Nullable;
+import com.google.common.io.BaseEncoding;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Electrum servers as fixed-width records of type, port and certificate fingerprint, referring to their hostnames in
+ * a pool.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ElectrumServersAsset {
+    private static final String MAGIC = "ELEC";
+    private static final int VERSION = 1;
+    private static final String[] TYPES = { "tcp", "tls" };
+    private static final int FINGERPRINT_SIZE = 32;
+    /** Type, flags, port, host offset, host length, reserved and fingerprint. */
+    private static final int RECORD_SIZE = 1 + 1 + 2 + 4 + 2 + 2 + FINGERPRINT_SIZE;
+    private static final int FLAG_FINGERPRINT = 1;
+    private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    private final ByteBuffer records;
+    private final ByteBuffer hosts;
+    private final int size;
+
+    public ElectrumServersAsset(final ByteBuffer asset) throws IOException {
+        final ByteBuffer buffer = BinaryAssets.checkHeader(asset, MAGIC, VERSION);
+        BinaryAssets.checkSize(buffer, 8);
+        this.size = buffer.getInt();
+        final int hostsSize = buffer.getInt();
+        BinaryAssets.checkSize(buffer, size * RECORD_SIZE + hostsSize);
+        this.records = buffer.slice();
+        buffer.position(buffer.position() + size * RECORD_SIZE);
+        this.hosts = buffer.slice();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getType(final int index) {
+        return TYPES[records.get(index * RECORD_SIZE)];
+    }
+
+    /**
+     * @return port of the server, or 0 for the default port of its type
+     */
+    public int getPort(final int index) {
+        return records.getShort(index * RECORD_SIZE + 2) & 0xffff;
+    }
+
+    public String getHost(final int index) {
+        final int offset = records.getInt(index * RECORD_SIZE + 4);
+        final int length = records.getShort(index * RECORD_SIZE + 8) & 0xffff;
+        final byte[] host = new byte[length];
+        final ByteBuffer pool = hosts.duplicate();
+        pool.position(offset);
+        pool.get(host);
+        return new String(host, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return SHA-256 fingerprint of the certificate of the server in lowercase hex, or {@code null} if there is none
+     */
+    @Nullable
+    public String getCertificateFingerprint(final int index) {
+        if ((records.get(index * RECORD_SIZE + 1) & FLAG_FINGERPRINT) == 0)
+            return null;
+        final byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+        final ByteBuffer record = records.duplicate();
+        record.position(index * RECORD_SIZE + RECORD_SIZE - FINGERPRINT_SIZE);
+        record.get(fingerprint);
+        return HEX.encode(fingerprint);
+    }
+
+    /**
+     * Compiles a list of {@code type:host:port:fingerprint} lines into this format, the port and fingerprint being
+     * optional. Empty lines and lines starting with {@code #} are skipped.
+     */
+    public static void compile(final InputStream text, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream recordsOut = new DataOutputStream(records);
+        final ByteArrayOutputStream hosts = new ByteArrayOutputStream();
+        int size = 0;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+            final String[] fields = line.split(":", -1);
+            try {
+                final int type = typeOf(fields[0].trim());
+                final byte[] host = fields[1].trim().getBytes(StandardCharsets.UTF_8);
+                if (host.length == 0 || host.length > 0xffff)
+                    throw new IllegalArgumentException("unsupported host");
+                final String port = fields.length > 2 ? fields[2].trim() : "";
+                final String fingerprint = fields.length > 3 ? fields[3].trim() : "";
+                final int portNumber = port.isEmpty() ? 0 : Integer.parseInt(port);
+                if (portNumber < 0 || portNumber > 0xffff)
+                    throw new IllegalArgumentException("port out of range");
+                final byte[] fingerprintBytes = fingerprint.isEmpty() ? new byte[FINGERPRINT_SIZE] :
+                        HEX.decode(fingerprint.toLowerCase(Locale.US));
+                if (fingerprintBytes.length != FINGERPRINT_SIZE)
+                    throw new IllegalArgumentException("unsupported fingerprint");
+                recordsOut.writeByte(type);
+                recordsOut.writeByte(fingerprint.isEmpty() ? 0 : FLAG_FINGERPRINT);
+                recordsOut.writeShort(portNumber);
+                recordsOut.writeInt(hosts.size());
+                recordsOut.writeShort(host.length);
+                recordsOut.writeShort(0);
+                recordsOut.write(fingerprintBytes);
+                hosts.write(host);
+                size++;
+            } catch (final IllegalArgumentException | ArrayIndexOutOfBoundsException x) {
+                throw new IOException("cannot parse: '" + line + "'", x);
+            }
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        BinaryAssets.writeHeader(dataOut, MAGIC, VERSION);
+        dataOut.writeInt(size);
+        dataOut.writeInt(hosts.size());
+        records.writeTo(dataOut);
+        hosts.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    private static int typeOf(final String type) {
+        for (int i = 0; i < TYPES.length; i++)
+            if (TYPES[i].equalsIgnoreCase(type))
+                return i;
+        throw new IllegalArgumentException("unsupported type: " + type);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fee table as fixed-width records of a category name and a fee rate in satoshis per 1000 bytes.
+ *
+ * @author Andreas Schildbach
+ */
+public final class FeesAsset {
+    private static final String MAGIC = "FEES";
+    private static final int VERSION = 1;
+    /** Maximum length of a category name, which is padded to this length. */
+    private static final int NAME_SIZE = 16;
+    private static final int RECORD_SIZE = NAME_SIZE + 8;
+
+    private final ByteBuffer records;
+    private final int size;
+
+    public FeesAsset(final ByteBuffer asset) throws IOException {
+        final ByteBuffer buffer = BinaryAssets.checkHeader(asset, MAGIC, VERSION);
+        BinaryAssets.checkSize(buffer, 4);
+        this.size = buffer.getInt();
+        BinaryAssets.checkSize(buffer, size * RECORD_SIZE);
+        this.records = buffer.slice();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(final int index) {
+        final int start = index * RECORD_SIZE;
+        int length = 0;
+        while (length < NAME_SIZE && records.get(start + length) != 0)
+            length++;
+        final byte[] name = new byte[length];
+        final ByteBuffer record = records.duplicate();
+        record.position(start);
+        record.get(name);
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+
+    public long getRate(final int index) {
+        return records.getLong(index * RECORD_SIZE + NAME_SIZE);
+    }
+
+    /**
+     * Compiles a fee table of {@code CATEGORY=rate} lines into this format. Empty lines and lines starting with
+     * {@code #} are skipped.
+     */
+    public static void compile(final InputStream text, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream recordsOut = new DataOutputStream(records);
+        int size = 0;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.US_ASCII));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+            final String[] fields = line.split("=");
+            if (fields.length != 2)
+                throw new IOException("cannot parse: '" + line + "'");
+            final byte[] name = fields[0].trim().getBytes(StandardCharsets.US_ASCII);
+            if (name.length == 0 || name.length > NAME_SIZE)
+                throw new IOException("unsupported category name: '" + fields[0] + "'");
+            final long rate;
+            try {
+                rate = Long.parseLong(fields[1].trim());
+            } catch (final NumberFormatException x) {
+                throw new IOException("cannot parse: '" + line + "'", x);
+            }
+            recordsOut.write(name);
+            recordsOut.write(new byte[NAME_SIZE - name.length]);
+            recordsOut.writeLong(rate);
+            size++;
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        BinaryAssets.writeHeader(dataOut, MAGIC, VERSION);
+        dataOut.writeInt(size);
+        records.writeTo(dataOut);
+        dataOut.flush();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A wordlist, checked and normalized at build time. Words are kept as one line each in a pool, so the pool can be
+ * handed to parsers of the text format as it is, without copying.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WordlistAsset {
+    private static final String MAGIC = "WORD";
+    private static final int VERSION = 2;
+
+    private final int size;
+    private final ByteBuffer pool;
+
+    public WordlistAsset(final ByteBuffer asset) throws IOException {
+        final ByteBuffer buffer = BinaryAssets.checkHeader(asset, MAGIC, VERSION);
+        BinaryAssets.checkSize(buffer, 8);
+        this.size = buffer.getInt();
+        final int poolSize = buffer.getInt();
+        BinaryAssets.checkSize(buffer, poolSize);
+        this.pool = buffer.slice();
+        this.pool.limit(poolSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Opens the words in their textual format, one per line.
+     */
+    public InputStream openText() {
+        final ByteBuffer text = pool.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return text.hasRemaining() ? text.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (!text.hasRemaining())
+                    return -1;
+                final int n = Math.min(len, text.remaining());
+                text.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return text.remaining();
+            }
+        };
+    }
+
+    /**
+     * Compiles a wordlist of one word per line into this format. Surrounding whitespace and empty lines are dropped,
+     * duplicate words are rejected.
+     */
+    public static void compile(final InputStream text, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        final Set<String> unique = new HashSet<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(text, StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            final String word = line.trim();
+            if (word.isEmpty())
+                continue;
+            if (!unique.add(word))
+                throw new IOException("duplicate word: " + word);
+            pool.write(word.getBytes(StandardCharsets.UTF_8));
+            pool.write('\n');
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        BinaryAssets.writeHeader(dataOut, MAGIC, VERSION);
+        dataOut.writeInt(unique.size());
+        dataOut.writeInt(pool.size());
+        pool.writeTo(dataOut);
+        dataOut.flush();
+    }
+}
@@ -57,7 +57,18 @@ public abstract class AbstractWalletLiveData<T> extends ThrottelingLiveData<T> i
     }
 
     private void loadWallet() {
-        application.getWalletAsync(onWalletLoadedListener);
+        if (needsHistory())
+            application.getWalletWithHistoryAsync(onWalletLoadedListener);
+        else
+            application.getWalletAsync(onWalletLoadedListener);
+    }
+
+    /**
+     * Override and return true if this live data looks at spent or dead transactions, so that it waits until the
+     * wallet history has been inflated.
+     */
+    protected boolean needsHistory() {
+        return false;
     }
 
     protected Wallet getWallet() {
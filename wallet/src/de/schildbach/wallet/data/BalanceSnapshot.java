@@ -0,0 +1,151 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import android.content.SharedPreferences;
+import androidx.annotation.Nullable;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.utils.ExchangeRate;
+import org.bitcoinj.utils.Fiat;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Tiny persisted copy of the latest wallet balances and the selected exchange rate. Cold entry points like the app
+ * widget or broadcast receivers can read it without loading the wallet.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BalanceSnapshot {
+    private final SharedPreferences prefs;
+
+    /** Name of the shared preferences file, separate from the user preferences. */
+    public static final String PREFS_NAME = "balance_snapshot";
+
+    private static final String PREFS_KEY_ESTIMATED = "estimated";
+    private static final String PREFS_KEY_ESTIMATED_SPENDABLE = "estimated_spendable";
+    private static final String PREFS_KEY_AVAILABLE_SPENDABLE = "available_spendable";
+    private static final String PREFS_KEY_BALANCE_TIME = "balance_time";
+    private static final String PREFS_KEY_RATE_CURRENCY_CODE = "rate_currency_code";
+    private static final String PREFS_KEY_RATE_COIN = "rate_coin";
+    private static final String PREFS_KEY_RATE_FIAT = "rate_fiat";
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceSnapshot.class);
+
+    public BalanceSnapshot(final SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Takes the balances from the given wallet. Nothing is written if they didn't change.
+     */
+    public void putBalances(final Wallet wallet) {
+        putBalances(wallet.getBalance(BalanceType.ESTIMATED), wallet.getBalance(BalanceType.ESTIMATED_SPENDABLE),
+                wallet.getBalance(BalanceType.AVAILABLE_SPENDABLE));
+    }
+
+    public synchronized void putBalances(final Coin estimated, final Coin estimatedSpendable,
+            final Coin availableSpendable) {
+        if (prefs.contains(PREFS_KEY_BALANCE_TIME) && prefs.getLong(PREFS_KEY_ESTIMATED, -1) == estimated.value
+                && prefs.getLong(PREFS_KEY_ESTIMATED_SPENDABLE, -1) == estimatedSpendable.value
+                && prefs.getLong(PREFS_KEY_AVAILABLE_SPENDABLE, -1) == availableSpendable.value)
+            return;
+        prefs.edit().putLong(PREFS_KEY_ESTIMATED, estimated.value)
+                .putLong(PREFS_KEY_ESTIMATED_SPENDABLE, estimatedSpendable.value)
+                .putLong(PREFS_KEY_AVAILABLE_SPENDABLE, availableSpendable.value)
+                .putLong(PREFS_KEY_BALANCE_TIME, System.currentTimeMillis()).apply();
+        log.debug("balance snapshot updated: {}", estimated.toFriendlyString());
+    }
+
+    /**
+     * @return the last seen balance of the given type, or {@code null} if there is none yet
+     */
+    @Nullable
+    public Coin getBalance(final BalanceType balanceType) {
+        if (!prefs.contains(PREFS_KEY_BALANCE_TIME))
+            return null;
+        final String key;
+        if (balanceType == BalanceType.ESTIMATED)
+            key = PREFS_KEY_ESTIMATED;
+        else if (balanceType == BalanceType.ESTIMATED_SPENDABLE)
+            key = PREFS_KEY_ESTIMATED_SPENDABLE;
+        else if (balanceType == BalanceType.AVAILABLE_SPENDABLE)
+            key = PREFS_KEY_AVAILABLE_SPENDABLE;
+        else
+            throw new IllegalArgumentException("not snapshotted: " + balanceType);
+        return Coin.valueOf(prefs.getLong(key, 0));
+    }
+
+    /**
+     * @return the last seen balance of the given type, or if there is none yet the balance of the supplied wallet
+     */
+    public Coin getBalance(final BalanceType balanceType, final Supplier<Wallet> wallet) {
+        final Coin balance = getBalance(balanceType);
+        if (balance != null)
+            return balance;
+        log.info("no balance snapshot yet, loading wallet");
+        return wallet.get().getBalance(balanceType);
+    }
+
+    /**
+     * @return time of the last balance change, or 0 if there is none yet
+     */
+    public long getBalanceTime() {
+        return prefs.getLong(PREFS_KEY_BALANCE_TIME, 0);
+    }
+
+    /**
+     * Takes the selected exchange rate, or {@code null} if exchange rates are disabled or not available. Nothing is
+     * written if it didn't change.
+     */
+    public synchronized void putExchangeRate(final @Nullable ExchangeRate exchangeRate) {
+        if (exchangeRate == null) {
+            if (prefs.contains(PREFS_KEY_RATE_CURRENCY_CODE))
+                prefs.edit().remove(PREFS_KEY_RATE_CURRENCY_CODE).remove(PREFS_KEY_RATE_COIN)
+                        .remove(PREFS_KEY_RATE_FIAT).apply();
+            return;
+        }
+        final String currencyCode = exchangeRate.fiat.currencyCode;
+        if (currencyCode.equals(prefs.getString(PREFS_KEY_RATE_CURRENCY_CODE, null))
+                && prefs.getLong(PREFS_KEY_RATE_COIN, 0) == exchangeRate.coin.value
+                && prefs.getLong(PREFS_KEY_RATE_FIAT, 0) == exchangeRate.fiat.value)
+            return;
+        prefs.edit().putString(PREFS_KEY_RATE_CURRENCY_CODE, currencyCode)
+                .putLong(PREFS_KEY_RATE_COIN, exchangeRate.coin.value)
+                .putLong(PREFS_KEY_RATE_FIAT, exchangeRate.fiat.value).apply();
+    }
+
+    /**
+     * @return the last seen exchange rate for the given currency, or {@code null} if there is none
+     */
+    @Nullable
+    public ExchangeRate getExchangeRate(final String currencyCode) {
+        if (!currencyCode.equals(prefs.getString(PREFS_KEY_RATE_CURRENCY_CODE, null)))
+            return null;
+        return new ExchangeRate(Coin.valueOf(prefs.getLong(PREFS_KEY_RATE_COIN, 0)),
+                Fiat.valueOf(currencyCode, prefs.getLong(PREFS_KEY_RATE_FIAT, 0)));
+    }
+
+    public synchronized void clear() {
+        prefs.edit().clear().apply();
+    }
+}
@@ -25,7 +25,9 @@ import com.google.common.base.Stopwatch;
 import com.google.common.io.ByteStreams;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.assets.FeesAsset;
 import de.schildbach.wallet.ui.send.FeeCategory;
+import de.schildbach.wallet.util.Assets;
 import okhttp3.Call;
 import okhttp3.ConnectionSpec;
 import okhttp3.Headers;
@@ -86,7 +88,8 @@ public class DynamicFeeLiveData extends LiveData<Map<FeeCategory, Coin>> {
 
     private Map<FeeCategory, Coin> loadInBackground() {
         try {
-            final Map<FeeCategory, Coin> staticFees = parseFees(assets.open(Constants.Files.FEES_ASSET));
+            final Map<FeeCategory, Coin> staticFees = staticFees(new FeesAsset(Assets.map(assets,
+                    Constants.Files.FEES_BINARY_ASSET)));
             fetchDynamicFees(dynamicFeesUrl, tempFile, dynamicFeesFile, userAgent);
             if (!dynamicFeesFile.exists())
                 return staticFees;
@@ -127,7 +130,19 @@ public class DynamicFeeLiveData extends LiveData<Map<FeeCategory, Coin>> {
         }
     }
 
-    private static Map<FeeCategory, Coin> parseFees(final InputStream is) throws IOException {
+    static Map<FeeCategory, Coin> staticFees(final FeesAsset asset) {
+        final Map<FeeCategory, Coin> staticFees = new HashMap<>();
+        for (int i = 0; i < asset.size(); i++) {
+            try {
+                staticFees.put(FeeCategory.valueOf(asset.getName(i)), Coin.valueOf(asset.getRate(i)));
+            } catch (final IllegalArgumentException x) {
+                log.warn("Cannot use static fee, ignoring: '" + asset.getName(i) + "'", x);
+            }
+        }
+        return staticFees;
+    }
+
+    static Map<FeeCategory, Coin> parseFees(final InputStream is) throws IOException {
         final Map<FeeCategory, Coin> dynamicFees = new HashMap<>();
         String line = null;
         try (final BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.US_ASCII))) {
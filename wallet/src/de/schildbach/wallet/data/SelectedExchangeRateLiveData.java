@@ -37,6 +37,7 @@ import java.util.Set;
 public class SelectedExchangeRateLiveData extends LiveData<ExchangeRateEntry> implements OnSharedPreferenceChangeListener {
     private final Configuration config;
     private final ExchangeRateDao dao;
+    private final BalanceSnapshot balanceSnapshot;
     private final InvalidationTracker invalidationTracker;
 
     private final InvalidationTracker.Observer invalidationObserver =
@@ -49,6 +50,7 @@ public class SelectedExchangeRateLiveData extends LiveData<ExchangeRateEntry> im
 
     public SelectedExchangeRateLiveData(final WalletApplication application) {
         this.config = application.getConfiguration();
+        this.balanceSnapshot = application.getBalanceSnapshot();
         final ExchangeRatesRepository exchangeRatesRepository = ExchangeRatesRepository.get(application);
         this.dao = exchangeRatesRepository.exchangeRateDao();
         this.invalidationTracker = exchangeRatesRepository.exchangeRateInvalidationTracker();
@@ -80,8 +82,10 @@ public class SelectedExchangeRateLiveData extends LiveData<ExchangeRateEntry> im
                 final String currencyCode = config.getExchangeCurrencyCode();
                 final ExchangeRateEntry exchangeRate = dao.findByCurrencyCode(currencyCode);
                 postValue(exchangeRate);
+                balanceSnapshot.putExchangeRate(exchangeRate != null ? exchangeRate.exchangeRate() : null);
             } else {
                 postValue(null);
+                balanceSnapshot.putExchangeRate(null);
             }
         });
     }
@@ -40,11 +40,13 @@ public final class WalletBalanceLiveData extends AbstractWalletLiveData<Coin>
         implements OnSharedPreferenceChangeListener {
     private final BalanceType balanceType;
     private final Configuration config;
+    private final BalanceSnapshot balanceSnapshot;
 
     public WalletBalanceLiveData(final WalletApplication application, final BalanceType balanceType) {
         super(application);
         this.balanceType = balanceType;
         this.config = application.getConfiguration();
+        this.balanceSnapshot = application.getBalanceSnapshot();
     }
 
     public WalletBalanceLiveData(final WalletApplication application) {
@@ -84,6 +86,7 @@ public final class WalletBalanceLiveData extends AbstractWalletLiveData<Coin>
         AsyncTask.execute(() -> {
             org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
             postValue(wallet.getBalance(balanceType));
+            balanceSnapshot.putBalances(wallet);
         });
     }
 
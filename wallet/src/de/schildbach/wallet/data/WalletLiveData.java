@@ -24,8 +24,20 @@ import org.bitcoinj.wallet.Wallet;
  * @author Andreas Schildbach
  */
 public class WalletLiveData extends AbstractWalletLiveData<Wallet> {
+    private final boolean withHistory;
+
     public WalletLiveData(final WalletApplication application) {
+        this(application, false);
+    }
+
+    public WalletLiveData(final WalletApplication application, final boolean withHistory) {
         super(application, 0);
+        this.withHistory = withHistory;
+    }
+
+    @Override
+    protected boolean needsHistory() {
+        return withHistory;
     }
 
     @Override
@@ -0,0 +1,112 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.ScriptOpCodes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Basic compact filter of a block as specified by BIP158. It contains the output scripts of the block and the scripts
+ * of the outputs spent by it, so a light client can check locally if a block concerns its wallet.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BlockFilter {
+    /** Filter type of the basic filter. */
+    public static final int TYPE_BASIC = 0;
+    /** Golomb-Rice coding parameter of the basic filter. */
+    public static final int BASIC_P = 19;
+    /** Inverse false positive rate of the basic filter. */
+    public static final long BASIC_M = 784931;
+
+    private final Sha256Hash blockHash;
+    private final GolombCodedSet set;
+
+    public BlockFilter(final Sha256Hash blockHash, final byte[] filter) throws ProtocolException {
+        this.blockHash = blockHash;
+        final byte[] key = blockHash.getReversedBytes();
+        this.set = new GolombCodedSet(filter, Utils.readInt64(key, 0), Utils.readInt64(key, 8), BASIC_P, BASIC_M);
+    }
+
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getFilter() {
+        return set.getEncoded();
+    }
+
+    public int size() {
+        return set.size();
+    }
+
+    public Sha256Hash getFilterHash() {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(set.getEncoded()));
+    }
+
+    /**
+     * Checks if any of the given output scripts is in the filter.
+     */
+    public boolean matchAny(final List<byte[]> scripts) {
+        return set.matchAny(scripts);
+    }
+
+    /**
+     * Filter headers commit to the filter and all filters before, like block headers do for blocks.
+     */
+    public static Sha256Hash filterHeader(final Sha256Hash filterHash, final Sha256Hash prevFilterHeader) {
+        return Sha256Hash.wrapReversed(Sha256Hash.hashTwice(filterHash.getReversedBytes(),
+                prevFilterHeader.getReversedBytes()));
+    }
+
+    /**
+     * Builds the filter of a block. Full nodes know the scripts of the spent outputs, light clients don't, so this
+     * is mainly for serving filters in tests.
+     *
+     * @param spentScripts
+     *            scripts of the outputs spent by the non-coinbase transactions of the block
+     */
+    public static BlockFilter build(final Block block, final Collection<byte[]> spentScripts) {
+        final List<byte[]> elements = new ArrayList<>(spentScripts);
+        for (final Transaction tx : block.getTransactions()) {
+            for (final TransactionOutput output : tx.getOutputs()) {
+                final byte[] script = output.getScriptBytes();
+                if (script.length > 0 && (script[0] & 0xff) != ScriptOpCodes.OP_RETURN)
+                    elements.add(script);
+            }
+        }
+        elements.removeIf(script -> script.length == 0);
+        final byte[] key = block.getHash().getReversedBytes();
+        return new BlockFilter(block.getHash(), GolombCodedSet.encode(elements, Utils.readInt64(key, 0),
+                Utils.readInt64(key, 8), BASIC_P, BASIC_M));
+    }
+
+    @Override
+    public String toString() {
+        return "block filter of " + blockHash + ", " + size() + " elements";
+    }
+}
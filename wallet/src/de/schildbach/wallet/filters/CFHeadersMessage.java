@@ -0,0 +1,116 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.VarInt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filter hashes of a range of blocks, along with the filter header before the range, as specified by BIP157. The
+ * filter headers of the range can be computed from these.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CFHeadersMessage extends Message {
+    private int filterType;
+    private Sha256Hash stopHash;
+    private Sha256Hash prevFilterHeader;
+    private List<Sha256Hash> filterHashes;
+
+    public CFHeadersMessage(final NetworkParameters params, final int filterType, final Sha256Hash stopHash,
+            final Sha256Hash prevFilterHeader, final List<Sha256Hash> filterHashes) {
+        super(params);
+        this.filterType = filterType;
+        this.stopHash = stopHash;
+        this.prevFilterHeader = prevFilterHeader;
+        this.filterHashes = Collections.unmodifiableList(new ArrayList<>(filterHashes));
+        this.length = 1 + 32 + 32 + VarInt.sizeOf(filterHashes.size()) + 32 * filterHashes.size();
+    }
+
+    public CFHeadersMessage(final NetworkParameters params, final byte[] payload) throws ProtocolException {
+        super(params, payload, 0);
+    }
+
+    public int getFilterType() {
+        return filterType;
+    }
+
+    public Sha256Hash getStopHash() {
+        return stopHash;
+    }
+
+    public Sha256Hash getPrevFilterHeader() {
+        return prevFilterHeader;
+    }
+
+    public List<Sha256Hash> getFilterHashes() {
+        return filterHashes;
+    }
+
+    /**
+     * Computes the filter headers of the range.
+     */
+    public List<Sha256Hash> getFilterHeaders() {
+        final List<Sha256Hash> filterHeaders = new ArrayList<>(filterHashes.size());
+        Sha256Hash filterHeader = prevFilterHeader;
+        for (final Sha256Hash filterHash : filterHashes) {
+            filterHeader = BlockFilter.filterHeader(filterHash, filterHeader);
+            filterHeaders.add(filterHeader);
+        }
+        return filterHeaders;
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        filterType = readByte() & 0xff;
+        stopHash = readHash();
+        prevFilterHeader = readHash();
+        final long count = readVarInt().longValue();
+        if (count < 0 || count > GetCFHeadersMessage.MAX_HEADERS)
+            throw new ProtocolException("too many filter hashes: " + count);
+        final List<Sha256Hash> filterHashes = new ArrayList<>((int) count);
+        for (int i = 0; i < count; i++)
+            filterHashes.add(readHash());
+        this.filterHashes = Collections.unmodifiableList(filterHashes);
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(final OutputStream stream) throws IOException {
+        stream.write(filterType);
+        stream.write(stopHash.getReversedBytes());
+        stream.write(prevFilterHeader.getReversedBytes());
+        stream.write(new VarInt(filterHashes.size()).encode());
+        for (final Sha256Hash filterHash : filterHashes)
+            stream.write(filterHash.getReversedBytes());
+    }
+
+    @Override
+    public String toString() {
+        return "cfheaders type " + filterType + " up to " + stopHash + ", " + filterHashes.size() + " filter hashes";
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.VarInt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Filter of a single block, as specified by BIP157.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CFilterMessage extends Message {
+    private int filterType;
+    private Sha256Hash blockHash;
+    private byte[] filter;
+
+    public CFilterMessage(final NetworkParameters params, final int filterType, final Sha256Hash blockHash,
+            final byte[] filter) {
+        super(params);
+        this.filterType = filterType;
+        this.blockHash = blockHash;
+        this.filter = filter;
+        this.length = 1 + 32 + VarInt.sizeOf(filter.length) + filter.length;
+    }
+
+    public CFilterMessage(final NetworkParameters params, final byte[] payload) throws ProtocolException {
+        super(params, payload, 0);
+    }
+
+    public int getFilterType() {
+        return filterType;
+    }
+
+    public Sha256Hash getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getFilter() {
+        return filter;
+    }
+
+    /**
+     * Parses the filter, if it's a basic one.
+     */
+    public BlockFilter toBlockFilter() throws ProtocolException {
+        if (filterType != BlockFilter.TYPE_BASIC)
+            throw new ProtocolException("unsupported filter type: " + filterType);
+        return new BlockFilter(blockHash, filter);
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        filterType = readByte() & 0xff;
+        blockHash = readHash();
+        filter = readByteArray();
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(final OutputStream stream) throws IOException {
+        stream.write(filterType);
+        stream.write(blockHash.getReversedBytes());
+        stream.write(new VarInt(filter.length).encode());
+        stream.write(filter);
+    }
+
+    @Override
+    public String toString() {
+        return "cfilter type " + filterType + " of " + blockHash + ", " + filter.length + " bytes";
+    }
+}
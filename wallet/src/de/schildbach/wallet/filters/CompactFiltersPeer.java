@@ -0,0 +1,165 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import androidx.annotation.Nullable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.BitcoinSerializer;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.VersionMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NotYetConnectedException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Peer that can exchange the compact block filter messages of BIP157. The messages are received like any other, via
+ * the pre-message received event listeners.
+ *
+ * bitcoinj doesn't let us plug in a serializer, so the message framing of the socket handler is duplicated here.
+ *
+ * @author Andreas Schildbach
+ */
+public class CompactFiltersPeer extends Peer {
+    /** Service bit of peers serving compact block filters, as per BIP157. */
+    public static final long NODE_COMPACT_FILTERS = 1 << 6;
+
+    private final boolean compactFilters;
+    private final CompactFiltersSerializer serializer;
+    @Nullable
+    private byte[] largeReadBuffer = null;
+    private int largeReadBufferPos;
+    @Nullable
+    private BitcoinSerializer.BitcoinPacketHeader header = null;
+
+    private static final Logger log = LoggerFactory.getLogger(CompactFiltersPeer.class);
+
+    /**
+     * @param compactFilters
+     *            if false, the peer behaves exactly like a plain {@link Peer}
+     */
+    public CompactFiltersPeer(final NetworkParameters params, final VersionMessage ver, final PeerAddress remoteAddress,
+            @Nullable final AbstractBlockChain chain, final long requiredServices, final int downloadTxDependencyDepth,
+            final boolean compactFilters) {
+        super(params, ver, remoteAddress, chain, requiredServices, downloadTxDependencyDepth);
+        this.compactFilters = compactFilters;
+        this.serializer = new CompactFiltersSerializer(params);
+    }
+
+    /**
+     * Whether the peer announced to serve compact block filters.
+     */
+    public boolean isServingCompactFilters() {
+        final VersionMessage peerVersion = getPeerVersionMessage();
+        return compactFilters && peerVersion != null && (peerVersion.localServices & NODE_COMPACT_FILTERS) != 0;
+    }
+
+    @Override
+    public ListenableFuture sendMessage(final Message message) throws NotYetConnectedException {
+        if (!CompactFiltersSerializer.isCompactFiltersMessage(message))
+            return super.sendMessage(message);
+        checkState(compactFilters, "compact filters not enabled");
+        if (writeTarget == null)
+            throw new NotYetConnectedException();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            serializer.serialize(message, out);
+            return writeTarget.writeBytes(out.toByteArray());
+        } catch (final IOException x) {
+            log.info("{} - {}", this, x.getMessage());
+            close();
+            return Futures.immediateFailedFuture(x);
+        }
+    }
+
+    @Override
+    public int receiveBytes(final ByteBuffer buff) {
+        if (!compactFilters)
+            return super.receiveBytes(buff);
+        checkArgument(buff.position() == 0
+                && buff.capacity() >= BitcoinSerializer.BitcoinPacketHeader.HEADER_LENGTH + 4);
+        try {
+            // repeatedly try to deserialize messages until we hit a BufferUnderflowException
+            boolean firstMessage = true;
+            while (true) {
+                // if we are in the middle of reading a message, try to fill that one first
+                if (largeReadBuffer != null) {
+                    checkState(firstMessage);
+                    final int bytesToGet = Math.min(buff.remaining(), largeReadBuffer.length - largeReadBufferPos);
+                    buff.get(largeReadBuffer, largeReadBufferPos, bytesToGet);
+                    largeReadBufferPos += bytesToGet;
+                    if (largeReadBufferPos < largeReadBuffer.length)
+                        return buff.position();
+                    final Message message = serializer.deserializePayload(header, ByteBuffer.wrap(largeReadBuffer));
+                    largeReadBuffer = null;
+                    header = null;
+                    processMessage(message);
+                    firstMessage = false;
+                }
+                // now try to deserialize any messages left in buff
+                final int preSerializePosition = buff.position();
+                final Message message;
+                try {
+                    message = serializer.deserialize(buff);
+                } catch (final BufferUnderflowException x) {
+                    if (firstMessage && buff.limit() == buff.capacity()) {
+                        // the message is larger than the buffer, so read the header and continue in the large buffer
+                        ((Buffer) buff).position(0);
+                        try {
+                            serializer.seekPastMagicBytes(buff);
+                            header = serializer.deserializeHeader(buff);
+                            largeReadBuffer = new byte[header.size];
+                            largeReadBufferPos = buff.remaining();
+                            buff.get(largeReadBuffer, 0, largeReadBufferPos);
+                        } catch (final BufferUnderflowException x2) {
+                            throw new ProtocolException("No magic bytes+header after reading " + buff.capacity()
+                                    + " bytes");
+                        }
+                    } else {
+                        // don't skip part of the magic bytes before all of them are in the buffer
+                        ((Buffer) buff).position(preSerializePosition);
+                    }
+                    return buff.position();
+                }
+                processMessage(message);
+                firstMessage = false;
+            }
+        } catch (final Exception x) {
+            if (x instanceof IOException)
+                log.info("{} - {}", this, x.getMessage());
+            else
+                log.warn("{} - ", this, x);
+            close();
+            return -1; // also kills the connection upstream
+        }
+    }
+}
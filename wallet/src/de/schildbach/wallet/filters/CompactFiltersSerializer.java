@@ -0,0 +1,103 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import androidx.annotation.Nullable;
+import org.bitcoinj.core.BitcoinSerializer;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer that knows the compact block filter messages of BIP157 in addition to the ones bitcoinj knows.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CompactFiltersSerializer extends BitcoinSerializer {
+    private static final String COMMAND_GETCFILTERS = "getcfilters";
+    private static final String COMMAND_CFILTER = "cfilter";
+    private static final String COMMAND_GETCFHEADERS = "getcfheaders";
+    private static final String COMMAND_CFHEADERS = "cfheaders";
+
+    public CompactFiltersSerializer(final NetworkParameters params) {
+        super(params, false);
+    }
+
+    /**
+     * Whether the given message is one of the messages added by this serializer.
+     */
+    public static boolean isCompactFiltersMessage(final Message message) {
+        return command(message) != null;
+    }
+
+    @Override
+    public void serialize(final Message message, final OutputStream out) throws IOException {
+        final String command = command(message);
+        if (command != null)
+            serialize(command, message.bitcoinSerialize(), out);
+        else
+            super.serialize(message, out);
+    }
+
+    @Override
+    public Message deserializePayload(final BitcoinPacketHeader header, final ByteBuffer in)
+            throws ProtocolException, BufferUnderflowException {
+        final String command = header.command;
+        if (!command.equals(COMMAND_GETCFILTERS) && !command.equals(COMMAND_CFILTER)
+                && !command.equals(COMMAND_GETCFHEADERS) && !command.equals(COMMAND_CFHEADERS))
+            return super.deserializePayload(header, in);
+
+        final byte[] payload = new byte[header.size];
+        in.get(payload, 0, header.size);
+        final byte[] hash = Sha256Hash.hashTwice(payload);
+        for (int i = 0; i < header.checksum.length; i++)
+            if (header.checksum[i] != hash[i])
+                throw new ProtocolException("Checksum failed to verify, actual " + Utils.HEX.encode(hash) + " vs "
+                        + Utils.HEX.encode(header.checksum));
+
+        if (command.equals(COMMAND_GETCFILTERS))
+            return new GetCFiltersMessage(getParameters(), payload);
+        else if (command.equals(COMMAND_CFILTER))
+            return new CFilterMessage(getParameters(), payload);
+        else if (command.equals(COMMAND_GETCFHEADERS))
+            return new GetCFHeadersMessage(getParameters(), payload);
+        else
+            return new CFHeadersMessage(getParameters(), payload);
+    }
+
+    @Nullable
+    private static String command(final Message message) {
+        if (message instanceof GetCFiltersMessage)
+            return COMMAND_GETCFILTERS;
+        else if (message instanceof CFilterMessage)
+            return COMMAND_CFILTER;
+        else if (message instanceof GetCFHeadersMessage)
+            return COMMAND_GETCFHEADERS;
+        else if (message instanceof CFHeadersMessage)
+            return COMMAND_CFHEADERS;
+        else
+            return null;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Request for filters or filter headers of a range of blocks, as specified by BIP157. The range starts at a height
+ * and ends at a block hash.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class FilterRequestMessage extends Message {
+    private int filterType;
+    private int startHeight;
+    private Sha256Hash stopHash;
+
+    FilterRequestMessage(final NetworkParameters params, final int filterType, final int startHeight,
+            final Sha256Hash stopHash) {
+        super(params);
+        this.filterType = filterType;
+        this.startHeight = startHeight;
+        this.stopHash = stopHash;
+        this.length = 1 + 4 + 32;
+    }
+
+    FilterRequestMessage(final NetworkParameters params, final byte[] payload) throws ProtocolException {
+        super(params, payload, 0);
+    }
+
+    public int getFilterType() {
+        return filterType;
+    }
+
+    public int getStartHeight() {
+        return startHeight;
+    }
+
+    public Sha256Hash getStopHash() {
+        return stopHash;
+    }
+
+    @Override
+    protected void parse() throws ProtocolException {
+        filterType = readByte() & 0xff;
+        startHeight = (int) readUint32();
+        stopHash = readHash();
+        length = cursor - offset;
+    }
+
+    @Override
+    protected void bitcoinSerializeToStream(final OutputStream stream) throws IOException {
+        stream.write(filterType);
+        Utils.uint32ToByteStreamLE(startHeight, stream);
+        stream.write(stopHash.getReversedBytes());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " type " + filterType + " from " + startHeight + " to " + stopHash;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+
+/**
+ * Requests the filter hashes of a range of blocks, answered by a {@link CFHeadersMessage}, as specified by BIP157.
+ *
+ * @author Andreas Schildbach
+ */
+public final class GetCFHeadersMessage extends FilterRequestMessage {
+    /** Maximum number of filter hashes per request, as per protocol. */
+    public static final int MAX_HEADERS = 2000;
+
+    public GetCFHeadersMessage(final NetworkParameters params, final int filterType, final int startHeight,
+            final Sha256Hash stopHash) {
+        super(params, filterType, startHeight, stopHash);
+    }
+
+    public GetCFHeadersMessage(final NetworkParameters params, final byte[] payload) throws ProtocolException {
+        super(params, payload);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.Sha256Hash;
+
+/**
+ * Requests a {@link CFilterMessage} for each block of a range, as specified by BIP157.
+ *
+ * @author Andreas Schildbach
+ */
+public final class GetCFiltersMessage extends FilterRequestMessage {
+    /** Maximum number of filters per request, as per protocol. */
+    public static final int MAX_FILTERS = 1000;
+
+    public GetCFiltersMessage(final NetworkParameters params, final int filterType, final int startHeight,
+            final Sha256Hash stopHash) {
+        super(params, filterType, startHeight, stopHash);
+    }
+
+    public GetCFiltersMessage(final NetworkParameters params, final byte[] payload) throws ProtocolException {
+        super(params, payload);
+    }
+}
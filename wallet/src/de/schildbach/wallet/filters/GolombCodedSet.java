@@ -0,0 +1,313 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import com.google.common.base.Preconditions;
+import org.bitcoinj.core.ProtocolException;
+import org.bitcoinj.core.VarInt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Golomb-coded set as specified by BIP158: sorted, SipHash-keyed hashes of the elements, mapped to the range of
+ * {@code N * M} and encoded as Golomb-Rice coded deltas.
+ *
+ * Matching many elements at once sorts their hashes and merges them with the decoded set in a single pass over the
+ * bits, so the cost is dominated by the size of the set rather than the number of elements queried.
+ *
+ * @author Andreas Schildbach
+ */
+public final class GolombCodedSet {
+    private final byte[] encoded;
+    private final int bitsOffset;
+    private final int n;
+    private final long k0;
+    private final long k1;
+    private final int p;
+    private final long f;
+
+    /**
+     * @param encoded
+     *            number of elements as compact size, followed by the coded deltas
+     */
+    public GolombCodedSet(final byte[] encoded, final long k0, final long k1, final int p, final long m)
+            throws ProtocolException {
+        Preconditions.checkArgument(p > 0 && p < 32, "p out of range: %s", p);
+        try {
+            final VarInt n = new VarInt(encoded, 0);
+            final long value = n.longValue();
+            Preconditions.checkArgument(value >= 0 && value <= Integer.MAX_VALUE, "n out of range: %s", value);
+            this.n = (int) value;
+            this.bitsOffset = n.getOriginalSizeInBytes();
+        } catch (final ArrayIndexOutOfBoundsException | IllegalArgumentException x) {
+            throw new ProtocolException("cannot read number of elements", x);
+        }
+        this.encoded = encoded;
+        this.k0 = k0;
+        this.k1 = k1;
+        this.p = p;
+        this.f = n * m;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    public boolean match(final byte[] element) {
+        if (n == 0)
+            return false;
+        final long target = hashToRange(element, k0, k1, f);
+        final BitReader reader = new BitReader(encoded, bitsOffset);
+        long value = 0;
+        for (int i = 0; i < n; i++) {
+            value += reader.readGolombRice(p);
+            if (value == target)
+                return true;
+            if (value > target)
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if any of the given elements is in the set.
+     */
+    public boolean matchAny(final List<byte[]> elements) {
+        if (n == 0 || elements.isEmpty())
+            return false;
+        final long[] targets = new long[elements.size()];
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = hashToRange(elements.get(i), k0, k1, f);
+        Arrays.sort(targets);
+
+        final BitReader reader = new BitReader(encoded, bitsOffset);
+        long value = reader.readGolombRice(p);
+        int remaining = n - 1;
+        int t = 0;
+        while (true) {
+            final long target = targets[t];
+            if (value == target)
+                return true;
+            if (value < target) {
+                if (remaining-- == 0)
+                    return false;
+                value += reader.readGolombRice(p);
+            } else if (++t == targets.length) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Encodes a set of the given elements. Duplicates are encoded once.
+     */
+    public static byte[] encode(final Collection<byte[]> elements, final long k0, final long k1, final int p,
+            final long m) {
+        final Set<ByteBuffer> distinct = new HashSet<>(elements.size());
+        for (final byte[] element : elements)
+            distinct.add(ByteBuffer.wrap(element));
+        final int n = distinct.size();
+        final long f = n * m;
+        final long[] values = new long[n];
+        int i = 0;
+        for (final ByteBuffer element : distinct)
+            values[i++] = hashToRange(element.array(), k0, k1, f);
+        Arrays.sort(values);
+
+        final BitWriter writer = new BitWriter();
+        writer.writeBytes(new VarInt(n).encode());
+        long last = 0;
+        for (final long value : values) {
+            writer.writeGolombRice(value - last, p);
+            last = value;
+        }
+        return writer.toByteArray();
+    }
+
+    static long hashToRange(final byte[] element, final long k0, final long k1, final long f) {
+        return multiplyHighUnsigned(sipHash24(k0, k1, element), f);
+    }
+
+    /** Upper 64 bits of the unsigned 128 bit product. */
+    static long multiplyHighUnsigned(final long x, final long y) {
+        final long x0 = x & 0xffffffffL, x1 = x >>> 32;
+        final long y0 = y & 0xffffffffL, y1 = y >>> 32;
+        final long p00 = x0 * y0, p01 = x0 * y1, p10 = x1 * y0, p11 = x1 * y1;
+        final long middle = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+
+    static long sipHash24(final long k0, final long k1, final byte[] data) {
+        final SipHash state = new SipHash(k0, k1);
+        final int length = data.length;
+        final int end = length & ~7;
+        for (int i = 0; i < end; i += 8) {
+            long m = 0;
+            for (int j = 7; j >= 0; j--)
+                m = m << 8 | (data[i + j] & 0xffL);
+            state.compress(m);
+        }
+        long last = ((long) length) << 56;
+        for (int i = end; i < length; i++)
+            last |= (data[i] & 0xffL) << (8 * (i - end));
+        state.compress(last);
+        return state.finish();
+    }
+
+    /**
+     * SipHash-2-4 state, see https://www.aumasson.jp/siphash/siphash.pdf
+     */
+    private static final class SipHash {
+        private long v0, v1, v2, v3;
+
+        SipHash(final long k0, final long k1) {
+            v0 = 0x736f6d6570736575L ^ k0;
+            v1 = 0x646f72616e646f6dL ^ k1;
+            v2 = 0x6c7967656e657261L ^ k0;
+            v3 = 0x7465646279746573L ^ k1;
+        }
+
+        void compress(final long m) {
+            v3 ^= m;
+            round();
+            round();
+            v0 ^= m;
+        }
+
+        long finish() {
+            v2 ^= 0xff;
+            round();
+            round();
+            round();
+            round();
+            return v0 ^ v1 ^ v2 ^ v3;
+        }
+
+        private void round() {
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13);
+            v1 ^= v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16);
+            v3 ^= v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21);
+            v3 ^= v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17);
+            v1 ^= v2;
+            v2 = Long.rotateLeft(v2, 32);
+        }
+    }
+
+    /**
+     * Reads bits most significant first, keeping up to 64 of them in a buffer.
+     */
+    private static final class BitReader {
+        private final byte[] data;
+        private int pos;
+        private long buffer = 0;
+        private int bits = 0;
+
+        BitReader(final byte[] data, final int offset) {
+            this.data = data;
+            this.pos = offset;
+        }
+
+        long readGolombRice(final int p) {
+            long quotient = 0;
+            while (true) {
+                if (bits == 0 && !refill())
+                    throw new ProtocolException("unexpected end of filter");
+                final int ones = Long.numberOfLeadingZeros(~buffer);
+                if (ones < bits) {
+                    quotient += ones;
+                    buffer <<= ones;
+                    buffer <<= 1;
+                    bits -= ones + 1;
+                    break;
+                }
+                quotient += bits;
+                buffer = 0;
+                bits = 0;
+            }
+            if (bits < p && !refill() && bits < p)
+                throw new ProtocolException("unexpected end of filter");
+            final long remainder = buffer >>> (64 - p);
+            buffer <<= p;
+            bits -= p;
+            return (quotient << p) | remainder;
+        }
+
+        private boolean refill() {
+            final int before = bits;
+            while (bits <= 56 && pos < data.length) {
+                buffer |= (data[pos++] & 0xffL) << (56 - bits);
+                bits += 8;
+            }
+            return bits > before;
+        }
+    }
+
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current = 0;
+        private int bits = 0;
+
+        void writeBytes(final byte[] bytes) {
+            out.write(bytes, 0, bytes.length);
+        }
+
+        void writeGolombRice(final long value, final int p) {
+            for (long q = value >>> p; q > 0; q--)
+                writeBit(1);
+            writeBit(0);
+            for (int i = p - 1; i >= 0; i--)
+                writeBit((int) (value >>> i) & 1);
+        }
+
+        private void writeBit(final int bit) {
+            current = current << 1 | bit;
+            if (++bits == 8) {
+                out.write(current);
+                current = 0;
+                bits = 0;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0) {
+                out.write(current << (8 - bits));
+                current = 0;
+                bits = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -41,6 +41,7 @@ import android.os.Process;
 import android.text.format.DateUtils;
 import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleService;
@@ -48,6 +49,12 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
 import com.google.common.base.Stopwatch;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
@@ -55,19 +62,22 @@ import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
 import de.schildbach.wallet.addressbook.AddressBookDao;
 import de.schildbach.wallet.addressbook.AddressBookDatabase;
+import de.schildbach.wallet.assets.CheckpointsAsset;
 import de.schildbach.wallet.data.SelectedExchangeRateLiveData;
 import de.schildbach.wallet.data.WalletBalanceLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
 import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
+import de.schildbach.wallet.filters.CompactFiltersPeer;
 import de.schildbach.wallet.service.BlockchainState.Impediment;
 import de.schildbach.wallet.ui.WalletActivity;
 import de.schildbach.wallet.ui.preference.ResolveDnsTask;
+import de.schildbach.wallet.util.Assets;
 import de.schildbach.wallet.util.CrashReporter;
+import de.schildbach.wallet.util.StartupTrace;
 import de.schildbach.wallet.util.WalletUtils;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Block;
 import org.bitcoinj.core.BlockChain;
-import org.bitcoinj.core.CheckpointManager;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.FilteredBlock;
 import org.bitcoinj.core.Peer;
@@ -81,11 +91,11 @@ import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
 import org.bitcoinj.core.VersionMessage;
 import org.bitcoinj.core.listeners.AbstractPeerDataEventListener;
 import org.bitcoinj.core.listeners.PeerConnectedEventListener;
-import org.bitcoinj.core.listeners.PeerDataEventListener;
 import org.bitcoinj.core.listeners.PeerDisconnectedEventListener;
 import org.bitcoinj.store.BlockStore;
 import org.bitcoinj.store.BlockStoreException;
 import org.bitcoinj.store.SPVBlockStore;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 import org.bitcoinj.utils.MonetaryFormat;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
@@ -96,20 +106,24 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkState;
 
@@ -125,11 +139,30 @@ public class BlockchainService extends LifecycleService {
     private AddressBookDao addressBookDao;
     private WalletLiveData wallet;
 
+    // done once the block store of the previous instance of this service is closed, and deleted if it was reset
+    private static ListenableFuture<?> blockStoreReleased = Futures.immediateFuture(null);
+    private ListenableFuture<BlockStore> blockStoreFuture;
+    @Nullable
+    private ListenableFuture<BlockChain> blockChainFuture;
     private BlockStore blockStore;
+    // both selected on the startup executor, before the block store is opened
+    @Nullable
     private File blockChainFile;
+    private boolean indexedBlockStore;
     private BlockChain blockChain;
+    private final RecentBlocks recentBlocks = new RecentBlocks(MAX_RECENT_BLOCKS);
+    private final PeerTelemetry peerTelemetry = new PeerTelemetry(STALL_PERIOD_SECS, STALL_MIN_BYTES_PER_SEC);
     @Nullable
     private PeerGroup peerGroup;
+    private final ListeningExecutorService catchUpExecutor = MoreExecutors.listeningDecorator(
+            Executors.newSingleThreadExecutor(new ContextPropagatingThreadFactory("catch-up sync")));
+    // the last catch-up submitted, done once the catch-up executor doesn't touch the block chain any more
+    private volatile ListenableFuture<?> catchUpFuture = Futures.immediateFuture(null);
+    @Nullable
+    private volatile CatchUpSync catchUpSync;
+    @Nullable
+    private volatile CompactFilterSync compactFilterSync;
+    private boolean destroyed = false;
 
     private final Handler handler = new Handler();
     private HandlerThread backgroundThread;
@@ -149,7 +182,14 @@ public class BlockchainService extends LifecycleService {
     private final AtomicBoolean isBound = new AtomicBoolean(false);
 
     private static final int CONNECTIVITY_NOTIFICATION_PROGRESS_MIN_BLOCKS = 144 * 2; // approx. 2 days
+    private static final int MAX_RECENT_BLOCKS = 100; // as many as the block monitor lists
+    private static final int STALL_PERIOD_SECS = 20;
+    private static final int STALL_MIN_BYTES_PER_SEC = Block.HEADER_SIZE * 10;
     private static final long BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
+    private static final Duration CATCH_UP_SYNC_MIN_LAG = Duration.ofDays(7);
+    private static final int CATCH_UP_SYNC_MIN_PEERS = 3;
+    private static final long CATCH_UP_SYNC_PEERS_TIMEOUT_SECS = 30;
+    private static final long CATCH_UP_SYNC_REQUEST_TIMEOUT_MS = 30 * DateUtils.SECOND_IN_MILLIS;
 
     private static final String ACTION_CANCEL_COINS_RECEIVED = BlockchainService.class.getPackage().getName()
             + ".cancel_coins_received";
@@ -286,6 +326,7 @@ public class BlockchainService extends LifecycleService {
     private final class PeerConnectivityListener
             implements PeerConnectedEventListener, PeerDisconnectedEventListener {
         private AtomicBoolean stopped = new AtomicBoolean(false);
+        private volatile StartupTrace.Span firstPeerSpan;
 
         public void stop() {
             stopped.set(true);
@@ -293,6 +334,12 @@ public class BlockchainService extends LifecycleService {
 
         @Override
         public void onPeerConnected(final Peer peer, final int peerCount) {
+            final StartupTrace.Span firstPeerSpan = this.firstPeerSpan;
+            if (firstPeerSpan != null) {
+                this.firstPeerSpan = null;
+                firstPeerSpan.end();
+                StartupTrace.finish();
+            }
             postDelayedStopSelf(Constants.SERVICE_STOP_DELAY_AFTER_EVENT);
             changed(peerCount);
         }
@@ -313,12 +360,14 @@ public class BlockchainService extends LifecycleService {
         }
     }
 
-    private final PeerDataEventListener blockchainDownloadListener = new BlockchainDownloadListener();
+    private final BlockchainDownloadListener blockchainDownloadListener = new BlockchainDownloadListener();
 
     private class BlockchainDownloadListener extends AbstractPeerDataEventListener implements Runnable {
         private final AtomicLong lastMessageTime = new AtomicLong(0);
         private final AtomicInteger blocksToDownload = new AtomicInteger();
         private final AtomicInteger blocksLeft = new AtomicInteger();
+        private final AtomicReference<CatchUpSync.Progress> catchUpProgress = new AtomicReference<>();
+        private final AtomicInteger catchUpStartHeight = new AtomicInteger();
 
         @Override
         public void onChainDownloadStarted(final Peer peer, final int blocksToDownload) {
@@ -334,7 +383,19 @@ public class BlockchainService extends LifecycleService {
         public void onBlocksDownloaded(final Peer peer, final Block block, final FilteredBlock filteredBlock,
                 final int blocksLeft) {
             this.blocksLeft.set(blocksLeft);
+            post();
+        }
+
+        public void onCatchUpStarted(final int startHeight) {
+            this.catchUpStartHeight.set(startHeight);
+        }
+
+        public void onCatchUpProgress(@Nullable final CatchUpSync.Progress progress) {
+            this.catchUpProgress.set(progress);
+            post();
+        }
 
+        private void post() {
             delayHandler.removeCallbacks(this);
             final long now = System.currentTimeMillis();
             if (now - lastMessageTime.get() > BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS)
@@ -348,10 +409,18 @@ public class BlockchainService extends LifecycleService {
             lastMessageTime.set(System.currentTimeMillis());
 
             postDelayedStopSelf(Constants.SERVICE_STOP_DELAY_AFTER_EVENT);
-            final int blocksToDownload = this.blocksToDownload.get();
-            final int blocksLeft = this.blocksLeft.get();
-            if (blocksToDownload >= CONNECTIVITY_NOTIFICATION_PROGRESS_MIN_BLOCKS)
-                startForegroundProgress(blocksToDownload, blocksLeft);
+            final CatchUpSync.Progress catchUpProgress = this.catchUpProgress.get();
+            if (catchUpProgress != null) {
+                config.maybeIncrementBestChainHeightEver(catchUpProgress.targetHeight);
+                final int blocksToCatchUp = catchUpProgress.targetHeight - catchUpStartHeight.get();
+                if (blocksToCatchUp >= CONNECTIVITY_NOTIFICATION_PROGRESS_MIN_BLOCKS)
+                    startForegroundProgress(blocksToCatchUp, catchUpProgress.targetHeight - catchUpProgress.height);
+            } else {
+                final int blocksToDownload = this.blocksToDownload.get();
+                final int blocksLeft = this.blocksLeft.get();
+                if (blocksToDownload >= CONNECTIVITY_NOTIFICATION_PROGRESS_MIN_BLOCKS)
+                    startForegroundProgress(blocksToDownload, blocksLeft);
+            }
 
             config.maybeIncrementBestChainHeightEver(blockChain.getChainHead().getHeight());
             broadcastBlockchainState();
@@ -487,6 +556,7 @@ public class BlockchainService extends LifecycleService {
         serviceUpTime = Stopwatch.createStarted();
         log.debug(".onCreate()");
         super.onCreate();
+        final StartupTrace.Span onCreateSpan = StartupTrace.begin("BlockchainService.onCreate");
 
         application = (WalletApplication) getApplication();
         config = application.getConfiguration();
@@ -514,7 +584,6 @@ public class BlockchainService extends LifecycleService {
         backgroundHandler = new Handler(backgroundThread.getLooper());
 
         addressBookDao = AddressBookDatabase.getDatabase(application).addressBookDao();
-        blockChainFile = new File(getDir("blockstore", Context.MODE_PRIVATE), Constants.Files.BLOCKCHAIN_FILENAME);
 
         config.registerOnSharedPreferenceChangeListener(preferenceChangeListener);
 
@@ -538,57 +607,135 @@ public class BlockchainService extends LifecycleService {
                 WalletBalanceWidgetProvider.updateWidgets(BlockchainService.this, balance,
                         rate != null ? rate.exchangeRate() : null);
         });
+        // open the block store and parse checkpoints while the wallet is still loading, but not before a previous
+        // instance of this service has released the block store
+        final ListeningExecutorService startupExecutor = application.getStartupExecutor();
+        final ListenableFuture<Boolean> blockChainFileExistsFuture = Futures.transform(blockStoreReleased,
+                released -> selectBlockStore(), startupExecutor);
+        blockStoreFuture = Futures.transform(blockChainFileExistsFuture, exists -> openBlockStore(),
+                startupExecutor);
+        final ListenableFuture<CheckpointsAsset> checkpointsFuture = Futures.transform(blockChainFileExistsFuture,
+                exists -> exists ? null : loadCheckpoints(), startupExecutor);
+
         wallet = new WalletLiveData(application);
         wallet.observe(this, new Observer<Wallet>() {
             @Override
             public void onChanged(final Wallet wallet) {
                 BlockchainService.this.wallet.removeObserver(this);
-                final boolean blockChainFileExists = blockChainFile.exists();
-                if (!blockChainFileExists) {
-                    log.info("blockchain does not exist, resetting wallet");
-                    wallet.reset();
-                }
 
-                try {
-                    blockStore = new SPVBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile,
-                            Constants.Files.BLOCKCHAIN_STORE_CAPACITY, true);
-                    blockStore.getChainHead(); // detect corruptions as early as possible
-
-                    final long earliestKeyCreationTimeSecs = wallet.getEarliestKeyCreationTime();
-
-                    if (!blockChainFileExists && earliestKeyCreationTimeSecs > 0) {
-                        try {
-                            log.info("loading checkpoints for birthdate {} from '{}'",
-                                    DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(earliestKeyCreationTimeSecs)),
-                                    Constants.Files.CHECKPOINTS_ASSET);
-                            final Stopwatch watch = Stopwatch.createStarted();
-                            final InputStream checkpointsInputStream = getAssets()
-                                    .open(Constants.Files.CHECKPOINTS_ASSET);
-                            CheckpointManager.checkpoint(Constants.NETWORK_PARAMETERS, checkpointsInputStream,
-                                    blockStore, earliestKeyCreationTimeSecs);
-                            watch.stop();
-                            log.info("checkpoints loaded, took {}", watch);
-                        } catch (final IOException x) {
-                            log.error("problem reading checkpoints, continuing without", x);
-                        }
+                blockChainFuture = Futures
+                        .whenAllSucceed(blockChainFileExistsFuture, blockStoreFuture, checkpointsFuture).call(() -> {
+                            if (!Futures.getDone(blockChainFileExistsFuture)) {
+                                log.info("blockchain does not exist, resetting wallet");
+                                wallet.reset();
+                            }
+                            final BlockStore blockStore = Futures.getDone(blockStoreFuture);
+                            final CheckpointsAsset checkpoints = Futures.getDone(checkpointsFuture);
+                            final long earliestKeyCreationTimeSecs = wallet.getEarliestKeyCreationTime();
+                            if (checkpoints != null && earliestKeyCreationTimeSecs > 0) {
+                                log.info("checkpointing for birthdate {}", DateTimeFormatter.ISO_INSTANT
+                                        .format(Instant.ofEpochSecond(earliestKeyCreationTimeSecs)));
+                                // same safety margin as CheckpointManager.checkpoint()
+                                final StoredBlock checkpoint = checkpoints.getCheckpointBefore(
+                                        Constants.NETWORK_PARAMETERS,
+                                        earliestKeyCreationTimeSecs - TimeUnit.DAYS.toSeconds(7));
+                                blockStore.put(checkpoint);
+                                blockStore.setChainHead(checkpoint);
+                            }
+
+                            final StartupTrace.Span span = StartupTrace.begin("construct block chain");
+                            try {
+                                final BlockChain blockChain = new BlockChain(Constants.NETWORK_PARAMETERS, wallet,
+                                        blockStore);
+                                recentBlocks.fill(blockChain.getChainHead(), blockStore);
+                                blockChain.addNewBestBlockListener(Threading.SAME_THREAD, recentBlocks);
+                                blockChain.addReorganizeListener(Threading.SAME_THREAD, recentBlocks);
+                                return blockChain;
+                            } finally {
+                                span.end();
+                            }
+                        }, startupExecutor);
+                Futures.addCallback(blockChainFuture, new FutureCallback<BlockChain>() {
+                    @Override
+                    public void onSuccess(final BlockChain blockChain) {
+                        if (destroyed)
+                            return;
+                        BlockchainService.this.blockStore = Futures.getUnchecked(blockStoreFuture);
+                        BlockchainService.this.blockChain = blockChain;
+                        observeLiveDatasThatAreDependentOnWalletAndBlockchain();
                     }
-                } catch (final BlockStoreException x) {
-                    blockChainFile.delete();
-
-                    final String msg = "blockstore cannot be created";
-                    log.error(msg, x);
-                    throw new Error(msg, x);
-                }
-
-                try {
-                    blockChain = new BlockChain(Constants.NETWORK_PARAMETERS, wallet, blockStore);
-                } catch (final BlockStoreException x) {
-                    throw new Error("blockchain cannot be created", x);
-                }
 
-                observeLiveDatasThatAreDependentOnWalletAndBlockchain();
+                    @Override
+                    public void onFailure(final Throwable t) {
+                        if (destroyed)
+                            return;
+                        throw new Error("blockchain cannot be created", t);
+                    }
+                }, handler::post);
             }
         });
+        onCreateSpan.end();
+    }
+
+    /**
+     * Selects the kind of block store. It only changes when the block chain is created anew, e.g. after a reset.
+     *
+     * @return true if the block chain file exists
+     */
+    @WorkerThread
+    private boolean selectBlockStore() {
+        final File blockStoreDir = getDir("blockstore", Context.MODE_PRIVATE);
+        final File indexedBlockChainFile = new File(blockStoreDir, Constants.Files.BLOCKCHAIN_INDEXED_FILENAME);
+        final File spvBlockChainFile = new File(blockStoreDir, Constants.Files.BLOCKCHAIN_FILENAME);
+        if (indexedBlockChainFile.exists())
+            indexedBlockStore = true;
+        else if (spvBlockChainFile.exists())
+            indexedBlockStore = false;
+        else
+            indexedBlockStore = config.getIndexedBlockStore();
+        blockChainFile = indexedBlockStore ? indexedBlockChainFile : spvBlockChainFile;
+        return blockChainFile.exists();
+    }
+
+    @WorkerThread
+    private BlockStore openBlockStore() {
+        final StartupTrace.Span span = StartupTrace.begin("open block store");
+        try {
+            final BlockStore blockStore = indexedBlockStore
+                    ? new IndexedBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile)
+                    : new SPVBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile,
+                            Constants.Files.BLOCKCHAIN_STORE_CAPACITY, true);
+            blockStore.getChainHead(); // detect corruptions as early as possible
+            return blockStore;
+        } catch (final BlockStoreException x) {
+            blockChainFile.delete();
+
+            final String msg = "blockstore cannot be created";
+            log.error(msg, x);
+            throw new Error(msg, x);
+        } finally {
+            span.end();
+        }
+    }
+
+    @WorkerThread
+    @Nullable
+    private CheckpointsAsset loadCheckpoints() {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final StartupTrace.Span span = StartupTrace.begin("load checkpoints");
+        try {
+            final CheckpointsAsset checkpoints = new CheckpointsAsset(Assets.map(getAssets(),
+                    Constants.Files.CHECKPOINTS_ASSET));
+            watch.stop();
+            log.info("{} checkpoints mapped from '{}', took {}", checkpoints.size(), Constants.Files.CHECKPOINTS_ASSET,
+                    watch);
+            return checkpoints;
+        } catch (final IOException x) {
+            log.error("problem reading checkpoints, continuing without", x);
+            return null;
+        } finally {
+            span.end();
+        }
     }
 
     private void observeLiveDatasThatAreDependentOnWalletAndBlockchain() {
@@ -631,7 +778,8 @@ public class BlockchainService extends LifecycleService {
                 }
 
                 final Configuration.SyncMode syncMode = config.getSyncMode();
-                peerGroup = new PeerGroup(Constants.NETWORK_PARAMETERS, blockChain);
+                peerGroup = peerTelemetry.createPeerGroup(Constants.NETWORK_PARAMETERS, blockChain,
+                        syncMode == Configuration.SyncMode.COMPACT_FILTERS);
                 log.info("creating {}, sync mode: {}", peerGroup, syncMode);
                 peerGroup.setDownloadTxDependencies(0); // recursive implementation causes StackOverflowError
                 peerGroup.addWallet(wallet);
@@ -647,7 +795,7 @@ public class BlockchainService extends LifecycleService {
                 peerGroup.setMaxConnections(trustedPeerOnly ? 0 : maxConnectedPeers);
                 peerGroup.setConnectTimeoutMillis(Constants.PEER_TIMEOUT_MS);
                 peerGroup.setPeerDiscoveryTimeoutMillis(Constants.PEER_DISCOVERY_TIMEOUT_MS);
-                peerGroup.setStallThreshold(20, Block.HEADER_SIZE * 10);
+                peerGroup.setStallThreshold(STALL_PERIOD_SECS, STALL_MIN_BYTES_PER_SEC);
 
                 final ResolveDnsTask resolveDnsTask = new ResolveDnsTask(backgroundHandler) {
                     @Override
@@ -675,14 +823,26 @@ public class BlockchainService extends LifecycleService {
                     log.info("adding random peers from the P2P network");
                     if (syncMode == Configuration.SyncMode.CONNECTION_FILTER)
                         peerGroup.setRequiredServices(VersionMessage.NODE_BLOOM | VersionMessage.NODE_WITNESS);
+                    else if (syncMode == Configuration.SyncMode.COMPACT_FILTERS)
+                        peerGroup.setRequiredServices(VersionMessage.NODE_NETWORK | VersionMessage.NODE_WITNESS
+                                | CompactFiltersPeer.NODE_COMPACT_FILTERS);
                     else
                         peerGroup.setRequiredServices(VersionMessage.NODE_WITNESS);
                 }
 
                 // start peergroup
                 log.info("starting {} asynchronously", peerGroup);
+                peerConnectivityListener.firstPeerSpan = StartupTrace.beginDetached("first peer connection");
                 peerGroup.startAsync();
-                peerGroup.startBlockChainDownload(blockchainDownloadListener);
+                final Duration lag = Duration.between(blockChain.getChainHead().getHeader().getTime().toInstant(),
+                        Instant.now());
+                if (syncMode == Configuration.SyncMode.COMPACT_FILTERS)
+                    startCompactFilterSync(peerGroup, wallet);
+                else if (config.getCatchUpSync() && syncMode == Configuration.SyncMode.CONNECTION_FILTER
+                        && lag.compareTo(CATCH_UP_SYNC_MIN_LAG) > 0)
+                    startCatchUpSync(peerGroup, wallet);
+                else
+                    peerGroup.startBlockChainDownload(blockchainDownloadListener);
 
                 postDelayedStopSelf(Constants.SERVICE_STOP_DELAY_AFTER_START);
             }
@@ -693,13 +853,123 @@ public class BlockchainService extends LifecycleService {
                 peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
                 peerGroup.removeConnectedEventListener(peerConnectivityListener);
                 peerGroup.removeWallet(wallet);
+                cancelCatchUp();
                 log.info("stopping {} asynchronously", peerGroup);
+                peerTelemetry.expectDisconnects();
                 peerGroup.stopAsync();
                 peerGroup = null;
             }
         });
     }
 
+    /**
+     * Catches up headers first from the peers connected in the meantime, then hands over to the regular block chain
+     * download of the given peer group.
+     */
+    private void startCatchUpSync(final PeerGroup peerGroup, final Wallet wallet) {
+        final CatchUpSync catchUpSync = new CatchUpSync(blockChain, wallet, CATCH_UP_SYNC_REQUEST_TIMEOUT_MS);
+        this.catchUpSync = catchUpSync;
+        final ListenableFuture<List<Peer>> peersFuture = peerGroup.waitForPeers(CATCH_UP_SYNC_MIN_PEERS);
+        catchUpFuture = catchUpExecutor.submit(() -> {
+            final List<CatchUpSync.PeerSource> sources = new LinkedList<>();
+            try {
+                for (final Peer peer : waitForPeers(peerGroup, peersFuture))
+                    sources.add(new CatchUpSync.PeerSource(Constants.NETWORK_PARAMETERS, peer));
+                if (!sources.isEmpty()) {
+                    blockchainDownloadListener.onCatchUpStarted(blockChain.getBestChainHeight());
+                    catchUpSync.run(sources, loadAnchors(), blockchainDownloadListener::onCatchUpProgress);
+                } else {
+                    log.info("no peers to catch up from");
+                }
+            } catch (final InterruptedException x) {
+                log.info("catch-up interrupted");
+            } catch (final ExecutionException x) {
+                log.info("problem waiting for peers, not catching up", x);
+            } finally {
+                for (final CatchUpSync.PeerSource source : sources)
+                    source.close();
+                handler.post(() -> {
+                    if (BlockchainService.this.catchUpSync == catchUpSync)
+                        BlockchainService.this.catchUpSync = null;
+                });
+                handOverToBlockChainDownload(peerGroup);
+            }
+        });
+    }
+
+    /**
+     * Catches up using compact block filters from the peers connected in the meantime, then hands over to the regular
+     * block chain download of the given peer group. As bloom filtering is disabled, that downloads full blocks.
+     */
+    private void startCompactFilterSync(final PeerGroup peerGroup, final Wallet wallet) {
+        final CompactFilterSync compactFilterSync = new CompactFilterSync(blockChain, wallet,
+                CATCH_UP_SYNC_REQUEST_TIMEOUT_MS);
+        this.compactFilterSync = compactFilterSync;
+        final ListenableFuture<List<Peer>> peersFuture = peerGroup.waitForPeers(CATCH_UP_SYNC_MIN_PEERS);
+        catchUpFuture = catchUpExecutor.submit(() -> {
+            final List<CompactFilterSync.PeerSource> sources = new LinkedList<>();
+            try {
+                for (final Peer peer : waitForPeers(peerGroup, peersFuture))
+                    if (((CompactFiltersPeer) peer).isServingCompactFilters())
+                        sources.add(new CompactFilterSync.PeerSource(Constants.NETWORK_PARAMETERS,
+                                (CompactFiltersPeer) peer));
+                if (!sources.isEmpty()) {
+                    blockchainDownloadListener.onCatchUpStarted(blockChain.getBestChainHeight());
+                    compactFilterSync.run(sources, loadAnchors(), blockchainDownloadListener::onCatchUpProgress);
+                } else {
+                    log.info("no peers serving compact filters");
+                }
+            } catch (final InterruptedException x) {
+                log.info("compact filter sync interrupted");
+            } catch (final ExecutionException x) {
+                log.info("problem waiting for peers, not syncing using compact filters", x);
+            } finally {
+                for (final CompactFilterSync.PeerSource source : sources)
+                    source.close();
+                handler.post(() -> {
+                    if (BlockchainService.this.compactFilterSync == compactFilterSync)
+                        BlockchainService.this.compactFilterSync = null;
+                });
+                handOverToBlockChainDownload(peerGroup);
+            }
+        });
+    }
+
+    private List<Peer> waitForPeers(final PeerGroup peerGroup, final ListenableFuture<List<Peer>> peersFuture)
+            throws InterruptedException, ExecutionException {
+        try {
+            return peersFuture.get(CATCH_UP_SYNC_PEERS_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (final TimeoutException x) {
+            return peerGroup.getConnectedPeers();
+        }
+    }
+
+    private List<StoredBlock> loadAnchors() {
+        final CheckpointsAsset checkpoints = loadCheckpoints();
+        final List<StoredBlock> anchors = new LinkedList<>();
+        if (checkpoints != null)
+            for (int i = 0; i < checkpoints.size(); i++)
+                anchors.add(checkpoints.get(Constants.NETWORK_PARAMETERS, i));
+        return anchors;
+    }
+
+    private void handOverToBlockChainDownload(final PeerGroup peerGroup) {
+        blockchainDownloadListener.onCatchUpProgress(null);
+        handler.post(() -> {
+            if (!destroyed && BlockchainService.this.peerGroup == peerGroup)
+                peerGroup.startBlockChainDownload(blockchainDownloadListener);
+        });
+    }
+
+    private void cancelCatchUp() {
+        final CatchUpSync catchUpSync = this.catchUpSync;
+        if (catchUpSync != null)
+            catchUpSync.cancel();
+        final CompactFilterSync compactFilterSync = this.compactFilterSync;
+        if (compactFilterSync != null)
+            compactFilterSync.cancel();
+    }
+
     @Override
     public int onStartCommand(final Intent intent, final int flags, final int startId) {
         super.onStartCommand(intent, flags, startId);
@@ -737,32 +1007,50 @@ public class BlockchainService extends LifecycleService {
             peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
             peerGroup.removeConnectedEventListener(peerConnectivityListener);
             peerGroup.removeWallet(wallet.getValue());
+            peerTelemetry.expectDisconnects();
             peerGroup.stopAsync();
             log.info("stopping {} asynchronously", peerGroup);
         }
 
         peerConnectivityListener.stop();
 
+        // the catch-up might still be adding to the block chain, it stops before adding the next block
+        cancelCatchUp();
+        for (final Runnable notStarted : catchUpExecutor.shutdownNow())
+            ((Future<?>) notStarted).cancel(false);
+
         delayHandler.removeCallbacksAndMessages(null);
 
         backgroundHandler.removeCallbacksAndMessages(null);
         backgroundThread.getLooper().quit();
 
-        if (blockStore != null) {
+        destroyed = true;
+        // the block store might still be opening, the block chain still being constructed on top of it, or the
+        // catch-up still adding a block; the next instance of this service waits for it to be released
+        final ListenableFuture<?> blockStoreInUse = blockChainFuture != null
+                ? Futures.whenAllComplete(blockStoreFuture, blockChainFuture, catchUpFuture).call(() -> null,
+                        MoreExecutors.directExecutor())
+                : blockStoreFuture;
+        final SettableFuture<Void> released = SettableFuture.create();
+        blockStoreReleased = released;
+        blockStoreInUse.addListener(() -> {
             try {
-                blockStore.close();
+                Futures.getDone(blockStoreFuture).close();
+            } catch (final ExecutionException x) {
+                // never opened
             } catch (final BlockStoreException x) {
-                throw new RuntimeException(x);
+                log.warn("problem closing block store", x);
+            } finally {
+                if (resetBlockchainOnShutdown && blockChainFile != null) {
+                    log.info("removing blockchain");
+                    blockChainFile.delete();
+                }
+                released.set(null);
             }
-        }
+        }, MoreExecutors.directExecutor());
 
         application.autosaveWalletNow();
 
-        if (resetBlockchainOnShutdown) {
-            log.info("removing blockchain");
-            blockChainFile.delete();
-        }
-
         unregisterReceiver(deviceIdleModeReceiver);
 
         config.unregisterOnSharedPreferenceChangeListener(preferenceChangeListener);
@@ -812,7 +1100,8 @@ public class BlockchainService extends LifecycleService {
         final int bestChainHeight = chainHead.getHeight();
         final boolean replaying = chainHead.getHeight() < config.getBestChainHeightEver();
 
-        return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments.getValue());
+        return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments.getValue(),
+                blockchainDownloadListener.catchUpProgress.get());
     }
 
     @Nullable
@@ -826,28 +1115,26 @@ public class BlockchainService extends LifecycleService {
     public void dropAllPeers() {
         if (peerGroup == null)
             return;
+        peerTelemetry.expectDisconnects();
         peerGroup.dropAllPeers();
     }
 
+    /**
+     * Returns the performance counters of connected and recently disconnected peers.
+     */
+    public List<PeerTelemetry.PeerStats> getPeerStats() {
+        return peerTelemetry.getStats();
+    }
+
     @Nullable
     public List<StoredBlock> getRecentBlocks(final int maxBlocks) {
-        if (blockChain == null || blockStore == null)
+        if (blockChain == null)
             return null;
 
-        final List<StoredBlock> blocks = new ArrayList<>(maxBlocks);
-        StoredBlock block = blockChain.getChainHead();
-        while (block != null) {
-            blocks.add(block);
-            if (blocks.size() >= maxBlocks)
-                break;
-            try {
-                block = block.getPrev(blockStore);
-            } catch (final BlockStoreException x) {
-                log.info("skipping blocks because of exception", x);
-                break;
-            }
-        }
-        return blocks.isEmpty() ? null : blocks;
+        final List<StoredBlock> blocks = recentBlocks.get();
+        if (blocks.isEmpty())
+            return null;
+        return blocks.size() > maxBlocks ? blocks.subList(0, maxBlocks) : blocks;
     }
 
     private void startForeground(final int numPeers) {
@@ -17,6 +17,8 @@
 
 package de.schildbach.wallet.service;
 
+import androidx.annotation.Nullable;
+
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.Set;
@@ -33,12 +35,16 @@ public class BlockchainState {
     public final int bestChainHeight;
     public final boolean replaying;
     public final EnumSet<Impediment> impediments;
+    /** Progress of the headers-first catch-up, if one is running. */
+    @Nullable
+    public final CatchUpSync.Progress catchUp;
 
     public BlockchainState(final Date bestChainDate, final int bestChainHeight, final boolean replaying,
-            final Set<Impediment> impediments) {
+            final Set<Impediment> impediments, @Nullable final CatchUpSync.Progress catchUp) {
         this.bestChainDate = bestChainDate;
         this.bestChainHeight = bestChainHeight;
         this.replaying = replaying;
         this.impediments = EnumSet.copyOf(impediments);
+        this.catchUp = catchUp;
     }
 }
@@ -29,6 +29,7 @@ import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.data.BalanceSnapshot;
 import de.schildbach.wallet.data.PaymentIntent;
 import de.schildbach.wallet.ui.WalletActivity;
 import de.schildbach.wallet.ui.send.FeeCategory;
@@ -76,8 +77,10 @@ public class BootstrapReceiver extends BroadcastReceiver {
 
         if (packageReplaced || bootCompleted) {
             // make sure wallet is upgraded to HD
-            if (packageReplaced)
+            if (packageReplaced) {
                 maybeUpgradeWallet(application.getWallet());
+                application.autosaveWalletNow();
+            }
 
             // make sure there is always a blockchain sync scheduled
             StartBlockchainService.schedule(application, true);
@@ -115,14 +118,17 @@ public class BootstrapReceiver extends BroadcastReceiver {
         if (!config.isTimeToRemindBalance())
             return;
 
-        final Wallet wallet = application.getWallet();
-        final Coin estimatedBalance = wallet.getBalance(Wallet.BalanceType.ESTIMATED_SPENDABLE);
+        // prefer the balance snapshot, so that the wallet doesn't need to be loaded
+        final BalanceSnapshot balanceSnapshot = application.getBalanceSnapshot();
+        final Coin estimatedBalance = balanceSnapshot.getBalance(Wallet.BalanceType.ESTIMATED_SPENDABLE,
+                application::getWallet);
         if (!estimatedBalance.isPositive())
             return;
 
         log.info("detected balance, showing inactivity notification");
 
-        final Coin availableBalance = wallet.getBalance(Wallet.BalanceType.AVAILABLE_SPENDABLE);
+        final Coin availableBalance = balanceSnapshot.getBalance(Wallet.BalanceType.AVAILABLE_SPENDABLE,
+                application::getWallet);
         final boolean canDonate =
                 Constants.DONATION_ADDRESS != null && !availableBalance.isLessThan(Constants.SOME_BALANCE_THRESHOLD);
 
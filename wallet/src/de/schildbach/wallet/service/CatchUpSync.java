@@ -0,0 +1,394 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockLocator;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.GetDataMessage;
+import org.bitcoinj.core.GetHeadersMessage;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.InventoryItem;
+import org.bitcoinj.core.InventoryMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.NotFoundMessage;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PrunedException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.VerificationException;
+import org.bitcoinj.core.listeners.PreMessageReceivedEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catches up on a long offline gap headers first. Block headers are fetched in ranges between known anchors, usually
+ * checkpoints, from several sources in parallel and validated as they arrive. Then filtered blocks are fetched only
+ * from the wallet's earliest key time onward, in requests pipelined across the sources, and connected to the block
+ * chain in order. Blocks before are connected as headers only.
+ *
+ * Whatever isn't caught up, e.g. because all sources failed or the bloom filter needs to be refreshed, is left to the
+ * regular block chain download.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CatchUpSync {
+    /**
+     * Source of headers and filtered blocks, usually a connected peer. Requests to one source are never overlapping.
+     */
+    public interface Source extends HeaderRange.Source {
+        /** Filtered blocks in the requested order, with their matching transactions provided. */
+        ListenableFuture<List<FilteredBlock>> getFilteredBlocks(List<Sha256Hash> blockHashes);
+    }
+
+    public enum Phase {
+        HEADERS, BLOCKS
+    }
+
+    public static final class Progress {
+        public final Phase phase;
+        public final int height;
+        public final int targetHeight;
+
+        public Progress(final Phase phase, final int height, final int targetHeight) {
+            this.phase = phase;
+            this.height = height;
+            this.targetHeight = targetHeight;
+        }
+
+        @Override
+        public String toString() {
+            return phase + " " + height + "/" + targetHeight;
+        }
+    }
+
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    private final AbstractBlockChain blockChain;
+    private final Wallet wallet;
+    private final RequestScheduler<Source> scheduler;
+    private volatile boolean cancelled = false;
+    private boolean stopped = false;
+    private int nextWindow = 0;
+
+    /** Number of filtered blocks requested at once. */
+    private static final int BLOCKS_PER_REQUEST = 100;
+    /** Number of requests for filtered blocks that may be ahead of the block chain, per source. */
+    private static final int BLOCK_REQUESTS_AHEAD_PER_SOURCE = 4;
+    /** Safety margin for the earliest key creation time, same as for checkpointing. */
+    static final long KEY_TIME_MARGIN_SECS = TimeUnit.DAYS.toSeconds(7);
+
+    private static final Logger log = LoggerFactory.getLogger(CatchUpSync.class);
+
+    public CatchUpSync(final AbstractBlockChain blockChain, final Wallet wallet, final long requestTimeoutMs) {
+        this.blockChain = blockChain;
+        this.wallet = wallet;
+        this.scheduler = new RequestScheduler<>(requestTimeoutMs, () -> cancelled || stopped);
+    }
+
+    /**
+     * Makes {@link #run(List, List, ProgressListener)} return early. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Catches up the block chain, blocking until done. Not to be called more than once.
+     *
+     * @param anchors
+     *            blocks known to be in the best chain, in ascending order; those not above the chain head are ignored
+     * @return true if the block chain was caught up with all headers the sources knew about, false if some part of the
+     *         gap is left to the regular block chain download
+     */
+    public boolean run(final List<? extends Source> sources, final List<StoredBlock> anchors,
+            @Nullable final ProgressListener listener) throws InterruptedException {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final List<Source> liveSources = new LinkedList<>(sources);
+        final StoredBlock chainHead = blockChain.getChainHead();
+        final int startHeight = chainHead.getHeight();
+
+        final List<HeaderRange<Source>> ranges = HeaderRange.split(chainHead, anchors);
+        int estimatedHeight = ranges.get(ranges.size() - 1).startHeight;
+        for (final Source source : liveSources)
+            estimatedHeight = Math.max(estimatedHeight, source.getBestHeight());
+        final int headersTargetHeight = estimatedHeight;
+
+        log.info("catching up from height {} to about {}, fetching headers in {} ranges from {} sources",
+                startHeight, headersTargetHeight, ranges.size(), liveSources.size());
+        if (!scheduler.execute(ranges, liveSources, () -> Integer.MAX_VALUE, () -> {
+            final int height = startHeight + HeaderRange.countHeaders(ranges);
+            notify(listener, Phase.HEADERS, height, Math.max(headersTargetHeight, height));
+        }))
+            return false;
+        final List<Block> headers = HeaderRange.allHeaders(ranges);
+        final int targetHeight = startHeight + headers.size();
+        log.info("{} headers fetched, took {}", headers.size(), watch);
+
+        // everything before the earliest key time is connected as headers only
+        final long earliestKeyCreationTimeSecs = wallet.getEarliestKeyCreationTime();
+        final long bodiesFromSecs = earliestKeyCreationTimeSecs > 0
+                ? earliestKeyCreationTimeSecs - KEY_TIME_MARGIN_SECS : 0;
+        int firstBody = 0;
+        while (firstBody < headers.size() && headers.get(firstBody).getTimeSeconds() < bodiesFromSecs)
+            firstBody++;
+        for (int i = 0; i < firstBody; i++) {
+            if (!connect(headers.get(i), null))
+                return false;
+        }
+        notify(listener, Phase.BLOCKS, blockChain.getBestChainHeight(), targetHeight);
+
+        final List<BlockWindow> windows = new ArrayList<>();
+        for (int i = firstBody; i < headers.size(); i += BLOCKS_PER_REQUEST) {
+            final List<Sha256Hash> hashes = new ArrayList<>(BLOCKS_PER_REQUEST);
+            for (final Block header : headers.subList(i, Math.min(i + BLOCKS_PER_REQUEST, headers.size())))
+                hashes.add(header.getHash());
+            windows.add(new BlockWindow(windows.size(), hashes, windows));
+        }
+        log.info("{} headers connected, fetching {} filtered blocks in {} requests", firstBody,
+                headers.size() - firstBody, windows.size());
+        final int maxAhead = BLOCK_REQUESTS_AHEAD_PER_SOURCE * Math.max(liveSources.size(), 1);
+        if (!scheduler.execute(windows, liveSources, () -> nextWindow + maxAhead,
+                () -> notify(listener, Phase.BLOCKS, blockChain.getBestChainHeight(), targetHeight)))
+            return false;
+
+        log.info("caught up to height {}, took {}", blockChain.getBestChainHeight(), watch);
+        return true;
+    }
+
+    private void notify(@Nullable final ProgressListener listener, final Phase phase, final int height,
+            final int targetHeight) {
+        if (listener != null)
+            listener.onProgress(new Progress(phase, height, targetHeight));
+    }
+
+    private boolean connect(@Nullable final Block header, @Nullable final FilteredBlock filteredBlock) {
+        final Sha256Hash hash = filteredBlock != null ? filteredBlock.getHash() : header.getHash();
+        if (cancelled)
+            return false; // the block store might be closing
+        try {
+            final boolean connected = filteredBlock != null ? blockChain.add(filteredBlock) : blockChain.add(header);
+            if (!connected)
+                log.info("block {} does not connect, stopping", hash);
+            return connected;
+        } catch (final VerificationException | PrunedException x) {
+            log.info("block {} cannot be connected, stopping", hash, x);
+            return false;
+        }
+    }
+
+    /**
+     * Consecutive filtered blocks, connected to the block chain as soon as all windows before are.
+     */
+    private final class BlockWindow extends RequestScheduler.Task<Source> {
+        final List<Sha256Hash> hashes;
+        final List<BlockWindow> windows;
+        @Nullable
+        List<FilteredBlock> blocks = null;
+
+        BlockWindow(final int index, final List<Sha256Hash> hashes, final List<BlockWindow> windows) {
+            super(index);
+            this.hashes = hashes;
+            this.windows = windows;
+        }
+
+        @Override
+        ListenableFuture<?> request(final Source source) {
+            return source.getFilteredBlocks(hashes);
+        }
+
+        @Override
+        boolean onResponse(final Source source, final Object response) throws VerificationException {
+            @SuppressWarnings("unchecked")
+            final List<FilteredBlock> blocks = (List<FilteredBlock>) response;
+            if (blocks.size() != hashes.size())
+                throw new VerificationException("expected " + hashes.size() + " filtered blocks, got "
+                        + blocks.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                final FilteredBlock block = blocks.get(i);
+                if (!block.getHash().equals(hashes.get(i)))
+                    throw new VerificationException("unexpected filtered block " + block.getHash());
+                block.getTransactionHashes(); // verifies merkle root
+            }
+            this.blocks = blocks;
+            connectCompletedWindows();
+            return true;
+        }
+
+        private void connectCompletedWindows() {
+            while (!stopped && nextWindow < windows.size() && windows.get(nextWindow).blocks != null) {
+                final BlockWindow window = windows.get(nextWindow);
+                for (final FilteredBlock block : window.blocks) {
+                    if (wallet.checkForFilterExhaustion(block)) {
+                        log.info("bloom filter exhausted at block {}, stopping", block.getHash());
+                        stopped = true;
+                        return;
+                    }
+                    if (!connect(null, block)) {
+                        stopped = true;
+                        return;
+                    }
+                }
+                window.blocks = null;
+                nextWindow++;
+            }
+        }
+    }
+
+    /**
+     * Source backed by a connected peer. While attached, it consumes the responses to its requests and block
+     * announcements, so that the peer doesn't start downloading on its own.
+     */
+    public static final class PeerSource implements Source, PreMessageReceivedEventListener {
+        private final NetworkParameters params;
+        private final Peer peer;
+        @Nullable
+        private SettableFuture<List<Block>> headersFuture = null;
+        @Nullable
+        private SettableFuture<List<FilteredBlock>> blocksFuture = null;
+        private final List<Sha256Hash> requestedBlocks = new ArrayList<>();
+        private final List<FilteredBlock> receivedBlocks = new ArrayList<>();
+
+        public PeerSource(final NetworkParameters params, final Peer peer) {
+            this.params = params;
+            this.peer = peer;
+            peer.addPreMessageReceivedEventListener(Threading.SAME_THREAD, this);
+        }
+
+        public synchronized void close() {
+            peer.removePreMessageReceivedEventListener(this);
+            if (headersFuture != null)
+                headersFuture.setException(new IOException("closed"));
+            headersFuture = null;
+            if (blocksFuture != null)
+                blocksFuture.setException(new IOException("closed"));
+            blocksFuture = null;
+        }
+
+        @Override
+        public int getBestHeight() {
+            return (int) peer.getBestHeight();
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getHeaders(final BlockLocator locator, final Sha256Hash stopHash) {
+            final SettableFuture<List<Block>> future = SettableFuture.create();
+            synchronized (this) {
+                headersFuture = future;
+            }
+            peer.sendMessage(new GetHeadersMessage(params, locator, stopHash));
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<List<FilteredBlock>> getFilteredBlocks(final List<Sha256Hash> blockHashes) {
+            final SettableFuture<List<FilteredBlock>> future = SettableFuture.create();
+            final GetDataMessage getData = new GetDataMessage(params);
+            for (final Sha256Hash hash : blockHashes)
+                getData.addFilteredBlock(hash);
+            synchronized (this) {
+                blocksFuture = future;
+                requestedBlocks.clear();
+                requestedBlocks.addAll(blockHashes);
+                receivedBlocks.clear();
+            }
+            peer.sendMessage(getData);
+            return future;
+        }
+
+        @Override
+        public synchronized Message onPreMessageReceived(final Peer peer, final Message m) {
+            if (m instanceof HeadersMessage && headersFuture != null) {
+                headersFuture.set(((HeadersMessage) m).getBlockHeaders());
+                headersFuture = null;
+                return null;
+            }
+            if (blocksFuture != null) {
+                try {
+                    if (m instanceof FilteredBlock && receivedBlocks.size() < requestedBlocks.size()
+                            && requestedBlocks.get(receivedBlocks.size()).equals(((FilteredBlock) m).getHash())) {
+                        receivedBlocks.add((FilteredBlock) m);
+                        maybeCompleteBlocks();
+                        return null;
+                    }
+                    // matching transactions follow their filtered block
+                    if (m instanceof Transaction && !receivedBlocks.isEmpty()
+                            && receivedBlocks.get(receivedBlocks.size() - 1).provideTransaction((Transaction) m)) {
+                        maybeCompleteBlocks();
+                        return null;
+                    }
+                } catch (final VerificationException x) {
+                    blocksFuture.setException(x);
+                    blocksFuture = null;
+                    return null;
+                }
+                if (m instanceof NotFoundMessage) {
+                    blocksFuture.setException(new IOException("peer does not have requested blocks"));
+                    blocksFuture = null;
+                    return null;
+                }
+            }
+            if (m instanceof InventoryMessage && !(m instanceof NotFoundMessage)
+                    && isBlocksOnly((InventoryMessage) m))
+                return null; // new blocks are picked up by the regular download
+            return m;
+        }
+
+        private void maybeCompleteBlocks() throws VerificationException {
+            if (receivedBlocks.size() < requestedBlocks.size())
+                return;
+            final FilteredBlock last = receivedBlocks.get(receivedBlocks.size() - 1);
+            if (last.getAssociatedTransactions().size() < last.getTransactionHashes().size())
+                return;
+            blocksFuture.set(new ArrayList<>(receivedBlocks));
+            blocksFuture = null;
+        }
+
+        static boolean isBlocksOnly(final InventoryMessage inv) {
+            final List<InventoryItem> items = inv.getItems();
+            if (items.isEmpty())
+                return false;
+            for (final InventoryItem item : items)
+                if (item.type != InventoryItem.Type.BLOCK && item.type != InventoryItem.Type.WITNESS_BLOCK)
+                    return false;
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return peer.toString();
+        }
+    }
+}
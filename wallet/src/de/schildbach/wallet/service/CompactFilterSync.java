@@ -0,0 +1,575 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import de.schildbach.wallet.filters.BlockFilter;
+import de.schildbach.wallet.filters.CFHeadersMessage;
+import de.schildbach.wallet.filters.CFilterMessage;
+import de.schildbach.wallet.filters.CompactFiltersPeer;
+import de.schildbach.wallet.filters.GetCFHeadersMessage;
+import de.schildbach.wallet.filters.GetCFiltersMessage;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockLocator;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.GetDataMessage;
+import org.bitcoinj.core.GetHeadersMessage;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.InventoryMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.NotFoundMessage;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PrunedException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.VerificationException;
+import org.bitcoinj.core.listeners.PreMessageReceivedEventListener;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.DeterministicKeyChain;
+import org.bitcoinj.wallet.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catches up on a gap using compact block filters, as specified by BIP157 and BIP158. Block headers are fetched
+ * like for {@link CatchUpSync}. Then, from the wallet's earliest key time onward, filter hashes are fetched and
+ * cross-checked between sources, filters are fetched and verified against their hashes and matched locally against
+ * the scripts of the wallet. Only matching blocks are downloaded in full. Nothing about the wallet is revealed to
+ * the sources except for which blocks are downloaded.
+ *
+ * Filter hashes can't be verified against the block chain, so they are trusted only if two sources agree. If they
+ * don't, or whatever else isn't caught up, the gap is left to the regular block chain download.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CompactFilterSync {
+    /**
+     * Source of headers, filters and blocks, usually a connected peer. Requests to one source are never overlapping.
+     */
+    public interface Source extends HeaderRange.Source {
+        /** Filter hashes of the blocks from the start height up to and including the stop hash, as per protocol. */
+        ListenableFuture<CFHeadersMessage> getFilterHeaders(int startHeight, Sha256Hash stopHash);
+
+        /** Basic filters of the blocks from the start height up to and including the stop hash, in order. */
+        ListenableFuture<List<BlockFilter>> getFilters(int startHeight, Sha256Hash stopHash);
+
+        /** Full blocks in the requested order. */
+        ListenableFuture<List<Block>> getBlocks(List<Sha256Hash> blockHashes);
+    }
+
+    private final AbstractBlockChain blockChain;
+    private final Wallet wallet;
+    private final RequestScheduler<Source> scheduler;
+    private volatile boolean cancelled = false;
+    private boolean stopped = false;
+    private boolean restart = false;
+    private List<byte[]> scripts;
+    private int nextWindow = 0;
+    private int matchedBlocks = 0;
+
+    /** Number of filters requested at once. */
+    private static final int FILTERS_PER_REQUEST = 100;
+    /** Number of requests for filters that may be ahead of the block chain, per source. */
+    private static final int FILTER_REQUESTS_AHEAD_PER_SOURCE = 4;
+    /** Number of sources that need to agree on the filter hashes. */
+    private static final int FILTER_HEADERS_CONFIRMATIONS = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(CompactFilterSync.class);
+
+    public CompactFilterSync(final AbstractBlockChain blockChain, final Wallet wallet, final long requestTimeoutMs) {
+        this.blockChain = blockChain;
+        this.wallet = wallet;
+        this.scheduler = new RequestScheduler<>(requestTimeoutMs, () -> cancelled || stopped || restart);
+    }
+
+    /**
+     * Makes {@link #run(List, List, CatchUpSync.ProgressListener)} return early. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Catches up the block chain, blocking until done. Not to be called more than once.
+     *
+     * @param anchors
+     *            blocks known to be in the best chain, in ascending order; those not above the chain head are ignored
+     * @return true if the block chain was caught up with all headers the sources knew about, false if some part of the
+     *         gap is left to the regular block chain download
+     */
+    public boolean run(final List<? extends Source> sources, final List<StoredBlock> anchors,
+            @Nullable final CatchUpSync.ProgressListener listener) throws InterruptedException {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final List<Source> liveSources = new LinkedList<>(sources);
+        final StoredBlock chainHead = blockChain.getChainHead();
+        final int startHeight = chainHead.getHeight();
+
+        final List<HeaderRange<Source>> ranges = HeaderRange.split(chainHead, anchors);
+        int estimatedHeight = ranges.get(ranges.size() - 1).startHeight;
+        for (final Source source : liveSources)
+            estimatedHeight = Math.max(estimatedHeight, source.getBestHeight());
+        final int headersTargetHeight = estimatedHeight;
+
+        log.info("catching up from height {} to about {} using compact filters, fetching headers in {} ranges "
+                + "from {} sources", startHeight, headersTargetHeight, ranges.size(), liveSources.size());
+        if (!scheduler.execute(ranges, liveSources, () -> Integer.MAX_VALUE, () -> {
+            final int height = startHeight + HeaderRange.countHeaders(ranges);
+            notify(listener, CatchUpSync.Phase.HEADERS, height, Math.max(headersTargetHeight, height));
+        }))
+            return false;
+        final List<Block> headers = HeaderRange.allHeaders(ranges);
+        final int targetHeight = startHeight + headers.size();
+        log.info("{} headers fetched, took {}", headers.size(), watch);
+
+        // everything before the earliest key time is connected as headers only
+        final long earliestKeyCreationTimeSecs = wallet.getEarliestKeyCreationTime();
+        final long bodiesFromSecs = earliestKeyCreationTimeSecs > 0
+                ? earliestKeyCreationTimeSecs - CatchUpSync.KEY_TIME_MARGIN_SECS : 0;
+        int firstBody = 0;
+        while (firstBody < headers.size() && headers.get(firstBody).getTimeSeconds() < bodiesFromSecs)
+            firstBody++;
+        for (int i = 0; i < firstBody; i++) {
+            if (!connect(headers.get(i)))
+                return false;
+        }
+        notify(listener, CatchUpSync.Phase.BLOCKS, blockChain.getBestChainHeight(), targetHeight);
+        if (firstBody == headers.size())
+            return true;
+
+        final List<FilterHeaderBatch> batches = new ArrayList<>();
+        final int confirmations = Math.min(FILTER_HEADERS_CONFIRMATIONS, liveSources.size());
+        for (int i = firstBody; i < headers.size(); i += GetCFHeadersMessage.MAX_HEADERS) {
+            final List<Block> batchHeaders = headers.subList(i,
+                    Math.min(i + GetCFHeadersMessage.MAX_HEADERS, headers.size()));
+            batches.add(new FilterHeaderBatch(batches.size(), startHeight + 1 + i, batchHeaders, confirmations));
+        }
+        log.info("{} headers connected, fetching filter hashes of {} blocks in {} requests, {} confirmations",
+                firstBody, headers.size() - firstBody, batches.size(), confirmations);
+        if (!scheduler.execute(batches, liveSources, () -> Integer.MAX_VALUE, () -> {
+        }))
+            return false;
+        final List<Sha256Hash> filterHashes = new ArrayList<>(headers.size() - firstBody);
+        Sha256Hash filterHeader = batches.get(0).response.getPrevFilterHeader();
+        for (final FilterHeaderBatch batch : batches) {
+            if (!batch.response.getPrevFilterHeader().equals(filterHeader)) {
+                log.info("filter headers do not connect at height {}, stopping", batch.startHeight);
+                return false;
+            }
+            filterHashes.addAll(batch.response.getFilterHashes());
+            final List<Sha256Hash> batchFilterHeaders = batch.response.getFilterHeaders();
+            filterHeader = batchFilterHeaders.get(batchFilterHeaders.size() - 1);
+        }
+        log.info("filter hashes fetched, took {}", watch);
+
+        // matching blocks may reveal more scripts of the wallet, in which case filters are matched again
+        scripts = walletScripts();
+        while (true) {
+            final int from = blockChain.getBestChainHeight() - startHeight;
+            final List<FilterWindow> windows = new ArrayList<>();
+            for (int i = from; i < headers.size(); i += FILTERS_PER_REQUEST) {
+                final int to = Math.min(i + FILTERS_PER_REQUEST, headers.size());
+                windows.add(new FilterWindow(windows.size(), startHeight + 1 + i, headers.subList(i, to),
+                        filterHashes.subList(i - firstBody, to - firstBody), windows));
+            }
+            log.info("matching {} scripts against {} filters in {} requests", scripts.size(), headers.size() - from,
+                    windows.size());
+            nextWindow = 0;
+            restart = false;
+            final int maxAhead = FILTER_REQUESTS_AHEAD_PER_SOURCE * Math.max(liveSources.size(), 1);
+            if (scheduler.execute(windows, liveSources, () -> nextWindow + maxAhead,
+                    () -> notify(listener, CatchUpSync.Phase.BLOCKS, blockChain.getBestChainHeight(), targetHeight)))
+                break;
+            if (!restart || cancelled || stopped)
+                return false;
+        }
+
+        log.info("caught up to height {}, {} blocks matched, took {}", blockChain.getBestChainHeight(),
+                matchedBlocks, watch);
+        return true;
+    }
+
+    private void notify(@Nullable final CatchUpSync.ProgressListener listener, final CatchUpSync.Phase phase,
+            final int height, final int targetHeight) {
+        if (listener != null)
+            listener.onProgress(new CatchUpSync.Progress(phase, height, targetHeight));
+    }
+
+    /**
+     * Output scripts of the wallet, including the lookahead. These are what the basic filters contain for both
+     * outputs paying to the wallet and inputs spending from it.
+     */
+    private List<byte[]> walletScripts() {
+        final NetworkParameters params = wallet.getParams();
+        final List<byte[]> scripts = new ArrayList<>();
+        for (final DeterministicKeyChain chain : wallet.getActiveKeyChains()) {
+            chain.maybeLookAhead();
+            final Script.ScriptType outputScriptType = chain.getOutputScriptType();
+            for (final DeterministicKey key : chain.getLeafKeys())
+                scripts.add(ScriptBuilder.createOutputScript(Address.fromKey(params, key, outputScriptType))
+                        .getProgram());
+        }
+        for (final ECKey key : wallet.getImportedKeys()) {
+            scripts.add(ScriptBuilder.createP2PKHOutputScript(key).getProgram());
+            if (key.isCompressed())
+                scripts.add(ScriptBuilder.createP2WPKHOutputScript(key).getProgram());
+        }
+        for (final Script script : wallet.getWatchedScripts())
+            scripts.add(script.getProgram());
+        return scripts;
+    }
+
+    private boolean connect(final Block block) {
+        if (cancelled)
+            return false; // the block store might be closing
+        try {
+            final boolean connected = blockChain.add(block);
+            if (!connected)
+                log.info("block {} does not connect, stopping", block.getHash());
+            return connected;
+        } catch (final VerificationException | PrunedException x) {
+            log.info("block {} cannot be connected, stopping", block.getHash(), x);
+            return false;
+        }
+    }
+
+    /**
+     * Filter hashes of consecutive blocks, done as soon as enough different sources agree on them.
+     */
+    private final class FilterHeaderBatch extends RequestScheduler.Task<Source> {
+        final int startHeight;
+        final List<Block> headers;
+        final int confirmations;
+        final Set<Source> confirmedBy = new HashSet<>();
+        @Nullable
+        CFHeadersMessage response = null;
+
+        FilterHeaderBatch(final int index, final int startHeight, final List<Block> headers,
+                final int confirmations) {
+            super(index);
+            this.startHeight = startHeight;
+            this.headers = headers;
+            this.confirmations = confirmations;
+        }
+
+        @Override
+        ListenableFuture<?> request(final Source source) {
+            return source.getFilterHeaders(startHeight, headers.get(headers.size() - 1).getHash());
+        }
+
+        @Override
+        boolean onResponse(final Source source, final Object response) throws VerificationException {
+            final CFHeadersMessage cfheaders = (CFHeadersMessage) response;
+            if (cfheaders.getFilterType() != BlockFilter.TYPE_BASIC
+                    || !cfheaders.getStopHash().equals(headers.get(headers.size() - 1).getHash())
+                    || cfheaders.getFilterHashes().size() != headers.size())
+                throw new VerificationException("unexpected " + cfheaders);
+            if (this.response == null) {
+                this.response = cfheaders;
+            } else if (!cfheaders.getPrevFilterHeader().equals(this.response.getPrevFilterHeader())
+                    || !cfheaders.getFilterHashes().equals(this.response.getFilterHashes())) {
+                log.info("sources {} disagree on filter hashes from height {}, stopping", confirmedBy, startHeight);
+                stopped = true;
+                return true;
+            }
+            confirmedBy.add(source);
+            return confirmedBy.size() >= confirmations;
+        }
+
+        @Override
+        boolean canRequest(final Source source) {
+            return !confirmedBy.contains(source);
+        }
+    }
+
+    /**
+     * Filters of consecutive blocks, followed by the blocks matching the wallet. Connected to the block chain as soon
+     * as all windows before are.
+     */
+    private final class FilterWindow extends RequestScheduler.Task<Source> {
+        final int startHeight;
+        final List<Block> headers;
+        final List<Sha256Hash> filterHashes;
+        final List<FilterWindow> windows;
+        @Nullable
+        List<Sha256Hash> matched = null;
+        @Nullable
+        Map<Sha256Hash, Block> blocks = null;
+
+        FilterWindow(final int index, final int startHeight, final List<Block> headers,
+                final List<Sha256Hash> filterHashes, final List<FilterWindow> windows) {
+            super(index);
+            this.startHeight = startHeight;
+            this.headers = headers;
+            this.filterHashes = filterHashes;
+            this.windows = windows;
+        }
+
+        @Override
+        ListenableFuture<?> request(final Source source) {
+            if (matched == null)
+                return source.getFilters(startHeight, headers.get(headers.size() - 1).getHash());
+            else
+                return source.getBlocks(matched);
+        }
+
+        @Override
+        boolean onResponse(final Source source, final Object response) throws VerificationException {
+            if (matched == null) {
+                @SuppressWarnings("unchecked")
+                final List<BlockFilter> filters = (List<BlockFilter>) response;
+                if (filters.size() != headers.size())
+                    throw new VerificationException("expected " + headers.size() + " filters, got " + filters.size());
+                final List<Sha256Hash> matched = new ArrayList<>();
+                for (int i = 0; i < filters.size(); i++) {
+                    final BlockFilter filter = filters.get(i);
+                    if (!filter.getBlockHash().equals(headers.get(i).getHash())
+                            || !filter.getFilterHash().equals(filterHashes.get(i)))
+                        throw new VerificationException("unexpected " + filter);
+                    if (filter.matchAny(scripts))
+                        matched.add(filter.getBlockHash());
+                }
+                this.matched = matched;
+                if (!matched.isEmpty())
+                    return false;
+                this.blocks = new HashMap<>();
+            } else {
+                @SuppressWarnings("unchecked")
+                final List<Block> blocks = (List<Block>) response;
+                if (blocks.size() != matched.size())
+                    throw new VerificationException("expected " + matched.size() + " blocks, got " + blocks.size());
+                final Map<Sha256Hash, Block> blocksByHash = new HashMap<>();
+                for (int i = 0; i < blocks.size(); i++) {
+                    final Block block = blocks.get(i);
+                    if (!block.getHash().equals(matched.get(i)))
+                        throw new VerificationException("unexpected block " + block.getHash());
+                    block.verifyTransactions(heightOf(block.getHash()), EnumSet.noneOf(Block.VerifyFlag.class));
+                    blocksByHash.put(block.getHash(), block);
+                }
+                this.blocks = blocksByHash;
+            }
+            connectCompletedWindows();
+            return true;
+        }
+
+        private int heightOf(final Sha256Hash hash) {
+            for (int i = 0; i < headers.size(); i++)
+                if (headers.get(i).getHash().equals(hash))
+                    return startHeight + i;
+            throw new IllegalArgumentException(hash.toString());
+        }
+
+        private void connectCompletedWindows() {
+            while (!stopped && !restart && nextWindow < windows.size() && windows.get(nextWindow).blocks != null) {
+                final FilterWindow window = windows.get(nextWindow);
+                for (final Block header : window.headers) {
+                    final Block block = window.blocks.get(header.getHash());
+                    if (!connect(block != null ? block : header)) {
+                        stopped = true;
+                        return;
+                    }
+                    if (block != null) {
+                        matchedBlocks++;
+                        final List<byte[]> scripts = walletScripts();
+                        if (scripts.size() > CompactFilterSync.this.scripts.size()) {
+                            log.info("wallet has {} more scripts after block {}, matching again",
+                                    scripts.size() - CompactFilterSync.this.scripts.size(), block.getHash());
+                            CompactFilterSync.this.scripts = scripts;
+                            restart = true;
+                            return;
+                        }
+                    }
+                }
+                window.blocks = null;
+                nextWindow++;
+            }
+        }
+    }
+
+    /**
+     * Source backed by a connected peer serving compact filters. While attached, it consumes the responses to its
+     * requests and block announcements, so that the peer doesn't start downloading on its own.
+     */
+    public static final class PeerSource implements Source, PreMessageReceivedEventListener {
+        private final NetworkParameters params;
+        private final CompactFiltersPeer peer;
+        @Nullable
+        private SettableFuture<List<Block>> headersFuture = null;
+        @Nullable
+        private SettableFuture<CFHeadersMessage> filterHeadersFuture = null;
+        @Nullable
+        private SettableFuture<List<BlockFilter>> filtersFuture = null;
+        @Nullable
+        private Sha256Hash filtersStopHash = null;
+        private final List<BlockFilter> receivedFilters = new ArrayList<>();
+        @Nullable
+        private SettableFuture<List<Block>> blocksFuture = null;
+        private final List<Sha256Hash> requestedBlocks = new ArrayList<>();
+        private final List<Block> receivedBlocks = new ArrayList<>();
+
+        public PeerSource(final NetworkParameters params, final CompactFiltersPeer peer) {
+            this.params = params;
+            this.peer = peer;
+            peer.addPreMessageReceivedEventListener(Threading.SAME_THREAD, this);
+        }
+
+        public synchronized void close() {
+            peer.removePreMessageReceivedEventListener(this);
+            final IOException closed = new IOException("closed");
+            if (headersFuture != null)
+                headersFuture.setException(closed);
+            headersFuture = null;
+            if (filterHeadersFuture != null)
+                filterHeadersFuture.setException(closed);
+            filterHeadersFuture = null;
+            if (filtersFuture != null)
+                filtersFuture.setException(closed);
+            filtersFuture = null;
+            if (blocksFuture != null)
+                blocksFuture.setException(closed);
+            blocksFuture = null;
+        }
+
+        @Override
+        public int getBestHeight() {
+            return (int) peer.getBestHeight();
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getHeaders(final BlockLocator locator, final Sha256Hash stopHash) {
+            final SettableFuture<List<Block>> future = SettableFuture.create();
+            synchronized (this) {
+                headersFuture = future;
+            }
+            peer.sendMessage(new GetHeadersMessage(params, locator, stopHash));
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<CFHeadersMessage> getFilterHeaders(final int startHeight, final Sha256Hash stopHash) {
+            final SettableFuture<CFHeadersMessage> future = SettableFuture.create();
+            synchronized (this) {
+                filterHeadersFuture = future;
+            }
+            peer.sendMessage(new GetCFHeadersMessage(params, BlockFilter.TYPE_BASIC, startHeight, stopHash));
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<List<BlockFilter>> getFilters(final int startHeight, final Sha256Hash stopHash) {
+            final SettableFuture<List<BlockFilter>> future = SettableFuture.create();
+            synchronized (this) {
+                filtersFuture = future;
+                filtersStopHash = stopHash;
+                receivedFilters.clear();
+            }
+            peer.sendMessage(new GetCFiltersMessage(params, BlockFilter.TYPE_BASIC, startHeight, stopHash));
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getBlocks(final List<Sha256Hash> blockHashes) {
+            final SettableFuture<List<Block>> future = SettableFuture.create();
+            final GetDataMessage getData = new GetDataMessage(params);
+            for (final Sha256Hash hash : blockHashes)
+                getData.addBlock(hash, true);
+            synchronized (this) {
+                blocksFuture = future;
+                requestedBlocks.clear();
+                requestedBlocks.addAll(blockHashes);
+                receivedBlocks.clear();
+            }
+            peer.sendMessage(getData);
+            return future;
+        }
+
+        @Override
+        public synchronized Message onPreMessageReceived(final Peer peer, final Message m) {
+            if (m instanceof HeadersMessage && headersFuture != null) {
+                headersFuture.set(((HeadersMessage) m).getBlockHeaders());
+                headersFuture = null;
+                return null;
+            }
+            if (m instanceof CFHeadersMessage) {
+                if (filterHeadersFuture != null)
+                    filterHeadersFuture.set((CFHeadersMessage) m);
+                filterHeadersFuture = null;
+                return null;
+            }
+            if (m instanceof CFilterMessage) {
+                if (filtersFuture != null) {
+                    try {
+                        final BlockFilter filter = ((CFilterMessage) m).toBlockFilter();
+                        receivedFilters.add(filter);
+                        if (filter.getBlockHash().equals(filtersStopHash)) {
+                            filtersFuture.set(new ArrayList<>(receivedFilters));
+                            filtersFuture = null;
+                        }
+                    } catch (final VerificationException x) {
+                        filtersFuture.setException(x);
+                        filtersFuture = null;
+                    }
+                }
+                return null;
+            }
+            if (blocksFuture != null) {
+                if (m instanceof Block && receivedBlocks.size() < requestedBlocks.size()
+                        && requestedBlocks.get(receivedBlocks.size()).equals(((Block) m).getHash())) {
+                    receivedBlocks.add((Block) m);
+                    if (receivedBlocks.size() == requestedBlocks.size()) {
+                        blocksFuture.set(new ArrayList<>(receivedBlocks));
+                        blocksFuture = null;
+                    }
+                    return null;
+                }
+                if (m instanceof NotFoundMessage) {
+                    blocksFuture.setException(new IOException("peer does not have requested blocks"));
+                    blocksFuture = null;
+                    return null;
+                }
+            }
+            if (m instanceof InventoryMessage && !(m instanceof NotFoundMessage)
+                    && CatchUpSync.PeerSource.isBlocksOnly((InventoryMessage) m))
+                return null; // new blocks are picked up by the regular download
+            return m;
+        }
+
+        @Override
+        public String toString() {
+            return peer.toString();
+        }
+    }
+}
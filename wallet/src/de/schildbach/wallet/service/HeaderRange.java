@@ -0,0 +1,137 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockLocator;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.VerificationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headers following the start block, up to and including the anchor. If there is no anchor the range is open, and
+ * ends where the source has no more headers.
+ *
+ * @author Andreas Schildbach
+ */
+final class HeaderRange<S extends HeaderRange.Source> extends RequestScheduler.Task<S> {
+    /**
+     * Source of headers. Requests to one source are never overlapping.
+     */
+    interface Source {
+        int getBestHeight();
+
+        /** Headers following the first known locator hash, up to and including the stop hash, as per protocol. */
+        ListenableFuture<List<Block>> getHeaders(BlockLocator locator, Sha256Hash stopHash);
+    }
+
+    final Sha256Hash startHash;
+    final int startHeight;
+    @Nullable
+    final Sha256Hash anchorHash;
+    final int anchorHeight;
+    final List<Block> headers = new ArrayList<>();
+
+    HeaderRange(final int index, final Sha256Hash startHash, final int startHeight,
+            @Nullable final Sha256Hash anchorHash, final int anchorHeight) {
+        super(index);
+        this.startHash = startHash;
+        this.startHeight = startHeight;
+        this.anchorHash = anchorHash;
+        this.anchorHeight = anchorHeight;
+    }
+
+    /**
+     * Splits the gap following the chain head into ranges between the given anchors, plus an open last range.
+     *
+     * @param anchors
+     *            blocks known to be in the best chain, in ascending order; those not above the chain head are ignored
+     */
+    static <S extends Source> List<HeaderRange<S>> split(final StoredBlock chainHead, final List<StoredBlock> anchors) {
+        final List<HeaderRange<S>> ranges = new ArrayList<>();
+        Sha256Hash rangeStartHash = chainHead.getHeader().getHash();
+        int rangeStartHeight = chainHead.getHeight();
+        for (final StoredBlock anchor : anchors) {
+            if (anchor.getHeight() <= rangeStartHeight)
+                continue;
+            final Sha256Hash anchorHash = anchor.getHeader().getHash();
+            ranges.add(new HeaderRange<>(ranges.size(), rangeStartHash, rangeStartHeight, anchorHash,
+                    anchor.getHeight()));
+            rangeStartHash = anchorHash;
+            rangeStartHeight = anchor.getHeight();
+        }
+        ranges.add(new HeaderRange<>(ranges.size(), rangeStartHash, rangeStartHeight, null, -1));
+        return ranges;
+    }
+
+    /** Headers fetched so far, over all the given ranges. */
+    static int countHeaders(final List<? extends HeaderRange<?>> ranges) {
+        int count = 0;
+        for (final HeaderRange<?> range : ranges)
+            count += range.headers.size();
+        return count;
+    }
+
+    /** Headers of all the given ranges, in order. */
+    static List<Block> allHeaders(final List<? extends HeaderRange<?>> ranges) {
+        final List<Block> headers = new ArrayList<>(countHeaders(ranges));
+        for (final HeaderRange<?> range : ranges)
+            headers.addAll(range.headers);
+        return headers;
+    }
+
+    @Override
+    ListenableFuture<?> request(final S source) {
+        final Sha256Hash lastHash = headers.isEmpty() ? startHash : headers.get(headers.size() - 1).getHash();
+        return source.getHeaders(new BlockLocator().add(lastHash),
+                anchorHash != null ? anchorHash : Sha256Hash.ZERO_HASH);
+    }
+
+    @Override
+    boolean onResponse(final S source, final Object response) throws VerificationException {
+        @SuppressWarnings("unchecked")
+        final List<Block> batch = (List<Block>) response;
+        if (anchorHash != null && batch.isEmpty())
+            throw new VerificationException("no headers up to anchor " + anchorHeight);
+        for (final Block header : batch) {
+            final Sha256Hash lastHash = headers.isEmpty() ? startHash : headers.get(headers.size() - 1).getHash();
+            if (!header.getPrevBlockHash().equals(lastHash))
+                throw new VerificationException("header " + header.getHash() + " does not connect");
+            header.verifyHeader();
+            headers.add(header);
+            if (anchorHash != null && startHeight + headers.size() == anchorHeight) {
+                if (!header.getHash().equals(anchorHash))
+                    throw new VerificationException("header " + header.getHash() + " does not match anchor "
+                            + anchorHeight);
+                return true;
+            }
+        }
+        return anchorHash == null && batch.size() < HeadersMessage.MAX_HEADERS;
+    }
+
+    @Override
+    void reset() {
+        headers.clear();
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.bitcoinj.store.ChainFileLockedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Block store keeping all block headers it is given, unlike {@link org.bitcoinj.store.SPVBlockStore} which only
+ * keeps the most recent ones in a ring. Headers are appended as fixed size records to a memory mapped file. An index
+ * by hash and an index by height of the best chain are held in memory and rebuilt when opening the file, so both
+ * kinds of lookups take constant time.
+ *
+ * The chain head is recorded in one of two alternating slots at the start of the file, each with a sequence number
+ * and a checksum. If the process dies while writing a slot, the other slot still points to the previous chain head.
+ * A slot is only used if the record it points to is present and matches its hash.
+ *
+ * This only protects against the process dying, as the operating system still writes out the pages it was handed.
+ * Pages are not forced to storage on each write, as that would cost a flush per header, but only on close. After a
+ * power loss the pages might have been written out of order, so a valid slot can count records that weren't
+ * written. Only the record of the chain head is checked against its slot.
+ *
+ * @author Andreas Schildbach
+ */
+public final class IndexedBlockStore implements BlockStore {
+    private final NetworkParameters params;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+    private MappedByteBuffer buffer;
+
+    private int numRecords = 0;
+    // open addressing by block hash; values are record numbers plus one, zero means empty
+    private int[] hashTable = new int[INITIAL_HASH_TABLE_SIZE];
+    // record numbers of the best chain, starting at baseHeight
+    private int[] heightIndex = new int[GROW_RECORDS];
+    private int baseHeight = 0;
+    private int numHeights = 0;
+    private int headRecord = -1;
+    private StoredBlock chainHead = null;
+    private long headSequence = 0;
+
+    /** Magic number at the start of each head slot. */
+    private static final int MAGIC = 0x49425331; // "IBS1"
+    private static final int SLOT_SIZE = 64;
+    private static final int SLOT_CHECKSUMMED_SIZE = 52;
+    private static final int PROLOGUE_SIZE = 2 * SLOT_SIZE;
+    /** Size of a record: the block hash followed by the compactly serialized stored block. */
+    static final int RECORD_SIZE = Sha256Hash.LENGTH + StoredBlock.COMPACT_SERIALIZED_SIZE;
+    /** Number of records the file grows by. */
+    private static final int GROW_RECORDS = 4096;
+    private static final int INITIAL_HASH_TABLE_SIZE = 2 * GROW_RECORDS;
+    // offset of the previous block hash within a record
+    private static final int PREV_HASH_OFFSET = Sha256Hash.LENGTH + StoredBlock.COMPACT_SERIALIZED_SIZE
+            - Block.HEADER_SIZE + 4;
+
+    private static final Logger log = LoggerFactory.getLogger(IndexedBlockStore.class);
+
+    /**
+     * Opens the block store in the given file, creating it with just the genesis block if it doesn't exist. This
+     * operation blocks on disk.
+     */
+    public IndexedBlockStore(final NetworkParameters params, final File file) throws BlockStoreException {
+        this.params = params;
+        final boolean exists = file.exists() && file.length() > 0;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            this.file = randomAccessFile;
+            this.channel = randomAccessFile.getChannel();
+            this.fileLock = channel.tryLock();
+            if (fileLock == null)
+                throw new ChainFileLockedException("Store file is already locked by another process");
+            if (exists) {
+                load();
+            } else {
+                log.info("creating new indexed block store file {}", file);
+                map(GROW_RECORDS);
+                final Block genesis = params.getGenesisBlock().cloneAsHeader();
+                final StoredBlock storedGenesis = new StoredBlock(genesis, genesis.getWork(), 0);
+                put(storedGenesis);
+                setChainHead(storedGenesis);
+            }
+        } catch (final IOException | RuntimeException x) {
+            closeQuietly(randomAccessFile);
+            throw new BlockStoreException(x);
+        } catch (final BlockStoreException x) {
+            closeQuietly(randomAccessFile);
+            throw x;
+        }
+    }
+
+    private void load() throws IOException, BlockStoreException {
+        final long length = channel.size();
+        if (length < PROLOGUE_SIZE)
+            throw new BlockStoreException("File too short for a block store: " + length);
+        final int capacity = (int) ((length - PROLOGUE_SIZE) / RECORD_SIZE);
+        map(capacity);
+
+        // pick the most recent valid head slot
+        int bestSlot = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            if (!isSlotValid(slot, capacity))
+                continue;
+            if (bestSlot == -1 || buffer.getLong(slot * SLOT_SIZE + 4) > buffer.getLong(bestSlot * SLOT_SIZE + 4))
+                bestSlot = slot;
+        }
+        if (bestSlot == -1)
+            throw new BlockStoreException("No valid chain head in block store");
+        final int slotOffset = bestSlot * SLOT_SIZE;
+        headSequence = buffer.getLong(slotOffset + 4);
+        final int head = buffer.getInt(slotOffset + 12);
+        numRecords = buffer.getInt(slotOffset + 16);
+
+        hashTable = new int[tableSizeFor(numRecords)];
+        for (int record = 0; record < numRecords; record++)
+            insert(record);
+        final StoredBlock block = read(head);
+        updateHeightIndex(head, block);
+        headRecord = head;
+        chainHead = block;
+        log.info("opened indexed block store with {} headers, best chain from height {} to {}", numRecords,
+                baseHeight, block.getHeight());
+    }
+
+    private boolean isSlotValid(final int slot, final int capacity) {
+        final int offset = slot * SLOT_SIZE;
+        if (buffer.getInt(offset) != MAGIC)
+            return false;
+        if (buffer.getInt(offset + SLOT_CHECKSUMMED_SIZE) != checksum(offset))
+            return false;
+        final int head = buffer.getInt(offset + 12);
+        final int count = buffer.getInt(offset + 16);
+        if (count < 1 || count > capacity || head < 0 || head >= count)
+            return false;
+        for (int i = 0; i < Sha256Hash.LENGTH; i++)
+            if (buffer.get(offset + 20 + i) != buffer.get(recordOffset(head) + i))
+                return false;
+        return true;
+    }
+
+    @Override
+    public synchronized void put(final StoredBlock block) throws BlockStoreException {
+        checkOpen();
+        final Sha256Hash hash = block.getHeader().getHash();
+        if (find(hash) >= 0)
+            return;
+        final int record = numRecords;
+        if (recordOffset(record + 1) > buffer.capacity()) {
+            try {
+                map(record + GROW_RECORDS);
+            } catch (final IOException x) {
+                throw new BlockStoreException(x);
+            }
+        }
+        buffer.position(recordOffset(record));
+        buffer.put(hash.getBytes());
+        block.serializeCompact(buffer);
+        if ((record + 1) * 2 > hashTable.length)
+            rehash(hashTable.length * 2);
+        numRecords++;
+        insert(record);
+        // the record is only counted once the head slot has been written
+        writeHead();
+    }
+
+    @Override
+    @Nullable
+    public synchronized StoredBlock get(final Sha256Hash hash) throws BlockStoreException {
+        checkOpen();
+        final int record = find(hash);
+        return record >= 0 ? read(record) : null;
+    }
+
+    /**
+     * Looks up the block of the best chain at the given height.
+     *
+     * @return block, or null if the height is outside of the stored part of the best chain
+     */
+    @Nullable
+    public synchronized StoredBlock get(final int height) throws BlockStoreException {
+        checkOpen();
+        if (height < baseHeight || height >= baseHeight + numHeights)
+            return null;
+        return read(heightIndex[height - baseHeight]);
+    }
+
+    /**
+     * Returns the lowest height of the stored part of the best chain, e.g. the height of the checkpoint.
+     */
+    public synchronized int getBaseHeight() {
+        return baseHeight;
+    }
+
+    @Override
+    public synchronized StoredBlock getChainHead() throws BlockStoreException {
+        checkOpen();
+        return chainHead;
+    }
+
+    @Override
+    public synchronized void setChainHead(final StoredBlock chainHead) throws BlockStoreException {
+        checkOpen();
+        final int record = find(chainHead.getHeader().getHash());
+        if (record < 0)
+            throw new BlockStoreException("Chain head not in block store: " + chainHead.getHeader().getHash());
+        updateHeightIndex(record, chainHead);
+        this.headRecord = record;
+        this.chainHead = chainHead;
+        writeHead();
+    }
+
+    @Override
+    public synchronized void close() throws BlockStoreException {
+        if (buffer == null)
+            return;
+        try {
+            buffer.force();
+            buffer = null;
+            fileLock.release();
+            file.close();
+        } catch (final IOException x) {
+            throw new BlockStoreException(x);
+        }
+    }
+
+    @Override
+    public NetworkParameters getParams() {
+        return params;
+    }
+
+    /**
+     * Points the height index to the best chain ending in the given block. Walks back only until it meets a block
+     * that is already indexed at its height, so extending the chain costs one lookup and reorganizations cost one
+     * lookup per replaced block. If the chain ends in a block whose parent isn't stored, e.g. a checkpoint, the index
+     * starts over from that block.
+     */
+    private void updateHeightIndex(final int record, final StoredBlock block) {
+        final int topHeight = block.getHeight();
+        int height = topHeight;
+        int cursor = record;
+        int[] path = new int[] { record };
+        int pathLength = 1;
+        boolean startOver = false;
+        while (true) {
+            final int prev = find(readPrevHash(cursor));
+            if (prev < 0) {
+                startOver = true;
+                break;
+            }
+            height--;
+            if (isIndexed(height, prev))
+                break;
+            if (pathLength == path.length)
+                path = Arrays.copyOf(path, path.length * 2);
+            path[pathLength++] = prev;
+            cursor = prev;
+        }
+        final int lowestHeight = topHeight - pathLength + 1;
+        if (startOver || lowestHeight < baseHeight) {
+            baseHeight = lowestHeight;
+            numHeights = 0;
+        }
+        numHeights = topHeight - baseHeight + 1;
+        if (numHeights > heightIndex.length)
+            heightIndex = Arrays.copyOf(heightIndex, Math.max(numHeights, heightIndex.length * 2));
+        for (int i = 0; i < pathLength; i++)
+            heightIndex[topHeight - i - baseHeight] = path[i];
+    }
+
+    private boolean isIndexed(final int height, final int record) {
+        return height >= baseHeight && height < baseHeight + numHeights && heightIndex[height - baseHeight] == record;
+    }
+
+    private int find(final Sha256Hash hash) {
+        final byte[] bytes = hash.getBytes();
+        final int mask = hashTable.length - 1;
+        for (int i = hash.hashCode() & mask;; i = (i + 1) & mask) {
+            final int value = hashTable[i];
+            if (value == 0)
+                return -1;
+            if (hashEquals(value - 1, bytes))
+                return value - 1;
+        }
+    }
+
+    private void insert(final int record) {
+        final int mask = hashTable.length - 1;
+        // same as Sha256Hash.hashCode()
+        int i = buffer.getInt(recordOffset(record) + Sha256Hash.LENGTH - 4) & mask;
+        while (hashTable[i] != 0)
+            i = (i + 1) & mask;
+        hashTable[i] = record + 1;
+    }
+
+    private void rehash(final int size) {
+        hashTable = new int[size];
+        for (int record = 0; record < numRecords; record++)
+            insert(record);
+    }
+
+    private boolean hashEquals(final int record, final byte[] hash) {
+        final int offset = recordOffset(record);
+        for (int i = Sha256Hash.LENGTH - 1; i >= 0; i--) // leading bytes are mostly zeros
+            if (buffer.get(offset + i) != hash[i])
+                return false;
+        return true;
+    }
+
+    private StoredBlock read(final int record) {
+        buffer.position(recordOffset(record) + Sha256Hash.LENGTH);
+        return StoredBlock.deserializeCompact(params, buffer);
+    }
+
+    private Sha256Hash readPrevHash(final int record) {
+        final byte[] bytes = new byte[Sha256Hash.LENGTH];
+        buffer.position(recordOffset(record) + PREV_HASH_OFFSET);
+        buffer.get(bytes);
+        return Sha256Hash.wrapReversed(bytes);
+    }
+
+    private void writeHead() {
+        headSequence++;
+        final int offset = (int) (headSequence % 2) * SLOT_SIZE;
+        buffer.putInt(offset, MAGIC);
+        buffer.putLong(offset + 4, headSequence);
+        buffer.putInt(offset + 12, headRecord);
+        buffer.putInt(offset + 16, numRecords);
+        buffer.position(offset + 20);
+        buffer.put(chainHead != null ? chainHead.getHeader().getHash().getBytes() : new byte[Sha256Hash.LENGTH]);
+        buffer.putInt(offset + SLOT_CHECKSUMMED_SIZE, checksum(offset));
+    }
+
+    private int checksum(final int offset) {
+        final byte[] bytes = new byte[SLOT_CHECKSUMMED_SIZE];
+        buffer.position(offset);
+        buffer.get(bytes);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private void map(final int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(capacity));
+    }
+
+    private void checkOpen() throws BlockStoreException {
+        if (buffer == null)
+            throw new BlockStoreException("Store closed");
+    }
+
+    private static int recordOffset(final int record) {
+        return PROLOGUE_SIZE + record * RECORD_SIZE;
+    }
+
+    private static int tableSizeFor(final int numRecords) {
+        int size = INITIAL_HASH_TABLE_SIZE;
+        while (size < numRecords * 2)
+            size *= 2;
+        return size;
+    }
+
+    private static void closeQuietly(@Nullable final RandomAccessFile file) {
+        if (file == null)
+            return;
+        try {
+            file.close();
+        } catch (final IOException x) {
+            // swallow
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import com.google.common.util.concurrent.ListenableFuture;
+import de.schildbach.wallet.filters.CompactFiltersPeer;
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.GetDataMessage;
+import org.bitcoinj.core.InventoryItem;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.Ping;
+import org.bitcoinj.core.Pong;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.VersionMessage;
+import org.bitcoinj.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Collects per-peer performance counters, so that the network monitor can show which peers are slowing down sync.
+ *
+ * Stalls and disconnect reasons are not exposed by bitcoinj. A stall is inferred on disconnect by applying the same
+ * moving average as the stall threshold of the {@link PeerGroup} to the block data received from the download peer.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PeerTelemetry {
+    /** Upper bounds of the ping histogram buckets, in milliseconds. The last bucket is open ended. */
+    public static final long[] PING_BUCKET_BOUNDS_MS = { 50, 100, 200, 500, 1000, 2000 };
+    /** Number of disconnected peers to keep the counters of. */
+    private static final int MAX_DISCONNECTED = 20;
+    /** Number of outstanding block requests to track the latency of, per peer. */
+    private static final int MAX_PENDING_BLOCKS = 2000;
+    /** Period at the start of the chain download that cannot stall, mirroring bitcoinj. */
+    private static final int STALL_WARMUP_SECS = 15;
+    /** Size of the header of each message on the wire. */
+    private static final int MESSAGE_HEADER_SIZE = 24;
+
+    public enum DisconnectReason {
+        /** The download speed was below the stall threshold. */
+        STALLED,
+        /** We closed the connection, e.g. because the peer group was stopped. */
+        CLOSED,
+        /** The connection was lost or closed by the peer. */
+        LOST
+    }
+
+    private final int stallPeriodSecs;
+    private final int stallMinBytesPerSec;
+    private final Map<InetSocketAddress, Counters> connected = new HashMap<>();
+    private final ArrayDeque<PeerStats> disconnected = new ArrayDeque<>(MAX_DISCONNECTED);
+
+    private static final Logger log = LoggerFactory.getLogger(PeerTelemetry.class);
+
+    public PeerTelemetry(final int stallPeriodSecs, final int stallMinBytesPerSec) {
+        this.stallPeriodSecs = stallPeriodSecs;
+        this.stallMinBytesPerSec = stallMinBytesPerSec;
+    }
+
+    /**
+     * Creates a peer group that reports to this telemetry, including the messages sent to its peers.
+     *
+     * @param compactFilters
+     *            whether its peers can exchange compact block filter messages, see {@link CompactFiltersPeer}
+     */
+    public PeerGroup createPeerGroup(final NetworkParameters params, final AbstractBlockChain chain,
+            final boolean compactFilters) {
+        final PeerGroup peerGroup = new PeerGroup(params, chain) {
+            private long requiredServices = 0;
+            private int downloadTxDependencyDepth = Integer.MAX_VALUE;
+
+            @Override
+            public void setRequiredServices(final long requiredServices) {
+                this.requiredServices = requiredServices;
+                super.setRequiredServices(requiredServices);
+            }
+
+            @Override
+            public void setDownloadTxDependencies(final int depth) {
+                this.downloadTxDependencyDepth = depth;
+                super.setDownloadTxDependencies(depth);
+            }
+
+            @Override
+            protected Peer createPeer(final PeerAddress address, final VersionMessage ver) {
+                return new CompactFiltersPeer(params, ver, address, chain, requiredServices, downloadTxDependencyDepth,
+                        compactFilters) {
+                    @Override
+                    public ListenableFuture sendMessage(final Message message) {
+                        final ListenableFuture future = super.sendMessage(message);
+                        onMessageSent(this, message, System.currentTimeMillis());
+                        return future;
+                    }
+                };
+            }
+        };
+        peerGroup.addConnectedEventListener(Threading.SAME_THREAD,
+                (peer, peerCount) -> onConnected(peer, System.currentTimeMillis()));
+        peerGroup.addDisconnectedEventListener(Threading.SAME_THREAD,
+                (peer, peerCount) -> onDisconnected(peer, System.currentTimeMillis()));
+        peerGroup.addPreMessageReceivedEventListener(Threading.SAME_THREAD, (peer, message) -> {
+            onMessageReceived(peer, message, System.currentTimeMillis());
+            return message;
+        });
+        peerGroup.addChainDownloadStartedEventListener(Threading.SAME_THREAD,
+                (peer, blocksLeft) -> onChainDownloadStarted(peer, blocksLeft, System.currentTimeMillis()));
+        peerGroup.addBlocksDownloadedEventListener(Threading.SAME_THREAD,
+                (peer, block, filteredBlock, blocksLeft) -> onBlocksDownloaded(peer, blocksLeft));
+        return peerGroup;
+    }
+
+    /**
+     * Marks the currently connected peers as being closed by us, e.g. because the peer group is about to be stopped.
+     */
+    public synchronized void expectDisconnects() {
+        for (final Counters counters : connected.values())
+            counters.closing = true;
+    }
+
+    /**
+     * Returns the counters of the connected peers, followed by the ones of recently disconnected peers, most recent
+     * first.
+     */
+    public synchronized List<PeerStats> getStats() {
+        final long now = System.currentTimeMillis();
+        final List<PeerStats> stats = new ArrayList<>(connected.size() + disconnected.size());
+        for (final Counters counters : connected.values())
+            stats.add(new PeerStats(counters, now, null));
+        stats.addAll(disconnected);
+        return stats;
+    }
+
+    synchronized void onConnected(final Peer peer, final long now) {
+        final InetSocketAddress address = peer.getAddress().getSocketAddress();
+        connected.put(address, new Counters(address, now, stallPeriodSecs));
+    }
+
+    synchronized void onDisconnected(final Peer peer, final long now) {
+        final Counters counters = connected.remove(peer.getAddress().getSocketAddress());
+        if (counters == null)
+            return;
+        final DisconnectReason reason;
+        if (isStalled(counters, now))
+            reason = DisconnectReason.STALLED;
+        else if (counters.closing)
+            reason = DisconnectReason.CLOSED;
+        else
+            reason = DisconnectReason.LOST;
+        if (reason == DisconnectReason.STALLED)
+            log.info("peer {} disconnected after stalling", counters.address);
+        if (disconnected.size() == MAX_DISCONNECTED)
+            disconnected.removeLast();
+        disconnected.addFirst(new PeerStats(counters, now, reason));
+    }
+
+    synchronized void onChainDownloadStarted(final Peer peer, final int blocksLeft, final long now) {
+        final Counters counters = connected.get(peer.getAddress().getSocketAddress());
+        if (counters == null)
+            return;
+        counters.downloading = blocksLeft > 0;
+        counters.downloadStartedAt = now;
+    }
+
+    synchronized void onBlocksDownloaded(final Peer peer, final int blocksLeft) {
+        final Counters counters = connected.get(peer.getAddress().getSocketAddress());
+        if (counters != null && blocksLeft == 0)
+            counters.downloading = false;
+    }
+
+    synchronized void onMessageReceived(final Peer peer, final Message message, final long now) {
+        final Counters counters = connected.get(peer.getAddress().getSocketAddress());
+        if (counters == null)
+            return;
+        final int size = MESSAGE_HEADER_SIZE + message.getMessageSize();
+        counters.messagesIn++;
+        counters.bytesIn += size;
+        final Sha256Hash blockHash;
+        if (message instanceof FilteredBlock) {
+            counters.filteredBlocks++;
+            blockHash = ((FilteredBlock) message).getHash();
+        } else if (message instanceof Block) {
+            counters.blocks++;
+            blockHash = ((Block) message).getHash();
+        } else {
+            blockHash = null;
+        }
+        if (blockHash != null || message instanceof Transaction)
+            counters.addDownloadBytes(now, size);
+        if (blockHash != null) {
+            final Long requestedAt = counters.pendingBlocks.remove(blockHash);
+            if (requestedAt != null)
+                counters.addBlockLatency(now - requestedAt);
+        } else if (message instanceof Pong) {
+            final Long pingedAt = counters.pendingPings.remove(((Pong) message).getNonce());
+            if (pingedAt != null)
+                counters.addPing(now - pingedAt);
+        }
+    }
+
+    synchronized void onMessageSent(final Peer peer, final Message message, final long now) {
+        final Counters counters = connected.get(peer.getAddress().getSocketAddress());
+        if (counters == null)
+            return;
+        counters.messagesOut++;
+        counters.bytesOut += MESSAGE_HEADER_SIZE + message.getMessageSize();
+        if (message instanceof GetDataMessage) {
+            for (final InventoryItem item : ((GetDataMessage) message).getItems())
+                if (isBlock(item.type))
+                    counters.pendingBlocks.put(item.hash, now);
+        } else if (message instanceof Ping) {
+            counters.pendingPings.clear(); // unanswered pings are obsolete
+            counters.pendingPings.put(((Ping) message).getNonce(), now);
+        }
+    }
+
+    private boolean isStalled(final Counters counters, final long now) {
+        if (!counters.downloading)
+            return false;
+        if (now - counters.downloadStartedAt < (stallPeriodSecs + STALL_WARMUP_SECS) * 1000L)
+            return false;
+        counters.advanceDownloadSecond(now / 1000);
+        long bytes = 0;
+        for (final long sample : counters.downloadBytes)
+            bytes += sample;
+        return bytes / stallPeriodSecs < stallMinBytesPerSec;
+    }
+
+    private static boolean isBlock(final InventoryItem.Type type) {
+        return type == InventoryItem.Type.BLOCK || type == InventoryItem.Type.FILTERED_BLOCK
+                || type == InventoryItem.Type.WITNESS_BLOCK || type == InventoryItem.Type.WITNESS_FILTERED_BLOCK;
+    }
+
+    /**
+     * Formats the given counters as plain text, e.g. for sharing.
+     */
+    public static String toText(final List<PeerStats> stats) {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final StringBuilder text = new StringBuilder();
+        for (final PeerStats peer : stats) {
+            text.append(peer.address.getAddress().getHostAddress()).append(':').append(peer.address.getPort());
+            text.append("\n  connected: ").append(dateFormat.format(new Date(peer.connectedAt))).append(" UTC, ")
+                    .append((peer.until - peer.connectedAt) / 1000).append(" s");
+            if (peer.disconnectReason != null)
+                text.append(", disconnected: ").append(peer.disconnectReason.name().toLowerCase(Locale.US));
+            else if (peer.downloading)
+                text.append(", downloading");
+            text.append("\n  in: ").append(peer.bytesIn).append(" bytes, ").append(peer.messagesIn)
+                    .append(" messages");
+            text.append("\n  out: ").append(peer.bytesOut).append(" bytes, ").append(peer.messagesOut)
+                    .append(" messages");
+            text.append("\n  blocks: ").append(peer.blocks).append(", filtered blocks: ").append(peer.filteredBlocks);
+            if (peer.blockLatencyCount > 0)
+                text.append(", latency: avg ").append(peer.averageBlockLatencyMs()).append(" ms, max ")
+                        .append(peer.maxBlockLatencyMs).append(" ms");
+            text.append("\n  ping:");
+            for (int i = 0; i < peer.pingHistogram.length; i++) {
+                if (i < PING_BUCKET_BOUNDS_MS.length)
+                    text.append(" <").append(PING_BUCKET_BOUNDS_MS[i]);
+                else
+                    text.append(" >=").append(PING_BUCKET_BOUNDS_MS[PING_BUCKET_BOUNDS_MS.length - 1]);
+                text.append("ms: ").append(peer.pingHistogram[i]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Immutable snapshot of the counters of one peer connection.
+     */
+    public static final class PeerStats {
+        public final InetSocketAddress address;
+        public final long connectedAt;
+        /** Time of the snapshot, or of the disconnect. */
+        public final long until;
+        @Nullable
+        public final DisconnectReason disconnectReason;
+        public final boolean downloading;
+        public final long bytesIn;
+        public final long bytesOut;
+        public final long messagesIn;
+        public final long messagesOut;
+        public final int blocks;
+        public final int filteredBlocks;
+        public final int blockLatencyCount;
+        public final long totalBlockLatencyMs;
+        public final long maxBlockLatencyMs;
+        /** Number of pings per bucket, see {@link #PING_BUCKET_BOUNDS_MS}. */
+        public final int[] pingHistogram;
+
+        private PeerStats(final Counters counters, final long until,
+                @Nullable final DisconnectReason disconnectReason) {
+            this.address = counters.address;
+            this.connectedAt = counters.connectedAt;
+            this.until = until;
+            this.disconnectReason = disconnectReason;
+            this.downloading = counters.downloading;
+            this.bytesIn = counters.bytesIn;
+            this.bytesOut = counters.bytesOut;
+            this.messagesIn = counters.messagesIn;
+            this.messagesOut = counters.messagesOut;
+            this.blocks = counters.blocks;
+            this.filteredBlocks = counters.filteredBlocks;
+            this.blockLatencyCount = counters.blockLatencyCount;
+            this.totalBlockLatencyMs = counters.totalBlockLatencyMs;
+            this.maxBlockLatencyMs = counters.maxBlockLatencyMs;
+            this.pingHistogram = counters.pingHistogram.clone();
+        }
+
+        public boolean isConnected() {
+            return disconnectReason == null;
+        }
+
+        public long averageBlockLatencyMs() {
+            return blockLatencyCount > 0 ? totalBlockLatencyMs / blockLatencyCount : 0;
+        }
+    }
+
+    private static final class Counters {
+        final InetSocketAddress address;
+        final long connectedAt;
+        boolean closing = false;
+        boolean downloading = false;
+        long downloadStartedAt;
+        long bytesIn, bytesOut, messagesIn, messagesOut;
+        int blocks, filteredBlocks;
+        int blockLatencyCount;
+        long totalBlockLatencyMs, maxBlockLatencyMs;
+        final int[] pingHistogram = new int[PING_BUCKET_BOUNDS_MS.length + 1];
+        final Map<Sha256Hash, Long> pendingBlocks = new LinkedHashMap<Sha256Hash, Long>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, Long> eldest) {
+                return size() > MAX_PENDING_BLOCKS;
+            }
+        };
+        final Map<Long, Long> pendingPings = new HashMap<>();
+        // bytes of block data received per second, as a ring buffer over the stall period
+        final long[] downloadBytes;
+        long downloadSecond;
+
+        Counters(final InetSocketAddress address, final long connectedAt, final int stallPeriodSecs) {
+            this.address = address;
+            this.connectedAt = connectedAt;
+            this.downloadBytes = new long[stallPeriodSecs];
+            this.downloadSecond = connectedAt / 1000;
+        }
+
+        void addDownloadBytes(final long now, final int bytes) {
+            final long second = now / 1000;
+            advanceDownloadSecond(second);
+            downloadBytes[(int) (second % downloadBytes.length)] += bytes;
+        }
+
+        void advanceDownloadSecond(final long second) {
+            final long elapsed = Math.min(second - downloadSecond, downloadBytes.length);
+            for (long s = second - elapsed + 1; s <= second; s++)
+                downloadBytes[(int) (s % downloadBytes.length)] = 0;
+            if (second > downloadSecond)
+                downloadSecond = second;
+        }
+
+        void addBlockLatency(final long latencyMs) {
+            blockLatencyCount++;
+            totalBlockLatencyMs += latencyMs;
+            maxBlockLatencyMs = Math.max(maxBlockLatencyMs, latencyMs);
+        }
+
+        void addPing(final long pingMs) {
+            int bucket = 0;
+            while (bucket < PING_BUCKET_BOUNDS_MS.length && pingMs >= PING_BUCKET_BOUNDS_MS[bucket])
+                bucket++;
+            pingHistogram[bucket]++;
+        }
+    }
+}
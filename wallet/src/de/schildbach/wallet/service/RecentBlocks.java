@@ -0,0 +1,133 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.listeners.NewBestBlockListener;
+import org.bitcoinj.core.listeners.ReorganizeListener;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.BlockStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Ring buffer of the most recent blocks of the best chain, so that they can be listed without reading the block
+ * store. It's filled from the block store once and then follows the block chain via its listeners.
+ *
+ * @author Andreas Schildbach
+ */
+final class RecentBlocks implements NewBestBlockListener, ReorganizeListener {
+    private final StoredBlock[] blocks;
+    private int head = -1;
+    private int size = 0;
+    private List<StoredBlock> snapshot = null;
+
+    private static final Logger log = LoggerFactory.getLogger(RecentBlocks.class);
+
+    public RecentBlocks(final int capacity) {
+        this.blocks = new StoredBlock[capacity];
+    }
+
+    /**
+     * Replaces the content by walking back from the given chain head.
+     */
+    public synchronized void fill(final StoredBlock chainHead, final BlockStore blockStore) {
+        final List<StoredBlock> descending = new ArrayList<>(blocks.length);
+        StoredBlock block = chainHead;
+        while (block != null && descending.size() < blocks.length) {
+            descending.add(block);
+            try {
+                block = block.getPrev(blockStore);
+            } catch (final BlockStoreException x) {
+                log.info("skipping blocks because of exception", x);
+                break;
+            }
+        }
+        clear();
+        for (int i = descending.size() - 1; i >= 0; i--)
+            push(descending.get(i));
+    }
+
+    @Override
+    public synchronized void notifyNewBestBlock(final StoredBlock block) {
+        if (size > 0) {
+            final Sha256Hash prevHash = block.getHeader().getPrevBlockHash();
+            if (!blocks[head].getHeader().getHash().equals(prevHash)) {
+                log.info("block {} does not connect to recent blocks, starting over", block.getHeight());
+                clear();
+            }
+        }
+        push(block);
+    }
+
+    @Override
+    public synchronized void reorganize(final StoredBlock splitPoint, final List<StoredBlock> oldBlocks,
+            final List<StoredBlock> newBlocks) {
+        while (size > 0 && blocks[head].getHeight() > splitPoint.getHeight())
+            pop();
+        if (size == 0)
+            push(splitPoint);
+        // new blocks are ordered from the new chain head downwards
+        for (final ListIterator<StoredBlock> i = newBlocks.listIterator(newBlocks.size()); i.hasPrevious();)
+            push(i.previous());
+    }
+
+    /**
+     * Returns the recent blocks, starting with the chain head.
+     *
+     * @return immutable list of blocks, which is not affected by later changes
+     */
+    public synchronized List<StoredBlock> get() {
+        if (snapshot == null) {
+            final List<StoredBlock> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                list.add(blocks[Math.floorMod(head - i, blocks.length)]);
+            snapshot = Collections.unmodifiableList(list);
+        }
+        return snapshot;
+    }
+
+    private void push(final StoredBlock block) {
+        head = (head + 1) % blocks.length;
+        blocks[head] = block;
+        if (size < blocks.length)
+            size++;
+        snapshot = null;
+    }
+
+    private void pop() {
+        blocks[head] = null;
+        head = Math.floorMod(head - 1, blocks.length);
+        size--;
+        snapshot = null;
+    }
+
+    private void clear() {
+        Arrays.fill(blocks, null);
+        head = -1;
+        size = 0;
+        snapshot = null;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import androidx.annotation.Nullable;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.bitcoinj.core.VerificationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs tasks consisting of requests to several sources, usually connected peers, keeping one request in flight per
+ * source and the lowest tasks first. Sources failing or not responding in time are dropped, and their task is retried
+ * on another source.
+ *
+ * @author Andreas Schildbach
+ */
+final class RequestScheduler<S> {
+    abstract static class Task<S> implements Comparable<Task<S>> {
+        final int index;
+
+        Task(final int index) {
+            this.index = index;
+        }
+
+        /** Sends the next request of this task to the given source. */
+        abstract ListenableFuture<?> request(S source);
+
+        /**
+         * Processes the response to the last request.
+         *
+         * @return true if the task is done, false if there is more to request
+         */
+        abstract boolean onResponse(S source, Object response) throws VerificationException;
+
+        /** Discards what has been received from a source that turned out to be unusable. */
+        void reset() {
+        }
+
+        /** Whether the next request of this task may go to the given source, e.g. for asking a different one. */
+        boolean canRequest(final S source) {
+            return true;
+        }
+
+        @Override
+        public int compareTo(final Task<S> other) {
+            return Integer.compare(index, other.index);
+        }
+    }
+
+    private final long requestTimeoutMs;
+    private final BooleanSupplier stop;
+
+    private static final long POLL_MS = 200;
+
+    private static final Logger log = LoggerFactory.getLogger(RequestScheduler.class);
+
+    /**
+     * @param stop
+     *            makes {@link #execute(List, List, IntSupplier, Runnable)} return false as soon as it is true
+     */
+    RequestScheduler(final long requestTimeoutMs, final BooleanSupplier stop) {
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.stop = stop;
+    }
+
+    private final class Request {
+        final S source;
+        final Task<S> task;
+        final ListenableFuture<?> future;
+        final long sentAt;
+
+        Request(final S source, final Task<S> task) {
+            this.source = source;
+            this.task = task;
+            this.future = task.request(source);
+            this.sentAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Runs the given tasks, which must have distinct indexes.
+     *
+     * @param sources
+     *            sources to use; dropped sources are removed
+     * @param maxIndex
+     *            tasks at or above this index are held back
+     * @return true if all tasks are done, false if stopped or no sources are left
+     */
+    boolean execute(final List<? extends Task<S>> tasks, final List<S> sources, final IntSupplier maxIndex,
+            final Runnable afterResponse) throws InterruptedException {
+        final TreeSet<Task<S>> waiting = new TreeSet<>(tasks);
+        final Map<S, Request> inFlight = new HashMap<>();
+        final BlockingQueue<Request> responses = new LinkedBlockingQueue<>();
+        int remaining = tasks.size();
+        try {
+            while (remaining > 0) {
+                if (stop.getAsBoolean())
+                    return false;
+                for (final S source : sources) {
+                    if (!inFlight.containsKey(source)) {
+                        final Task<S> next = nextTask(waiting, source, maxIndex.getAsInt());
+                        if (next != null)
+                            send(source, next, inFlight, responses);
+                    }
+                }
+                if (inFlight.isEmpty()) {
+                    log.info("no usable sources left, {} of {} tasks remaining", remaining, tasks.size());
+                    return false;
+                }
+
+                final Request response = responses.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (response == null) {
+                    final long now = System.currentTimeMillis();
+                    for (final Request request : new ArrayList<>(inFlight.values())) {
+                        if (now - request.sentAt > requestTimeoutMs)
+                            drop(request, "timed out", null, inFlight, sources, waiting);
+                    }
+                    continue;
+                }
+                if (inFlight.get(response.source) != response)
+                    continue; // already dropped
+                inFlight.remove(response.source);
+                try {
+                    if (response.task.onResponse(response.source, Futures.getDone(response.future)))
+                        remaining--;
+                    else if (response.task.canRequest(response.source))
+                        send(response.source, response.task, inFlight, responses);
+                    else
+                        waiting.add(response.task);
+                    afterResponse.run();
+                } catch (final ExecutionException | CancellationException x) {
+                    drop(response, "failed", x.getCause() != null ? x.getCause() : x, inFlight, sources, waiting);
+                } catch (final VerificationException x) {
+                    drop(response, "sent invalid data", x, inFlight, sources, waiting);
+                }
+            }
+            return !stop.getAsBoolean();
+        } finally {
+            // abandon requests still in flight, also when interrupted
+            cancelAll(inFlight);
+        }
+    }
+
+    @Nullable
+    private Task<S> nextTask(final TreeSet<Task<S>> waiting, final S source, final int maxIndex) {
+        for (final Iterator<Task<S>> i = waiting.iterator(); i.hasNext();) {
+            final Task<S> task = i.next();
+            if (task.index >= maxIndex)
+                return null;
+            if (task.canRequest(source)) {
+                i.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private void send(final S source, final Task<S> task, final Map<S, Request> inFlight,
+            final BlockingQueue<Request> responses) {
+        final Request request = new Request(source, task);
+        inFlight.put(source, request);
+        request.future.addListener(() -> responses.add(request), MoreExecutors.directExecutor());
+    }
+
+    private void drop(final Request request, final String reason, @Nullable final Throwable cause,
+            final Map<S, Request> inFlight, final List<S> sources, final TreeSet<Task<S>> waiting) {
+        log.info("dropping source {}: {}", request.source, reason, cause);
+        inFlight.remove(request.source);
+        request.future.cancel(false);
+        sources.remove(request.source);
+        request.task.reset();
+        waiting.add(request.task);
+    }
+
+    private void cancelAll(final Map<S, Request> inFlight) {
+        for (final Request request : inFlight.values())
+            request.future.cancel(false);
+        inFlight.clear();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of wallet transactions by the blocks they appear in, so that the transactions of a block can be looked up
+ * without looking at all transactions. It's updated per transaction as their block appearances change, and rebuilt
+ * after reorganizations.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BlockTransactionIndex {
+    private final Map<Sha256Hash, List<Transaction>> transactionsByBlock = new HashMap<>();
+    private final Map<Sha256Hash, Set<Sha256Hash>> blocksByTransaction = new HashMap<>();
+
+    /**
+     * Replaces the index with the given transactions.
+     */
+    public synchronized void rebuild(final Collection<Transaction> transactions) {
+        transactionsByBlock.clear();
+        blocksByTransaction.clear();
+        for (final Transaction tx : transactions)
+            add(tx);
+    }
+
+    /**
+     * Updates the index for a transaction whose block appearances might have changed.
+     *
+     * @return true if the index changed
+     */
+    public synchronized boolean update(final Transaction tx) {
+        final Set<Sha256Hash> blocks = appearsIn(tx);
+        final Set<Sha256Hash> previousBlocks = blocksByTransaction.get(tx.getTxId());
+        if (previousBlocks == null ? blocks.isEmpty() : previousBlocks.equals(blocks))
+            return false;
+        remove(tx.getTxId());
+        add(tx);
+        return true;
+    }
+
+    public synchronized void remove(final Sha256Hash txId) {
+        final Set<Sha256Hash> blocks = blocksByTransaction.remove(txId);
+        if (blocks == null)
+            return;
+        for (final Sha256Hash blockHash : blocks) {
+            final List<Transaction> transactions = transactionsByBlock.get(blockHash);
+            for (int i = 0; i < transactions.size(); i++) {
+                if (transactions.get(i).getTxId().equals(txId)) {
+                    transactions.remove(i);
+                    break;
+                }
+            }
+            if (transactions.isEmpty())
+                transactionsByBlock.remove(blockHash);
+        }
+    }
+
+    /**
+     * Looks up the wallet transactions appearing in the given block.
+     */
+    public synchronized List<Transaction> get(final Sha256Hash blockHash) {
+        final List<Transaction> transactions = transactionsByBlock.get(blockHash);
+        return transactions != null ? new ArrayList<>(transactions) : Collections.emptyList();
+    }
+
+    public synchronized int size() {
+        return blocksByTransaction.size();
+    }
+
+    private void add(final Transaction tx) {
+        final Set<Sha256Hash> blocks = appearsIn(tx);
+        if (blocks.isEmpty())
+            return;
+        blocksByTransaction.put(tx.getTxId(), blocks);
+        for (final Sha256Hash blockHash : blocks) {
+            List<Transaction> transactions = transactionsByBlock.get(blockHash);
+            if (transactions == null) {
+                // most blocks contain just one wallet transaction
+                transactions = new ArrayList<>(1);
+                transactionsByBlock.put(blockHash, transactions);
+            }
+            transactions.add(tx);
+        }
+    }
+
+    private static Set<Sha256Hash> appearsIn(final Transaction tx) {
+        final Map<Sha256Hash, Integer> appearsInHashes = tx.getAppearsInHashes();
+        return appearsInHashes != null ? new HashSet<>(appearsInHashes.keySet()) : Collections.emptySet();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.utils.ExchangeRate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Items built from transactions, keyed by transaction id. Items are only rebuilt for transactions that were added
+ * or whose displayed state changed. The items are not kept in any order; the database orders them when they are
+ * queried.
+ *
+ * @author Andreas Schildbach
+ */
+public final class IncrementalTransactionList<T> {
+    public interface ItemFactory<T> {
+        T build(Transaction tx);
+    }
+
+    private final int maxDepth;
+    private final int maxCoinbaseDepth;
+    private Map<Sha256Hash, Transaction> transactions = Collections.emptyMap();
+    private final Map<Sha256Hash, Entry<T>> entries = new HashMap<>();
+    private final Set<Sha256Hash> maybeChanged = new HashSet<>();
+    private final Set<Sha256Hash> changed = new HashSet<>();
+
+    /**
+     * @param maxDepth
+     *            depth in blocks from which on further confirmations don't change the item
+     * @param maxCoinbaseDepth
+     *            same as {@code maxDepth}, but for coinbase transactions
+     */
+    public IncrementalTransactionList(final int maxDepth, final int maxCoinbaseDepth) {
+        this.maxDepth = maxDepth;
+        this.maxCoinbaseDepth = maxCoinbaseDepth;
+    }
+
+    /**
+     * Replaces the set of transactions. New transactions and transactions whose state changed will be built on the
+     * next {@link #update(ItemFactory)}, missing ones will be removed.
+     */
+    public synchronized void setTransactions(final Collection<Transaction> transactions) {
+        final Map<Sha256Hash, Transaction> map = new HashMap<>(transactions.size());
+        for (final Transaction tx : transactions)
+            map.put(tx.getTxId(), tx);
+        for (final Sha256Hash txId : entries.keySet())
+            if (!map.containsKey(txId))
+                changed.add(txId);
+        for (final Transaction tx : transactions)
+            maybeChanged.add(tx.getTxId());
+        this.transactions = map;
+    }
+
+    /**
+     * Marks the given transactions, e.g. because their confidence changed. They will only be rebuilt if their
+     * displayed state changed.
+     */
+    public synchronized void invalidate(final Collection<Sha256Hash> txIds) {
+        maybeChanged.addAll(txIds);
+    }
+
+    /**
+     * Rebuilds what's necessary.
+     *
+     * @return all items, in no particular order
+     */
+    public synchronized List<T> update(final ItemFactory<T> factory) {
+        for (final Sha256Hash txId : maybeChanged) {
+            if (changed.contains(txId))
+                continue;
+            final Transaction tx = transactions.get(txId);
+            final Entry<T> entry = entries.get(txId);
+            if (tx == null || entry == null || entry.tx != tx
+                    || !entry.state.equals(new State(tx, maxDepth, maxCoinbaseDepth)))
+                changed.add(txId);
+        }
+        for (final Sha256Hash txId : changed) {
+            entries.remove(txId);
+            final Transaction tx = transactions.get(txId);
+            if (tx != null)
+                entries.put(txId, new Entry<>(tx, new State(tx, maxDepth, maxCoinbaseDepth), factory.build(tx)));
+        }
+        maybeChanged.clear();
+        changed.clear();
+
+        final List<T> items = new ArrayList<>(entries.size());
+        for (final Entry<T> entry : entries.values())
+            items.add(entry.item);
+        return items;
+    }
+
+    private static final class Entry<T> {
+        final Transaction tx;
+        final State state;
+        final T item;
+
+        Entry(final Transaction tx, final State state, final T item) {
+            this.tx = tx;
+            this.state = state;
+            this.item = item;
+        }
+    }
+
+    /**
+     * The mutable parts of a transaction that are displayed or used for ordering, captured at the time an item is
+     * built.
+     */
+    private static final class State {
+        final Sha256Hash txId;
+        final long time;
+        final ConfidenceType confidenceType;
+        final int depth;
+        final int numBroadcastPeers;
+        final TransactionConfidence.Source source;
+        final Transaction.Purpose purpose;
+        final String memo;
+        final ExchangeRate exchangeRate;
+
+        State(final Transaction tx, final int maxDepth, final int maxCoinbaseDepth) {
+            final TransactionConfidence confidence = tx.getConfidence();
+            this.txId = tx.getTxId();
+            this.confidenceType = confidence.getConfidenceType();
+            final Date updateTime = tx.getUpdateTime();
+            this.time = updateTime != null ? updateTime.getTime() : 0;
+            this.depth = confidenceType == ConfidenceType.BUILDING ?
+                    Math.min(confidence.getDepthInBlocks(), tx.isCoinBase() ? maxCoinbaseDepth : maxDepth) : 0;
+            this.numBroadcastPeers = confidence.numBroadcastPeers();
+            this.source = confidence.getSource();
+            this.purpose = tx.getPurpose();
+            this.memo = tx.getMemo();
+            this.exchangeRate = tx.getExchangeRate();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            final State other = (State) o;
+            return txId.equals(other.txId) && time == other.time
+                    && confidenceType == other.confidenceType && depth == other.depth
+                    && numBroadcastPeers == other.numBroadcastPeers && source == other.source
+                    && purpose == other.purpose && Objects.equals(memo, other.memo)
+                    && Objects.equals(exchangeRate, other.exchangeRate);
+        }
+
+        @Override
+        public int hashCode() {
+            return txId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Dao
+public interface TransactionDao {
+    /** SQLite limits the number of bound variables per statement */
+    int MAX_BIND_ARGS = 500;
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertOrUpdate(List<TransactionEntry> entries);
+
+    @Query("DELETE FROM transactions WHERE txid IN (:txIds)")
+    void delete(List<String> txIds);
+
+    /**
+     * Applies a batch of changes in one database transaction, so that observers are only invalidated once.
+     */
+    @Transaction
+    default void update(final List<TransactionEntry> changed, final List<String> removedTxIds) {
+        if (!changed.isEmpty())
+            insertOrUpdate(changed);
+        for (int i = 0; i < removedTxIds.size(); i += MAX_BIND_ARGS)
+            delete(removedTxIds.subList(i, Math.min(i + MAX_BIND_ARGS, removedTxIds.size())));
+    }
+
+    @Query("SELECT * FROM transactions")
+    List<TransactionEntry> getAll();
+
+    @Query("SELECT * FROM transactions ORDER BY pending DESC, update_time DESC, txid")
+    DataSource.Factory<Integer, TransactionEntry> findAll();
+
+    @Query("SELECT * FROM transactions WHERE direction = :direction ORDER BY pending DESC, update_time DESC, txid")
+    DataSource.Factory<Integer, TransactionEntry> findByDirection(int direction);
+
+    @Query("SELECT COUNT(*) FROM transactions")
+    LiveData<Integer> findCount();
+
+    @Query("SELECT COUNT(*) FROM transactions")
+    int count();
+
+    /**
+     * Reads a page of rows, oldest first, starting after the given row. Unlike offsets, this doesn't skip or repeat
+     * rows if the table changes between pages.
+     */
+    @Query("SELECT * FROM transactions WHERE update_time > :updateTime OR (update_time = :updateTime AND txid > :txId) "
+            + "ORDER BY update_time, txid LIMIT :limit")
+    List<TransactionEntry> getPageAfter(long updateTime, String txId, int limit);
+
+    @Query("DELETE FROM transactions")
+    void deleteAll();
+}
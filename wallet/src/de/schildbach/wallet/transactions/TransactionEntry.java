@@ -0,0 +1,159 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Objects;
+
+/**
+ * Row of the transaction mirror, holding just what's needed to sort, filter and page the transaction list.
+ *
+ * @author Andreas Schildbach
+ */
+@Entity(tableName = TransactionEntry.TABLE_NAME, indices = { @Index({ "pending", "update_time" }),
+        @Index({ "update_time", "txid" }), @Index("direction"), @Index("value"), @Index("confidence_type"),
+        @Index("address") })
+public class TransactionEntry {
+    public static final String TABLE_NAME = "transactions";
+
+    public static final int DIRECTION_RECEIVED = 0;
+    public static final int DIRECTION_SENT = 1;
+    /** transactions that don't move funds out of the wallet, e.g. key rotation */
+    public static final int DIRECTION_INTERNAL = 2;
+
+    @NonNull
+    @PrimaryKey
+    @ColumnInfo(name = "txid")
+    private String txId;
+
+    @ColumnInfo(name = "update_time")
+    private long updateTime;
+
+    @ColumnInfo(name = "pending")
+    private boolean pending;
+
+    @ColumnInfo(name = "direction")
+    private int direction;
+
+    /** value in satoshis, negative if sent */
+    @ColumnInfo(name = "value")
+    private long value;
+
+    @NonNull
+    @ColumnInfo(name = "confidence_type")
+    private String confidenceType;
+
+    /** depth in blocks, capped where further confirmations don't matter */
+    @ColumnInfo(name = "depth")
+    private int depth;
+
+    @ColumnInfo(name = "broadcast_peers")
+    private int broadcastPeers;
+
+    /** counterparty address, or own address for received transactions */
+    @Nullable
+    @ColumnInfo(name = "address")
+    private String address;
+
+    /** sanitized memo, lines separated by newlines, so that rows can be searched without their transaction */
+    @Nullable
+    @ColumnInfo(name = "memo")
+    private String memo;
+
+    public TransactionEntry(final String txId, final long updateTime, final boolean pending, final int direction,
+            final long value, final String confidenceType, final int depth, final int broadcastPeers,
+            @Nullable final String address, @Nullable final String memo) {
+        this.txId = txId;
+        this.updateTime = updateTime;
+        this.pending = pending;
+        this.direction = direction;
+        this.value = value;
+        this.confidenceType = confidenceType;
+        this.depth = depth;
+        this.broadcastPeers = broadcastPeers;
+        this.address = address;
+        this.memo = memo;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public String getConfidenceType() {
+        return confidenceType;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getBroadcastPeers() {
+        return broadcastPeers;
+    }
+
+    @Nullable
+    public String getAddress() {
+        return address;
+    }
+
+    @Nullable
+    public String getMemo() {
+        return memo;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        final TransactionEntry other = (TransactionEntry) o;
+        return txId.equals(other.txId) && updateTime == other.updateTime && pending == other.pending
+                && direction == other.direction && value == other.value
+                && confidenceType.equals(other.confidenceType) && depth == other.depth
+                && broadcastPeers == other.broadcastPeers && Objects.equals(address, other.address)
+                && Objects.equals(memo, other.memo);
+    }
+
+    @Override
+    public int hashCode() {
+        return txId.hashCode();
+    }
+}
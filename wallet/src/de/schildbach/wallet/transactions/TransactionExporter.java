@@ -0,0 +1,223 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Joiner;
+import com.squareup.moshi.JsonWriter;
+import de.schildbach.wallet.addressbook.AddressBookEntry;
+import okio.BufferedSink;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.utils.ExchangeRate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the transaction history as CSV or JSON, streaming transaction by transaction, so that memory use doesn't
+ * grow with the size of the history. Rows are read from the transactions database page by page, oldest first.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionExporter {
+    public enum Format {
+        CSV("text/csv", "csv"), JSON("application/json", "json");
+
+        public final String mimeType;
+        public final String fileExtension;
+
+        Format(final String mimeType, final String fileExtension) {
+            this.mimeType = mimeType;
+            this.fileExtension = fileExtension;
+        }
+    }
+
+    public interface ProgressListener {
+        void onProgress(int numExported, int numTotal);
+    }
+
+    private final BufferedSink sink;
+    private final Format format;
+    private final boolean includeFiat;
+    @Nullable
+    private final Map<String, AddressBookEntry> addressBook;
+    @Nullable
+    private final JsonWriter json;
+
+    /** Number of rows read from the database at once. */
+    private static final int PAGE_SIZE = 500;
+
+    private static final String[] COLUMNS = { "date", "txid", "direction", "value", "fee", "counterparty", "label",
+            "memo", "confirmations" };
+    private static final String[] FIAT_COLUMNS = { "fiat_value", "fiat_currency" };
+    private static final Joiner MEMO_JOINER = Joiner.on('\n');
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionExporter.class);
+
+    public TransactionExporter(final BufferedSink sink, final Format format, final boolean includeFiat,
+            @Nullable final Map<String, AddressBookEntry> addressBook) {
+        this.sink = sink;
+        this.format = format;
+        this.includeFiat = includeFiat;
+        this.addressBook = addressBook;
+        this.json = format == Format.JSON ? JsonWriter.of(sink) : null;
+    }
+
+    /**
+     * Exports all rows of the transactions database, looking up their transactions in the mirror.
+     *
+     * @return number of transactions exported
+     */
+    public int exportAll(final TransactionDao dao, final TransactionMirror mirror,
+            final TransactionInfoCache infoCache, @Nullable final ProgressListener progressListener)
+            throws IOException {
+        final int numTotal = dao.count();
+        int numExported = 0;
+        begin();
+        long updateTime = Long.MIN_VALUE;
+        String txId = "";
+        while (true) {
+            final List<TransactionEntry> page = dao.getPageAfter(updateTime, txId, PAGE_SIZE);
+            for (final TransactionEntry entry : page) {
+                final Transaction tx = mirror.getTransaction(Sha256Hash.wrap(entry.getTxId()));
+                if (tx != null) {
+                    write(entry, tx, infoCache.get(tx));
+                    numExported++;
+                } else {
+                    log.info("transaction {} vanished while exporting, skipping", entry.getTxId());
+                }
+            }
+            if (progressListener != null)
+                progressListener.onProgress(numExported, Math.max(numTotal, numExported));
+            if (page.size() < PAGE_SIZE)
+                break;
+            final TransactionEntry last = page.get(page.size() - 1);
+            updateTime = last.getUpdateTime();
+            txId = last.getTxId();
+        }
+        end();
+        return numExported;
+    }
+
+    public void begin() throws IOException {
+        if (format == Format.CSV) {
+            writeCsvFields(COLUMNS);
+            if (includeFiat) {
+                sink.writeByte(',');
+                writeCsvFields(FIAT_COLUMNS);
+            }
+            sink.writeUtf8("\r\n");
+        } else {
+            json.setSerializeNulls(true);
+            json.beginArray();
+        }
+    }
+
+    public void write(final TransactionEntry entry, final Transaction tx, final TransactionInfo info)
+            throws IOException {
+        final String date = DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(entry.getUpdateTime()));
+        final String direction;
+        if (entry.getDirection() == TransactionEntry.DIRECTION_SENT)
+            direction = "sent";
+        else if (entry.getDirection() == TransactionEntry.DIRECTION_INTERNAL)
+            direction = "internal";
+        else
+            direction = "received";
+        final String fee = info.sent && info.fee != null ? info.fee.toPlainString() : null;
+        final String address = entry.getAddress();
+        final AddressBookEntry addressBookEntry = address != null && addressBook != null ? addressBook.get(address)
+                : null;
+        final String label = addressBookEntry != null ? addressBookEntry.getLabel() : null;
+        final String memo = info.memo != null ? MEMO_JOINER.join(info.memo) : null;
+        final TransactionConfidence confidence = tx.getConfidence();
+        final int confirmations = confidence.getConfidenceType() == TransactionConfidence.ConfidenceType.BUILDING
+                ? confidence.getDepthInBlocks() : 0;
+        final ExchangeRate exchangeRate = includeFiat ? tx.getExchangeRate() : null;
+        final String fiatValue = exchangeRate != null ? exchangeRate.coinToFiat(info.value).toPlainString() : null;
+        final String fiatCurrency = exchangeRate != null ? exchangeRate.fiat.currencyCode : null;
+
+        if (format == Format.CSV) {
+            writeCsvFields(date, entry.getTxId(), direction, Coin.valueOf(entry.getValue()).toPlainString(), fee,
+                    address, csvText(label), csvText(memo), Integer.toString(confirmations));
+            if (includeFiat) {
+                sink.writeByte(',');
+                writeCsvFields(fiatValue, fiatCurrency);
+            }
+            sink.writeUtf8("\r\n");
+        } else {
+            json.beginObject();
+            json.name("date").value(date);
+            json.name("txid").value(entry.getTxId());
+            json.name("direction").value(direction);
+            json.name("value").value(new BigDecimal(Coin.valueOf(entry.getValue()).toPlainString()));
+            json.name("fee").value(fee != null ? new BigDecimal(fee) : null);
+            json.name("counterparty").value(address);
+            json.name("label").value(label);
+            json.name("memo").value(memo);
+            json.name("confirmations").value(confirmations);
+            if (includeFiat) {
+                json.name("fiat_value").value(fiatValue != null ? new BigDecimal(fiatValue) : null);
+                json.name("fiat_currency").value(fiatCurrency);
+            }
+            json.endObject();
+        }
+    }
+
+    public void end() throws IOException {
+        if (format == Format.JSON)
+            json.endArray();
+        sink.flush();
+    }
+
+    private void writeCsvFields(final String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0)
+                sink.writeByte(',');
+            final String field = fields[i];
+            if (field == null)
+                continue;
+            if (field.indexOf(',') != -1 || field.indexOf('"') != -1 || field.indexOf('\n') != -1
+                    || field.indexOf('\r') != -1)
+                sink.writeByte('"').writeUtf8(field.replace("\"", "\"\"")).writeByte('"');
+            else
+                sink.writeUtf8(field);
+        }
+    }
+
+    /**
+     * Keeps spreadsheets from evaluating user supplied text as a formula.
+     */
+    @Nullable
+    static String csvText(@Nullable final String text) {
+        if (text == null || text.isEmpty())
+            return text;
+        final char first = text.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r')
+            return "'" + text;
+        return text;
+    }
+}
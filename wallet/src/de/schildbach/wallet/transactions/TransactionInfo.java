@@ -0,0 +1,73 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.Nullable;
+import de.schildbach.wallet.util.Formats;
+import de.schildbach.wallet.util.WalletUtils;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBag;
+import org.bitcoinj.wallet.Wallet;
+
+/**
+ * Facts about a transaction that are derived from the wallet and expensive to determine, because they look at each
+ * input and output.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionInfo {
+    /** value of the transaction to the wallet, negative if sent */
+    public final Coin value;
+    public final boolean sent;
+    /** if all inputs and outputs belong to the wallet */
+    public final boolean self;
+    /** recipient of a sent transaction, or own address of a received transaction */
+    @Nullable
+    public final Address address;
+    @Nullable
+    public final Coin fee;
+    /** memo as sanitized by {@link Formats#sanitizeMemo(String)} */
+    @Nullable
+    public final String[] memo;
+
+    private TransactionInfo(final Coin value, final boolean self, @Nullable final Address address,
+            @Nullable final Coin fee, @Nullable final String[] memo) {
+        this.value = value;
+        this.sent = value.signum() < 0;
+        this.self = self;
+        this.address = address;
+        this.fee = fee;
+        this.memo = memo;
+    }
+
+    /**
+     * Determines the facts about the given transaction, without caching.
+     *
+     * @param transactionBag
+     *            used for the value, usually the wallet or a view of the wallet that includes archived transactions
+     */
+    public static TransactionInfo of(final Transaction tx, final TransactionBag transactionBag, final Wallet wallet) {
+        final Coin value = tx.getValue(transactionBag);
+        final Address address = value.signum() < 0 ? WalletUtils.getToAddressOfSent(tx, wallet)
+                : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+        return new TransactionInfo(value, WalletUtils.isEntirelySelf(tx, wallet), address, tx.getFee(),
+                Formats.sanitizeMemo(tx.getMemo()));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBag;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.KeyChainEventListener;
+import org.bitcoinj.wallet.listeners.ScriptsChangeEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link TransactionInfo} for the transactions of one wallet, so that the transaction list, the block list
+ * and others don't each derive the same facts again.
+ *
+ * Entries are keyed by transaction id plus a change version. The version of a single transaction is bumped when it
+ * is received or sent again, when its confidence type changes, and when a transaction connects to its outputs. Mere
+ * depth changes, which happen to all transactions on each block, keep the entry. The version of the whole wallet is
+ * bumped by reorganizations and by keys or scripts being added, as these can change what belongs to the wallet.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionInfoCache {
+    private final Wallet wallet;
+    private final TransactionBag transactionBag;
+    private final Map<Sha256Hash, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Sha256Hash, Integer> transactionVersions = new ConcurrentHashMap<>();
+    private final AtomicInteger walletVersion = new AtomicInteger();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param transactionBag
+     *            used for values, usually the wallet or a view of the wallet that includes archived transactions
+     */
+    public TransactionInfoCache(final Wallet wallet, final TransactionBag transactionBag) {
+        this.wallet = wallet;
+        this.transactionBag = transactionBag;
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    public TransactionInfo get(final Transaction tx) {
+        final Sha256Hash txId = tx.getTxId();
+        // versions are taken before deriving, so that concurrent invalidations aren't lost
+        final int walletVersion = this.walletVersion.get();
+        final int transactionVersion = transactionVersions.getOrDefault(txId, 0);
+        final Entry entry = entries.get(txId);
+        if (entry != null && entry.tx == tx && entry.walletVersion == walletVersion
+                && entry.transactionVersion == transactionVersion) {
+            hitCount.incrementAndGet();
+            return entry.info;
+        }
+        missCount.incrementAndGet();
+        final TransactionInfo info = TransactionInfo.of(tx, transactionBag, wallet);
+        entries.put(txId, new Entry(tx, tx.getConfidence().getConfidenceType(), walletVersion, transactionVersion,
+                info));
+        return info;
+    }
+
+    public void invalidate(final Sha256Hash txId) {
+        transactionVersions.merge(txId, 1, Integer::sum);
+    }
+
+    public void invalidateAll() {
+        walletVersion.incrementAndGet();
+    }
+
+    /**
+     * Drops the entry of a transaction that is no longer looked at, e.g. an archived transaction that was parsed
+     * just for display.
+     */
+    public void remove(final Sha256Hash txId) {
+        entries.remove(txId);
+        transactionVersions.remove(txId);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public void addWalletListener() {
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addKeyChainEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addScriptsChangeEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, walletListener);
+    }
+
+    public void removeWalletListener() {
+        wallet.removeTransactionConfidenceEventListener(walletListener);
+        wallet.removeScriptsChangeEventListener(walletListener);
+        wallet.removeKeyChainEventListener(walletListener);
+        wallet.removeReorganizeEventListener(walletListener);
+        wallet.removeCoinsSentEventListener(walletListener);
+        wallet.removeCoinsReceivedEventListener(walletListener);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + entries.size() + " entries, " + hitCount + " hits, " + missCount
+                + " misses]";
+    }
+
+    private void transactionChanged(final Transaction tx) {
+        invalidate(tx.getTxId());
+        // a transaction arriving out of order connects the inputs of transactions spending it
+        for (final TransactionOutput output : tx.getOutputs()) {
+            final TransactionInput spentBy = output.getSpentBy();
+            if (spentBy != null && spentBy.getParentTransaction() != null)
+                invalidate(spentBy.getParentTransaction().getTxId());
+        }
+    }
+
+    private static final class Entry {
+        final Transaction tx;
+        final ConfidenceType confidenceType;
+        final int walletVersion;
+        final int transactionVersion;
+        final TransactionInfo info;
+
+        Entry(final Transaction tx, final ConfidenceType confidenceType, final int walletVersion,
+                final int transactionVersion, final TransactionInfo info) {
+            this.tx = tx;
+            this.confidenceType = confidenceType;
+            this.walletVersion = walletVersion;
+            this.transactionVersion = transactionVersion;
+            this.info = info;
+        }
+    }
+
+    private final WalletListener walletListener = new WalletListener();
+
+    private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+            WalletReorganizeEventListener, KeyChainEventListener, ScriptsChangeEventListener,
+            TransactionConfidenceEventListener {
+        @Override
+        public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                final Coin newBalance) {
+            transactionChanged(tx);
+        }
+
+        @Override
+        public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                final Coin newBalance) {
+            transactionChanged(tx);
+        }
+
+        @Override
+        public void onReorganize(final Wallet wallet) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onKeysAdded(final List<ECKey> keys) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onScriptsChanged(final Wallet wallet, final List<Script> scripts, final boolean isAddingScripts) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+            final Entry entry = entries.get(tx.getTxId());
+            if (entry != null && entry.confidenceType != tx.getConfidence().getConfidenceType())
+                transactionChanged(tx);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.NonNull;
+import androidx.paging.DataSource;
+import androidx.paging.PositionalDataSource;
+
+import java.util.List;
+
+/**
+ * Pages through a fixed list of rows, e.g. search results, like {@link TransactionDao} pages through the database.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionListDataSource extends PositionalDataSource<TransactionEntry> {
+    private final List<TransactionEntry> entries;
+
+    public static DataSource.Factory<Integer, TransactionEntry> factory(final List<TransactionEntry> entries) {
+        return new DataSource.Factory<Integer, TransactionEntry>() {
+            @Override
+            public DataSource<Integer, TransactionEntry> create() {
+                return new TransactionListDataSource(entries);
+            }
+        };
+    }
+
+    private TransactionListDataSource(final List<TransactionEntry> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public void loadInitial(@NonNull final LoadInitialParams params,
+            @NonNull final LoadInitialCallback<TransactionEntry> callback) {
+        final int totalCount = entries.size();
+        final int position = computeInitialLoadPosition(params, totalCount);
+        final int loadSize = computeInitialLoadSize(params, position, totalCount);
+        callback.onResult(entries.subList(position, position + loadSize), position, totalCount);
+    }
+
+    @Override
+    public void loadRange(@NonNull final LoadRangeParams params,
+            @NonNull final LoadRangeCallback<TransactionEntry> callback) {
+        final int end = Math.min(params.startPosition + params.loadSize, entries.size());
+        callback.onResult(entries.subList(Math.min(params.startPosition, end), end));
+    }
+}
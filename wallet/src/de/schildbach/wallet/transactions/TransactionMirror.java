@@ -0,0 +1,332 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.MutableLiveData;
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.InvalidProtocolBufferException;
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.archive.ArchivedTransactionCache;
+import de.schildbach.wallet.archive.ArchivedTransactions;
+import de.schildbach.wallet.archive.TransactionArchive;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionBag;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the transactions database in sync with the wallet, including archived transactions. Wallet events are
+ * throttled, and only rows of transactions that were added, removed or whose state changed are written. The UI
+ * pages through the database and builds items just for the rows it displays, looking up the transactions here. A
+ * search index over the rows is kept up to date as well.
+ *
+ * Archived transactions never change, so their rows are kept as they are in the database, and the transactions are
+ * only parsed from the archive as they are looked up.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionMirror {
+    private final TransactionArchive archive;
+    private final ArchivedTransactionCache archivedTransactions;
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor(new ContextPropagatingThreadFactory("transaction mirror"));
+
+    /** Search index over all rows. Posted whenever it changed. */
+    public final MutableLiveData<TransactionSearchIndex> searchIndex = new MutableLiveData<>();
+
+    // wallet transactions of all rows currently in the database
+    private final Map<Sha256Hash, Transaction> transactions = new ConcurrentHashMap<>();
+    private final TransactionSearchIndex index = new TransactionSearchIndex();
+
+    // confined to the executor
+    private Wallet wallet;
+    private TransactionInfoCache infoCache;
+    private IncrementalTransactionList<TransactionEntry> transactionList;
+    private final TransactionRows rows;
+    private final Map<String, TransactionEntry> archivedRows = new HashMap<>();
+
+    // guarded by this
+    private boolean transactionsChanged = false;
+    private final Set<Sha256Hash> changedTransactionIds = new HashSet<>();
+    private boolean syncScheduled = false;
+
+    private static final long THROTTLE_MS = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionMirror.class);
+
+    /**
+     * @param archivedTransactions
+     *            archived transactions, loaded for the wallet that is going to be attached
+     */
+    public TransactionMirror(final TransactionDao dao, final TransactionArchive archive,
+            final ArchivedTransactionCache archivedTransactions) {
+        this.rows = new TransactionRows(dao);
+        this.archive = archive;
+        this.archivedTransactions = archivedTransactions;
+    }
+
+    /**
+     * Starts mirroring the wallet of the given cache, which must include its history. The cache is used for deriving
+     * the rows, and must be kept up to date by its owner. Rows left from an earlier run are reconciled, rather than
+     * rewritten.
+     */
+    public void attach(final TransactionInfoCache infoCache) {
+        executor.execute(() -> {
+            if (infoCache == this.infoCache)
+                return;
+            detach();
+            final Wallet wallet = infoCache.getWallet();
+            rows.load();
+            final List<Sha256Hash> missingArchivedRows = new ArrayList<>();
+            for (final Sha256Hash txId : archivedTransactions.getTxIds()) {
+                final TransactionEntry row = rows.get(txId.toString());
+                if (row != null)
+                    archivedRows.put(row.getTxId(), row);
+                else
+                    missingArchivedRows.add(txId);
+            }
+            if (!missingArchivedRows.isEmpty())
+                buildArchivedRows(wallet, missingArchivedRows);
+            this.wallet = wallet;
+            this.infoCache = infoCache;
+            wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addChangeEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, walletListener);
+            synchronized (this) {
+                transactionsChanged = true;
+            }
+            sync();
+        });
+    }
+
+    /**
+     * Builds the rows of archived transactions that are missing, e.g. because the database has been rebuilt. This
+     * is the only time the archive is parsed as a whole.
+     */
+    private void buildArchivedRows(final Wallet wallet, final List<Sha256Hash> txIds) {
+        try {
+            final ArchivedTransactions archived = archive.load(Constants.NETWORK_PARAMETERS);
+            final TransactionBag transactionBag = archived.transactionBag(wallet);
+            for (final Sha256Hash txId : txIds) {
+                final Transaction tx = archived.get(txId);
+                if (tx != null)
+                    archivedRows.put(txId.toString(), entry(tx, TransactionInfo.of(tx, transactionBag, wallet)));
+            }
+            log.info("{} rows of archived transactions built", txIds.size());
+        } catch (final InvalidProtocolBufferException | UnreadableWalletException x) {
+            log.warn("problem parsing archived transactions", x);
+        }
+    }
+
+    /**
+     * Empties the mirror and starts over with the wallet of the given cache, e.g. because the wallet has been
+     * replaced.
+     */
+    public void replace(final TransactionInfoCache infoCache) {
+        executor.execute(() -> {
+            detach();
+            rows.deleteAll();
+            transactions.clear();
+            log.info("transaction mirror cleared");
+        });
+        attach(infoCache);
+    }
+
+    private void detach() {
+        if (wallet != null) {
+            wallet.removeTransactionConfidenceEventListener(walletListener);
+            wallet.removeChangeEventListener(walletListener);
+            wallet.removeReorganizeEventListener(walletListener);
+            wallet.removeCoinsSentEventListener(walletListener);
+            wallet.removeCoinsReceivedEventListener(walletListener);
+            wallet = null;
+            infoCache = null;
+        }
+        rows.clear();
+        archivedRows.clear();
+        index.clear();
+        transactionList = new IncrementalTransactionList<>(Constants.MAX_NUM_CONFIRMATIONS,
+                Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth());
+    }
+
+    /**
+     * Looks up the transaction of a row of the mirror. Archived transactions are parsed on demand, so this may hit
+     * the database. The row of an archived transaction that can't be read is dropped, so that the UI doesn't keep
+     * reloading a row that can't be built.
+     */
+    @Nullable
+    public Transaction getTransaction(final Sha256Hash txId) {
+        final Transaction tx = transactions.get(txId);
+        if (tx != null)
+            return tx;
+        final Transaction archivedTx = archivedTransactions.get(txId);
+        if (archivedTx == null && archivedTransactions.contains(txId)) {
+            executor.execute(() -> {
+                if (archivedRows.remove(txId.toString()) != null) {
+                    log.warn("dropping row of unreadable archived transaction {}", txId);
+                    scheduleSync();
+                }
+            });
+        }
+        return archivedTx;
+    }
+
+    private synchronized void scheduleSync() {
+        if (!syncScheduled) {
+            syncScheduled = true;
+            executor.schedule(this::sync, THROTTLE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sync() {
+        final boolean transactionsChanged;
+        final Set<Sha256Hash> changedTransactionIds;
+        synchronized (this) {
+            syncScheduled = false;
+            transactionsChanged = this.transactionsChanged;
+            this.transactionsChanged = false;
+            changedTransactionIds = new HashSet<>(this.changedTransactionIds);
+            this.changedTransactionIds.clear();
+        }
+        final Wallet wallet = this.wallet;
+        if (wallet == null)
+            return;
+
+        final Stopwatch watch = Stopwatch.createStarted();
+        if (transactionsChanged)
+            transactionList.setTransactions(wallet.getTransactions(true));
+        transactionList.invalidate(changedTransactionIds);
+        final TransactionInfoCache infoCache = this.infoCache;
+        final List<TransactionEntry> walletRows = transactionList.update(tx -> {
+            transactions.put(tx.getTxId(), tx);
+            return entry(tx, infoCache.get(tx));
+        });
+        final List<TransactionEntry> allRows = new ArrayList<>(walletRows.size() + archivedRows.size());
+        final Set<String> walletTxIds = new HashSet<>(walletRows.size());
+        for (final TransactionEntry row : walletRows) {
+            allRows.add(row);
+            walletTxIds.add(row.getTxId());
+        }
+        for (final TransactionEntry row : archivedRows.values())
+            if (!walletTxIds.contains(row.getTxId())) // a rescan can bring archived transactions back
+                allRows.add(row);
+
+        final TransactionRows.Diff diff = rows.update(allRows);
+        for (final TransactionEntry row : diff.first ? allRows : diff.changed)
+            index.put(row);
+        for (final String txId : diff.removed)
+            index.remove(txId);
+        for (final String txId : diff.released)
+            transactions.remove(Sha256Hash.wrap(txId));
+        if (diff.first || !diff.isEmpty())
+            searchIndex.postValue(index);
+
+        watch.stop();
+        log.debug("transaction mirror synced, {} rows written, {} removed, took {}, {}", diff.changed.size(),
+                diff.removed.size(), watch, infoCache);
+    }
+
+    private static TransactionEntry entry(final Transaction tx, final TransactionInfo info) {
+        final int direction;
+        if (tx.getPurpose() == Transaction.Purpose.KEY_ROTATION)
+            direction = TransactionEntry.DIRECTION_INTERNAL;
+        else
+            direction = info.sent ? TransactionEntry.DIRECTION_SENT : TransactionEntry.DIRECTION_RECEIVED;
+        final TransactionConfidence confidence = tx.getConfidence();
+        final ConfidenceType confidenceType = confidence.getConfidenceType();
+        final int depth = confidenceType == ConfidenceType.BUILDING ? Math.min(confidence.getDepthInBlocks(),
+                tx.isCoinBase() ? Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth()
+                        : Constants.MAX_NUM_CONFIRMATIONS) : 0;
+        final Date updateTime = tx.getUpdateTime();
+        return new TransactionEntry(tx.getTxId().toString(), updateTime != null ? updateTime.getTime() : 0,
+                confidenceType == ConfidenceType.PENDING, direction, info.value.value, confidenceType.name(), depth,
+                confidence.numBroadcastPeers(), info.address != null ? info.address.toString() : null,
+                info.memo != null ? Joiner.on('\n').join(info.memo) : null);
+    }
+
+    private final WalletListener walletListener = new WalletListener();
+
+    private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+            WalletReorganizeEventListener, WalletChangeEventListener, TransactionConfidenceEventListener {
+        @Override
+        public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                final Coin newBalance) {
+            transactionsChanged();
+        }
+
+        @Override
+        public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                final Coin newBalance) {
+            transactionsChanged();
+        }
+
+        @Override
+        public void onReorganize(final Wallet wallet) {
+            transactionsChanged();
+        }
+
+        @Override
+        public void onWalletChanged(final Wallet wallet) {
+            transactionsChanged();
+        }
+
+        @Override
+        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+            synchronized (TransactionMirror.this) {
+                changedTransactionIds.add(tx.getTxId());
+            }
+            scheduleSync();
+        }
+
+        private void transactionsChanged() {
+            synchronized (TransactionMirror.this) {
+                transactionsChanged = true;
+            }
+            scheduleSync();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows of the transactions database as last written, so that only the difference to a new set of rows is written.
+ * Rows left from an earlier run are reconciled by content on the first update. After that, rows are compared by
+ * identity, as rows of unchanged transactions are reused rather than rebuilt.
+ *
+ * @author Andreas Schildbach
+ */
+final class TransactionRows {
+    static final class Diff {
+        /** if this was the first update since loading, so nothing has been reported before */
+        final boolean first;
+        final List<TransactionEntry> changed;
+        final Set<String> removed;
+        /**
+         * rows removed by the previous update that didn't come back; pages still being loaded might have referred
+         * to them until now
+         */
+        final Set<String> released;
+
+        Diff(final boolean first, final List<TransactionEntry> changed, final Set<String> removed,
+                final Set<String> released) {
+            this.first = first;
+            this.changed = changed;
+            this.removed = removed;
+            this.released = released;
+        }
+
+        boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final TransactionDao dao;
+    private final Map<String, TransactionEntry> entries = new HashMap<>();
+    private Set<String> removedTxIds = new HashSet<>();
+    private boolean reconciled = false;
+
+    TransactionRows(final TransactionDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * Reads the rows left from an earlier run. They will be reconciled by the next update.
+     */
+    void load() {
+        clear();
+        for (final TransactionEntry entry : dao.getAll())
+            entries.put(entry.getTxId(), entry);
+    }
+
+    void clear() {
+        entries.clear();
+        removedTxIds = new HashSet<>();
+        reconciled = false;
+    }
+
+    /**
+     * Empties the database, e.g. because the wallet has been replaced.
+     */
+    void deleteAll() {
+        dao.deleteAll();
+        clear();
+    }
+
+    @Nullable
+    TransactionEntry get(final String txId) {
+        return entries.get(txId);
+    }
+
+    /**
+     * Replaces all rows, writing the difference to the database in one batch.
+     */
+    Diff update(final Collection<TransactionEntry> rows) {
+        final List<TransactionEntry> changed = new ArrayList<>();
+        final Set<String> removed = new HashSet<>(entries.keySet());
+        for (final TransactionEntry row : rows) {
+            final TransactionEntry previous = entries.put(row.getTxId(), row);
+            removed.remove(row.getTxId());
+            if (previous != row && (reconciled || !row.equals(previous)))
+                changed.add(row);
+        }
+        entries.keySet().removeAll(removed);
+        if (!changed.isEmpty() || !removed.isEmpty())
+            dao.update(changed, new ArrayList<>(removed));
+
+        final Set<String> released = new HashSet<>();
+        for (final String txId : removedTxIds)
+            if (!entries.containsKey(txId))
+                released.add(txId);
+        removedTxIds = removed;
+        final boolean first = !reconciled;
+        reconciled = true;
+        return new Diff(first, changed, removed, released);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Strings;
+import de.schildbach.wallet.addressbook.AddressBookEntry;
+import de.schildbach.wallet.util.SingleFlightScheduler;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.utils.MonetaryFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index for searching transactions, maintained along with the transactions database. Indexed are the
+ * counterparty address, the words of the memo, the transaction id and the absolute value. Address book labels are
+ * resolved to addresses at query time, so that editing a label doesn't need re-indexing.
+ *
+ * A query consists of terms separated by whitespace, all of which must match. A term matches a transaction if any of
+ * its indexed words starts with the term, if the label of its address contains the term, or if the term denotes an
+ * amount or amount range that contains its value. Amounts are given in the unit of the display format, with a
+ * decimal point, like {@code 0.5} (which also matches {@code 0.53}), {@code >0.5}, {@code <0.5} or
+ * {@code 0.1-0.5}.
+ *
+ * @author Andreas Schildbach
+ */
+public final class TransactionSearchIndex {
+    // values are either a single transaction id or a set of them, to save memory on unique words
+    private final NavigableMap<String, Object> words = new TreeMap<>();
+    private final NavigableMap<Long, Object> values = new TreeMap<>();
+    private final Map<String, Document> documents = new HashMap<>();
+
+    private static final Comparator<TransactionEntry> DISPLAY_ORDER = (entry1, entry2) -> {
+        if (entry1.isPending() != entry2.isPending())
+            return entry1.isPending() ? -1 : 1;
+        if (entry1.getUpdateTime() != entry2.getUpdateTime())
+            return entry1.getUpdateTime() > entry2.getUpdateTime() ? -1 : 1;
+        return entry1.getTxId().compareTo(entry2.getTxId());
+    };
+
+    /**
+     * Adds a transaction, or replaces it if already present.
+     */
+    public synchronized void put(final TransactionEntry entry) {
+        remove(entry.getTxId());
+        final Set<String> entryWords = new HashSet<>();
+        entryWords.add(entry.getTxId());
+        if (entry.getAddress() != null)
+            entryWords.add(entry.getAddress().toLowerCase(Locale.ROOT));
+        if (entry.getMemo() != null)
+            for (final String word : entry.getMemo().toLowerCase(Locale.getDefault()).split("[^\\p{L}\\p{N}]+"))
+                if (!word.isEmpty())
+                    entryWords.add(word);
+        final Document document = new Document(entry, entryWords.toArray(new String[0]));
+        documents.put(entry.getTxId(), document);
+        for (final String word : document.words)
+            post(words, word, entry.getTxId());
+        post(values, Math.abs(entry.getValue()), entry.getTxId());
+    }
+
+    public synchronized void remove(final String txId) {
+        final Document document = documents.remove(txId);
+        if (document != null) {
+            for (final String word : document.words)
+                unpost(words, word, txId);
+            unpost(values, Math.abs(document.entry.getValue()), txId);
+        }
+    }
+
+    public synchronized void clear() {
+        words.clear();
+        values.clear();
+        documents.clear();
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Searches the index.
+     *
+     * @param direction
+     *            only match transactions of this direction, or {@code null} for all
+     * @param generation
+     *            checked between terms, so that a superseded search is aborted
+     * @return matching transactions, pending ones first, then the most recent
+     */
+    public synchronized List<TransactionEntry> search(final String query, @Nullable final Integer direction,
+            @Nullable final Map<String, AddressBookEntry> addressBook, final MonetaryFormat format,
+            @Nullable final SingleFlightScheduler.Generation generation) {
+        Set<String> matches = null;
+        for (final String term : query.trim().split("\\s+")) {
+            if (term.isEmpty())
+                continue;
+            if (generation != null)
+                generation.check();
+            final Set<String> termMatches = match(term, addressBook, format);
+            if (matches == null)
+                matches = termMatches;
+            else
+                matches.retainAll(termMatches);
+            if (matches.isEmpty())
+                break;
+        }
+        if (matches == null)
+            return Collections.emptyList();
+
+        final List<TransactionEntry> results = new ArrayList<>(matches.size());
+        for (final String txId : matches) {
+            final TransactionEntry entry = documents.get(txId).entry;
+            if (direction == null || entry.getDirection() == direction)
+                results.add(entry);
+        }
+        Collections.sort(results, DISPLAY_ORDER);
+        return results;
+    }
+
+    private Set<String> match(final String term, @Nullable final Map<String, AddressBookEntry> addressBook,
+            final MonetaryFormat format) {
+        final Set<String> matches = new HashSet<>();
+        final String lowerCaseTerm = term.toLowerCase(Locale.getDefault());
+        for (final Object txIds : words.subMap(lowerCaseTerm, true, lowerCaseTerm + Character.MAX_VALUE, true)
+                .values())
+            collect(txIds, matches);
+        if (addressBook != null) {
+            for (final AddressBookEntry entry : addressBook.values()) {
+                if (entry.getLabel().toLowerCase(Locale.getDefault()).contains(lowerCaseTerm)) {
+                    final Object txIds = words.get(entry.getAddress().toLowerCase(Locale.ROOT));
+                    if (txIds != null)
+                        collect(txIds, matches);
+                }
+            }
+        }
+        final long[] range = amountRange(term, format);
+        if (range != null)
+            for (final Object txIds : values.subMap(range[0], true, range[1], false).values())
+                collect(txIds, matches);
+        return matches;
+    }
+
+    /**
+     * Parses an amount term into a range of values.
+     *
+     * @return lower bound (inclusive) and upper bound (exclusive), or {@code null} if the term is not an amount
+     */
+    @Nullable
+    static long[] amountRange(final String term, final MonetaryFormat format) {
+        try {
+            if (term.startsWith(">")) {
+                final long[] amount = amount(term.substring(1), format);
+                return new long[] { amount[0] + 1, Long.MAX_VALUE };
+            } else if (term.startsWith("<")) {
+                final long[] amount = amount(term.substring(1), format);
+                return new long[] { 0, amount[0] };
+            }
+            final int separator = term.indexOf('-', 1);
+            if (separator != -1) {
+                final long[] from = amount(term.substring(0, separator), format);
+                final long[] to = amount(term.substring(separator + 1), format);
+                return new long[] { from[0], to[1] };
+            }
+            return amount(term, format);
+        } catch (final IllegalArgumentException x) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses an amount, covering all values that start with the given digits.
+     */
+    private static long[] amount(final String str, final MonetaryFormat format) {
+        if (str.isEmpty() || str.charAt(0) == '-' || str.charAt(0) == '+')
+            throw new IllegalArgumentException(str);
+        final Coin amount = format.parse(str);
+        final int decimalMark = str.indexOf('.');
+        final int numDecimals = decimalMark != -1 ? str.length() - decimalMark - 1 : 0;
+        final String step = numDecimals > 0 ? "0." + Strings.repeat("0", numDecimals - 1) + "1" : "1";
+        // more decimals than the smallest unit parse as zero
+        final long stepValue = Math.max(format.parse(step).value, 1);
+        return new long[] { amount.value, amount.value + stepValue };
+    }
+
+    private static <K> void post(final Map<K, Object> map, final K key, final String txId) {
+        final Object txIds = map.get(key);
+        if (txIds == null) {
+            map.put(key, txId);
+        } else if (txIds instanceof String) {
+            if (!txIds.equals(txId)) {
+                final Set<String> set = new HashSet<>(4);
+                set.add((String) txIds);
+                set.add(txId);
+                map.put(key, set);
+            }
+        } else {
+            @SuppressWarnings("unchecked") // values are either a String or a Set<String>, see above
+            final Set<String> set = (Set<String>) txIds;
+            set.add(txId);
+        }
+    }
+
+    private static <K> void unpost(final Map<K, Object> map, final K key, final String txId) {
+        final Object txIds = map.get(key);
+        if (txIds instanceof String) {
+            if (txIds.equals(txId))
+                map.remove(key);
+        } else if (txIds != null) {
+            @SuppressWarnings("unchecked") // values are either a String or a Set<String>, see post()
+            final Set<String> set = (Set<String>) txIds;
+            set.remove(txId);
+            if (set.size() == 1)
+                map.put(key, set.iterator().next());
+        }
+    }
+
+    private static void collect(final Object txIds, final Collection<String> to) {
+        if (txIds instanceof String) {
+            to.add((String) txIds);
+        } else {
+            @SuppressWarnings("unchecked") // values are either a String or a Set<String>, see post()
+            final Set<String> set = (Set<String>) txIds;
+            to.addAll(set);
+        }
+    }
+
+    private static final class Document {
+        final TransactionEntry entry;
+        final String[] words;
+
+        Document(final TransactionEntry entry, final String[] words) {
+            this.entry = entry;
+            this.words = words;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import android.content.Context;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Database(entities = { TransactionEntry.class }, version = 3, exportSchema = false)
+public abstract class TransactionsDatabase extends RoomDatabase {
+    public abstract TransactionDao transactionDao();
+
+    private static final String DATABASE_NAME = "transactions";
+    private static TransactionsDatabase INSTANCE;
+
+    public static TransactionsDatabase getDatabase(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (TransactionsDatabase.class) {
+                if (INSTANCE == null) {
+                    // only a mirror of the wallet, so it can simply be rebuilt
+                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(), TransactionsDatabase.class,
+                            DATABASE_NAME).fallbackToDestructiveMigration().build();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+}
@@ -41,6 +41,7 @@ public class AbstractWalletActivityViewModel extends AndroidViewModel {
     private final WalletApplication application;
     public final BlockchainServiceLiveData blockchainService;
     public final WalletLiveData wallet;
+    public final WalletLiveData walletWithHistory;
 
     private static final Logger log = LoggerFactory.getLogger(AbstractWalletActivityViewModel.class);
 
@@ -49,6 +50,7 @@ public class AbstractWalletActivityViewModel extends AndroidViewModel {
         this.application = (WalletApplication) application;
         this.blockchainService = new BlockchainServiceLiveData(this.application);
         this.wallet = new WalletLiveData(this.application);
+        this.walletWithHistory = new WalletLiveData(this.application, true);
     }
 
     public ListenableFuture<Transaction> broadcastTransaction(final Transaction tx) throws VerificationException {
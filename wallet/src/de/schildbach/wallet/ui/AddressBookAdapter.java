@@ -39,6 +39,7 @@ import com.google.common.hash.Hashing;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
+import de.schildbach.wallet.util.SingleFlightScheduler;
 import de.schildbach.wallet.util.WalletUtils;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.ECKey;
@@ -60,19 +61,21 @@ public class AddressBookAdapter extends ListAdapter<AddressBookAdapter.ListItem,
                                                 final Collection<Address> derivedAddresses,
                                                 final Collection<Address> randomAddresses,
                                                 @Nullable final Wallet wallet,
-                                                @Nullable final Map<String, AddressBookEntry> addressBook) {
+                                                @Nullable final Map<String, AddressBookEntry> addressBook,
+                                                final SingleFlightScheduler.Generation generation) {
         final List<ListItem> items = new ArrayList<>(derivedAddresses.size() + randomAddresses.size());
-        addListItems(items, derivedAddresses, context, wallet, addressBook);
+        addListItems(items, derivedAddresses, context, wallet, addressBook, generation);
         if (!derivedAddresses.isEmpty() && !randomAddresses.isEmpty())
             items.add(new ListItem.SeparatorItem(context.getString(R.string.address_book_list_receiving_random)));
-        addListItems(items, randomAddresses, context, wallet, addressBook);
+        addListItems(items, randomAddresses, context, wallet, addressBook, generation);
         return items;
     }
 
     private static void addListItems(final List<ListItem> items,
                                      final Collection<Address> addresses, final Context context,
                                      @Nullable final Wallet wallet,
-                                     @Nullable final Map<String, AddressBookEntry> addressBook) {
+                                     @Nullable final Map<String, AddressBookEntry> addressBook,
+                                     final SingleFlightScheduler.Generation generation) {
         final int colorSignificant = context.getColor(R.color.fg_significant);
         final int colorInsignificant = context.getColor(R.color.fg_insignificant);
         final int colorLessSignificant = context.getColor(R.color.fg_less_significant);
@@ -80,6 +83,7 @@ public class AddressBookAdapter extends ListAdapter<AddressBookAdapter.ListItem,
 
         final Address currentAddress = wallet != null ? wallet.currentReceiveAddress() : null;
         for (final Address address : addresses) {
+            generation.check();
             final boolean isRotateKey;
             if (wallet != null) {
                 final ECKey key = wallet.findKeyFromAddress(address);
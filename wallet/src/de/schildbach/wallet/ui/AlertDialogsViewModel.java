@@ -219,7 +219,8 @@ public class AlertDialogsViewModel extends AndroidViewModel {
                     }
                 }
 
-                final boolean walletIsEmpty = application.getWallet().getTransactions(true).isEmpty();
+                final boolean walletIsEmpty = application.getWalletWithHistory().getTransactions(true).isEmpty()
+                        && application.getTransactionArchive().isEmpty();
 
                 // Maybe show battery optimization dialog.
                 if (config.isTimeForBatteryOptimizationDialog() &&
@@ -275,6 +275,8 @@ public class EncryptKeysDialogFragment extends DialogFragment {
                 updateView();
 
                 if (state == State.DONE) {
+                    // encryption state changes don't fire wallet events, so persist explicitly
+                    backgroundHandler.post(() -> application.autosaveWalletNow());
                     WalletUtils.autoBackupWallet(activity, wallet);
                     // trigger load manually because of missing callbacks for encryption state
                     activityViewModel.walletEncrypted.load();
@@ -39,6 +39,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
 import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.util.SingleFlightScheduler;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.utils.ExchangeRate;
@@ -55,9 +56,10 @@ import java.util.Objects;
 public class ExchangeRatesAdapter extends ListAdapter<ExchangeRatesAdapter.ListItem, ExchangeRatesAdapter.ViewHolder> {
     public static List<ListItem> buildListItems(final List<ExchangeRateEntry> exchangeRates, final Coin balance,
                                                 final BlockchainState blockchainState, final String defaultCurrency,
-                                                final Coin rateBase) {
+                                                final Coin rateBase, final SingleFlightScheduler.Generation generation) {
         final List<ListItem> items = new ArrayList<>(exchangeRates.size());
         for (final ExchangeRateEntry exchangeRate : exchangeRates) {
+            generation.check();
             final ExchangeRate rate = exchangeRate.exchangeRate();
             final String source = exchangeRate.getSource();
             final String currencyCode = rate.fiat.currencyCode;
@@ -18,8 +18,6 @@
 package de.schildbach.wallet.ui;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
 import android.os.Handler;
 import android.view.LayoutInflater;
@@ -41,15 +39,12 @@ import com.google.common.base.Strings;
 import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
-
-import java.util.List;
 
 /**
  * @author Andreas Schildbach
  */
-public final class ExchangeRatesFragment extends Fragment implements OnSharedPreferenceChangeListener,
-        ExchangeRatesAdapter.OnClickListener, ExchangeRatesAdapter.ContextMenuCallback {
+public final class ExchangeRatesFragment extends Fragment implements ExchangeRatesAdapter.OnClickListener,
+        ExchangeRatesAdapter.ContextMenuCallback {
     private AbstractWalletActivity activity;
     private WalletApplication application;
     private Configuration config;
@@ -77,7 +72,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
             viewModel.getExchangeRates().observe(this, exchangeRates -> {
                 if (!exchangeRates.isEmpty()) {
                     viewGroup.setDisplayedChild(2);
-                    maybeSubmitList();
 
                     final String initialExchangeRate = viewModel.getInitialExchangeRate();
                     if (initialExchangeRate != null)
@@ -95,9 +89,8 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
                     viewGroup.setDisplayedChild(0);
                 }
             });
+            viewModel.getList().observe(this, list -> adapter.submitList(list));
         }
-        viewModel.getBalance().observe(this, balance -> maybeSubmitList());
-        application.blockchainState.observe(this, blockchainState -> maybeSubmitList());
         viewModel.selectedExchangeRate.observe(this, exchangeRateCode -> {
             adapter.setSelectedExchangeRate(exchangeRateCode);
             final int position = adapter.positionOf(exchangeRateCode);
@@ -107,8 +100,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
 
         adapter = new ExchangeRatesAdapter(activity, this, this);
 
-        config.registerOnSharedPreferenceChangeListener(this);
-
         viewModel.setInitialExchangeRate(config.getExchangeCurrencyCode());
 
         activity.addMenuProvider(new MenuProvider() {
@@ -126,7 +117,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
                         @Override
                         public boolean onQueryTextChange(final String newText) {
                             viewModel.setConstraint(Strings.emptyToNull(newText.trim()));
-                            maybeSubmitList();
                             return true;
                         }
 
@@ -166,19 +156,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
         return view;
     }
 
-    @Override
-    public void onDestroy() {
-        config.unregisterOnSharedPreferenceChangeListener(this);
-        super.onDestroy();
-    }
-
-    private void maybeSubmitList() {
-        final List<ExchangeRateEntry> exchangeRates = viewModel.getExchangeRates().getValue();
-        if (exchangeRates != null)
-            adapter.submitList(ExchangeRatesAdapter.buildListItems(exchangeRates, viewModel.getBalance().getValue(),
-                    application.blockchainState.getValue(), config.getExchangeCurrencyCode(), config.getBtcBase()));
-    }
-
     @Override
     public void onExchangeRateClick(final View view, final String exchangeRateCode) {
         viewModel.selectedExchangeRate.setValue(exchangeRateCode);
@@ -198,12 +175,4 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
             return false;
         }
     }
-
-    @Override
-    public void onSharedPreferenceChanged(final SharedPreferences sharedPreferences, final String key) {
-        if (Configuration.PREFS_KEY_EXCHANGE_CURRENCY.equals(key))
-            maybeSubmitList();
-        else if (Configuration.PREFS_KEY_BTC_PRECISION.equals(key))
-            maybeSubmitList();
-    }
 }
@@ -18,25 +18,35 @@
 package de.schildbach.wallet.ui;
 
 import android.app.Application;
+import android.content.SharedPreferences;
 import androidx.annotation.MainThread;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
+import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.WalletBalanceLiveData;
 import de.schildbach.wallet.exchangerate.ExchangeRateDao;
 import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
 import de.schildbach.wallet.exchangerate.ExchangeRatesRepository;
+import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.util.SingleFlightScheduler;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Andreas Schildbach
  */
-public class ExchangeRatesViewModel extends AndroidViewModel {
+public class ExchangeRatesViewModel extends AndroidViewModel
+        implements SharedPreferences.OnSharedPreferenceChangeListener {
     private final WalletApplication application;
+    private final Configuration config;
     private final ExchangeRateDao exchangeRateDao;
     private final MediatorLiveData<List<ExchangeRateEntry>> exchangeRateLiveData = new MediatorLiveData<>();
     private LiveData<List<ExchangeRateEntry>> underlyingExchangeRateLiveData;
@@ -44,12 +54,51 @@ public class ExchangeRatesViewModel extends AndroidViewModel {
     private boolean isConstrained = false;
     public final MutableLiveData<String> selectedExchangeRate = new MutableLiveData<>();
     private Event<String> initialExchangeRate;
+    private final MediatorLiveData<List<ExchangeRatesAdapter.ListItem>> list = new MediatorLiveData<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ContextPropagatingThreadFactory("exchange rates"));
+    private final SingleFlightScheduler<List<ExchangeRatesAdapter.ListItem>> listScheduler =
+            new SingleFlightScheduler<>(executor, list::postValue);
 
     public ExchangeRatesViewModel(final Application application) {
         super(application);
         this.application = (WalletApplication) application;
+        this.config = this.application.getConfiguration();
         this.exchangeRateDao = ExchangeRatesRepository.get(this.application).exchangeRateDao();
         setConstraint(null);
+        this.list.addSource(exchangeRateLiveData, exchangeRates -> maybeScheduleList());
+        this.list.addSource(getBalance(), balance -> maybeScheduleList());
+        this.list.addSource(this.application.blockchainState, blockchainState -> maybeScheduleList());
+        config.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    protected void onCleared() {
+        config.unregisterOnSharedPreferenceChangeListener(this);
+        executor.shutdownNow();
+        super.onCleared();
+    }
+
+    public LiveData<List<ExchangeRatesAdapter.ListItem>> getList() {
+        return list;
+    }
+
+    private void maybeScheduleList() {
+        final List<ExchangeRateEntry> exchangeRates = exchangeRateLiveData.getValue();
+        final Coin balance = getBalance().getValue();
+        final BlockchainState blockchainState = application.blockchainState.getValue();
+        final String defaultCurrency = config.getExchangeCurrencyCode();
+        final Coin rateBase = config.getBtcBase();
+        if (exchangeRates != null)
+            listScheduler.schedule(generation -> ExchangeRatesAdapter.buildListItems(exchangeRates, balance,
+                    blockchainState, defaultCurrency, rateBase, generation));
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(final SharedPreferences sharedPreferences, final String key) {
+        if (Configuration.PREFS_KEY_EXCHANGE_CURRENCY.equals(key) || Configuration.PREFS_KEY_BTC_PRECISION.equals(key))
+            maybeScheduleList();
     }
 
     public LiveData<List<ExchangeRateEntry>> getExchangeRates() {
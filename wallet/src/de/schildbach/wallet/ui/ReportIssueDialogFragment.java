@@ -43,10 +43,12 @@ import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.util.Bluetooth;
 import de.schildbach.wallet.util.CrashReporter;
 import de.schildbach.wallet.util.Installer;
+import de.schildbach.wallet.util.StartupTrace;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.script.ScriptException;
+import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -166,13 +168,25 @@ public class ReportIssueDialogFragment extends DialogFragment {
                 if (contextualTransactionHash == null)
                     return null;
 
-                final Wallet wallet = walletActivityViewModel.wallet.getValue();
-                final Transaction tx = wallet.getTransaction(contextualTransactionHash);
+                final Wallet wallet = walletActivityViewModel.walletWithHistory.getValue();
+                Transaction tx = wallet.getTransaction(contextualTransactionHash);
                 final StringBuilder contextualData = new StringBuilder();
-                try {
-                    contextualData.append(tx.getValue(wallet).toFriendlyString()).append(" total value");
-                } catch (final ScriptException x) {
-                    contextualData.append(x.getMessage());
+                if (tx != null) {
+                    try {
+                        contextualData.append(tx.getValue(wallet).toFriendlyString()).append(" total value");
+                    } catch (final ScriptException x) {
+                        contextualData.append(x.getMessage());
+                    }
+                } else {
+                    try {
+                        tx = application.getTransactionArchive().get(Constants.NETWORK_PARAMETERS,
+                                contextualTransactionHash);
+                    } catch (final IOException | UnreadableWalletException x) {
+                        log.info("problem reading archived transaction", x);
+                    }
+                    if (tx == null)
+                        return contextualTransactionHash + " not found\n";
+                    contextualData.append("archived");
                 }
                 contextualData.append('\n');
                 if (tx.hasConfidence())
@@ -190,7 +204,7 @@ public class ReportIssueDialogFragment extends DialogFragment {
 
             @Override
             protected CharSequence collectWalletDump() {
-                return walletActivityViewModel.wallet.getValue().toString(false, false, null, true, true, null);
+                return walletActivityViewModel.walletWithHistory.getValue().toString(false, false, null, true, true, null);
             }
         };
         final AlertDialog dialog = builder.create();
@@ -199,7 +213,7 @@ public class ReportIssueDialogFragment extends DialogFragment {
             positiveButton = dialog.getButton(DialogInterface.BUTTON_POSITIVE);
             positiveButton.setEnabled(false);
 
-            walletActivityViewModel.wallet.observe(ReportIssueDialogFragment.this, wallet -> positiveButton.setEnabled(true));
+            walletActivityViewModel.walletWithHistory.observe(ReportIssueDialogFragment.this, wallet -> positiveButton.setEnabled(true));
         });
 
         return dialog;
@@ -250,7 +264,7 @@ public class ReportIssueDialogFragment extends DialogFragment {
                 DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(lastBlockchainResetTime)) : "none").append("\n");
         report.append("Network: ").append(Constants.NETWORK_PARAMETERS.getId()).append("\n");
         report.append("Sync mode: ").append(config.getSyncMode().name()).append("\n");
-        final Wallet wallet = walletActivityViewModel.wallet.getValue();
+        final Wallet wallet = walletActivityViewModel.walletWithHistory.getValue();
         report.append("Encrypted: ").append(String.valueOf(wallet.isEncrypted())).append("\n");
         report.append("Keychain size: ").append(String.valueOf(wallet.getKeyChainGroupSize())).append("\n");
 
@@ -288,6 +302,9 @@ public class ReportIssueDialogFragment extends DialogFragment {
         appendDir(report, filesDir, 0);
         report.append("free/usable space: ").append(Long.toString(filesDir.getFreeSpace() / 1024))
                 .append("/").append(Long.toString(filesDir.getUsableSpace() / 1024)).append(" kB\n");
+
+        report.append("\nStartup timelines:\n");
+        StartupTrace.appendTraces(report);
     }
 
     private static void appendDir(final Appendable report, final File file, final int indent) throws IOException {
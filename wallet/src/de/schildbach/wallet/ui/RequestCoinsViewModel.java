@@ -112,10 +112,12 @@ public class RequestCoinsViewModel extends AndroidViewModel {
     }
 
     public static class FreshReceiveAddressLiveData extends AbstractWalletLiveData<Address> {
+        private final WalletApplication application;
         private Script.ScriptType outputScriptType = null;
 
         public FreshReceiveAddressLiveData(final WalletApplication application) {
             super(application);
+            this.application = application;
         }
 
         public void overrideOutputScriptType(final Script.ScriptType outputScriptType) {
@@ -140,6 +142,7 @@ public class RequestCoinsViewModel extends AndroidViewModel {
                     org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
                     postValue(outputScriptType != null ? wallet.freshReceiveAddress(outputScriptType)
                             : wallet.freshReceiveAddress());
+                    application.autosaveWalletLater(); // issuing an address doesn't fire wallet events
                 });
             }
         }
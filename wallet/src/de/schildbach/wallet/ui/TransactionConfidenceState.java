@@ -0,0 +1,73 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.wallet.DefaultCoinSelector;
+import org.bitcoinj.wallet.Wallet;
+
+/**
+ * The facts about the confidence of a transaction that the transaction list renders. Comparing two of these tells if
+ * a list item can be patched in place or needs to be built from scratch.
+ *
+ * @author Andreas Schildbach
+ */
+final class TransactionConfidenceState {
+    final ConfidenceType type;
+    final int depth;
+    final int numBroadcastPeers;
+    final boolean selectable;
+    final boolean delayed;
+
+    private TransactionConfidenceState(final ConfidenceType type, final int depth, final int numBroadcastPeers,
+            final boolean selectable, final boolean delayed) {
+        this.type = type;
+        this.depth = depth;
+        this.numBroadcastPeers = numBroadcastPeers;
+        this.selectable = selectable;
+        this.delayed = delayed;
+    }
+
+    /**
+     * @param delayedThresholdMs
+     *            how long a transaction may be pending, relative to the last block seen by the wallet, before it is
+     *            considered delayed
+     */
+    static TransactionConfidenceState of(final Transaction tx, final Wallet wallet, final long delayedThresholdMs) {
+        final TransactionConfidence confidence = tx.getConfidence();
+        final ConfidenceType type = confidence.getConfidenceType();
+        final boolean delayed = type == ConfidenceType.PENDING && (tx.getUpdateTime() == null
+                || wallet.getLastBlockSeenTimeSecs() * 1000 - tx.getUpdateTime().getTime() > delayedThresholdMs);
+        return new TransactionConfidenceState(type, confidence.getDepthInBlocks(), confidence.numBroadcastPeers(),
+                DefaultCoinSelector.isSelectable(tx), delayed);
+    }
+
+    /**
+     * Fields other than the confidence fields of a list item depend on these.
+     */
+    boolean affectsSameFieldsAs(final TransactionConfidenceState other) {
+        return type == other.type && selectable == other.selectable && delayed == other.delayed
+                && (numBroadcastPeers == 0) == (other.numBroadcastPeers == 0);
+    }
+
+    boolean isSameAs(final TransactionConfidenceState other) {
+        return affectsSameFieldsAs(other) && depth == other.depth && numBroadcastPeers == other.numBroadcastPeers;
+    }
+}
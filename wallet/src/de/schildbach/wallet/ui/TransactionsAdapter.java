@@ -35,14 +35,19 @@ import android.widget.Toolbar;
 import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
 import androidx.core.graphics.ColorUtils;
+import androidx.paging.AsyncPagedListDiffer;
+import androidx.paging.PagedList;
+import androidx.recyclerview.widget.AsyncDifferConfig;
 import androidx.recyclerview.widget.DiffUtil;
-import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
+import de.schildbach.wallet.transactions.TransactionInfo;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
 import de.schildbach.wallet.ui.TransactionsAdapter.ListItem.TransactionItem;
-import de.schildbach.wallet.util.Formats;
+import de.schildbach.wallet.util.RelativeTimeFormatter;
 import de.schildbach.wallet.util.WalletUtils;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
@@ -54,11 +59,9 @@ import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
 import org.bitcoinj.utils.ExchangeRate;
 import org.bitcoinj.utils.Fiat;
 import org.bitcoinj.utils.MonetaryFormat;
-import org.bitcoinj.wallet.DefaultCoinSelector;
 import org.bitcoinj.wallet.Wallet;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
@@ -66,22 +69,11 @@ import java.util.Map;
 import java.util.Objects;
 
 /**
+ * Adapter for a paged list of transactions, optionally headed by a warning. Only loaded pages are diffed and bound.
+ *
  * @author Andreas Schildbach
  */
-public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListItem, RecyclerView.ViewHolder> {
-    public static List<ListItem> buildListItems(final Context context, final List<Transaction> transactions,
-            final WarningType warning, final @Nullable Wallet wallet,
-            final @Nullable Map<String, AddressBookEntry> addressBook, final MonetaryFormat format,
-            final int maxConnectedPeers) {
-        final MonetaryFormat noCodeFormat = format.noCode();
-        final List<ListItem> items = new ArrayList<>(transactions.size() + 1);
-        if (warning != null)
-            items.add(new ListItem.WarningItem(warning));
-        for (final Transaction tx : transactions)
-            items.add(new ListItem.TransactionItem(context, tx, wallet, addressBook, noCodeFormat, maxConnectedPeers));
-        return items;
-    }
-
+public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     public static abstract class ListItem {
         // internal item id
         public final long id;
@@ -101,7 +93,9 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             @Nullable
             public final Spanned confidenceMessage;
             public final boolean confidenceMessageOnlyShownWhenSelected;
-            public final CharSequence time, timeSelected;
+            /** update time, rendered relative to now when bound */
+            public final long time;
+            public final CharSequence timeSelected;
             public final int timeColor;
             @Nullable
             public final Spanned address;
@@ -123,11 +117,31 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             public final Spanned message;
             public final int messageColor;
 
-            public TransactionItem(final Context context, final Transaction tx, final @Nullable Wallet wallet,
+            // what the item has been built from, for patching its confidence
+            private final Transaction tx;
+            private final TransactionInfo info;
+            private final int maxConnectedPeers;
+            private final Confidence confidence;
+
+            public TransactionItem(final Context context, final Transaction tx, final Wallet wallet,
                     final @Nullable Map<String, AddressBookEntry> addressBook, final MonetaryFormat format,
                     final int maxConnectedPeers) {
+                this(context, tx, wallet, TransactionInfo.of(tx, wallet, wallet), addressBook, format,
+                        maxConnectedPeers);
+            }
+
+            /**
+             * @param info
+             *            derived facts about the transaction, usually from a {@link TransactionInfoCache}
+             */
+            public TransactionItem(final Context context, final Transaction tx, final Wallet wallet,
+                    final TransactionInfo info, final @Nullable Map<String, AddressBookEntry> addressBook,
+                    final MonetaryFormat format, final int maxConnectedPeers) {
                 super(id(tx.getTxId()));
                 this.transactionId = tx.getTxId();
+                this.tx = tx;
+                this.info = info;
+                this.maxConnectedPeers = maxConnectedPeers;
 
                 final int colorSignificant = context.getColor(R.color.fg_significant);
                 final int colorLessSignificant = context.getColor(R.color.fg_less_significant);
@@ -136,21 +150,26 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 final int colorValueNegative = context.getColor(R.color.fg_value_negative);
                 final int colorError = context.getColor(R.color.fg_error);
 
-                final Coin value = tx.getValue(wallet);
-                final boolean sent = value.signum() < 0;
-                final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
+                final Coin value = info.value;
+                final boolean sent = info.sent;
+                final boolean self = info.self;
                 final TransactionConfidence confidence = tx.getConfidence();
                 final ConfidenceType confidenceType = confidence.getConfidenceType();
                 final boolean isOwn = confidence.getSource().equals(TransactionConfidence.Source.SELF);
                 final Transaction.Purpose purpose = tx.getPurpose();
-                final String[] memo = Formats.sanitizeMemo(tx.getMemo());
+                final String[] memo = info.memo;
+
+                final Confidence confidenceItem = Confidence.of(context, tx,
+                        TransactionConfidenceState.of(tx, wallet, Constants.DELAYED_TRANSACTION_THRESHOLD_MS), sent,
+                        maxConnectedPeers);
+                this.confidence = confidenceItem;
 
                 final int textColor, lessSignificantColor, valueColor;
                 if (confidenceType == ConfidenceType.DEAD) {
                     textColor = colorError;
                     lessSignificantColor = colorError;
                     valueColor = colorError;
-                } else if (DefaultCoinSelector.isSelectable(tx)) {
+                } else if (confidenceItem.state.selectable) {
                     textColor = colorSignificant;
                     lessSignificantColor = colorLessSignificant;
                     valueColor = sent ? colorValueNegative : colorValuePositive;
@@ -161,84 +180,25 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
 
                 // confidence
-                if (confidenceType == ConfidenceType.PENDING) {
-                    this.confidenceCircularMaxProgress = 1;
-                    this.confidenceCircularProgress = 1;
-                    this.confidenceCircularMaxSize = maxConnectedPeers / 2; // magic value
-                    this.confidenceCircularSize = confidence.numBroadcastPeers();
-                    this.confidenceCircularFillColor = colorInsignificant;
-                    this.confidenceCircularStrokeColor = Color.TRANSPARENT;
-                    this.confidenceTextual = null;
-                    this.confidenceTextualColor = 0;
-                    this.confidenceMessage = sent && confidence.numBroadcastPeers() == 0
-                            ? SpannedString.valueOf(
-                                    context.getString(R.string.transaction_row_confidence_message_sent_unbroadcasted))
-                            : null;
-                    this.confidenceMessageOnlyShownWhenSelected = false;
-                } else if (confidenceType == ConfidenceType.IN_CONFLICT) {
-                    this.confidenceTextual = CONFIDENCE_SYMBOL_IN_CONFLICT;
-                    this.confidenceTextualColor = colorError;
-                    this.confidenceCircularMaxProgress = 0;
-                    this.confidenceCircularProgress = 0;
-                    this.confidenceCircularMaxSize = 0;
-                    this.confidenceCircularSize = 0;
-                    this.confidenceCircularFillColor = 0;
-                    this.confidenceCircularStrokeColor = 0;
-                    this.confidenceMessage = null;
-                    this.confidenceMessageOnlyShownWhenSelected = false;
-                } else if (confidenceType == ConfidenceType.BUILDING) {
-                    this.confidenceCircularMaxProgress = tx.isCoinBase()
-                            ? Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth()
-                            : Constants.MAX_NUM_CONFIRMATIONS;
-                    this.confidenceCircularProgress = Math.min(confidence.getDepthInBlocks(),
-                            this.confidenceCircularMaxProgress);
-                    this.confidenceCircularMaxSize = 1;
-                    this.confidenceCircularSize = 1;
-                    this.confidenceCircularFillColor = ColorUtils.blendARGB(colorValueNegative, colorValuePositive,
-                            (float) (this.confidenceCircularProgress - 1) / (this.confidenceCircularMaxProgress - 1));
-                    this.confidenceCircularStrokeColor = Color.TRANSPARENT;
-                    this.confidenceTextual = null;
-                    this.confidenceTextualColor = 0;
-                    this.confidenceMessage = SpannedString.valueOf(
-                            context.getString(sent ? R.string.transaction_row_confidence_message_sent_successful
-                                    : R.string.transaction_row_confidence_message_received_successful));
-                    this.confidenceMessageOnlyShownWhenSelected = true;
-                } else if (confidenceType == ConfidenceType.DEAD) {
-                    this.confidenceTextual = CONFIDENCE_SYMBOL_DEAD;
-                    this.confidenceTextualColor = colorError;
-                    this.confidenceCircularMaxProgress = 0;
-                    this.confidenceCircularProgress = 0;
-                    this.confidenceCircularMaxSize = 0;
-                    this.confidenceCircularSize = 0;
-                    this.confidenceCircularFillColor = 0;
-                    this.confidenceCircularStrokeColor = 0;
-                    this.confidenceMessage = SpannedString
-                            .valueOf(context.getString(sent ? R.string.transaction_row_confidence_message_sent_failed
-                                    : R.string.transaction_row_confidence_message_received_failed));
-                    this.confidenceMessageOnlyShownWhenSelected = false;
-                } else {
-                    this.confidenceTextual = CONFIDENCE_SYMBOL_UNKNOWN;
-                    this.confidenceTextualColor = colorInsignificant;
-                    this.confidenceCircularMaxProgress = 0;
-                    this.confidenceCircularProgress = 0;
-                    this.confidenceCircularMaxSize = 0;
-                    this.confidenceCircularSize = 0;
-                    this.confidenceCircularFillColor = 0;
-                    this.confidenceCircularStrokeColor = 0;
-                    this.confidenceMessage = null;
-                    this.confidenceMessageOnlyShownWhenSelected = false;
-                }
+                this.confidenceCircularProgress = confidenceItem.circularProgress;
+                this.confidenceCircularMaxProgress = confidenceItem.circularMaxProgress;
+                this.confidenceCircularSize = confidenceItem.circularSize;
+                this.confidenceCircularMaxSize = confidenceItem.circularMaxSize;
+                this.confidenceCircularFillColor = confidenceItem.circularFillColor;
+                this.confidenceCircularStrokeColor = confidenceItem.circularStrokeColor;
+                this.confidenceTextual = confidenceItem.textual;
+                this.confidenceTextualColor = confidenceItem.textualColor;
+                this.confidenceMessage = confidenceItem.message;
+                this.confidenceMessageOnlyShownWhenSelected = confidenceItem.messageOnlyShownWhenSelected;
 
                 // time
-                final Date time = tx.getUpdateTime();
-                this.time = DateUtils.getRelativeTimeSpanString(context, time.getTime());
-                this.timeSelected = DateUtils.formatDateTime(context, time.getTime(),
+                this.time = tx.getUpdateTime().getTime();
+                this.timeSelected = DateUtils.formatDateTime(context, this.time,
                         DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
                 this.timeColor = textColor;
 
                 // address
-                final Address address = sent ? WalletUtils.getToAddressOfSent(tx, wallet)
-                        : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+                final Address address = info.address;
                 final String addressLabel;
                 if (addressBook == null || address == null) {
                     addressLabel = null;
@@ -283,7 +243,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
 
                 // fee
-                final Coin fee = tx.getFee();
+                final Coin fee = info.fee;
                 final boolean showFee = sent && fee != null && !fee.isZero();
                 this.feeFormat = format;
                 this.fee = showFee ? fee.negate() : null;
@@ -331,9 +291,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                     this.message = SpannedString
                             .valueOf(context.getString(R.string.transaction_row_message_received_dust));
                     this.messageColor = colorInsignificant;
-                } else if (!sent && confidenceType == ConfidenceType.PENDING
-                        && (tx.getUpdateTime() == null || wallet.getLastBlockSeenTimeSecs() * 1000
-                                - tx.getUpdateTime().getTime() > Constants.DELAYED_TRANSACTION_THRESHOLD_MS)) {
+                } else if (!sent && confidenceItem.state.delayed) {
                     this.message = SpannedString
                             .valueOf(context.getString(R.string.transaction_row_message_received_unconfirmed_delayed));
                     this.messageColor = colorInsignificant;
@@ -366,11 +324,164 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
             }
 
+            private TransactionItem(final TransactionItem item, final Confidence confidence) {
+                super(item.id);
+                this.transactionId = item.transactionId;
+                this.tx = item.tx;
+                this.info = item.info;
+                this.maxConnectedPeers = item.maxConnectedPeers;
+                this.confidence = confidence;
+                this.confidenceCircularProgress = confidence.circularProgress;
+                this.confidenceCircularMaxProgress = confidence.circularMaxProgress;
+                this.confidenceCircularSize = confidence.circularSize;
+                this.confidenceCircularMaxSize = confidence.circularMaxSize;
+                this.confidenceCircularFillColor = confidence.circularFillColor;
+                this.confidenceCircularStrokeColor = confidence.circularStrokeColor;
+                this.confidenceTextual = confidence.textual;
+                this.confidenceTextualColor = confidence.textualColor;
+                this.confidenceMessage = confidence.message;
+                this.confidenceMessageOnlyShownWhenSelected = confidence.messageOnlyShownWhenSelected;
+                this.time = item.time;
+                this.timeSelected = item.timeSelected;
+                this.timeColor = item.timeColor;
+                this.address = item.address;
+                this.addressColor = item.addressColor;
+                this.addressTypeface = item.addressTypeface;
+                this.fee = item.fee;
+                this.feeFormat = item.feeFormat;
+                this.value = item.value;
+                this.valueFormat = item.valueFormat;
+                this.valueColor = item.valueColor;
+                this.fiat = item.fiat;
+                this.fiatFormat = item.fiatFormat;
+                this.fiatPrefixColor = item.fiatPrefixColor;
+                this.message = item.message;
+                this.messageColor = item.messageColor;
+            }
+
+            /**
+             * Brings this item up to date with the confidence of its transaction, patching just the confidence
+             * fields. If the item has been built from different facts, or the confidence change affects other fields
+             * as well, e.g. because the confidence type changed, {@code null} is returned and the item needs to be
+             * built from scratch.
+             *
+             * @return this item if the confidence is unchanged, a patched copy of it, or {@code null}
+             */
+            @Nullable
+            public TransactionItem withConfidence(final Context context, final Transaction tx, final Wallet wallet,
+                    final TransactionInfo info, final int maxConnectedPeers) {
+                if (tx != this.tx || info != this.info || maxConnectedPeers != this.maxConnectedPeers)
+                    return null;
+                final TransactionConfidenceState state = TransactionConfidenceState.of(tx, wallet,
+                        Constants.DELAYED_TRANSACTION_THRESHOLD_MS);
+                if (!state.affectsSameFieldsAs(this.confidence.state))
+                    return null;
+                if (state.isSameAs(this.confidence.state))
+                    return this;
+                return new TransactionItem(this, Confidence.of(context, tx, state, info.sent, maxConnectedPeers));
+            }
+
             private static long id(final Sha256Hash txId) {
                 return ByteBuffer.wrap(txId.getBytes()).getLong();
             }
         }
 
+        /**
+         * Fields of a {@link TransactionItem} that are derived from the confidence of its transaction only.
+         */
+        private static final class Confidence {
+            private TransactionConfidenceState state;
+
+            private int circularProgress, circularMaxProgress;
+            private int circularSize, circularMaxSize;
+            private int circularFillColor, circularStrokeColor;
+            @Nullable
+            private String textual;
+            private int textualColor;
+            @Nullable
+            private Spanned message;
+            private boolean messageOnlyShownWhenSelected;
+
+            private static Confidence of(final Context context, final Transaction tx,
+                    final TransactionConfidenceState state, final boolean sent, final int maxConnectedPeers) {
+                final int colorInsignificant = context.getColor(R.color.fg_insignificant);
+                final int colorValuePositive = context.getColor(R.color.fg_value_positive);
+                final int colorValueNegative = context.getColor(R.color.fg_value_negative);
+                final int colorError = context.getColor(R.color.fg_error);
+                final TransactionConfidence confidence = tx.getConfidence();
+                final ConfidenceType confidenceType = confidence.getConfidenceType();
+                final Confidence c = new Confidence();
+                c.state = state;
+                if (confidenceType == ConfidenceType.PENDING) {
+                    c.circularMaxProgress = 1;
+                    c.circularProgress = 1;
+                    c.circularMaxSize = maxConnectedPeers / 2; // magic value
+                    c.circularSize = confidence.numBroadcastPeers();
+                    c.circularFillColor = colorInsignificant;
+                    c.circularStrokeColor = Color.TRANSPARENT;
+                    c.textual = null;
+                    c.textualColor = 0;
+                    c.message = sent && confidence.numBroadcastPeers() == 0
+                            ? SpannedString.valueOf(
+                                    context.getString(R.string.transaction_row_confidence_message_sent_unbroadcasted))
+                            : null;
+                    c.messageOnlyShownWhenSelected = false;
+                } else if (confidenceType == ConfidenceType.IN_CONFLICT) {
+                    c.textual = CONFIDENCE_SYMBOL_IN_CONFLICT;
+                    c.textualColor = colorError;
+                    c.circularMaxProgress = 0;
+                    c.circularProgress = 0;
+                    c.circularMaxSize = 0;
+                    c.circularSize = 0;
+                    c.circularFillColor = 0;
+                    c.circularStrokeColor = 0;
+                    c.message = null;
+                    c.messageOnlyShownWhenSelected = false;
+                } else if (confidenceType == ConfidenceType.BUILDING) {
+                    c.circularMaxProgress = tx.isCoinBase()
+                            ? Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth()
+                            : Constants.MAX_NUM_CONFIRMATIONS;
+                    c.circularProgress = Math.min(confidence.getDepthInBlocks(), c.circularMaxProgress);
+                    c.circularMaxSize = 1;
+                    c.circularSize = 1;
+                    c.circularFillColor = ColorUtils.blendARGB(colorValueNegative, colorValuePositive,
+                            (float) (c.circularProgress - 1) / (c.circularMaxProgress - 1));
+                    c.circularStrokeColor = Color.TRANSPARENT;
+                    c.textual = null;
+                    c.textualColor = 0;
+                    c.message = SpannedString.valueOf(
+                            context.getString(sent ? R.string.transaction_row_confidence_message_sent_successful
+                                    : R.string.transaction_row_confidence_message_received_successful));
+                    c.messageOnlyShownWhenSelected = true;
+                } else if (confidenceType == ConfidenceType.DEAD) {
+                    c.textual = CONFIDENCE_SYMBOL_DEAD;
+                    c.textualColor = colorError;
+                    c.circularMaxProgress = 0;
+                    c.circularProgress = 0;
+                    c.circularMaxSize = 0;
+                    c.circularSize = 0;
+                    c.circularFillColor = 0;
+                    c.circularStrokeColor = 0;
+                    c.message = SpannedString
+                            .valueOf(context.getString(sent ? R.string.transaction_row_confidence_message_sent_failed
+                                    : R.string.transaction_row_confidence_message_received_failed));
+                    c.messageOnlyShownWhenSelected = false;
+                } else {
+                    c.textual = CONFIDENCE_SYMBOL_UNKNOWN;
+                    c.textualColor = colorInsignificant;
+                    c.circularMaxProgress = 0;
+                    c.circularProgress = 0;
+                    c.circularMaxSize = 0;
+                    c.circularSize = 0;
+                    c.circularFillColor = 0;
+                    c.circularStrokeColor = 0;
+                    c.message = null;
+                    c.messageOnlyShownWhenSelected = false;
+                }
+                return c;
+            }
+        }
+
         public static class WarningItem extends ListItem {
             public final WarningType type;
 
@@ -402,8 +513,12 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
     }
 
     private final Context context;
+    private final AsyncPagedListDiffer<ListItem> differ;
+    @Nullable
+    private ListItem.WarningItem warningItem;
     private final LayoutInflater inflater;
     private final MenuInflater menuInflater;
+    private final RelativeTimeFormatter relativeTimeFormatter;
 
     @Nullable
     private final OnClickListener onClickListener;
@@ -425,7 +540,8 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
 
     public TransactionsAdapter(final Context context, @Nullable final OnClickListener onClickListener,
                                @Nullable final ContextMenuCallback contextMenuCallback) {
-        super(new DiffUtil.ItemCallback<ListItem>() {
+        this.differ = new AsyncPagedListDiffer<>(new HeaderOffsetListUpdateCallback(),
+                new AsyncDifferConfig.Builder<>(new DiffUtil.ItemCallback<ListItem>() {
             @Override
             public boolean areItemsTheSame(final ListItem oldItem, final ListItem newItem) {
                 return oldItem.id == newItem.id;
@@ -566,16 +682,59 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 }
                 return changes;
             }
-        });
+        }).build());
         this.context = context;
         this.inflater = LayoutInflater.from(context);
         this.menuInflater = new MenuInflater(context);
+        this.relativeTimeFormatter = new RelativeTimeFormatter(context);
         this.onClickListener = onClickListener;
         this.contextMenuCallback = contextMenuCallback;
 
         setHasStableIds(true);
     }
 
+    /**
+     * Refreshes the relative times of the bound rows, if they could have changed.
+     */
+    @MainThread
+    public void setTime(final Date time) {
+        if (relativeTimeFormatter.tick(time.getTime()))
+            notifyItemRangeChanged(headerCount(), differ.getItemCount(), EnumSet.of(ChangeType.TIME));
+    }
+
+    public void submitList(final PagedList<ListItem> list) {
+        differ.submitList(list);
+    }
+
+    @MainThread
+    public void setWarning(@Nullable final WarningType warning) {
+        final ListItem.WarningItem previous = this.warningItem;
+        if (previous == null ? warning == null : previous.type == warning)
+            return;
+        this.warningItem = warning != null ? new ListItem.WarningItem(warning) : null;
+        if (previous == null)
+            notifyItemInserted(0);
+        else if (warning == null)
+            notifyItemRemoved(0);
+        else
+            notifyItemChanged(0);
+    }
+
+    private int headerCount() {
+        return warningItem != null ? 1 : 0;
+    }
+
+    @Nullable
+    private ListItem getItem(final int position) {
+        final int headerCount = headerCount();
+        return position < headerCount ? warningItem : differ.getItem(position - headerCount);
+    }
+
+    @Override
+    public int getItemCount() {
+        return headerCount() + differ.getItemCount();
+    }
+
     @MainThread
     public void setSelectedTransaction(final Sha256Hash newSelectedTransactionId) {
         if (Objects.equals(newSelectedTransactionId, selectedTransactionId))
@@ -587,14 +746,18 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
         this.selectedTransactionId = newSelectedTransactionId;
     }
 
+    /**
+     * Looks for the given transaction among the loaded pages only.
+     */
     @MainThread
     public int positionOf(final Sha256Hash transactionId) {
-        if (transactionId != null) {
-            final List<ListItem> list = getCurrentList();
-            for (int i = 0; i < list.size(); i++) {
-                final ListItem item = list.get(i);
+        final PagedList<ListItem> list = differ.getCurrentList();
+        if (transactionId != null && list != null) {
+            final List<ListItem> loaded = list.snapshot(); // get() would trigger loading
+            for (int i = 0; i < loaded.size(); i++) {
+                final ListItem item = loaded.get(i);
                 if (item instanceof ListItem.TransactionItem && ((TransactionItem) item).transactionId.equals(transactionId))
-                    return i;
+                    return headerCount() + i;
             }
         }
         return RecyclerView.NO_POSITION;
@@ -605,7 +768,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
         final ListItem listItem = getItem(position);
         if (listItem instanceof ListItem.WarningItem)
             return VIEW_TYPE_WARNING;
-        else if (listItem instanceof ListItem.TransactionItem)
+        else if (listItem instanceof ListItem.TransactionItem || listItem == null)
             return VIEW_TYPE_TRANSACTION;
         else
             throw new IllegalStateException();
@@ -614,13 +777,14 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
     @Override
     public long getItemId(final int position) {
         final ListItem listItem = getItem(position);
-        return listItem.id;
+        return listItem != null ? listItem.id : RecyclerView.NO_ID;
     }
 
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(final ViewGroup parent, final int viewType) {
         if (viewType == VIEW_TYPE_TRANSACTION)
-            return new TransactionViewHolder(inflater.inflate(R.layout.transaction_row_card, parent, false));
+            return new TransactionViewHolder(inflater.inflate(R.layout.transaction_row_card, parent, false),
+                    relativeTimeFormatter);
         else if (viewType == VIEW_TYPE_WARNING)
             return new WarningViewHolder(inflater.inflate(R.layout.transaction_row_warning, parent, false));
         else
@@ -641,11 +805,17 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             changes.addAll((EnumSet<ChangeType>) payload);
 
         final ListItem listItem = getItem(position);
+        if (listItem == null) {
+            // transaction vanished from the wallet while its page was loading, will be replaced shortly
+            holder.itemView.setVisibility(View.INVISIBLE);
+            return;
+        }
         if (holder instanceof TransactionViewHolder) {
             final TransactionViewHolder transactionHolder = (TransactionViewHolder) holder;
             final ListItem.TransactionItem transactionItem = (ListItem.TransactionItem) listItem;
             final boolean isSelected = transactionItem.transactionId.equals(selectedTransactionId);
             if (fullBind) {
+                transactionHolder.itemView.setVisibility(View.VISIBLE);
                 final OnClickListener onClickListener = this.onClickListener;
                 if (onClickListener != null)
                     transactionHolder.itemView.setOnClickListener(v -> onClickListener.onTransactionClick(v,
@@ -684,7 +854,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
             final WarningViewHolder warningHolder = (WarningViewHolder) holder;
             final ListItem.WarningItem warningItem = (ListItem.WarningItem) listItem;
             if (warningItem.type == WarningType.BACKUP) {
-                if (getItemCount() == 2 /* 1 transaction, 1 warning */) {
+                if (differ.getItemCount() == 1) {
                     warningHolder.message.setCompoundDrawablesWithIntrinsicBounds(0, 0, 0, 0);
                     warningHolder.message
                             .setText(Html.fromHtml(context.getString(R.string.wallet_transactions_row_warning_backup)));
@@ -710,6 +880,31 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
         }
     }
 
+    /**
+     * Forwards updates of the paged list to the adapter, shifted by the header.
+     */
+    private class HeaderOffsetListUpdateCallback implements ListUpdateCallback {
+        @Override
+        public void onInserted(final int position, final int count) {
+            notifyItemRangeInserted(headerCount() + position, count);
+        }
+
+        @Override
+        public void onRemoved(final int position, final int count) {
+            notifyItemRangeRemoved(headerCount() + position, count);
+        }
+
+        @Override
+        public void onMoved(final int fromPosition, final int toPosition) {
+            notifyItemMoved(headerCount() + fromPosition, headerCount() + toPosition);
+        }
+
+        @Override
+        public void onChanged(final int position, final int count, @Nullable final Object payload) {
+            notifyItemRangeChanged(headerCount() + position, count, payload);
+        }
+    }
+
     public static class TransactionViewHolder extends RecyclerView.ViewHolder {
         private final View extendTime;
         private final TextView fullTime;
@@ -727,9 +922,15 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
         private final View extendMessage;
         private final TextView message;
         private final Toolbar contextBar;
+        private final RelativeTimeFormatter relativeTimeFormatter;
 
         public TransactionViewHolder(final View itemView) {
+            this(itemView, new RelativeTimeFormatter(itemView.getContext()));
+        }
+
+        private TransactionViewHolder(final View itemView, final RelativeTimeFormatter relativeTimeFormatter) {
             super(itemView);
+            this.relativeTimeFormatter = relativeTimeFormatter;
             this.extendTime = itemView.findViewById(R.id.transaction_row_extend_time);
             this.fullTime = itemView.findViewById(R.id.transaction_row_full_time);
             this.extendAddress = itemView.findViewById(R.id.transaction_row_extend_address);
@@ -813,7 +1014,7 @@ public class TransactionsAdapter extends ListAdapter<TransactionsAdapter.ListIte
                 time.setVisibility(View.GONE);
             } else {
                 time.setVisibility(View.VISIBLE);
-                time.setText(item.time);
+                time.setText(relativeTimeFormatter.formatTime(item.time));
                 time.setTextColor(item.timeColor);
                 extendTime.setVisibility(View.GONE);
             }
@@ -42,17 +42,14 @@ import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.addressbook.AddressBookDao;
 import de.schildbach.wallet.addressbook.AddressBookDatabase;
-import de.schildbach.wallet.addressbook.AddressBookEntry;
 import de.schildbach.wallet.util.Qr;
 import de.schildbach.wallet.util.Toast;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.LegacyAddress;
 import org.bitcoinj.uri.BitcoinURI;
-import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import java.util.Locale;
 
 /**
@@ -70,7 +67,6 @@ public final class WalletAddressesFragment extends Fragment implements AddressBo
     private RecyclerView recyclerView;
     private AddressBookAdapter adapter;
 
-    private AbstractWalletActivityViewModel walletActivityViewModel;
     private AddressBookViewModel activityViewModel;
     private WalletAddressesViewModel viewModel;
 
@@ -90,8 +86,6 @@ public final class WalletAddressesFragment extends Fragment implements AddressBo
         super.onCreate(savedInstanceState);
         this.fragmentManager = getChildFragmentManager();
 
-        walletActivityViewModel = new ViewModelProvider(activity).get(AbstractWalletActivityViewModel.class);
-        walletActivityViewModel.wallet.observe(this, wallet -> maybeSubmitList());
         activityViewModel = new ViewModelProvider(activity).get(AddressBookViewModel.class);
         activityViewModel.selectedAddress.observe(this, address -> {
             adapter.setSelectedAddress(address);
@@ -102,9 +96,10 @@ public final class WalletAddressesFragment extends Fragment implements AddressBo
             }
         });
         viewModel = new ViewModelProvider(this).get(WalletAddressesViewModel.class);
-        viewModel.issuedReceiveAddresses.observe(this, issuedReceiveAddresses -> maybeSubmitList());
-        viewModel.importedAddresses.observe(this, importedAddresses -> maybeSubmitList());
-        viewModel.addressBook.observe(this, addressBook -> maybeSubmitList());
+        viewModel.getList().observe(this, list -> {
+            viewGroup.setDisplayedChild(1);
+            adapter.submitList(list);
+        });
         viewModel.ownName.observe(this, ownName -> {});
         viewModel.showBitmapDialog.observe(this, new Event.Observer<Bitmap>() {
             @Override
@@ -135,17 +130,6 @@ public final class WalletAddressesFragment extends Fragment implements AddressBo
         return view;
     }
 
-    private void maybeSubmitList() {
-        final List<Address> derivedAddresses = viewModel.issuedReceiveAddresses.getValue();
-        final List<Address> randomAddresses = viewModel.importedAddresses.getValue();
-        final Wallet wallet = walletActivityViewModel.wallet.getValue();
-        if (derivedAddresses != null && randomAddresses != null) {
-            viewGroup.setDisplayedChild(1);
-            adapter.submitList(AddressBookAdapter.buildListItems(activity, derivedAddresses, randomAddresses, wallet,
-                    AddressBookEntry.asMap(viewModel.addressBook.getValue())));
-        }
-    }
-
     @Override
     public void onAddressClick(final View view, final Address address, final String label) {
         activityViewModel.selectedAddress.setValue(address);
@@ -22,6 +22,7 @@ import android.graphics.Bitmap;
 import android.os.AsyncTask;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
@@ -29,9 +30,12 @@ import de.schildbach.wallet.addressbook.AddressBookDatabase;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
 import de.schildbach.wallet.data.AbstractWalletLiveData;
 import de.schildbach.wallet.data.ConfigOwnNameLiveData;
+import de.schildbach.wallet.data.WalletLiveData;
+import de.schildbach.wallet.util.SingleFlightScheduler;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.LegacyAddress;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.listeners.KeyChainEventListener;
@@ -39,6 +43,9 @@ import org.bitcoinj.wallet.listeners.KeyChainEventListener;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Andreas Schildbach
@@ -48,10 +55,17 @@ public class WalletAddressesViewModel extends AndroidViewModel {
     public final IssuedReceiveAddressesLiveData issuedReceiveAddresses;
     public final ImportedAddressesLiveData importedAddresses;
     public final LiveData<List<AddressBookEntry>> addressBook;
+    private final WalletLiveData wallet;
+    private final MediatorLiveData<List<AddressBookAdapter.ListItem>> list = new MediatorLiveData<>();
     public final ConfigOwnNameLiveData ownName;
     public final MutableLiveData<Event<Bitmap>> showBitmapDialog = new MutableLiveData<>();
     public final MutableLiveData<Event<Address>> showEditAddressBookEntryDialog = new MutableLiveData<>();
 
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ContextPropagatingThreadFactory("wallet addresses"));
+    private final SingleFlightScheduler<List<AddressBookAdapter.ListItem>> listScheduler =
+            new SingleFlightScheduler<>(executor, list::postValue);
+
     public WalletAddressesViewModel(final Application application) {
         super(application);
         this.application = (WalletApplication) application;
@@ -59,6 +73,31 @@ public class WalletAddressesViewModel extends AndroidViewModel {
         this.importedAddresses = new ImportedAddressesLiveData(this.application);
         this.addressBook = AddressBookDatabase.getDatabase(this.application).addressBookDao().getAll();
         this.ownName = new ConfigOwnNameLiveData(this.application);
+        this.wallet = new WalletLiveData(this.application);
+        this.list.addSource(issuedReceiveAddresses, issuedReceiveAddresses -> maybeScheduleList());
+        this.list.addSource(importedAddresses, importedAddresses -> maybeScheduleList());
+        this.list.addSource(addressBook, addressBook -> maybeScheduleList());
+        this.list.addSource(wallet, wallet -> maybeScheduleList());
+    }
+
+    public LiveData<List<AddressBookAdapter.ListItem>> getList() {
+        return list;
+    }
+
+    private void maybeScheduleList() {
+        final List<Address> derivedAddresses = issuedReceiveAddresses.getValue();
+        final List<Address> randomAddresses = importedAddresses.getValue();
+        final Wallet wallet = this.wallet.getValue();
+        final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(this.addressBook.getValue());
+        if (derivedAddresses != null && randomAddresses != null)
+            listScheduler.schedule(generation -> AddressBookAdapter.buildListItems(application, derivedAddresses,
+                    randomAddresses, wallet, addressBook, generation));
+    }
+
+    @Override
+    protected void onCleared() {
+        executor.shutdownNow();
+        super.onCleared();
     }
 
     public static class IssuedReceiveAddressesLiveData extends AbstractWalletLiveData<List<Address>>
@@ -37,6 +37,7 @@ import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.exchangerate.ExchangeRateEntry;
 import de.schildbach.wallet.service.BlockchainState;
+import de.schildbach.wallet.service.CatchUpSync;
 import de.schildbach.wallet.ui.send.FeeCategory;
 import de.schildbach.wallet.ui.send.SendCoinsActivity;
 import org.bitcoinj.core.Coin;
@@ -163,7 +164,12 @@ public final class WalletBalanceFragment extends Fragment {
             final String downloading = getString(noImpediments ? R.string.blockchain_state_progress_downloading
                     : R.string.blockchain_state_progress_stalled);
 
-            if (blockchainLag < 2 * DateUtils.DAY_IN_MILLIS) {
+            final CatchUpSync.Progress catchUp = blockchainState.catchUp;
+            if (noImpediments && catchUp != null && catchUp.phase == CatchUpSync.Phase.HEADERS) {
+                final int percent = catchUp.targetHeight > 0 ? (int) (100L * catchUp.height / catchUp.targetHeight)
+                        : 0;
+                viewProgress.setText(getString(R.string.blockchain_state_progress_headers, percent));
+            } else if (blockchainLag < 2 * DateUtils.DAY_IN_MILLIS) {
                 final long hours = blockchainLag / DateUtils.HOUR_IN_MILLIS;
                 viewProgress.setText(getString(R.string.blockchain_state_progress_hours, downloading, hours));
             } else if (blockchainLag < 2 * DateUtils.WEEK_IN_MILLIS) {
@@ -18,6 +18,7 @@
 package de.schildbach.wallet.ui;
 
 import android.app.admin.DevicePolicyManager;
+import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -34,8 +35,13 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.SearchView;
+import android.widget.SearchView.OnQueryTextListener;
 import android.widget.TextView;
 import android.widget.ViewAnimator;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
@@ -47,10 +53,11 @@ import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.addressbook.AddressBookDao;
 import de.schildbach.wallet.addressbook.AddressBookDatabase;
+import de.schildbach.wallet.transactions.TransactionExporter;
 import de.schildbach.wallet.ui.TransactionsAdapter.WarningType;
 import de.schildbach.wallet.ui.send.RaiseFeeDialogFragment;
 import de.schildbach.wallet.util.Qr;
-import de.schildbach.wallet.util.WalletUtils;
+import de.schildbach.wallet.util.Toast;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
@@ -58,6 +65,8 @@ import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+
 /**
  * @author Andreas Schildbach
  */
@@ -83,6 +92,13 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
 
     private static final Logger log = LoggerFactory.getLogger(WalletTransactionsFragment.class);
 
+    private final ActivityResultLauncher<String> exportCsvLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(TransactionExporter.Format.CSV.mimeType),
+            uri -> handleExport(uri, TransactionExporter.Format.CSV));
+    private final ActivityResultLauncher<String> exportJsonLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(TransactionExporter.Format.JSON.mimeType),
+            uri -> handleExport(uri, TransactionExporter.Format.JSON));
+
     @Override
     public void onAttach(final Context context) {
         super.onAttach(context);
@@ -102,8 +118,8 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
         viewModel = new ViewModelProvider(this).get(WalletTransactionsViewModel.class);
 
         viewModel.direction.observe(this, direction -> activity.invalidateOptionsMenu());
-        viewModel.transactions.observe(this, transactions -> {
-            if (transactions.isEmpty()) {
+        viewModel.numTransactions.observe(this, numTransactions -> {
+            if (numTransactions == 0) {
                 viewGroup.setDisplayedChild(0);
 
                 final WalletTransactionsViewModel.Direction direction = viewModel.direction.getValue();
@@ -135,6 +151,8 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
             if (position != RecyclerView.NO_POSITION)
                 recyclerView.smoothScrollToPosition(position);
         });
+        viewModel.warning.observe(this, warning -> adapter.setWarning(warning));
+        viewModel.time.observe(this, time -> adapter.setTime(time));
         viewModel.list.observe(this, listItems -> {
             adapter.submitList(listItems);
             activityViewModel.transactionsLoadingFinished();
@@ -159,6 +177,9 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
             }
         });
 
+        viewModel.exportProgress.observe(this, new ProgressDialogFragment.Observer(fragmentManager));
+        viewModel.showExportDialog.observe(this, new DialogEvent.Observer(activity));
+
         adapter = new TransactionsAdapter(activity, this, this);
 
         activity.addMenuProvider(new MenuProvider() {
@@ -170,6 +191,29 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
 
             @Override
             public void onPrepareMenu(final Menu menu) {
+                final MenuItem searchMenuItem = menu.findItem(R.id.wallet_transactions_options_search);
+                final SearchView searchView = (SearchView) searchMenuItem.getActionView();
+                searchView.setQueryHint(getString(R.string.wallet_transactions_options_search_hint));
+                searchView.setOnQueryTextListener(new OnQueryTextListener() {
+                    @Override
+                    public boolean onQueryTextChange(final String newText) {
+                        viewModel.setQuery(newText);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onQueryTextSubmit(final String query) {
+                        searchView.clearFocus();
+                        return true;
+                    }
+                });
+
+                // Workaround for not being able to style the SearchView
+                final int id = getResources().getIdentifier("android:id/search_src_text", null, null);
+                final EditText searchInput = searchView.findViewById(id);
+                searchInput.setTextColor(activity.getColor(R.color.fg_on_dark_bg_network_significant));
+                searchInput.setHintTextColor(activity.getColor(R.color.fg_on_dark_bg_network_insignificant));
+
                 final WalletTransactionsViewModel.Direction direction = viewModel.direction.getValue();
                 if (direction == null) {
                     menu.findItem(R.id.wallet_transactions_options_filter_all).setChecked(true);
@@ -198,12 +242,37 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
                     viewModel.setDirection(WalletTransactionsViewModel.Direction.SENT);
                     filterMenuItem.setIcon(R.drawable.transactions_list_filter_sent);
                     return true;
+                } else if (itemId == R.id.wallet_transactions_options_export_csv) {
+                    launchExport(exportCsvLauncher, TransactionExporter.Format.CSV);
+                    return true;
+                } else if (itemId == R.id.wallet_transactions_options_export_json) {
+                    launchExport(exportJsonLauncher, TransactionExporter.Format.JSON);
+                    return true;
                 }
                 return false;
             }
         });
     }
 
+    private void launchExport(final ActivityResultLauncher<String> launcher,
+            final TransactionExporter.Format format) {
+        final String filename = Constants.Files.EXTERNAL_TRANSACTIONS_EXPORT + '-' + LocalDate.now() + '.'
+                + format.fileExtension;
+        try {
+            launcher.launch(filename);
+        } catch (final ActivityNotFoundException x) {
+            log.warn("Cannot open document selector: {}", filename);
+            new Toast(activity).longToast(R.string.toast_start_storage_provider_selector_failed);
+        }
+    }
+
+    private void handleExport(final Uri uri, final TransactionExporter.Format format) {
+        if (uri != null)
+            viewModel.export(uri, format);
+        else
+            log.info("cancelled exporting transactions");
+    }
+
     @Override
     public View onCreateView(final LayoutInflater inflater, final ViewGroup container,
             final Bundle savedInstanceState) {
@@ -252,10 +321,8 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
     public void onInflateTransactionContextMenu(final MenuInflater inflater, final Menu menu,
                                                 final Sha256Hash transactionId) {
         final Wallet wallet = viewModel.wallet.getValue();
-        final Transaction tx = wallet.getTransaction(transactionId);
-        final boolean txSent = tx.getValue(wallet).signum() < 0;
-        final Address txAddress = txSent ? WalletUtils.getToAddressOfSent(tx, wallet)
-                : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+        final Transaction tx = viewModel.getTransaction(transactionId);
+        final Address txAddress = viewModel.getTransactionInfo(tx, wallet).address;
         final byte[] txSerialized = tx.unsafeBitcoinSerialize();
 
         inflater.inflate(R.menu.wallet_transactions_context, menu);
@@ -286,12 +353,10 @@ public class WalletTransactionsFragment extends Fragment implements Transactions
     @Override
     public boolean onClickTransactionContextMenuItem(final MenuItem item, final Sha256Hash transactionId) {
         final Wallet wallet = viewModel.wallet.getValue();
-        final Transaction tx = wallet.getTransaction(transactionId);
+        final Transaction tx = viewModel.getTransaction(transactionId);
         final int itemId = item.getItemId();
         if (itemId == R.id.wallet_transactions_context_edit_address) {
-            final boolean txSent = tx.getValue(wallet).signum() < 0;
-            final Address txAddress = txSent ? WalletUtils.getToAddressOfSent(tx, wallet)
-                    : WalletUtils.getWalletAddressOfReceived(tx, wallet);
+            final Address txAddress = viewModel.getTransactionInfo(tx, wallet).address;
             viewModel.showEditAddressBookEntryDialog.setValue(new Event<>(txAddress));
             return true;
         } else if (itemId == R.id.wallet_transactions_context_show_qr) {
@@ -19,40 +19,55 @@ package de.schildbach.wallet.ui;
 
 import android.app.Application;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
+import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.DataSource;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
+import com.google.common.base.Strings;
 import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.addressbook.AddressBookDatabase;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
-import de.schildbach.wallet.data.AbstractWalletLiveData;
 import de.schildbach.wallet.data.ConfigFormatLiveData;
+import de.schildbach.wallet.data.TimeLiveData;
 import de.schildbach.wallet.data.WalletLiveData;
+import de.schildbach.wallet.transactions.TransactionDao;
+import de.schildbach.wallet.transactions.TransactionEntry;
+import de.schildbach.wallet.transactions.TransactionExporter;
+import de.schildbach.wallet.transactions.TransactionInfo;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
+import de.schildbach.wallet.transactions.TransactionListDataSource;
+import de.schildbach.wallet.transactions.TransactionMirror;
+import de.schildbach.wallet.transactions.TransactionSearchIndex;
+import de.schildbach.wallet.transactions.TransactionsDatabase;
+import de.schildbach.wallet.util.SingleFlightScheduler;
+import okio.BufferedSink;
+import okio.Okio;
 import org.bitcoinj.core.Address;
-import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
-import org.bitcoinj.core.Transaction.Purpose;
-import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
-import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
 import org.bitcoinj.utils.MonetaryFormat;
-import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
-import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
-import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
-import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
-import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Andreas Schildbach
@@ -63,179 +78,254 @@ public class WalletTransactionsViewModel extends AndroidViewModel {
     }
 
     private final WalletApplication application;
-    public final TransactionsLiveData transactions;
+    private final TransactionMirror transactionMirror;
+    private final TransactionDao transactionDao;
     public final WalletLiveData wallet;
-    private final TransactionsConfidenceLiveData transactionsConfidence;
+    public final TimeLiveData time;
+    public final LiveData<Integer> numTransactions;
     private final LiveData<List<AddressBookEntry>> addressBook;
     private final ConfigFormatLiveData configFormat;
-    public final MutableLiveData<Direction> direction = new MutableLiveData<>();
+    public final MutableLiveData<Direction> direction = new MutableLiveData<>(null);
+    public final MutableLiveData<String> query = new MutableLiveData<>(null);
+    private final MediatorLiveData<SearchResults> searchResults = new MediatorLiveData<>();
     public final MutableLiveData<Sha256Hash> selectedTransaction = new MutableLiveData<>();
     public final MutableLiveData<TransactionsAdapter.WarningType> warning = new MutableLiveData<>();
-    public final MediatorLiveData<List<TransactionsAdapter.ListItem>> list = new MediatorLiveData<>();
+    private final MediatorLiveData<DataSource.Factory<Integer, TransactionsAdapter.ListItem>> items =
+            new MediatorLiveData<>();
+    public final LiveData<PagedList<TransactionsAdapter.ListItem>> list;
     public final MutableLiveData<Event<Bitmap>> showBitmapDialog = new MutableLiveData<>();
     public final MutableLiveData<Event<Address>> showEditAddressBookEntryDialog = new MutableLiveData<>();
     public final MutableLiveData<Event<Sha256Hash>> showReportIssueDialog = new MutableLiveData<>();
+    public final MutableLiveData<String> exportProgress = new MutableLiveData<>();
+    public final MutableLiveData<DialogEvent> showExportDialog = new MutableLiveData<>();
+
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(
+            new ContextPropagatingThreadFactory("transaction search"));
+    private final SingleFlightScheduler<SearchResults> searchScheduler =
+            new SingleFlightScheduler<>(searchExecutor, searchResults::postValue);
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(
+            new ContextPropagatingThreadFactory("transaction export"));
+
+    /** Number of transactions loaded at once while scrolling. */
+    private static final int PAGE_SIZE = 30;
+    /** Number of built items kept for patching their confidence, a few pages around the visible ones. */
+    private static final int MAX_BUILT_ITEMS = PAGE_SIZE * 10;
+
+    private static final Logger log = LoggerFactory.getLogger(WalletTransactionsViewModel.class);
 
     public WalletTransactionsViewModel(final Application application) {
         super(application);
         this.application = (WalletApplication) application;
-        this.transactions = new TransactionsLiveData(this.application);
+        this.transactionMirror = this.application.getTransactionMirror();
+        this.transactionDao = TransactionsDatabase.getDatabase(this.application).transactionDao();
         this.wallet = new WalletLiveData(this.application);
-        this.transactionsConfidence = new TransactionsConfidenceLiveData(this.application);
+        this.time = new TimeLiveData(this.application);
+        this.numTransactions = transactionDao.findCount();
         this.addressBook = AddressBookDatabase.getDatabase(this.application).addressBookDao().getAll();
         this.configFormat = new ConfigFormatLiveData(this.application);
-        this.list.addSource(transactions, transactions -> maybePostList());
-        this.list.addSource(wallet, wallet -> maybePostList());
-        this.list.addSource(transactionsConfidence, v -> maybePostList());
-        this.list.addSource(addressBook, addressBook -> maybePostList());
-        this.list.addSource(direction, direction -> maybePostList());
-        this.list.addSource(configFormat, format -> maybePostList());
+        this.items.addSource(wallet, wallet -> maybeUpdateItems());
+        this.items.addSource(addressBook, addressBook -> maybeUpdateItems());
+        this.items.addSource(this.application.getTransactionInfo(), transactionInfo -> maybeUpdateItems());
+        this.items.addSource(direction, direction -> maybeUpdateItems());
+        this.items.addSource(configFormat, format -> maybeUpdateItems());
+        this.items.addSource(query, query -> maybeUpdateItems());
+        this.items.addSource(searchResults, searchResults -> maybeUpdateItems());
+        this.searchResults.addSource(query, query -> maybeSearch());
+        this.searchResults.addSource(direction, direction -> maybeSearch());
+        this.searchResults.addSource(addressBook, addressBook -> maybeSearch());
+        this.searchResults.addSource(configFormat, format -> maybeSearch());
+        this.searchResults.addSource(transactionMirror.searchIndex, searchIndex -> maybeSearch());
+        this.list = Transformations.switchMap(items, items -> new LivePagedListBuilder<>(items,
+                new PagedList.Config.Builder().setPageSize(PAGE_SIZE).setEnablePlaceholders(false).build())
+                        .build());
     }
 
     public void setDirection(final Direction direction) {
         this.direction.setValue(direction);
     }
 
-    public void setWarning(final TransactionsAdapter.WarningType warning) {
-        this.warning.setValue(warning);
+    /**
+     * Restricts the list to transactions matching the given query, see {@link TransactionSearchIndex}.
+     */
+    public void setQuery(@Nullable final String query) {
+        this.query.setValue(query != null ? Strings.emptyToNull(query.trim()) : null);
     }
 
-    private void maybePostList() {
-        AsyncTask.execute(() -> {
+    /**
+     * Exports the transaction history to the given document, in the background.
+     */
+    public void export(final Uri uri, final TransactionExporter.Format format) {
+        final TransactionInfoCache transactionInfo = application.getTransactionInfo().getValue();
+        if (transactionInfo == null)
+            return;
+        final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(this.addressBook.getValue());
+        exportProgress.setValue(application.getString(R.string.wallet_transactions_export_progress, 0));
+        exportExecutor.execute(() -> {
             org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-            final Set<Transaction> transactions = WalletTransactionsViewModel.this.transactions.getValue();
-            final MonetaryFormat format = configFormat.getValue();
-            final Map<String, AddressBookEntry> addressBook = AddressBookEntry
-                    .asMap(WalletTransactionsViewModel.this.addressBook.getValue());
-            if (transactions != null && format != null && addressBook != null) {
-                final List<Transaction> filteredTransactions = new ArrayList<>(transactions.size());
-                final Wallet wallet = application.getWallet();
-                final Direction direction = WalletTransactionsViewModel.this.direction.getValue();
-                for (final Transaction tx : transactions) {
-                    final boolean sent = tx.getValue(wallet).signum() < 0;
-                    final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
-                    if ((direction == Direction.RECEIVED && !sent && !isInternal) || direction == null
-                            || (direction == Direction.SENT && sent && !isInternal))
-                        filteredTransactions.add(tx);
-                }
-
-                Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
-
-                list.postValue(TransactionsAdapter.buildListItems(application, filteredTransactions,
-                        warning.getValue(), wallet, addressBook, format, application.maxConnectedPeers()));
+            try (final OutputStream os = application.getContentResolver().openOutputStream(uri)) {
+                if (os == null)
+                    throw new IOException("cannot open " + uri);
+                final BufferedSink sink = Okio.buffer(Okio.sink(os));
+                final TransactionExporter exporter = new TransactionExporter(sink, format, true, addressBook);
+                final int[] lastPercent = { 0 };
+                final int numExported = exporter.exportAll(transactionDao, transactionMirror, transactionInfo,
+                        (exported, total) -> {
+                            final int percent = total > 0 ? exported * 100 / total : 100;
+                            if (percent != lastPercent[0]) {
+                                lastPercent[0] = percent;
+                                exportProgress.postValue(application.getString(
+                                        R.string.wallet_transactions_export_progress, percent));
+                            }
+                        });
+                log.info("exported {} transactions as {} to: '{}'", numExported, format, uri);
+                showExportDialog.postValue(DialogEvent.dialog(R.string.wallet_transactions_export_dialog_title,
+                        R.string.wallet_transactions_export_success, numExported));
+            } catch (final IOException | RuntimeException x) {
+                log.error("problem exporting transactions to " + uri, x);
+                showExportDialog.postValue(DialogEvent.warn(R.string.wallet_transactions_export_dialog_title,
+                        R.string.wallet_transactions_export_failure, x.toString()));
+            } finally {
+                exportProgress.postValue(null);
             }
         });
     }
 
-    private static final Comparator<Transaction> TRANSACTION_COMPARATOR = (tx1, tx2) -> {
-        final boolean pending1 = tx1.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
-        final boolean pending2 = tx2.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
-        if (pending1 != pending2)
-            return pending1 ? -1 : 1;
-
-        final Date updateTime1 = tx1.getUpdateTime();
-        final long time1 = updateTime1 != null ? updateTime1.getTime() : 0;
-        final Date updateTime2 = tx2.getUpdateTime();
-        final long time2 = updateTime2 != null ? updateTime2.getTime() : 0;
-        if (time1 != time2)
-            return time1 > time2 ? -1 : 1;
-
-        return tx1.getTxId().compareTo(tx2.getTxId());
-    };
-
-    public static class TransactionsLiveData extends AbstractWalletLiveData<Set<Transaction>> {
-        private static final long THROTTLE_MS = 1000;
-
-        public TransactionsLiveData(final WalletApplication application) {
-            super(application, THROTTLE_MS);
-        }
-
-        @Override
-        protected void onWalletActive(final Wallet wallet) {
-            addWalletListener(wallet);
-            load();
-        }
-
-        @Override
-        protected void onWalletInactive(final Wallet wallet) {
-            removeWalletListener(wallet);
-        }
+    public void setWarning(final TransactionsAdapter.WarningType warning) {
+        this.warning.setValue(warning);
+    }
 
-        private void addWalletListener(final Wallet wallet) {
-            wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
-            wallet.addChangeEventListener(Threading.SAME_THREAD, walletListener);
-        }
+    /**
+     * Looks up a transaction of the list, including transactions that are no longer part of the wallet because they
+     * have been archived.
+     */
+    @Nullable
+    public Transaction getTransaction(final Sha256Hash txId) {
+        return transactionMirror.getTransaction(txId);
+    }
 
-        private void removeWalletListener(final Wallet wallet) {
-            wallet.removeChangeEventListener(walletListener);
-            wallet.removeReorganizeEventListener(walletListener);
-            wallet.removeCoinsSentEventListener(walletListener);
-            wallet.removeCoinsReceivedEventListener(walletListener);
-        }
+    /**
+     * Derives the facts about a transaction of the list, considering archived transactions.
+     */
+    public TransactionInfo getTransactionInfo(final Transaction tx, final Wallet wallet) {
+        final TransactionInfoCache transactionInfo = application.getTransactionInfo().getValue();
+        return transactionInfo != null ? transactionInfo.get(tx) : TransactionInfo.of(tx, wallet, wallet);
+    }
 
-        @Override
-        protected void load() {
-            final Wallet wallet = getWallet();
-            AsyncTask.execute(() -> {
-                org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-                postValue(wallet.getTransactions(true));
+    /**
+     * Pages through the transaction mirror, building items just for the loaded pages. Changes of the mirror
+     * invalidate the pages, so they are reloaded as well. Items of transactions whose derived facts did not change
+     * are reused, with only their confidence patched if needed, so that e.g. a new block or a broadcast just
+     * updates the confidence of the affected rows.
+     */
+    private void maybeUpdateItems() {
+        final Wallet wallet = this.wallet.getValue();
+        final MonetaryFormat format = configFormat.getValue();
+        final List<AddressBookEntry> addressBookEntries = this.addressBook.getValue();
+        final TransactionInfoCache transactionInfo = application.getTransactionInfo().getValue();
+        if (wallet != null && format != null && addressBookEntries != null && transactionInfo != null) {
+            final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(addressBookEntries);
+            final MonetaryFormat noCodeFormat = format.noCode();
+            final int maxConnectedPeers = application.maxConnectedPeers();
+            final Direction direction = this.direction.getValue();
+            final String query = this.query.getValue();
+            final DataSource.Factory<Integer, TransactionEntry> entries;
+            if (query != null) {
+                final SearchResults searchResults = this.searchResults.getValue();
+                if (searchResults == null || !searchResults.query.equals(query)
+                        || searchResults.direction != direction)
+                    return; // wait for results
+                entries = TransactionListDataSource.factory(searchResults.entries);
+            } else if (direction == Direction.RECEIVED)
+                entries = transactionDao.findByDirection(TransactionEntry.DIRECTION_RECEIVED);
+            else if (direction == Direction.SENT)
+                entries = transactionDao.findByDirection(TransactionEntry.DIRECTION_SENT);
+            else
+                entries = transactionDao.findAll();
+            // most recently used items built so far, valid as long as the facts captured above
+            final Map<Sha256Hash, TransactionsAdapter.ListItem.TransactionItem> builtItems = Collections
+                    .synchronizedMap(new LinkedHashMap<Sha256Hash, TransactionsAdapter.ListItem.TransactionItem>(
+                            MAX_BUILT_ITEMS, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(
+                                final Map.Entry<Sha256Hash, TransactionsAdapter.ListItem.TransactionItem> eldest) {
+                            return size() > MAX_BUILT_ITEMS;
+                        }
+                    });
+            items.setValue(new DataSource.Factory<Integer, TransactionsAdapter.ListItem>() {
+                @Override
+                public DataSource<Integer, TransactionsAdapter.ListItem> create() {
+                    final DataSource<Integer, TransactionEntry> dataSource = entries.create();
+                    return dataSource.mapByPage(page -> {
+                        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                        final List<TransactionsAdapter.ListItem> pageItems = new ArrayList<>(page.size());
+                        for (final TransactionEntry entry : page) {
+                            final Sha256Hash txId = Sha256Hash.wrap(entry.getTxId());
+                            final Transaction tx = transactionMirror.getTransaction(txId);
+                            if (tx == null) {
+                                // The table is behind the mirror. Pages must keep their size, so rather than
+                                // dropping the row, reload from the table. The page is dropped along with the
+                                // invalidated data source, so it never makes it into the list.
+                                log.debug("transaction {} missing from mirror, reloading", txId);
+                                dataSource.invalidate();
+                                return Collections.nCopies(page.size(), null);
+                            }
+                            final TransactionInfo info = transactionInfo.get(tx);
+                            final TransactionsAdapter.ListItem.TransactionItem builtItem = builtItems.get(txId);
+                            TransactionsAdapter.ListItem.TransactionItem item = builtItem != null
+                                    ? builtItem.withConfidence(application, tx, wallet, info, maxConnectedPeers)
+                                    : null;
+                            if (item == null)
+                                item = new TransactionsAdapter.ListItem.TransactionItem(application, tx, wallet,
+                                        info, addressBook, noCodeFormat, maxConnectedPeers);
+                            if (item != builtItem)
+                                builtItems.put(txId, item);
+                            pageItems.add(item);
+                        }
+                        return pageItems;
+                    });
+                }
             });
         }
-
-        private final WalletListener walletListener = new WalletListener();
-
-        private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
-                WalletReorganizeEventListener, WalletChangeEventListener {
-            @Override
-            public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
-                    final Coin newBalance) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
-                    final Coin newBalance) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onReorganize(final Wallet wallet) {
-                triggerLoad();
-            }
-
-            @Override
-            public void onWalletChanged(final Wallet wallet) {
-                triggerLoad();
-            }
-        }
     }
 
-    private static class TransactionsConfidenceLiveData extends AbstractWalletLiveData<Void>
-            implements TransactionConfidenceEventListener {
-        public TransactionsConfidenceLiveData(final WalletApplication application) {
-            super(application);
-        }
-
-        @Override
-        protected void onWalletActive(final Wallet wallet) {
-            wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
-        }
+    private void maybeSearch() {
+        final String query = this.query.getValue();
+        final TransactionSearchIndex searchIndex = transactionMirror.searchIndex.getValue();
+        final MonetaryFormat format = configFormat.getValue();
+        if (query == null || searchIndex == null || format == null)
+            return;
+        final Direction direction = this.direction.getValue();
+        final Integer entryDirection;
+        if (direction == Direction.RECEIVED)
+            entryDirection = TransactionEntry.DIRECTION_RECEIVED;
+        else if (direction == Direction.SENT)
+            entryDirection = TransactionEntry.DIRECTION_SENT;
+        else
+            entryDirection = null;
+        final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(this.addressBook.getValue());
+        searchScheduler.schedule(generation -> new SearchResults(query, direction,
+                searchIndex.search(query, entryDirection, addressBook, format, generation)));
+    }
 
-        @Override
-        protected void onWalletInactive(final Wallet wallet) {
-            wallet.removeTransactionConfidenceEventListener(this);
-        }
+    @Override
+    protected void onCleared() {
+        searchExecutor.shutdownNow();
+        // let a running export finish writing its document
+        exportExecutor.shutdown();
+        super.onCleared();
+    }
 
-        @Override
-        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
-            triggerLoad();
-        }
+    private static final class SearchResults {
+        final String query;
+        @Nullable
+        final Direction direction;
+        final List<TransactionEntry> entries;
 
-        @Override
-        protected void load() {
-            postValue(null);
+        SearchResults(final String query, @Nullable final Direction direction,
+                final List<TransactionEntry> entries) {
+            this.query = query;
+            this.direction = direction;
+            this.entries = entries;
         }
     }
 }
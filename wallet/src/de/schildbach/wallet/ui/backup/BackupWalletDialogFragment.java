@@ -103,10 +103,10 @@ public class BackupWalletDialogFragment extends DialogFragment {
             registerForActivityResult(new ActivityResultContracts.CreateDocument(Constants.MIMETYPE_WALLET_BACKUP),
                     uri -> {
                         if (uri != null) {
-                            walletActivityViewModel.wallet.observe(this, new Observer<Wallet>() {
+                            walletActivityViewModel.walletWithHistory.observe(this, new Observer<Wallet>() {
                                 @Override
                                 public void onChanged(final Wallet wallet) {
-                                    walletActivityViewModel.wallet.removeObserver(this);
+                                    walletActivityViewModel.walletWithHistory.removeObserver(this);
 
                                     final String targetProvider = WalletUtils.uriToProvider(uri);
                                     final String password = passwordView.getText().toString().trim();
@@ -118,8 +118,8 @@ public class BackupWalletDialogFragment extends DialogFragment {
                                     try (final Writer cipherOut = new OutputStreamWriter(
                                             activity.getContentResolver().openOutputStream(uri),
                                             StandardCharsets.UTF_8)) {
-                                        final Protos.Wallet walletProto =
-                                                new WalletProtobufSerializer().walletToProto(wallet);
+                                        final Protos.Wallet walletProto = application.getTransactionArchive()
+                                                .mergeInto(new WalletProtobufSerializer().walletToProto(wallet));
                                         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                                         walletProto.writeTo(baos);
                                         baos.close();
@@ -40,8 +40,13 @@ import com.google.common.hash.Hashing;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
+import de.schildbach.wallet.transactions.BlockTransactionIndex;
+import de.schildbach.wallet.transactions.TransactionInfo;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
 import de.schildbach.wallet.ui.CurrencyTextView;
 import de.schildbach.wallet.ui.SeparatorViewHolder;
+import de.schildbach.wallet.util.SingleFlightScheduler;
+import de.schildbach.wallet.util.RelativeTimeFormatter;
 import de.schildbach.wallet.util.WalletUtils;
 import org.bitcoinj.core.Address;
 import org.bitcoinj.core.Coin;
@@ -56,34 +61,31 @@ import org.bitcoinj.wallet.Wallet;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 
 /**
  * @author Andreas Schildbach
  */
 public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, RecyclerView.ViewHolder> {
-    public static List<ListItem> buildListItems(final Context context, final List<StoredBlock> blocks, final Date currentTime,
-            final MonetaryFormat format, final @Nullable Set<Transaction> transactions, final @Nullable Wallet wallet,
-            final @Nullable Map<String, AddressBookEntry> addressBook) {
+    public static List<ListItem> buildListItems(final Context context, final List<StoredBlock> blocks,
+            final MonetaryFormat format, final @Nullable BlockTransactionIndex transactions,
+            final @Nullable Wallet wallet,
+            final @Nullable TransactionInfoCache transactionInfo,
+            final @Nullable Map<String, AddressBookEntry> addressBook,
+            final SingleFlightScheduler.Generation generation) {
         final List<ListItem> items = new ArrayList<>(blocks.size());
         for (final StoredBlock block : blocks) {
+            generation.check();
             final Sha256Hash blockHash = block.getHeader().getHash();
             final int height = block.getHeight();
-            final long timeMs = block.getHeader().getTimeSeconds() * DateUtils.SECOND_IN_MILLIS;
-            final String time;
-            if (timeMs < currentTime.getTime() - DateUtils.MINUTE_IN_MILLIS)
-                time = DateUtils.getRelativeDateTimeString(context, timeMs, DateUtils.MINUTE_IN_MILLIS,
-                        DateUtils.WEEK_IN_MILLIS, 0).toString();
-            else
-                time = context.getString(R.string.block_row_now);
+            final long time = block.getHeader().getTimeSeconds() * DateUtils.SECOND_IN_MILLIS;
             final List<ListItem.TxItem> transactionItems = buildTransactionItems(context, blockHash, transactions,
-                    wallet, addressBook);
+                    wallet, transactionInfo, addressBook);
             if (((AbstractBitcoinNetParams) Constants.NETWORK_PARAMETERS).isRewardHalvingPoint(height))
                 items.add(new ListItem.SeparatorItem(context.getString(R.string.block_row_mining_reward_adjustment)));
             if (((AbstractBitcoinNetParams) Constants.NETWORK_PARAMETERS).isDifficultyTransitionPoint(height))
@@ -94,55 +96,52 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
     }
 
     private static List<ListItem.TxItem> buildTransactionItems(final Context context, final Sha256Hash blockHash,
-                                                               final @Nullable Set<Transaction> transactions,
+                                                               final @Nullable BlockTransactionIndex transactions,
                                                                final @Nullable Wallet wallet,
+                                                               final @Nullable TransactionInfoCache transactionInfo,
                                                                final @Nullable Map<String, AddressBookEntry> addressBook) {
-        final List<ListItem.TxItem> transactionItems = new LinkedList<>();
-        if (transactions != null && wallet != null) {
-            for (final Transaction tx : transactions) {
-                final Map<Sha256Hash, Integer> appearsInHashes = tx.getAppearsInHashes();
-                if (appearsInHashes != null && appearsInHashes.containsKey(blockHash)) {
-                    final boolean isCoinBase = tx.isCoinBase();
-                    final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
-
-                    final Coin value = tx.getValue(wallet);
-                    final boolean sent = value.signum() < 0;
-                    final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
-                    final Address address;
-                    if (sent)
-                        address = WalletUtils.getToAddressOfSent(tx, wallet);
-                    else
-                        address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
-
-                    final CharSequence fromTo;
-                    if (isInternal || self)
-                        fromTo = context.getString(R.string.symbol_internal);
-                    else if (sent)
-                        fromTo = context.getString(R.string.symbol_to);
-                    else
-                        fromTo = context.getString(R.string.symbol_from);
-
-                    final CharSequence label;
-                    if (isCoinBase) {
-                        label = context.getString(R.string.wallet_transactions_fragment_coinbase);
-                    } else if (isInternal || self) {
-                        label = context.getString(R.string.wallet_transactions_fragment_internal);
-                    } else if (address != null && addressBook != null) {
-                        final AddressBookEntry entry = addressBook.get(address.toString());
-                        if (entry != null)
-                            label = entry.getLabel();
-                        else
-                            label = "?";
-                    } else {
-                        label = "?";
-                    }
+        if (transactions == null || wallet == null)
+            return Collections.emptyList();
+        final List<Transaction> blockTransactions = transactions.get(blockHash);
+        final List<ListItem.TxItem> transactionItems = new ArrayList<>(blockTransactions.size());
+        for (final Transaction tx : blockTransactions) {
+            final boolean isCoinBase = tx.isCoinBase();
+            final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
+
+            final TransactionInfo info = transactionInfo != null && transactionInfo.getWallet() == wallet
+                    ? transactionInfo.get(tx) : TransactionInfo.of(tx, wallet, wallet);
+            final Coin value = info.value;
+            final boolean sent = info.sent;
+            final boolean self = info.self;
+            final Address address = info.address;
+
+            final CharSequence fromTo;
+            if (isInternal || self)
+                fromTo = context.getString(R.string.symbol_internal);
+            else if (sent)
+                fromTo = context.getString(R.string.symbol_to);
+            else
+                fromTo = context.getString(R.string.symbol_from);
+
+            final CharSequence label;
+            if (isCoinBase) {
+                label = context.getString(R.string.wallet_transactions_fragment_coinbase);
+            } else if (isInternal || self) {
+                label = context.getString(R.string.wallet_transactions_fragment_internal);
+            } else if (address != null && addressBook != null) {
+                final AddressBookEntry entry = addressBook.get(address.toString());
+                if (entry != null)
+                    label = entry.getLabel();
+                else
+                    label = "?";
+            } else {
+                label = "?";
+            }
 
-                    final CharSequence addressText = label != null ? label : address.toString();
-                    final Typeface addressTypeface = label != null ? Typeface.DEFAULT : Typeface.MONOSPACE;
+            final CharSequence addressText = label != null ? label : address.toString();
+            final Typeface addressTypeface = label != null ? Typeface.DEFAULT : Typeface.MONOSPACE;
 
-                    transactionItems.add(new ListItem.TxItem(fromTo, addressText, addressTypeface, label, value));
-                }
-            }
+            transactionItems.add(new ListItem.TxItem(fromTo, addressText, addressTypeface, label, value));
         }
         return transactionItems;
     }
@@ -158,11 +157,12 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
         public static class BlockItem extends ListItem {
             public final Sha256Hash blockHash;
             public final int height;
-            public final String time;
+            /** block time, rendered relative to now when bound */
+            public final long time;
             public final List<TxItem> transactions;
             public final MonetaryFormat format;
 
-            public BlockItem(final Sha256Hash blockHash, final int height, final String time,
+            public BlockItem(final Sha256Hash blockHash, final int height, final long time,
                              final MonetaryFormat format, final @Nullable List<TxItem> transactions) {
                 super(id(blockHash));
                 this.blockHash = blockHash;
@@ -223,6 +223,7 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
 
     private final LayoutInflater inflater;
     private final MenuInflater menuInflater;
+    private final RelativeTimeFormatter relativeTimeFormatter;
     @Dimension
     private final int cardElevationSelected;
 
@@ -254,7 +255,7 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
             @Override
             public boolean areContentsTheSame(final ListItem oldItem, final ListItem newItem) {
                 if (oldItem instanceof ListItem.BlockItem)
-                    return Objects.equals(((ListItem.BlockItem) oldItem).time, ((ListItem.BlockItem) newItem).time);
+                    return ((ListItem.BlockItem) oldItem).time == ((ListItem.BlockItem) newItem).time;
                 else if (oldItem instanceof ListItem.SeparatorItem)
                     return Objects.equals(((ListItem.SeparatorItem) oldItem).label,
                             ((ListItem.SeparatorItem) newItem).label);
@@ -269,7 +270,7 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
                 if (oldItem instanceof ListItem.BlockItem) {
                     final ListItem.BlockItem oldBlockItem = (ListItem.BlockItem) oldItem;
                     final ListItem.BlockItem newBlockItem = (ListItem.BlockItem) newItem;
-                    if (!Objects.equals(oldBlockItem.time, newBlockItem.time))
+                    if (oldBlockItem.time != newBlockItem.time)
                         changes.add(ChangeType.TIME);
                     if (!Objects.equals(oldBlockItem.transactions, newBlockItem.transactions))
                         changes.add(ChangeType.TRANSACTIONS);
@@ -280,6 +281,7 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
 
         this.inflater = LayoutInflater.from(context);
         this.menuInflater = new MenuInflater(context);
+        this.relativeTimeFormatter = new RelativeTimeFormatter(context);
         this.contextMenuCallback = contextMenuCallback;
         this.onClickListener = onClickListener;
         this.cardElevationSelected = context.getResources().getDimensionPixelOffset(R.dimen.card_elevation_selected);
@@ -298,6 +300,15 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
         this.selectedBlockHash = newSelectedBlockHash;
     }
 
+    /**
+     * Refreshes the relative times of the bound rows.
+     */
+    @MainThread
+    public void setTime(final Date time) {
+        relativeTimeFormatter.tick(time.getTime());
+        notifyItemRangeChanged(0, getItemCount(), EnumSet.of(ChangeType.TIME));
+    }
+
     @MainThread
     public int positionOf(final Sha256Hash blockHash) {
         if (blockHash != null) {
@@ -372,7 +383,7 @@ public class BlockListAdapter extends ListAdapter<BlockListAdapter.ListItem, Rec
                 }
             }
             if (fullBind || changes.contains(ChangeType.TIME)) {
-                blockHolder.timeView.setText(blockItem.time);
+                blockHolder.timeView.setText(relativeTimeFormatter.formatAge(blockItem.time));
             }
             if (fullBind || changes.contains(ChangeType.TRANSACTIONS)) {
                 final int transactionChildCount =
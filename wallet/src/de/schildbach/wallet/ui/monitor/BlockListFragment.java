@@ -34,19 +34,12 @@ import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.addressbook.AddressBookEntry;
 import de.schildbach.wallet.ui.AbstractWalletActivity;
-import de.schildbach.wallet.ui.AbstractWalletActivityViewModel;
 import de.schildbach.wallet.ui.StickToTopLinearLayoutManager;
 import org.bitcoinj.core.Sha256Hash;
-import org.bitcoinj.core.StoredBlock;
-import org.bitcoinj.wallet.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import java.util.Map;
-
 /**
  * @author Andreas Schildbach
  */
@@ -60,7 +53,6 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
     private RecyclerView recyclerView;
     private BlockListAdapter adapter;
 
-    private AbstractWalletActivityViewModel walletActivityViewModel;
     private NetworkMonitorViewModel activityViewModel;
     private BlockListViewModel viewModel;
 
@@ -77,8 +69,6 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
     @Override
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        walletActivityViewModel = new ViewModelProvider(activity).get(AbstractWalletActivityViewModel.class);
-        walletActivityViewModel.wallet.observe(this, wallet -> maybeSubmitList());
         activityViewModel = new ViewModelProvider(activity).get(NetworkMonitorViewModel.class);
         activityViewModel.selectedItem.observe(this, item -> {
             if (item instanceof Sha256Hash) {
@@ -92,13 +82,11 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
             }
         });
         viewModel = new ViewModelProvider(this).get(BlockListViewModel.class);
-        viewModel.blocks.observe(this, blocks -> {
-            maybeSubmitList();
+        viewModel.getList().observe(this, list -> {
+            adapter.submitList(list);
             viewGroup.setDisplayedChild(1);
-            viewModel.getTransactions().loadTransactions();
         });
-        viewModel.getTransactions().observe(this, transactions -> maybeSubmitList());
-        viewModel.getTime().observe(this, time -> maybeSubmitList());
+        viewModel.getTime().observe(this, time -> adapter.setTime(time));
 
         adapter = new BlockListAdapter(activity, this, this);
     }
@@ -115,16 +103,6 @@ public final class BlockListFragment extends Fragment implements BlockListAdapte
         return view;
     }
 
-    private void maybeSubmitList() {
-        final List<StoredBlock> blocks = viewModel.blocks.getValue();
-        final Wallet wallet = walletActivityViewModel.wallet.getValue();
-        if (blocks != null) {
-            final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(viewModel.addressBook.getValue());
-            adapter.submitList(BlockListAdapter.buildListItems(activity, blocks, viewModel.getTime().getValue(),
-                    config.getFormat(), viewModel.getTransactions().getValue(), wallet, addressBook));
-        }
-    }
-
     @Override
     public void onBlockClick(final View view, final Sha256Hash blockHash) {
         activityViewModel.selectedItem.setValue(blockHash);
@@ -28,17 +28,29 @@ import de.schildbach.wallet.addressbook.AddressBookDatabase;
 import de.schildbach.wallet.addressbook.AddressBookEntry;
 import de.schildbach.wallet.data.AbstractWalletLiveData;
 import de.schildbach.wallet.data.BlockchainServiceLiveData;
+import de.schildbach.wallet.data.ConfigFormatLiveData;
 import de.schildbach.wallet.data.TimeLiveData;
+import de.schildbach.wallet.data.WalletLiveData;
 import de.schildbach.wallet.service.BlockchainService;
-import org.bitcoinj.core.Sha256Hash;
+import de.schildbach.wallet.transactions.BlockTransactionIndex;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
+import de.schildbach.wallet.util.SingleFlightScheduler;
+import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.StoredBlock;
 import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Andreas Schildbach
@@ -49,7 +61,16 @@ public class BlockListViewModel extends AndroidViewModel {
     public final MediatorLiveData<List<StoredBlock>> blocks;
     private TransactionsLiveData transactions;
     public final LiveData<List<AddressBookEntry>> addressBook;
+    public final LiveData<TransactionInfoCache> transactionInfo;
     private TimeLiveData time;
+    private final WalletLiveData wallet;
+    private final ConfigFormatLiveData format;
+    private final MediatorLiveData<List<BlockListAdapter.ListItem>> list = new MediatorLiveData<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ContextPropagatingThreadFactory("block list"));
+    private final SingleFlightScheduler<List<BlockListAdapter.ListItem>> listScheduler =
+            new SingleFlightScheduler<>(executor, list::postValue);
 
     private static final int MAX_BLOCKS = 100;
 
@@ -61,6 +82,37 @@ public class BlockListViewModel extends AndroidViewModel {
         this.blocks.addSource(blockchainService, blockchainService -> maybeRefreshBlocks());
         this.blocks.addSource(this.application.blockchainState, blockchainState -> maybeRefreshBlocks());
         this.addressBook = AddressBookDatabase.getDatabase(this.application).addressBookDao().getAll();
+        this.transactionInfo = this.application.getTransactionInfo();
+        this.wallet = new WalletLiveData(this.application);
+        this.format = new ConfigFormatLiveData(this.application);
+        this.list.addSource(blocks, blocks -> maybeScheduleList());
+        this.list.addSource(getTransactions(), transactions -> maybeScheduleList());
+        this.list.addSource(transactionInfo, transactionInfo -> maybeScheduleList());
+        this.list.addSource(addressBook, addressBook -> maybeScheduleList());
+        this.list.addSource(wallet, wallet -> maybeScheduleList());
+        this.list.addSource(format, format -> maybeScheduleList());
+    }
+
+    public LiveData<List<BlockListAdapter.ListItem>> getList() {
+        return list;
+    }
+
+    private void maybeScheduleList() {
+        final List<StoredBlock> blocks = this.blocks.getValue();
+        final MonetaryFormat format = this.format.getValue();
+        final BlockTransactionIndex transactions = getTransactions().getValue();
+        final Wallet wallet = this.wallet.getValue();
+        final TransactionInfoCache transactionInfo = this.transactionInfo.getValue();
+        final Map<String, AddressBookEntry> addressBook = AddressBookEntry.asMap(this.addressBook.getValue());
+        if (blocks != null && format != null)
+            listScheduler.schedule(generation -> BlockListAdapter.buildListItems(application, blocks, format,
+                    transactions, wallet, transactionInfo, addressBook, generation));
+    }
+
+    @Override
+    protected void onCleared() {
+        executor.shutdownNow();
+        super.onCleared();
     }
 
     private void maybeRefreshBlocks() {
@@ -81,31 +133,82 @@ public class BlockListViewModel extends AndroidViewModel {
         return time;
     }
 
-    public static class TransactionsLiveData extends AbstractWalletLiveData<Set<Transaction>> {
+    public static class TransactionsLiveData extends AbstractWalletLiveData<BlockTransactionIndex> {
+        private final BlockTransactionIndex index = new BlockTransactionIndex();
+
         private TransactionsLiveData(final WalletApplication application) {
             super(application);
         }
 
         @Override
-        protected void onWalletActive(final Wallet wallet) {
-            loadTransactions();
+        protected boolean needsHistory() {
+            return true;
         }
 
-        public void loadTransactions() {
-            final Wallet wallet = getWallet();
-            if (wallet == null)
-                return;
+        @Override
+        protected void onWalletActive(final Wallet wallet) {
+            addWalletListener(wallet);
             AsyncTask.execute(() -> {
                 org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
-                final Set<Transaction> transactions = wallet.getTransactions(false);
-                final Set<Transaction> filteredTransactions = new HashSet<>(transactions.size());
-                for (final Transaction tx : transactions) {
-                    final Map<Sha256Hash, Integer> appearsIn = tx.getAppearsInHashes();
-                    if (appearsIn != null && !appearsIn.isEmpty()) // TODO filter by updateTime
-                        filteredTransactions.add(tx);
-                }
-                postValue(filteredTransactions);
+                index.rebuild(wallet.getTransactions(false));
+                postValue(index);
             });
         }
+
+        @Override
+        protected void onWalletInactive(final Wallet wallet) {
+            removeWalletListener(wallet);
+        }
+
+        private void addWalletListener(final Wallet wallet) {
+            wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
+        }
+
+        private void removeWalletListener(final Wallet wallet) {
+            wallet.removeReorganizeEventListener(walletListener);
+            wallet.removeTransactionConfidenceEventListener(walletListener);
+            wallet.removeCoinsSentEventListener(walletListener);
+            wallet.removeCoinsReceivedEventListener(walletListener);
+        }
+
+        @Override
+        protected void load() {
+            postValue(index);
+        }
+
+        private final WalletListener walletListener = new WalletListener();
+
+        private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+                TransactionConfidenceEventListener, WalletReorganizeEventListener {
+            @Override
+            public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                    final Coin newBalance) {
+                if (index.update(tx))
+                    triggerLoad();
+            }
+
+            @Override
+            public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                    final Coin newBalance) {
+                if (index.update(tx))
+                    triggerLoad();
+            }
+
+            @Override
+            public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+                if (index.update(tx))
+                    triggerLoad();
+            }
+
+            @Override
+            public void onReorganize(final Wallet wallet) {
+                // block appearances can change for any transaction
+                index.rebuild(wallet.getTransactions(false));
+                triggerLoad();
+            }
+        }
     }
 }
@@ -19,6 +19,7 @@ package de.schildbach.wallet.ui.monitor;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -36,13 +37,16 @@ import com.google.common.hash.Hashing;
 import com.google.common.net.HostAndPort;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
+import de.schildbach.wallet.service.PeerTelemetry;
 import org.bitcoinj.core.Peer;
 import org.bitcoinj.core.PeerAddress;
 import org.bitcoinj.core.VersionMessage;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -55,7 +59,12 @@ import java.util.Set;
  */
 public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerListAdapter.ViewHolder> {
     public static List<ListItem> buildListItems(final Context context, final List<Peer> peers,
-            final Map<InetAddress, String> hostnames) {
+            final Map<InetAddress, String> hostnames, @Nullable final List<PeerTelemetry.PeerStats> peerStats) {
+        final Map<InetSocketAddress, PeerTelemetry.PeerStats> statsByAddress = new HashMap<>();
+        if (peerStats != null)
+            for (final PeerTelemetry.PeerStats stats : peerStats)
+                if (stats.isConnected())
+                    statsByAddress.put(stats.address, stats);
         final List<ListItem> items = new ArrayList<>(peers.size());
         final Set<Long> itemIds = new HashSet<>(peers.size());
         for (final Peer peer : peers) {
@@ -79,6 +88,8 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
             final long pingTime = peer.getPingTime();
             final String ping = pingTime < Long.MAX_VALUE ?
                     context.getString(R.string.peer_list_row_ping_time, pingTime) : null;
+            final PeerTelemetry.PeerStats stats = statsByAddress.get(peerAddress.getSocketAddress());
+            final String telemetry = stats != null ? telemetry(context, stats) : null;
             final Drawable icon;
             if (peer.isDownloadData()) {
                 icon = context.getDrawable(R.drawable.ic_sync_white_24dp);
@@ -87,13 +98,23 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
                 icon = null;
             }
             final ListItem item = new ListItem(hostAndPort, displayHostAndPort, height, version, protocol, services,
-                    ping, icon);
+                    ping, telemetry, icon);
             if (itemIds.add(item.id))
                 items.add(item);
         }
         return items;
     }
 
+    private static String telemetry(final Context context, final PeerTelemetry.PeerStats stats) {
+        final String traffic = context.getString(R.string.peer_list_row_telemetry,
+                Formatter.formatShortFileSize(context, stats.bytesIn),
+                Formatter.formatShortFileSize(context, stats.bytesOut), stats.blocks + stats.filteredBlocks);
+        if (stats.blockLatencyCount == 0)
+            return traffic;
+        return traffic + "  " + context.getString(R.string.peer_list_row_block_latency,
+                stats.averageBlockLatencyMs());
+    }
+
     public static class ListItem {
         // internal item id
         public final long id;
@@ -106,11 +127,12 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
         public final String protocol;
         public final String services;
         public final String ping;
+        public final String telemetry;
         public final Drawable icon;
 
         public ListItem(final HostAndPort hostAndPort, final HostAndPort displayHostAndPort, final long height,
                         final String version, final String protocol, final String services, final String ping,
-                        final Drawable icon) {
+                        final String telemetry, final Drawable icon) {
             this.id = id(hostAndPort);
             this.hostAndPort = hostAndPort;
             this.displayHostAndPort = displayHostAndPort;
@@ -119,6 +141,7 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
             this.protocol = protocol;
             this.services = services;
             this.ping = ping;
+            this.telemetry = telemetry;
             this.icon = icon;
         }
 
@@ -139,7 +162,7 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
     private final int cardElevationSelected;
 
     private enum ChangeType {
-        HOST, PING, ICON, SELECTION
+        HOST, PING, TELEMETRY, ICON, SELECTION
     }
 
     @Nullable
@@ -160,6 +183,8 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
                     return false;
                 if (!Objects.equals(oldItem.ping, newItem.ping))
                     return false;
+                if (!Objects.equals(oldItem.telemetry, newItem.telemetry))
+                    return false;
                 if (!Objects.equals(oldItem.icon, newItem.icon))
                     return false;
                 return true;
@@ -173,6 +198,8 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
                     changes.add(ChangeType.HOST);
                 if (!Objects.equals(oldItem.ping, newItem.ping))
                     changes.add(ChangeType.PING);
+                if (!Objects.equals(oldItem.telemetry, newItem.telemetry))
+                    changes.add(ChangeType.TELEMETRY);
                 if (!Objects.equals(oldItem.icon, newItem.icon))
                     changes.add(ChangeType.ICON);
                 return changes;
@@ -245,6 +272,9 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
         if (fullBind || changes.contains(ChangeType.PING)) {
             holder.pingView.setText(listItem.ping);
         }
+        if (fullBind || changes.contains(ChangeType.TELEMETRY)) {
+            holder.telemetryView.setText(listItem.telemetry);
+        }
         if (fullBind || changes.contains(ChangeType.ICON)) {
             holder.iconView.setImageDrawable(listItem.icon);
         }
@@ -265,6 +295,7 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
         private final TextView protocolView;
         private final TextView servicesView;
         private final TextView pingView;
+        private final TextView telemetryView;
         private final ImageView iconView;
 
         private ViewHolder(final View itemView) {
@@ -275,6 +306,7 @@ public class PeerListAdapter extends ListAdapter<PeerListAdapter.ListItem, PeerL
             protocolView = itemView.findViewById(R.id.peer_list_row_protocol);
             servicesView = itemView.findViewById(R.id.peer_list_row_services);
             pingView = itemView.findViewById(R.id.peer_list_row_ping);
+            telemetryView = itemView.findViewById(R.id.peer_list_row_telemetry);
             iconView = itemView.findViewById(R.id.peer_list_row_icon);
         }
     }
@@ -20,17 +20,25 @@ package de.schildbach.wallet.ui.monitor;
 import android.content.Context;
 import android.os.Bundle;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ViewAnimator;
+import androidx.core.app.ShareCompat;
+import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.common.net.HostAndPort;
 import de.schildbach.wallet.R;
+import de.schildbach.wallet.service.PeerTelemetry;
 import de.schildbach.wallet.ui.AbstractWalletActivity;
 import org.bitcoinj.core.Peer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
@@ -47,6 +55,8 @@ public final class PeerListFragment extends Fragment implements PeerListAdapter.
     private NetworkMonitorViewModel activityViewModel;
     private PeerListViewModel viewModel;
 
+    private static final Logger log = LoggerFactory.getLogger(PeerListFragment.class);
+
     @Override
     public void onAttach(final Context context) {
         super.onAttach(context);
@@ -79,6 +89,22 @@ public final class PeerListFragment extends Fragment implements PeerListAdapter.
         viewModel.getHostnames().observe(this, hostnames -> maybeSubmitList());
 
         adapter = new PeerListAdapter(activity, this);
+
+        activity.addMenuProvider(new MenuProvider() {
+            @Override
+            public void onCreateMenu(final Menu menu, final MenuInflater inflater) {
+                inflater.inflate(R.menu.peer_list_fragment_options, menu);
+            }
+
+            @Override
+            public boolean onMenuItemSelected(final MenuItem item) {
+                if (item.getItemId() == R.id.peer_list_options_share_stats) {
+                    handleShareStats();
+                    return true;
+                }
+                return false;
+            }
+        });
     }
 
     @Override
@@ -96,7 +122,20 @@ public final class PeerListFragment extends Fragment implements PeerListAdapter.
     private void maybeSubmitList() {
         final List<Peer> peers = viewModel.peers.getValue();
         if (peers != null)
-            adapter.submitList(PeerListAdapter.buildListItems(activity, peers, viewModel.getHostnames().getValue()));
+            adapter.submitList(PeerListAdapter.buildListItems(activity, peers, viewModel.getHostnames().getValue(),
+                    viewModel.peerStats.getValue()));
+    }
+
+    private void handleShareStats() {
+        final List<PeerTelemetry.PeerStats> peerStats = viewModel.peerStats.getValue();
+        if (peerStats == null || peerStats.isEmpty())
+            return;
+        final ShareCompat.IntentBuilder builder = ShareCompat.IntentBuilder.from(activity);
+        builder.setType("text/plain");
+        builder.setText(PeerTelemetry.toText(peerStats));
+        builder.setChooserTitle(R.string.peer_list_options_share_stats);
+        builder.startChooser();
+        log.info("peer statistics of {} peers shared via intent", peerStats.size());
     }
 
     @Override
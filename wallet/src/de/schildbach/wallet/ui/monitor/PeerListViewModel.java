@@ -18,20 +18,25 @@
 package de.schildbach.wallet.ui.monitor;
 
 import android.app.Application;
-import android.os.AsyncTask;
 import android.os.Handler;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.BlockchainServiceLiveData;
 import de.schildbach.wallet.service.BlockchainService;
+import de.schildbach.wallet.service.PeerTelemetry;
+import de.schildbach.wallet.util.ReverseDnsCache;
 import org.bitcoinj.core.Peer;
 
 import java.net.InetAddress;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Andreas Schildbach
@@ -40,6 +45,7 @@ public class PeerListViewModel extends AndroidViewModel {
     private final WalletApplication application;
     private final BlockchainServiceLiveData blockchainService;
     public final MediatorLiveData<List<Peer>> peers;
+    public final MutableLiveData<List<PeerTelemetry.PeerStats>> peerStats = new MutableLiveData<>();
     private HostnamesLiveData hostnames;
 
     public PeerListViewModel(final Application application) {
@@ -49,12 +55,16 @@ public class PeerListViewModel extends AndroidViewModel {
         this.peers = new MediatorLiveData<>();
         this.peers.addSource(blockchainService, blockchainService -> maybeRefreshPeers());
         this.peers.addSource(this.application.peerState, numPeers -> maybeRefreshPeers());
+        // counters change with every message, so refresh at the pace of the sync progress
+        this.peers.addSource(this.application.blockchainState, blockchainState -> maybeRefreshPeers());
     }
 
     private void maybeRefreshPeers() {
         final BlockchainService blockchainService = this.blockchainService.getValue();
-        if (blockchainService != null)
+        if (blockchainService != null) {
+            this.peerStats.setValue(blockchainService.getPeerStats());
             this.peers.setValue(blockchainService.getConnectedPeers());
+        }
     }
 
     public HostnamesLiveData getHostnames() {
@@ -63,24 +73,31 @@ public class PeerListViewModel extends AndroidViewModel {
         return hostnames;
     }
 
-    public static class HostnamesLiveData extends LiveData<Map<InetAddress, String>> {
+    public static class HostnamesLiveData extends LiveData<Map<InetAddress, String>>
+            implements ReverseDnsCache.Listener {
+        private final ReverseDnsCache reverseDnsCache;
+        private final Set<InetAddress> requested = new HashSet<>();
         private final Handler handler = new Handler();
 
         public HostnamesLiveData(final WalletApplication application) {
+            this.reverseDnsCache = application.getReverseDnsCache();
             setValue(new HashMap<>());
         }
 
         public void reverseLookup(final InetAddress address) {
-            final Map<InetAddress, String> hostnames = getValue();
-            if (!hostnames.containsKey(address)) {
-                AsyncTask.execute(() -> {
-                    final String hostname = address.getCanonicalHostName();
-                    handler.post(() -> {
-                        hostnames.put(address, hostname);
-                        setValue(hostnames);
-                    });
-                });
-            }
+            if (requested.add(address))
+                reverseDnsCache.resolve(address, this);
+        }
+
+        @Override
+        public void onResolved(final InetAddress address, final @Nullable String hostname) {
+            if (hostname == null)
+                return;
+            handler.post(() -> {
+                final Map<InetAddress, String> hostnames = getValue();
+                hostnames.put(address, hostname);
+                setValue(hostnames);
+            });
         }
     }
 }
@@ -22,18 +22,23 @@ import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceScreen;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.TypefaceSpan;
 import de.schildbach.wallet.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.ui.DialogBuilder;
+import de.schildbach.wallet.util.StartupTrace;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.wallet.DeterministicKeyChain;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Locale;
 
 /**
@@ -46,6 +51,7 @@ public final class DiagnosticsFragment extends PreferenceFragment {
 
     private static final String PREFS_KEY_INITIATE_RESET = "initiate_reset";
     private static final String PREFS_KEY_EXTENDED_PUBLIC_KEY = "extended_public_key";
+    private static final String PREFS_KEY_STARTUP_TIMELINE = "startup_timeline";
 
     private static final Logger log = LoggerFactory.getLogger(DiagnosticsFragment.class);
 
@@ -74,6 +80,9 @@ public final class DiagnosticsFragment extends PreferenceFragment {
         } else if (PREFS_KEY_EXTENDED_PUBLIC_KEY.equals(key)) {
             handleExtendedPublicKey();
             return true;
+        } else if (PREFS_KEY_STARTUP_TIMELINE.equals(key)) {
+            handleStartupTimeline();
+            return true;
         }
 
         return false;
@@ -102,4 +111,20 @@ public final class DiagnosticsFragment extends PreferenceFragment {
                 extendedKey.serializePubB58(Constants.NETWORK_PARAMETERS, outputScriptType), creationTimeSeconds);
         ExtendedPublicKeyFragment.show(getFragmentManager(), (CharSequence) base58);
     }
+
+    private void handleStartupTimeline() {
+        final SpannableStringBuilder timeline = new SpannableStringBuilder();
+        try {
+            StartupTrace.appendTraces(timeline);
+        } catch (final IOException x) {
+            throw new RuntimeException(x); // cannot happen
+        }
+        if (timeline.length() == 0)
+            timeline.append(getString(R.string.preferences_startup_timeline_empty));
+        timeline.setSpan(new TypefaceSpan("monospace"), 0, timeline.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        final DialogBuilder dialog = DialogBuilder.dialog(activity, R.string.preferences_startup_timeline_title,
+                timeline);
+        dialog.singleDismissButton(null);
+        dialog.show();
+    }
 }
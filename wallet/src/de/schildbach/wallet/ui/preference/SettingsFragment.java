@@ -103,9 +103,11 @@ public final class SettingsFragment extends PreferenceFragment implements OnPref
         final ListPreference syncModePreference = (ListPreference) findPreference(Configuration.PREFS_KEY_SYNC_MODE);
         syncModePreference.setEntryValues(new CharSequence[] {
                 Configuration.SyncMode.CONNECTION_FILTER.name(),
+                Configuration.SyncMode.COMPACT_FILTERS.name(),
                 Configuration.SyncMode.FULL.name() });
         syncModePreference.setEntries(new CharSequence[] {
                 Html.fromHtml(getString(R.string.preferences_sync_mode_labels_connection_filter)),
+                Html.fromHtml(getString(R.string.preferences_sync_mode_labels_compact_filters)),
                 Html.fromHtml(getString(R.string.preferences_sync_mode_labels_full)) });
         if (!application.fullSyncCapable())
             removeOrDisablePreference(syncModePreference);
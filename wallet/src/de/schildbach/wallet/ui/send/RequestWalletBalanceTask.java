@@ -21,8 +21,6 @@ import android.content.res.AssetManager;
 import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.Nullable;
-import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import com.google.common.hash.Hashing;
@@ -31,6 +29,7 @@ import com.squareup.moshi.JsonDataException;
 import com.squareup.moshi.Moshi;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
+import de.schildbach.wallet.assets.ElectrumServersAsset;
 import de.schildbach.wallet.util.Assets;
 import okio.BufferedSink;
 import okio.BufferedSource;
@@ -58,21 +57,15 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -166,8 +159,7 @@ public final class RequestWalletBalanceTask {
                     addressesStr = legacyAddress.toString();
                 }
 
-                final List<ElectrumServer> servers = loadElectrumServers(
-                        Assets.open(assets, Constants.Files.ELECTRUM_SERVERS_ASSET));
+                final List<ElectrumServer> servers = loadElectrumServers(assets);
                 final List<Callable<Set<UTXO>>> tasks = new ArrayList<>(servers.size());
                 for (final ElectrumServer server : servers) {
                     tasks.add(() -> {
@@ -379,28 +371,18 @@ public final class RequestWalletBalanceTask {
         }
     }
 
-    private static List<ElectrumServer> loadElectrumServers(final InputStream is) {
-        final Splitter splitter = Splitter.on(':').trimResults();
-        final List<ElectrumServer> servers = new LinkedList<>();
-        String line = null;
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-            while (true) {
-                line = reader.readLine();
-                if (line == null)
-                    break;
-                line = line.trim();
-                if (line.length() == 0 || line.charAt(0) == '#')
-                    continue;
-
-                final Iterator<String> i = splitter.split(line).iterator();
-                final String type = i.next();
-                final String host = i.next();
-                final String port = i.hasNext() ? Strings.emptyToNull(i.next()) : null;
-                final String fingerprint = i.hasNext() ? Strings.emptyToNull(i.next()) : null;
-                servers.add(new ElectrumServer(type, host, port, fingerprint));
-            }
-        } catch (final Exception x) {
-            throw new RuntimeException("Error while parsing: '" + line + "'", x);
+    private static List<ElectrumServer> loadElectrumServers(final AssetManager assets) {
+        final ElectrumServersAsset asset;
+        try {
+            asset = new ElectrumServersAsset(Assets.map(assets, Constants.Files.ELECTRUM_SERVERS_ASSET));
+        } catch (final IOException x) {
+            throw new RuntimeException("Error while reading: '" + Constants.Files.ELECTRUM_SERVERS_ASSET + "'", x);
+        }
+        final List<ElectrumServer> servers = new ArrayList<>(asset.size());
+        for (int i = 0; i < asset.size(); i++) {
+            final String port = asset.getPort(i) != 0 ? Integer.toString(asset.getPort(i)) : null;
+            servers.add(new ElectrumServer(asset.getType(i), asset.getHost(i), port,
+                    asset.getCertificateFingerprint(i)));
         }
         return servers;
     }
@@ -48,6 +48,8 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.R;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.PaymentIntent;
+import de.schildbach.wallet.transactions.TransactionInfo;
+import de.schildbach.wallet.transactions.TransactionInfoCache;
 import de.schildbach.wallet.ui.AbstractWalletActivity;
 import de.schildbach.wallet.ui.AbstractWalletActivityViewModel;
 import de.schildbach.wallet.ui.DialogBuilder;
@@ -471,11 +473,14 @@ public class SweepWalletFragment extends Fragment {
                 state == SweepWalletViewModel.State.DECODE_KEY && privateKeyToSweep == null ? View.VISIBLE : View.GONE);
 
         final Transaction sentTransaction = viewModel.sentTransaction.getValue();
-        if (sentTransaction != null) {
+        if (sentTransaction != null && wallet != null) {
+            final TransactionInfoCache transactionInfo = application.getTransactionInfo().getValue();
+            final TransactionInfo info = transactionInfo != null && transactionInfo.getWallet() == wallet
+                    ? transactionInfo.get(sentTransaction) : TransactionInfo.of(sentTransaction, wallet, wallet);
             sweepTransactionView.setVisibility(View.VISIBLE);
             sweepTransactionViewHolder
                     .fullBind(new TransactionsAdapter.ListItem.TransactionItem(activity, sentTransaction, wallet,
-                            null, btcFormat, application.maxConnectedPeers()));
+                            info, null, btcFormat, application.maxConnectedPeers()));
         } else {
             sweepTransactionView.setVisibility(View.GONE);
         }
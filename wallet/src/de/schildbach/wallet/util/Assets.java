@@ -17,10 +17,14 @@
 
 package de.schildbach.wallet.util;
 
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @author Andreas Schildbach
@@ -33,4 +37,14 @@ public class Assets {
             throw new RuntimeException(x);
         }
     }
+
+    /**
+     * Maps an asset into memory. The asset must be stored uncompressed, see {@code noCompress} in the build.
+     */
+    public static ByteBuffer map(final AssetManager assets, final String filename) throws IOException {
+        try (final AssetFileDescriptor fd = assets.openFd(filename);
+             final FileInputStream is = fd.createInputStream()) {
+            return is.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        }
+    }
 }
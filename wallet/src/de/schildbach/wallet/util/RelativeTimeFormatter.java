@@ -0,0 +1,121 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import androidx.annotation.MainThread;
+import de.schildbach.wallet.R;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders times relative to now, caching the strings per minute of the rendered time. Cached strings stay valid
+ * until the next minute tick for ages, and until the day, locale or time zone changes for times of day or dates.
+ * This way, minute ticks don't need to rebuild any list items, just rebind the time fields of visible rows.
+ *
+ * @author Andreas Schildbach
+ */
+@MainThread
+public final class RelativeTimeFormatter {
+    public interface Renderer {
+        CharSequence render(long timeMs, long nowMs);
+    }
+
+    private final Renderer timeRenderer;
+    private final Renderer ageRenderer;
+    private final Map<Long, CharSequence> times = new HashMap<>();
+    private final Map<Long, CharSequence> ages = new HashMap<>();
+    private long nowMs;
+    private long today;
+    private Locale locale;
+    private ZoneId zone;
+
+    /** Number of cached strings per kind, after which the cache is started afresh. */
+    private static final int MAX_CACHED = 1000;
+
+    public RelativeTimeFormatter(final Context context) {
+        this((timeMs, nowMs) -> DateUtils.getRelativeTimeSpanString(context, timeMs),
+                (timeMs, nowMs) -> timeMs < nowMs - DateUtils.MINUTE_IN_MILLIS
+                        ? DateUtils.getRelativeDateTimeString(context, timeMs, DateUtils.MINUTE_IN_MILLIS,
+                                DateUtils.WEEK_IN_MILLIS, 0)
+                        : context.getString(R.string.block_row_now));
+    }
+
+    RelativeTimeFormatter(final Renderer timeRenderer, final Renderer ageRenderer) {
+        this.timeRenderer = timeRenderer;
+        this.ageRenderer = ageRenderer;
+        tick(System.currentTimeMillis());
+    }
+
+    /**
+     * Advances to the given time, usually on a minute tick.
+     *
+     * @return true if strings of {@link #formatTime(long)} might have changed; strings of {@link #formatAge(long)}
+     *         change on every tick
+     */
+    public boolean tick(final long nowMs) {
+        this.nowMs = nowMs;
+        ages.clear();
+        final Locale locale = Locale.getDefault();
+        final ZoneId zone = ZoneId.systemDefault();
+        final long today = day(nowMs, zone);
+        if (today == this.today && locale.equals(this.locale) && zone.equals(this.zone))
+            return false;
+        this.today = today;
+        this.locale = locale;
+        this.zone = zone;
+        times.clear();
+        return true;
+    }
+
+    /**
+     * Renders the time of day for today, or the date otherwise.
+     */
+    public CharSequence formatTime(final long timeMs) {
+        return format(times, timeRenderer, timeMs);
+    }
+
+    /**
+     * Renders how long ago the given time was, along with the time of day.
+     */
+    public CharSequence formatAge(final long timeMs) {
+        return format(ages, ageRenderer, timeMs);
+    }
+
+    private CharSequence format(final Map<Long, CharSequence> cache, final Renderer renderer, final long timeMs) {
+        final long minute = Math.floorDiv(timeMs, DateUtils.MINUTE_IN_MILLIS);
+        CharSequence str = cache.get(minute);
+        if (str == null) {
+            if (cache.size() >= MAX_CACHED)
+                cache.clear();
+            // all times of the minute render the same
+            str = renderer.render(minute * DateUtils.MINUTE_IN_MILLIS, nowMs);
+            cache.put(minute, str);
+        }
+        return str;
+    }
+
+    private static long day(final long timeMs, final ZoneId zone) {
+        return Instant.ofEpochMilli(timeMs).atZone(zone).toLocalDate().toEpochDay();
+    }
+}
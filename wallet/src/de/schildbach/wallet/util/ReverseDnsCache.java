@@ -0,0 +1,256 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import androidx.annotation.Nullable;
+import com.google.common.net.InetAddresses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of reverse DNS lookups, e.g. for showing the hostnames of peers. Lookups run in the background with bounded
+ * concurrency, and concurrent requests for the same address share a lookup. Hostnames are kept for a day, missing
+ * hostnames for an hour. The least recently used entries are evicted, and the cache is persisted across sessions.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ReverseDnsCache {
+    public interface Resolver {
+        /**
+         * Looks up the hostname of the given address, blocking.
+         *
+         * @return hostname, or {@code null} if the address has none
+         */
+        @Nullable
+        String reverseLookup(InetAddress address) throws IOException;
+    }
+
+    /** Resolver using the name service of the system. */
+    public static final Resolver SYSTEM_RESOLVER = address -> {
+        final String hostname = address.getCanonicalHostName();
+        return !hostname.equals(address.getHostAddress()) ? hostname : null;
+    };
+
+    public interface Listener {
+        /**
+         * Called once the hostname is known, either from the calling thread or from a lookup thread.
+         */
+        void onResolved(InetAddress address, @Nullable String hostname);
+    }
+
+    private static class Entry {
+        @Nullable
+        private final String hostname;
+        private final long expiresAt;
+
+        private Entry(final @Nullable String hostname, final long expiresAt) {
+            this.hostname = hostname;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Resolver resolver;
+    private final Executor executor;
+    @Nullable
+    private final File file;
+    private final Clock clock;
+    private final Map<InetAddress, Entry> entries = new LinkedHashMap<InetAddress, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<InetAddress, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<InetAddress, List<Listener>> pending = new HashMap<>();
+    private boolean loaded = false;
+    private boolean saveScheduled = false;
+
+    /** Maximum number of lookups running at the same time. */
+    static final int MAX_CONCURRENT_LOOKUPS = 4;
+    /** Maximum number of cached addresses. */
+    static final int MAX_ENTRIES = 500;
+    /** Time to keep a hostname. */
+    static final long TTL_MS = TimeUnit.DAYS.toMillis(1);
+    /** Time to keep the fact that there is no hostname. */
+    static final long NEGATIVE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Logger log = LoggerFactory.getLogger(ReverseDnsCache.class);
+
+    /**
+     * @param file file for persisting the cache, should be in the cache directory
+     */
+    public ReverseDnsCache(final Resolver resolver, final File file) {
+        this(resolver, newExecutor(), file, Clock.systemUTC());
+    }
+
+    ReverseDnsCache(final Resolver resolver, final Executor executor, final @Nullable File file, final Clock clock) {
+        this.resolver = resolver;
+        this.executor = executor;
+        this.file = file;
+        this.clock = clock;
+    }
+
+    static ThreadPoolExecutor newExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_LOOKUPS, MAX_CONCURRENT_LOOKUPS, 10,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "reverse dns"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gets the hostname of the given address, from the cache or by looking it up in the background.
+     */
+    public void resolve(final InetAddress address, final Listener listener) {
+        final Entry entry;
+        synchronized (this) {
+            entry = getFresh(address);
+            if (entry == null) {
+                final List<Listener> listeners = pending.get(address);
+                if (listeners != null) {
+                    listeners.add(listener);
+                } else {
+                    final List<Listener> newListeners = new ArrayList<>(1);
+                    newListeners.add(listener);
+                    pending.put(address, newListeners);
+                    executor.execute(() -> lookup(address));
+                }
+                return;
+            }
+        }
+        listener.onResolved(address, entry.hostname);
+    }
+
+    private void lookup(final InetAddress address) {
+        load();
+        Entry entry;
+        synchronized (this) {
+            entry = getFresh(address);
+        }
+        if (entry == null) {
+            String hostname;
+            try {
+                hostname = resolver.reverseLookup(address);
+            } catch (final IOException x) {
+                log.info("problem looking up hostname of {}: {}", address.getHostAddress(), x.getMessage());
+                hostname = null;
+            }
+            entry = new Entry(hostname, clock.millis() + (hostname != null ? TTL_MS : NEGATIVE_TTL_MS));
+            synchronized (this) {
+                entries.put(address, entry);
+                if (file != null && !saveScheduled) {
+                    saveScheduled = true;
+                    executor.execute(this::save);
+                }
+            }
+        }
+        final List<Listener> listeners;
+        synchronized (this) {
+            listeners = pending.remove(address);
+        }
+        for (final Listener listener : listeners)
+            listener.onResolved(address, entry.hostname);
+    }
+
+    @Nullable
+    private Entry getFresh(final InetAddress address) {
+        final Entry entry = entries.get(address);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt <= clock.millis()) {
+            entries.remove(address);
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        if (file == null)
+            return;
+        final long now = clock.millis();
+        int numEntries = 0;
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(" ");
+                if (fields.length != 3)
+                    continue;
+                final long expiresAt = Long.parseLong(fields[1]);
+                if (expiresAt <= now)
+                    continue;
+                entries.put(InetAddresses.forString(fields[0]),
+                        new Entry(!fields[2].equals("-") ? fields[2] : null, expiresAt));
+                numEntries++;
+            }
+            log.info("loaded {} hostnames from {}", numEntries, file);
+        } catch (final FileNotFoundException x) {
+            // nothing persisted yet
+        } catch (final IOException | IllegalArgumentException x) {
+            log.info("problem loading " + file + ", ignoring", x);
+        }
+    }
+
+    private void save() {
+        final Map<InetAddress, Entry> snapshot;
+        synchronized (this) {
+            saveScheduled = false;
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        final File tempFile = new File(file.getPath() + ".temp");
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            // least recently used first, so loading keeps the order
+            for (final Map.Entry<InetAddress, Entry> entry : snapshot.entrySet()) {
+                final String hostname = entry.getValue().hostname;
+                writer.write(InetAddresses.toAddrString(entry.getKey()) + " " + entry.getValue().expiresAt + " "
+                        + (hostname != null ? hostname : "-") + "\n");
+            }
+        } catch (final IOException x) {
+            log.info("problem saving " + file, x);
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            log.info("problem renaming {} to {}", tempFile, file);
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import androidx.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs recomputations of a single result, e.g. the items of a list, on an executor. At most one computation runs at
+ * a time and at most one is queued behind it; scheduling again replaces the queued computation, which then never
+ * starts. Every call to {@link #schedule(Computation)} starts a new generation. A running computation of a superseded
+ * generation is aborted the next time it calls {@link Generation#check()}, and its result is dropped in any case.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SingleFlightScheduler<T> {
+    public interface Computation<T> {
+        T compute(Generation generation);
+    }
+
+    public interface Callback<T> {
+        /** Called on the executor thread, so it should be cheap, e.g. {@code LiveData.postValue()}. */
+        void onResult(T result);
+    }
+
+    private final Executor executor;
+    private final Callback<T> callback;
+
+    private final Object lock = new Object();
+    private volatile int generation = 0;
+    private boolean running = false;
+    @Nullable
+    private Computation<T> queued = null;
+    private int numDropped = 0;
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlightScheduler.class);
+
+    public SingleFlightScheduler(final Executor executor, final Callback<T> callback) {
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    /**
+     * Schedules the given computation, superseding all computations scheduled before.
+     */
+    public void schedule(final Computation<T> computation) {
+        synchronized (lock) {
+            generation++;
+            queued = computation;
+            if (running)
+                return;
+            running = true;
+        }
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            final Computation<T> computation;
+            final Generation current;
+            synchronized (lock) {
+                computation = queued;
+                queued = null;
+                if (computation == null) {
+                    running = false;
+                    return;
+                }
+                current = new Generation(this, generation);
+            }
+            T result = null;
+            boolean completed = false;
+            try {
+                result = computation.compute(current);
+                completed = true;
+            } catch (final CancellationException x) {
+                // superseded, the queued computation takes over
+            } catch (final RuntimeException x) {
+                log.warn("problem computing generation " + current.number, x);
+            }
+            synchronized (lock) {
+                if (completed && !current.isStale())
+                    callback.onResult(result);
+                else
+                    numDropped++;
+            }
+        }
+    }
+
+    /**
+     * Number of computations that have been started but whose result was dropped, because they were superseded or
+     * failed.
+     */
+    public int getNumDropped() {
+        synchronized (lock) {
+            return numDropped;
+        }
+    }
+
+    public static final class Generation {
+        private final SingleFlightScheduler<?> scheduler;
+        private final int number;
+
+        private Generation(final SingleFlightScheduler<?> scheduler, final int number) {
+            this.scheduler = scheduler;
+            this.number = number;
+        }
+
+        public boolean isStale() {
+            return number != scheduler.generation;
+        }
+
+        /**
+         * Aborts the computation if a newer one has been scheduled. Computations should call this between items.
+         */
+        public void check() throws CancellationException {
+            if (isStale())
+                throw new CancellationException("superseded by generation " + scheduler.generation);
+        }
+    }
+}
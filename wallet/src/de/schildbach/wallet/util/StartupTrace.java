@@ -0,0 +1,317 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.common.base.Splitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a nested timeline of the phases of one app startup, and persists the last few of them so that regressions
+ * can be spotted across versions.
+ *
+ * Spans nest per thread. Spans started on the main thread at the root level count towards the time the main thread
+ * was blocked. Once {@link #finish()} has been called, further spans are not recorded.
+ *
+ * @author Andreas Schildbach
+ */
+public final class StartupTrace {
+    private static File tracesFile;
+    private static int maxTraces;
+    private static Thread mainThread;
+    private static long startMillis;
+    private static long startNanos;
+    private static String label = "";
+    private static boolean finished = true;
+    private static final List<Span> spans = new ArrayList<>();
+
+    private static final ThreadLocal<Deque<Span>> threadSpans = new ThreadLocal<Deque<Span>>() {
+        @Override
+        protected Deque<Span> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTrace.class);
+
+    /**
+     * Starts a new trace. Must be called on the main thread.
+     */
+    public static synchronized void init(final File tracesFile, final int maxTraces) {
+        StartupTrace.tracesFile = tracesFile;
+        StartupTrace.maxTraces = maxTraces;
+        StartupTrace.mainThread = Thread.currentThread();
+        StartupTrace.startMillis = System.currentTimeMillis();
+        StartupTrace.startNanos = System.nanoTime();
+        StartupTrace.label = "";
+        StartupTrace.finished = false;
+        StartupTrace.spans.clear();
+        threadSpans.remove();
+    }
+
+    /**
+     * Sets a label to identify the trace, typically the app version.
+     */
+    public static synchronized void setLabel(final String label) {
+        StartupTrace.label = label;
+    }
+
+    /**
+     * Begins a span nested in the current span of the calling thread. The span must be ended on the same thread.
+     */
+    public static Span begin(final String name) {
+        final Deque<Span> stack = threadSpans.get();
+        final Span span;
+        synchronized (StartupTrace.class) {
+            if (finished)
+                return Span.NONE;
+            span = new Span(name, Thread.currentThread(), stack.size(), System.nanoTime(), stack);
+            spans.add(span);
+        }
+        stack.push(span);
+        return span;
+    }
+
+    /**
+     * Begins a root level span that is not bound to the calling thread, e.g. for waiting on an asynchronous event.
+     */
+    public static Span beginDetached(final String name) {
+        synchronized (StartupTrace.class) {
+            if (finished)
+                return Span.NONE;
+            final Span span = new Span(name, Thread.currentThread(), 0, System.nanoTime(), null);
+            spans.add(span);
+            return span;
+        }
+    }
+
+    /**
+     * Records a span of the given duration that ends now, e.g. from an existing stopwatch.
+     */
+    public static void record(final String name, final long duration, final TimeUnit unit) {
+        final long now = System.nanoTime();
+        synchronized (StartupTrace.class) {
+            if (finished)
+                return;
+            final Span span = new Span(name, Thread.currentThread(), threadSpans.get().size(),
+                    now - unit.toNanos(duration), null);
+            span.endNanos = now;
+            spans.add(span);
+        }
+    }
+
+    /**
+     * Ends the trace and persists it, unless it has already been ended.
+     */
+    public static void finish() {
+        final Trace trace;
+        synchronized (StartupTrace.class) {
+            if (finished)
+                return;
+            finished = true;
+            trace = snapshot();
+        }
+        log.info("startup took {} ms, main thread blocked for {} ms", trace.totalMicros / 1000,
+                trace.mainThreadMicros() / 1000);
+
+        final LinkedList<Trace> traces = new LinkedList<>(readTraces());
+        traces.addFirst(trace);
+        while (traces.size() > maxTraces)
+            traces.removeLast();
+        final File tmpFile = new File(tracesFile.getPath() + ".tmp");
+        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8)) {
+            for (final Trace t : traces)
+                t.write(writer);
+        } catch (final IOException x) {
+            log.warn("problem writing startup traces", x);
+            return;
+        }
+        if (!tmpFile.renameTo(tracesFile))
+            log.warn("problem renaming to startup traces file: '{}'", tracesFile);
+    }
+
+    /**
+     * Appends a human readable rendering of the current trace, if still in progress, and all persisted traces.
+     */
+    public static void appendTraces(final Appendable out) throws IOException {
+        final Trace current;
+        synchronized (StartupTrace.class) {
+            current = !finished ? snapshot() : null;
+        }
+        if (current != null)
+            current.render(out, true);
+        for (final Trace trace : readTraces())
+            trace.render(out, false);
+    }
+
+    private static Trace snapshot() {
+        final long nowNanos = System.nanoTime();
+        final Trace trace = new Trace(startMillis, label, (nowNanos - startNanos) / 1000);
+        for (final Span span : spans) {
+            final long endNanos = span.endNanos;
+            trace.entries.add(new Entry(span.depth, (span.startNanos - startNanos) / 1000,
+                    endNanos != 0 ? (endNanos - span.startNanos) / 1000 : -1, span.thread == mainThread,
+                    span.thread.getName(), span.name));
+        }
+        return trace;
+    }
+
+    private static List<Trace> readTraces() {
+        final List<Trace> traces = new ArrayList<>();
+        final File file;
+        synchronized (StartupTrace.class) {
+            file = tracesFile;
+        }
+        if (file == null || !file.exists())
+            return traces;
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            Trace trace = null;
+            while (true) {
+                final String line = reader.readLine();
+                if (line == null)
+                    break;
+                final List<String> fields = Splitter.on('\t').splitToList(line);
+                if ("startup".equals(fields.get(0)) && fields.size() == 4) {
+                    trace = new Trace(Long.parseLong(fields.get(1)), fields.get(3), Long.parseLong(fields.get(2)));
+                    traces.add(trace);
+                } else if (trace != null && fields.size() == 6) {
+                    trace.entries.add(new Entry(Integer.parseInt(fields.get(0)), Long.parseLong(fields.get(1)),
+                            Long.parseLong(fields.get(2)), "1".equals(fields.get(3)), fields.get(4),
+                            fields.get(5)));
+                }
+            }
+        } catch (final IOException | RuntimeException x) {
+            log.info("problem reading startup traces, ignoring", x);
+        }
+        return traces;
+    }
+
+    public static final class Span {
+        private static final Span NONE = new Span("", Thread.currentThread(), 0, 0, null);
+
+        private final String name;
+        private final Thread thread;
+        private final int depth;
+        private final long startNanos;
+        private final Deque<Span> stack;
+        private volatile long endNanos = 0;
+
+        private Span(final String name, final Thread thread, final int depth, final long startNanos,
+                final Deque<Span> stack) {
+            this.name = name;
+            this.thread = thread;
+            this.depth = depth;
+            this.startNanos = startNanos;
+            this.stack = stack;
+        }
+
+        public void end() {
+            if (this == NONE || endNanos != 0)
+                return;
+            endNanos = System.nanoTime();
+            if (stack != null && Thread.currentThread() == thread)
+                stack.remove(this);
+        }
+    }
+
+    private static final class Entry {
+        final int depth;
+        final long startMicros;
+        final long durationMicros; // -1 if unfinished
+        final boolean mainThread;
+        final String threadName;
+        final String name;
+
+        Entry(final int depth, final long startMicros, final long durationMicros, final boolean mainThread,
+                final String threadName, final String name) {
+            this.depth = depth;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+            this.mainThread = mainThread;
+            this.threadName = threadName;
+            this.name = name;
+        }
+    }
+
+    private static final class Trace {
+        final long startMillis;
+        final String label;
+        final long totalMicros;
+        final List<Entry> entries = new ArrayList<>();
+
+        Trace(final long startMillis, final String label, final long totalMicros) {
+            this.startMillis = startMillis;
+            this.label = label;
+            this.totalMicros = totalMicros;
+        }
+
+        long mainThreadMicros() {
+            long micros = 0;
+            for (final Entry entry : entries)
+                if (entry.mainThread && entry.depth == 0 && entry.durationMicros > 0)
+                    micros += entry.durationMicros;
+            return micros;
+        }
+
+        void write(final Writer writer) throws IOException {
+            writer.write(String.format(Locale.US, "startup\t%d\t%d\t%s\n", startMillis, totalMicros, clean(label)));
+            for (final Entry entry : entries)
+                writer.write(String.format(Locale.US, "%d\t%d\t%d\t%s\t%s\t%s\n", entry.depth, entry.startMicros,
+                        entry.durationMicros, entry.mainThread ? "1" : "0", clean(entry.threadName),
+                        clean(entry.name)));
+        }
+
+        void render(final Appendable out, final boolean inProgress) throws IOException {
+            out.append(String.format(Locale.US, "--- startup at %s, %s: %s%d ms, main thread blocked %d ms ---\n",
+                    DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(startMillis)), label,
+                    inProgress ? "in progress for " : "", totalMicros / 1000, mainThreadMicros() / 1000));
+            for (final Entry entry : entries) {
+                final StringBuilder indent = new StringBuilder();
+                for (int i = 0; i < entry.depth; i++)
+                    indent.append("  ");
+                out.append(String.format(Locale.US, "%7d ms %9s  %-16s %s%s\n", entry.startMicros / 1000,
+                        entry.durationMicros >= 0 ? (entry.durationMicros / 1000) + " ms" : "open",
+                        entry.threadName, indent, entry.name));
+            }
+        }
+
+        private static String clean(final String s) {
+            return s.replace('\t', ' ').replace('\n', ' ');
+        }
+    }
+}
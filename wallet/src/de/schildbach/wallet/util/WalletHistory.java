@@ -0,0 +1,197 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.ByteString;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits a wallet protobuf into a small first phase, which is enough for balance, keys and syncing, and the
+ * remaining spent and dead history, which is kept as raw protobuf until it is inflated into the live wallet.
+ *
+ * The first phase consists of the unspent and pending pools, the transactions spending their outputs and the
+ * transactions funding pending transactions. Spent-by links between both phases are cut while parsing and
+ * re-established on inflation.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletHistory {
+    private final Protos.Wallet phaseOne;
+    private final List<Protos.Transaction> history;
+    private final List<Link> links;
+
+    private static final Logger log = LoggerFactory.getLogger(WalletHistory.class);
+
+    private static class Link {
+        final ByteString fundingTx;
+        final int outputIndex;
+        final ByteString spendingTx;
+        final int inputIndex;
+
+        Link(final ByteString fundingTx, final int outputIndex, final ByteString spendingTx, final int inputIndex) {
+            this.fundingTx = fundingTx;
+            this.outputIndex = outputIndex;
+            this.spendingTx = spendingTx;
+            this.inputIndex = inputIndex;
+        }
+    }
+
+    private WalletHistory(final Protos.Wallet phaseOne, final List<Protos.Transaction> history,
+            final List<Link> links) {
+        this.phaseOne = phaseOne;
+        this.history = history;
+        this.links = links;
+    }
+
+    public static WalletHistory split(final Protos.Wallet walletProto) {
+        final Map<ByteString, Protos.Transaction> all = new HashMap<>(walletProto.getTransactionCount());
+        final Set<ByteString> phaseOneHashes = new HashSet<>();
+        for (final Protos.Transaction tx : walletProto.getTransactionList()) {
+            all.put(tx.getHash(), tx);
+            if (tx.getPool() == Protos.Transaction.Pool.UNSPENT || tx.getPool() == Protos.Transaction.Pool.PENDING)
+                phaseOneHashes.add(tx.getHash());
+        }
+        for (final ByteString hash : new ArrayList<>(phaseOneHashes)) {
+            final Protos.Transaction tx = all.get(hash);
+            for (final Protos.TransactionOutput output : tx.getTransactionOutputList())
+                if (output.hasSpentByTransactionHash() && all.containsKey(output.getSpentByTransactionHash()))
+                    phaseOneHashes.add(output.getSpentByTransactionHash());
+            if (tx.getPool() == Protos.Transaction.Pool.PENDING)
+                for (final Protos.TransactionInput input : tx.getTransactionInputList())
+                    if (all.containsKey(input.getTransactionOutPointHash()))
+                        phaseOneHashes.add(input.getTransactionOutPointHash());
+        }
+
+        final Protos.Wallet.Builder phaseOne = walletProto.toBuilder().clearTransaction();
+        final List<Protos.Transaction> history = new ArrayList<>(all.size() - phaseOneHashes.size());
+        final List<Link> links = new ArrayList<>();
+        for (final Protos.Transaction tx : walletProto.getTransactionList()) {
+            final boolean inPhaseOne = phaseOneHashes.contains(tx.getHash());
+            Protos.Transaction.Builder stripped = null;
+            for (int i = 0; i < tx.getTransactionOutputCount(); i++) {
+                final Protos.TransactionOutput output = tx.getTransactionOutput(i);
+                if (!output.hasSpentByTransactionHash())
+                    continue;
+                final ByteString spendingTx = output.getSpentByTransactionHash();
+                if (phaseOneHashes.contains(spendingTx) != inPhaseOne) {
+                    links.add(new Link(tx.getHash(), i, spendingTx, output.getSpentByTransactionIndex()));
+                    if (stripped == null)
+                        stripped = tx.toBuilder();
+                    stripped.setTransactionOutput(i, output.toBuilder().clearSpentByTransactionHash()
+                            .clearSpentByTransactionIndex());
+                }
+            }
+            final Protos.Transaction splitTx = stripped != null ? stripped.build() : tx;
+            if (inPhaseOne)
+                phaseOne.addTransaction(splitTx);
+            else
+                history.add(splitTx);
+        }
+        return new WalletHistory(phaseOne.build(), history, links);
+    }
+
+    public Protos.Wallet getPhaseOne() {
+        return phaseOne;
+    }
+
+    public int size() {
+        return history.size();
+    }
+
+    /**
+     * Parses the history and adds it to the given live wallet, re-establishing the links cut by
+     * {@link #split(Protos.Wallet)}.
+     */
+    public void inflateInto(final Wallet wallet) throws UnreadableWalletException {
+        if (history.isEmpty() && links.isEmpty())
+            return;
+        final Stopwatch watch = Stopwatch.createStarted();
+        final NetworkParameters params = wallet.getParams();
+
+        // parse into a scratch wallet, so that links within the history are connected by the serializer
+        final Protos.Wallet historyProto = Protos.Wallet.newBuilder().setNetworkIdentifier(params.getId())
+                .addAllTransaction(history).build();
+        final Wallet scratch = new WalletProtobufSerializer().readWallet(params, null, historyProto);
+        final List<WalletTransaction> transactions = new ArrayList<>(history.size());
+        for (final WalletTransaction wtx : scratch.getWalletTransactions())
+            transactions.add(wtx);
+
+        unregisterConfidenceListener(scratch, transactions);
+        for (final WalletTransaction wtx : transactions)
+            if (wallet.getTransaction(wtx.getTransaction().getTxId()) == null)
+                wallet.addWalletTransaction(wtx);
+
+        for (final Link link : links) {
+            final Transaction fundingTx = wallet.getTransaction(Sha256Hash.wrap(link.fundingTx.toByteArray()));
+            final Transaction spendingTx = wallet.getTransaction(Sha256Hash.wrap(link.spendingTx.toByteArray()));
+            if (fundingTx == null || spendingTx == null) {
+                log.warn("cannot re-link {}:{} to {}", link.fundingTx, link.outputIndex, link.spendingTx);
+                continue;
+            }
+            final TransactionOutput output = fundingTx.getOutput(link.outputIndex);
+            final TransactionInput input = spendingTx.getInput(link.inputIndex);
+            if (output.getSpentBy() == null && input.getConnectedOutput() == null)
+                input.connect(output);
+        }
+
+        watch.stop();
+        log.info("inflated {} history transactions, re-linked {} outputs, took {}", transactions.size(),
+                links.size(), watch);
+    }
+
+    /**
+     * Confidence objects are shared by all wallets, so the listener the scratch wallet registered with each of its
+     * transactions would keep the scratch wallet alive, and busy on each announcement by peers. The wallet offers no
+     * way of unregistering it.
+     */
+    private static void unregisterConfidenceListener(final Wallet scratch,
+            final List<WalletTransaction> transactions) {
+        final TransactionConfidence.Listener listener;
+        try {
+            final Field field = Wallet.class.getDeclaredField("txConfidenceListener");
+            field.setAccessible(true);
+            listener = (TransactionConfidence.Listener) field.get(scratch);
+        } catch (final NoSuchFieldException | IllegalAccessException | ClassCastException x) {
+            log.warn("cannot unregister confidence listener of scratch wallet", x);
+            return;
+        }
+        for (final WalletTransaction wtx : transactions)
+            wtx.getTransaction().getConfidence().removeEventListener(listener);
+    }
+}
@@ -0,0 +1,855 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.ByteString;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.TransactionWitness;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.crypto.KeyCrypter;
+import org.bitcoinj.crypto.KeyCrypterScrypt;
+import org.bitcoinj.utils.ContextPropagatingThreadFactory;
+import org.bitcoinj.utils.ExchangeRate;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.DeterministicKeyChain;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.bitcoinj.wallet.listeners.KeyChainEventListener;
+import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists a wallet as a full protobuf snapshot plus an append-only journal of small delta records. Deltas are
+ * appended after a short delay, and the journal is compacted into a fresh snapshot once it grows too large. This
+ * replaces {@link Wallet#autosaveToFile(File, long, TimeUnit, org.bitcoinj.wallet.WalletFiles.Listener)}, which
+ * rewrites the entire wallet on every change.
+ *
+ * Journal records: {@code [int length][byte type][payload][int crc32]}. A torn or corrupt tail is discarded on
+ * load. The snapshot carries the id of the journal that belongs to it as a wallet tag; a journal with a different
+ * id is stale and ignored.
+ *
+ * @author Andreas Schildbach
+ */
+public class WalletJournal implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+        WalletReorganizeEventListener, WalletChangeEventListener, TransactionConfidenceEventListener,
+        KeyChainEventListener {
+    private static final int MAGIC = 0x574a4e4c; // "WJNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    static final String TAG_JOURNAL_ID = "de.schildbach.wallet.journal_id";
+
+    private static final byte RECORD_TRANSACTION = 1;
+    private static final byte RECORD_TRANSACTION_REMOVED = 2;
+    private static final byte RECORD_KEYS = 3;
+    private static final byte RECORD_LAST_SEEN_BLOCK = 4;
+
+    private final Wallet wallet;
+    private final File walletFile;
+    private final File journalFile;
+    private final long delayMs;
+    private final long compactThresholdBytes;
+    private final boolean compressSnapshots;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // taken while the wallet is locked, a null value records that the transaction has been removed
+    private final Map<Sha256Hash, Protos.Transaction> dirtyTransactions = new HashMap<>();
+    private boolean dirtyKeys = false;
+    private boolean compactionRequested = false;
+    private boolean compactionHeld = false;
+    private ScheduledFuture<?> pendingFlush;
+
+    // only accessed from executor
+    private FileOutputStream journalFileStream;
+    private DataOutputStream journal;
+    private long journalId;
+    private long journalBytes;
+    private Sha256Hash journaledLastSeenBlockHash;
+    private String journaledKeysFingerprint;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Logger log = LoggerFactory.getLogger(WalletJournal.class);
+
+    /**
+     * Reads the snapshot at {@code walletFile}, which may be gzip compressed, and replays the journal on top of it.
+     */
+    public static Wallet readWallet(final File walletFile, final File journalFile)
+            throws IOException, UnreadableWalletException {
+        final Protos.Wallet walletProto = readWalletProto(walletFile, journalFile);
+        final NetworkParameters params = NetworkParameters.fromID(walletProto.getNetworkIdentifier());
+        if (params == null)
+            throw new UnreadableWalletException("unknown network parameters: " + walletProto.getNetworkIdentifier());
+        return new WalletProtobufSerializer().readWallet(params, null, walletProto);
+    }
+
+    /**
+     * Like {@link #readWallet(File, File)}, but stops short of inflating the protobuf into a wallet.
+     */
+    public static Protos.Wallet readWalletProto(final File walletFile, final File journalFile) throws IOException {
+        final Protos.Wallet.Builder walletProto;
+        try (final InputStream is = openSnapshot(walletFile)) {
+            walletProto = WalletProtobufSerializer.parseToProto(is).toBuilder();
+        }
+
+        if (journalFile.exists()) {
+            final Stopwatch watch = Stopwatch.createStarted();
+            final Replay replay = new Replay(walletProto);
+            final long validLength = scan(journalFile, journalId(walletProto), replay);
+            replay.finish();
+            watch.stop();
+            log.info("replayed {} records ({} bytes) from journal: '{}', took {}", replay.numRecords, validLength,
+                    journalFile, watch);
+        }
+        return walletProto.build();
+    }
+
+    private static InputStream openSnapshot(final File walletFile) throws IOException {
+        final BufferedInputStream is = new BufferedInputStream(new FileInputStream(walletFile));
+        is.mark(2);
+        final boolean gzipped = is.read() == 0x1f && is.read() == 0x8b;
+        is.reset();
+        return gzipped ? new GZIPInputStream(is) : is;
+    }
+
+    public WalletJournal(final Wallet wallet, final File walletFile, final File journalFile, final long delay,
+            final TimeUnit delayTimeUnit, final long compactThresholdBytes, final boolean compressSnapshots) {
+        this(wallet, walletFile, journalFile, delay, delayTimeUnit, compactThresholdBytes, compressSnapshots, false);
+    }
+
+    /**
+     * @param holdCompaction
+     *            if true, no snapshot is written until {@link #releaseCompaction()} is called, e.g. because the
+     *            wallet doesn't contain its full history yet
+     */
+    public WalletJournal(final Wallet wallet, final File walletFile, final File journalFile, final long delay,
+            final TimeUnit delayTimeUnit, final long compactThresholdBytes, final boolean compressSnapshots,
+            final boolean holdCompaction) {
+        this.wallet = wallet;
+        this.compactionHeld = holdCompaction;
+        this.walletFile = walletFile;
+        this.journalFile = journalFile;
+        this.delayMs = delayTimeUnit.toMillis(delay);
+        this.compactThresholdBytes = compactThresholdBytes;
+        this.compressSnapshots = compressSnapshots;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ContextPropagatingThreadFactory("wallet journal"));
+        this.executor.setKeepAliveTime(5, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, this);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, this);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, this);
+        wallet.addChangeEventListener(Threading.SAME_THREAD, this);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
+        wallet.addKeyChainEventListener(Threading.SAME_THREAD, this);
+
+        executor.execute(this::open);
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    /**
+     * Writes a full snapshot synchronously, truncating the journal. While compaction is held, only pending deltas
+     * are flushed to the journal.
+     */
+    public void saveNow() throws IOException {
+        try {
+            executor.submit(() -> {
+                if (isCompactionHeld())
+                    flush();
+                else
+                    compact();
+                return null;
+            }).get();
+        } catch (final InterruptedException x) {
+            throw new IOException(x);
+        } catch (final ExecutionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Allows snapshots again, and catches up on any compaction that was deferred.
+     */
+    public void releaseCompaction() {
+        synchronized (this) {
+            compactionHeld = false;
+            if (executor.isShutdown())
+                return;
+        }
+        executor.execute(this::flush);
+    }
+
+    private synchronized boolean isCompactionHeld() {
+        return compactionHeld;
+    }
+
+    /**
+     * Schedules a journal flush, for changes that don't produce wallet events (e.g. key encryption).
+     */
+    public synchronized void saveLater() {
+        if (pendingFlush == null && !executor.isShutdown())
+            pendingFlush = executor.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that transactions have been left out of the wallet while loading it (e.g. because they are archived),
+     * so that they don't come back on replay.
+     */
+    public void transactionsRemoved(final Collection<Sha256Hash> txIds) {
+        if (txIds.isEmpty())
+            return;
+        synchronized (this) {
+            for (final Sha256Hash txId : txIds)
+                dirtyTransactions.put(txId, null);
+        }
+        saveLater();
+    }
+
+    /**
+     * Stops listening to the wallet, flushes pending deltas and waits for the journal to be closed.
+     */
+    public void shutdownAndWait() {
+        wallet.removeKeyChainEventListener(this);
+        wallet.removeTransactionConfidenceEventListener(this);
+        wallet.removeChangeEventListener(this);
+        wallet.removeReorganizeEventListener(this);
+        wallet.removeCoinsSentEventListener(this);
+        wallet.removeCoinsReceivedEventListener(this);
+        synchronized (this) {
+            if (pendingFlush != null)
+                pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        executor.execute(() -> {
+            flush();
+            closeJournal();
+        });
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS))
+                ;
+        } catch (final InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    @Override
+    public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+            final Coin newBalance) {
+        markDirty(tx);
+    }
+
+    @Override
+    public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance) {
+        markDirty(tx);
+    }
+
+    @Override
+    public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+        // depth is recomputed from the last seen block on replay, so don't journal mere depth increments
+        final TransactionConfidence confidence = tx.getConfidence();
+        if (confidence.getConfidenceType() == ConfidenceType.BUILDING && confidence.getDepthInBlocks() > 1)
+            return;
+        markDirty(tx);
+    }
+
+    @Override
+    public void onReorganize(final Wallet wallet) {
+        synchronized (this) {
+            compactionRequested = true;
+        }
+        saveLater();
+    }
+
+    @Override
+    public void onWalletChanged(final Wallet wallet) {
+        saveLater();
+    }
+
+    @Override
+    public void onKeysAdded(final List<ECKey> keys) {
+        synchronized (this) {
+            dirtyKeys = true;
+        }
+        saveLater();
+    }
+
+    /**
+     * Takes the transaction as it is now. Wallet events are delivered with the wallet lock held, so its pools are
+     * consistent and nothing is modifying the transaction.
+     */
+    private void markDirty(final Transaction tx) {
+        final Map<Sha256Hash, Protos.Transaction> snapshot = new HashMap<>();
+        snapshot(tx, snapshot);
+        // spending moves the funding transactions to another pool, and sets spent-by on their outputs
+        for (final TransactionInput input : tx.getInputs()) {
+            final TransactionOutput connectedOutput = input.getConnectedOutput();
+            if (connectedOutput != null && connectedOutput.getParentTransaction() != null)
+                snapshot(connectedOutput.getParentTransaction(), snapshot);
+        }
+        synchronized (this) {
+            dirtyTransactions.putAll(snapshot);
+        }
+        saveLater();
+    }
+
+    private void snapshot(final Transaction tx, final Map<Sha256Hash, Protos.Transaction> snapshot) {
+        final Sha256Hash txId = tx.getTxId();
+        final Pool pool = poolOf(txId);
+        if (pool != null)
+            snapshot.put(txId, toProto(tx, pool));
+        else
+            log.info("transaction not in any pool, not journaling: {}", txId);
+    }
+
+    private void open() {
+        final ByteString idTag = wallet.maybeGetTag(TAG_JOURNAL_ID);
+        if (idTag != null && journalFile.exists()) {
+            try {
+                final long id = toLong(idTag);
+                final long validLength = scan(journalFile, id, null);
+                if (validLength >= HEADER_SIZE) {
+                    try (final RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                        raf.setLength(validLength); // drop torn tail
+                    }
+                    openJournal();
+                    journalId = id;
+                    journalBytes = validLength;
+                    journaledLastSeenBlockHash = wallet.getLastBlockSeenHash();
+                    journaledKeysFingerprint = keysFingerprint();
+                    log.info("continuing journal: '{}', {} bytes", journalFile, journalBytes);
+                    return;
+                }
+            } catch (final IOException x) {
+                log.warn("problem opening journal, compacting", x);
+            }
+        }
+        if (isCompactionHeld()) {
+            synchronized (this) {
+                compactionRequested = true;
+            }
+            return;
+        }
+        try {
+            compact();
+        } catch (final IOException x) {
+            log.error("problem writing wallet snapshot", x);
+        }
+    }
+
+    private void flush() {
+        final Map<Sha256Hash, Protos.Transaction> dirtyTransactions;
+        final boolean dirtyKeys;
+        final boolean compactionRequested;
+        synchronized (this) {
+            pendingFlush = null;
+            dirtyTransactions = new HashMap<>(this.dirtyTransactions);
+            this.dirtyTransactions.clear();
+            dirtyKeys = this.dirtyKeys;
+            this.dirtyKeys = false;
+            compactionRequested = this.compactionRequested;
+            this.compactionRequested = false;
+        }
+
+        try {
+            if (journal == null || compactionRequested) {
+                if (!isCompactionHeld()) {
+                    compact();
+                    return;
+                }
+                if (journal == null) {
+                    // nowhere to write to yet, keep everything dirty until compaction is released
+                    synchronized (this) {
+                        // transactions taken in the meantime are newer
+                        for (final Map.Entry<Sha256Hash, Protos.Transaction> tx : dirtyTransactions.entrySet())
+                            if (!this.dirtyTransactions.containsKey(tx.getKey()))
+                                this.dirtyTransactions.put(tx.getKey(), tx.getValue());
+                        this.dirtyKeys |= dirtyKeys;
+                        this.compactionRequested = true;
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    this.compactionRequested = true;
+                }
+            }
+
+            final Stopwatch watch = Stopwatch.createStarted();
+            final long journalBytesBefore = journalBytes;
+            for (final Map.Entry<Sha256Hash, Protos.Transaction> tx : dirtyTransactions.entrySet()) {
+                if (tx.getValue() != null)
+                    appendRecord(RECORD_TRANSACTION, tx.getValue().toByteArray());
+                else
+                    appendRecord(RECORD_TRANSACTION_REMOVED, tx.getKey().getBytes());
+            }
+
+            final String keysFingerprint = keysFingerprint();
+            if (dirtyKeys || !keysFingerprint.equals(journaledKeysFingerprint)) {
+                appendRecord(RECORD_KEYS, keysProto().toByteArray());
+                journaledKeysFingerprint = keysFingerprint;
+            }
+
+            final Sha256Hash lastSeenBlockHash = wallet.getLastBlockSeenHash();
+            if (lastSeenBlockHash != null && !lastSeenBlockHash.equals(journaledLastSeenBlockHash)) {
+                final ByteArrayOutputStream payload = new ByteArrayOutputStream(32 + 4 + 8);
+                final DataOutputStream data = new DataOutputStream(payload);
+                data.write(lastSeenBlockHash.getBytes());
+                data.writeInt(wallet.getLastBlockSeenHeight());
+                data.writeLong(wallet.getLastBlockSeenTimeSecs());
+                appendRecord(RECORD_LAST_SEEN_BLOCK, payload.toByteArray());
+                journaledLastSeenBlockHash = lastSeenBlockHash;
+            }
+
+            if (journalBytes == journalBytesBefore)
+                return;
+            journal.flush();
+            journalFileStream.getFD().sync();
+            watch.stop();
+            log.debug("journaled {} transactions, {} bytes, took {}", dirtyTransactions.size(),
+                    journalBytes - journalBytesBefore, watch);
+
+            if (journalBytes > compactThresholdBytes && !isCompactionHeld())
+                compact();
+        } catch (final IOException x) {
+            if (isCompactionHeld()) {
+                log.error("problem appending to wallet journal", x);
+                return;
+            }
+            log.error("problem appending to wallet journal, compacting", x);
+            try {
+                compact();
+            } catch (final IOException x2) {
+                log.error("problem writing wallet snapshot", x2);
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        final Stopwatch watch = Stopwatch.createStarted();
+        synchronized (this) {
+            dirtyTransactions.clear();
+            dirtyKeys = false;
+        }
+        final long newJournalId = RANDOM.nextLong();
+        final Sha256Hash lastSeenBlockHash = wallet.getLastBlockSeenHash();
+        final String keysFingerprint = keysFingerprint();
+        final Protos.Wallet.Builder walletProto = new WalletProtobufSerializer().walletToProto(wallet).toBuilder();
+        setJournalId(walletProto, newJournalId);
+
+        // 1. snapshot
+        final File snapshotTempFile = new File(walletFile.getParentFile(), walletFile.getName() + ".tmp");
+        try (final FileOutputStream fos = new FileOutputStream(snapshotTempFile)) {
+            final OutputStream os = compressSnapshots ? new GZIPOutputStream(fos, 65536) : fos;
+            walletProto.build().writeTo(os);
+            if (compressSnapshots)
+                ((GZIPOutputStream) os).finish();
+            fos.flush();
+            fos.getFD().sync();
+        }
+        renameOver(snapshotTempFile, walletFile);
+
+        // 2. fresh journal; a crash in between leaves a journal with the old id, which will be ignored
+        closeJournal();
+        final File journalTempFile = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        try (final FileOutputStream fos = new FileOutputStream(journalTempFile)) {
+            final DataOutputStream header = new DataOutputStream(fos);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(newJournalId);
+            header.flush();
+            fos.getFD().sync();
+        }
+        renameOver(journalTempFile, journalFile);
+        openJournal();
+        journalId = newJournalId;
+        journalBytes = HEADER_SIZE;
+        journaledLastSeenBlockHash = lastSeenBlockHash;
+        journaledKeysFingerprint = keysFingerprint;
+
+        watch.stop();
+        log.info("wallet snapshot written to: '{}'{}, {} bytes, took {}", walletFile,
+                compressSnapshots ? " (compressed)" : "", walletFile.length(), watch);
+    }
+
+    private void openJournal() throws IOException {
+        journalFileStream = new FileOutputStream(journalFile, true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalFileStream, 8192));
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (final IOException x) {
+                log.info("problem closing journal", x);
+            }
+            journal = null;
+            journalFileStream = null;
+        }
+    }
+
+    private void appendRecord(final byte type, final byte[] payload) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        journal.writeInt(payload.length);
+        journal.writeByte(type);
+        journal.write(payload);
+        journal.writeInt((int) crc.getValue());
+        journalBytes += 4 + 1 + payload.length + 4;
+    }
+
+    private static void renameOver(final File from, final File to) throws IOException {
+        if (!from.renameTo(to))
+            throw new IOException("failed to rename " + from + " to " + to);
+    }
+
+    private Pool poolOf(final Sha256Hash txId) {
+        for (final Pool pool : new Pool[] { Pool.PENDING, Pool.UNSPENT, Pool.SPENT, Pool.DEAD })
+            if (wallet.getTransactionPool(pool).containsKey(txId))
+                return pool;
+        return null;
+    }
+
+    private String keysFingerprint() {
+        final StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(wallet.isEncrypted()).append('/').append(wallet.getKeyChainGroupSize()).append('/')
+                .append(wallet.getEarliestKeyCreationTime());
+        // issuing a key inside the lookahead window doesn't add keys, but it does change the issued counts
+        for (final DeterministicKeyChain chain : wallet.getActiveKeyChains())
+            fingerprint.append('/').append(chain.getIssuedExternalKeys()).append(',')
+                    .append(chain.getIssuedInternalKeys());
+        fingerprint.append('/').append(wallet.getDescription());
+        for (final Map.Entry<String, ByteString> tag : new TreeMap<>(wallet.getTags()).entrySet())
+            if (!TAG_JOURNAL_ID.equals(tag.getKey()))
+                fingerprint.append('/').append(tag.getKey()).append('=')
+                        .append(BaseEncoding.base16().encode(tag.getValue().toByteArray()));
+        return fingerprint.toString();
+    }
+
+    private Protos.Wallet keysProto() {
+        final Protos.Wallet.Builder keysProto = Protos.Wallet.newBuilder();
+        keysProto.setNetworkIdentifier(wallet.getParams().getId());
+        keysProto.addAllKey(wallet.serializeKeyChainGroupToProtobuf());
+        final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+        if (keyCrypter instanceof KeyCrypterScrypt) {
+            keysProto.setEncryptionType(keyCrypter.getUnderstoodEncryptionType());
+            keysProto.setEncryptionParameters(((KeyCrypterScrypt) keyCrypter).getScryptParameters());
+        } else {
+            keysProto.setEncryptionType(Protos.Wallet.EncryptionType.UNENCRYPTED);
+        }
+        final String description = wallet.getDescription();
+        if (description != null)
+            keysProto.setDescription(description);
+        for (final Map.Entry<String, ByteString> tag : wallet.getTags().entrySet())
+            if (!TAG_JOURNAL_ID.equals(tag.getKey()))
+                keysProto.addTags(Protos.Tag.newBuilder().setTag(tag.getKey()).setData(tag.getValue()));
+        return keysProto.build();
+    }
+
+    private static long journalId(final Protos.Wallet.Builder walletProto) {
+        for (final Protos.Tag tag : walletProto.getTagsList())
+            if (TAG_JOURNAL_ID.equals(tag.getTag()))
+                return toLong(tag.getData());
+        return 0;
+    }
+
+    private static void setJournalId(final Protos.Wallet.Builder walletProto, final long journalId) {
+        for (int i = walletProto.getTagsCount() - 1; i >= 0; i--)
+            if (TAG_JOURNAL_ID.equals(walletProto.getTags(i).getTag()))
+                walletProto.removeTags(i);
+        final byte[] data = new byte[8];
+        for (int i = 0; i < 8; i++)
+            data[i] = (byte) (journalId >>> (56 - i * 8));
+        walletProto.addTags(Protos.Tag.newBuilder().setTag(TAG_JOURNAL_ID).setData(ByteString.copyFrom(data)));
+    }
+
+    private static long toLong(final ByteString data) {
+        long value = 0;
+        for (int i = 0; i < Math.min(8, data.size()); i++)
+            value = (value << 8) | (data.byteAt(i) & 0xff);
+        return value;
+    }
+
+    /**
+     * Reads the journal, passing records to {@code replay} if not null. Returns the length of the valid prefix, or
+     * 0 if the journal does not belong to the given id.
+     */
+    private static long scan(final File journalFile, final long expectedJournalId, final Replay replay)
+            throws IOException {
+        try (final DataInputStream is = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile), 65536))) {
+            try {
+                if (is.readInt() != MAGIC || is.readInt() != VERSION)
+                    return 0;
+                final long id = is.readLong();
+                if (id != expectedJournalId) {
+                    log.info("journal '{}' is stale, ignoring", journalFile);
+                    return 0;
+                }
+            } catch (final EOFException x) {
+                return 0;
+            }
+
+            long validLength = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (true) {
+                try {
+                    final int length = is.readInt();
+                    if (length < 0 || length > journalFile.length())
+                        break;
+                    final byte type = is.readByte();
+                    final byte[] payload = new byte[length];
+                    is.readFully(payload);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload);
+                    if (is.readInt() != (int) crc.getValue())
+                        break;
+                    if (replay != null)
+                        replay.apply(type, payload);
+                    validLength += 4 + 1 + length + 4;
+                } catch (final EOFException x) {
+                    break;
+                }
+            }
+            if (validLength < journalFile.length())
+                log.warn("discarding torn journal tail: {} bytes", journalFile.length() - validLength);
+            return validLength;
+        }
+    }
+
+    private static class Replay {
+        private final Protos.Wallet.Builder walletProto;
+        private final Map<ByteString, Protos.Transaction> transactions = new LinkedHashMap<>();
+        private int numRecords = 0;
+
+        public Replay(final Protos.Wallet.Builder walletProto) {
+            this.walletProto = walletProto;
+            for (final Protos.Transaction tx : walletProto.getTransactionList())
+                transactions.put(tx.getHash(), tx);
+        }
+
+        public void apply(final byte type, final byte[] payload) throws IOException {
+            numRecords++;
+            if (type == RECORD_TRANSACTION) {
+                final Protos.Transaction tx = Protos.Transaction.parseFrom(payload);
+                transactions.put(tx.getHash(), tx);
+            } else if (type == RECORD_TRANSACTION_REMOVED) {
+                transactions.remove(ByteString.copyFrom(payload));
+            } else if (type == RECORD_KEYS) {
+                final Protos.Wallet keys = Protos.Wallet.parseFrom(payload);
+                walletProto.clearKey();
+                walletProto.addAllKey(keys.getKeyList());
+                walletProto.setEncryptionType(keys.getEncryptionType());
+                if (keys.hasEncryptionParameters())
+                    walletProto.setEncryptionParameters(keys.getEncryptionParameters());
+                else
+                    walletProto.clearEncryptionParameters();
+                if (keys.hasDescription())
+                    walletProto.setDescription(keys.getDescription());
+                else
+                    walletProto.clearDescription();
+                // the journal id tag belongs to the snapshot, all other tags are replaced
+                for (int i = walletProto.getTagsCount() - 1; i >= 0; i--)
+                    if (!TAG_JOURNAL_ID.equals(walletProto.getTags(i).getTag()))
+                        walletProto.removeTags(i);
+                walletProto.addAllTags(keys.getTagsList());
+            } else if (type == RECORD_LAST_SEEN_BLOCK) {
+                final DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+                final byte[] hash = new byte[32];
+                data.readFully(hash);
+                walletProto.setLastSeenBlockHash(ByteString.copyFrom(hash));
+                walletProto.setLastSeenBlockHeight(data.readInt());
+                walletProto.setLastSeenBlockTimeSecs(data.readLong());
+            } else {
+                log.warn("skipping unknown journal record type: {}", type);
+            }
+        }
+
+        public void finish() {
+            final int lastSeenHeight = walletProto.hasLastSeenBlockHeight() ? walletProto.getLastSeenBlockHeight()
+                    : -1;
+            walletProto.clearTransaction();
+            for (final Protos.Transaction tx : transactions.values()) {
+                final Protos.TransactionConfidence confidence = tx.getConfidence();
+                if (lastSeenHeight >= 0 && confidence.getType() == Protos.TransactionConfidence.Type.BUILDING
+                        && confidence.hasAppearedAtHeight()) {
+                    final int depth = lastSeenHeight - confidence.getAppearedAtHeight() + 1;
+                    if (depth > 0 && depth != confidence.getDepth()) {
+                        walletProto.addTransaction(
+                                tx.toBuilder().setConfidence(confidence.toBuilder().setDepth(depth)));
+                        continue;
+                    }
+                }
+                walletProto.addTransaction(tx);
+            }
+        }
+    }
+
+    /**
+     * Mirrors {@link WalletProtobufSerializer#walletToProto(Wallet)} for a single transaction.
+     */
+    private static Protos.Transaction toProto(final Transaction tx, final Pool pool) {
+        final Protos.Transaction.Builder txBuilder = Protos.Transaction.newBuilder();
+        txBuilder.setPool(Protos.Transaction.Pool.valueOf(pool.name()));
+        txBuilder.setHash(WalletProtobufSerializer.hashToByteString(tx.getTxId()));
+        txBuilder.setVersion((int) tx.getVersion());
+        final Date updateTime = tx.getUpdateTime();
+        if (updateTime != null)
+            txBuilder.setUpdatedAt(updateTime.getTime());
+        if (tx.getLockTime() > 0)
+            txBuilder.setLockTime((int) tx.getLockTime());
+
+        for (final TransactionInput input : tx.getInputs()) {
+            final Protos.TransactionInput.Builder inputBuilder = Protos.TransactionInput.newBuilder()
+                    .setScriptBytes(ByteString.copyFrom(input.getScriptBytes()))
+                    .setTransactionOutPointHash(
+                            WalletProtobufSerializer.hashToByteString(input.getOutpoint().getHash()))
+                    .setTransactionOutPointIndex((int) input.getOutpoint().getIndex());
+            if (input.hasSequence())
+                inputBuilder.setSequence((int) input.getSequenceNumber());
+            if (input.getValue() != null)
+                inputBuilder.setValue(input.getValue().value);
+            if (input.hasWitness()) {
+                final TransactionWitness witness = input.getWitness();
+                final Protos.ScriptWitness.Builder witnessBuilder = Protos.ScriptWitness.newBuilder();
+                for (int i = 0; i < witness.getPushCount(); i++)
+                    witnessBuilder.addData(ByteString.copyFrom(witness.getPush(i)));
+                inputBuilder.setWitness(witnessBuilder);
+            }
+            txBuilder.addTransactionInput(inputBuilder);
+        }
+
+        for (final TransactionOutput output : tx.getOutputs()) {
+            final Protos.TransactionOutput.Builder outputBuilder = Protos.TransactionOutput.newBuilder()
+                    .setScriptBytes(ByteString.copyFrom(output.getScriptBytes())).setValue(output.getValue().value);
+            final TransactionInput spentBy = output.getSpentBy();
+            if (spentBy != null)
+                outputBuilder
+                        .setSpentByTransactionHash(
+                                WalletProtobufSerializer.hashToByteString(spentBy.getParentTransaction().getTxId()))
+                        .setSpentByTransactionIndex(spentBy.getIndex());
+            txBuilder.addTransactionOutput(outputBuilder);
+        }
+
+        final Map<Sha256Hash, Integer> appearsInHashes = tx.getAppearsInHashes();
+        if (appearsInHashes != null) {
+            for (final Map.Entry<Sha256Hash, Integer> entry : appearsInHashes.entrySet()) {
+                txBuilder.addBlockHash(WalletProtobufSerializer.hashToByteString(entry.getKey()));
+                txBuilder.addBlockRelativityOffsets(entry.getValue());
+            }
+        }
+
+        if (tx.hasConfidence()) {
+            final TransactionConfidence confidence = tx.getConfidence();
+            final Protos.TransactionConfidence.Builder confidenceBuilder = Protos.TransactionConfidence.newBuilder();
+            synchronized (confidence) {
+                final ConfidenceType type = confidence.getConfidenceType();
+                confidenceBuilder.setType(Protos.TransactionConfidence.Type.forNumber(type.getValue()));
+                if (type == ConfidenceType.BUILDING) {
+                    confidenceBuilder.setAppearedAtHeight(confidence.getAppearedAtChainHeight());
+                    confidenceBuilder.setDepth(confidence.getDepthInBlocks());
+                }
+                if (type == ConfidenceType.DEAD && confidence.getOverridingTransaction() != null)
+                    confidenceBuilder.setOverridingTransaction(WalletProtobufSerializer
+                            .hashToByteString(confidence.getOverridingTransaction().getTxId()));
+                final TransactionConfidence.Source source = confidence.getSource();
+                if (source == TransactionConfidence.Source.SELF)
+                    confidenceBuilder.setSource(Protos.TransactionConfidence.Source.SOURCE_SELF);
+                else if (source == TransactionConfidence.Source.NETWORK)
+                    confidenceBuilder.setSource(Protos.TransactionConfidence.Source.SOURCE_NETWORK);
+                else
+                    confidenceBuilder.setSource(Protos.TransactionConfidence.Source.SOURCE_UNKNOWN);
+            }
+            for (final PeerAddress address : confidence.getBroadcastBy())
+                confidenceBuilder.addBroadcastBy(Protos.PeerAddress.newBuilder()
+                        .setIpAddress(ByteString.copyFrom(address.getAddr().getAddress()))
+                        .setPort(address.getPort()).setServices(address.getServices().longValue()));
+            final Date lastBroadcastedAt = confidence.getLastBroadcastedAt();
+            if (lastBroadcastedAt != null)
+                confidenceBuilder.setLastBroadcastedAt(lastBroadcastedAt.getTime());
+            txBuilder.setConfidence(confidenceBuilder);
+        }
+
+        txBuilder.setPurpose(Protos.Transaction.Purpose.valueOf(tx.getPurpose().name()));
+
+        final ExchangeRate exchangeRate = tx.getExchangeRate();
+        if (exchangeRate != null)
+            txBuilder.setExchangeRate(Protos.ExchangeRate.newBuilder().setCoinValue(exchangeRate.coin.value)
+                    .setFiatValue(exchangeRate.fiat.value).setFiatCurrencyCode(exchangeRate.fiat.currencyCode));
+
+        if (tx.getMemo() != null)
+            txBuilder.setMemo(tx.getMemo());
+
+        return txBuilder.build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.protobuf.ByteString;
+import org.bitcoinj.crypto.KeyCrypter;
+import org.bitcoinj.crypto.KeyCrypterScrypt;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes the key material of a wallet, without any transactions, to a backup file. The write is skipped if
+ * nothing changed since the last backup.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletKeyBackup {
+    private final File file;
+    private HashCode fingerprint;
+
+    private static final Logger log = LoggerFactory.getLogger(WalletKeyBackup.class);
+
+    public WalletKeyBackup(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return true if the backup was written, false if it was already up to date
+     */
+    public synchronized boolean write(final Wallet wallet) throws IOException {
+        final byte[] bytes = keysToProto(wallet).toByteArray();
+        final HashCode newFingerprint = Hashing.sha256().hashBytes(bytes);
+        if (fingerprint == null && file.exists())
+            fingerprint = Files.asByteSource(file).hash(Hashing.sha256());
+        if (newFingerprint.equals(fingerprint))
+            return false;
+
+        final File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final FileOutputStream os = new FileOutputStream(tmpFile)) {
+            os.write(bytes);
+            os.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file))
+            throw new IOException("failed to rename " + tmpFile + " to " + file);
+        fingerprint = newFingerprint;
+        return true;
+    }
+
+    /**
+     * Like {@link org.bitcoinj.wallet.WalletProtobufSerializer#walletToProto(Wallet)}, but never touches
+     * transactions and leaves out the last seen block.
+     */
+    public static Protos.Wallet keysToProto(final Wallet wallet) {
+        final Protos.Wallet.Builder walletProto = Protos.Wallet.newBuilder();
+        walletProto.setNetworkIdentifier(wallet.getNetworkParameters().getId());
+        if (wallet.getDescription() != null)
+            walletProto.setDescription(wallet.getDescription());
+        walletProto.addAllKey(wallet.serializeKeyChainGroupToProtobuf());
+        for (final Script script : wallet.getWatchedScripts())
+            walletProto.addWatchedScript(Protos.Script.newBuilder().setProgram(ByteString.copyFrom(script.getProgram()))
+                    .setCreationTimestamp(script.getCreationTimeSeconds() * 1000));
+        walletProto.setLastSeenBlockHeight(-1);
+
+        final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+        if (keyCrypter == null) {
+            walletProto.setEncryptionType(Protos.Wallet.EncryptionType.UNENCRYPTED);
+        } else {
+            walletProto.setEncryptionType(keyCrypter.getUnderstoodEncryptionType());
+            if (keyCrypter instanceof KeyCrypterScrypt)
+                walletProto.setEncryptionParameters(((KeyCrypterScrypt) keyCrypter).getScryptParameters());
+            else
+                throw new IllegalStateException("unsupported encryption: " + keyCrypter.getUnderstoodEncryptionType());
+        }
+        if (wallet.getKeyRotationTime() != null)
+            walletProto.setKeyRotationTime(wallet.getKeyRotationTime().getTime() / 1000);
+
+        for (final WalletExtension extension : wallet.getExtensions().values())
+            walletProto.addExtension(Protos.Extension.newBuilder().setId(extension.getWalletExtensionID())
+                    .setMandatory(extension.isWalletExtensionMandatory())
+                    .setData(ByteString.copyFrom(extension.serializeWalletExtension())));
+        for (final Map.Entry<String, ByteString> tag : wallet.getTags().entrySet())
+            if (!WalletJournal.TAG_JOURNAL_ID.equals(tag.getKey())) // a restored wallet needs a fresh journal
+                walletProto.addTags(Protos.Tag.newBuilder().setTag(tag.getKey()).setData(tag.getValue()));
+        walletProto.setVersion(wallet.getVersion());
+        return walletProto.build();
+    }
+}
@@ -36,7 +36,6 @@ import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptException;
-import org.bitcoinj.wallet.Protos;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
@@ -45,7 +44,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 /**
  * @author Andreas Schildbach
@@ -169,27 +167,29 @@ public class WalletUtils {
         return true;
     }
 
+    private static WalletKeyBackup keyBackup;
+
     public static void autoBackupWallet(final Context context, final Wallet wallet) {
         final Stopwatch watch = Stopwatch.createStarted();
-        final Protos.Wallet.Builder builder = new WalletProtobufSerializer().walletToProto(wallet).toBuilder();
-
-        // strip redundant
-        builder.clearTransaction();
-        builder.clearLastSeenBlockHash();
-        builder.setLastSeenBlockHeight(-1);
-        builder.clearLastSeenBlockTimeSecs();
-        final Protos.Wallet walletProto = builder.build();
-
-        try (final OutputStream os = context.openFileOutput(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF,
-                Context.MODE_PRIVATE)) {
-            walletProto.writeTo(os);
+        try {
+            final boolean written = keyBackup(context).write(wallet);
             watch.stop();
-            log.info("wallet backed up to: '{}', took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, watch);
+            if (written)
+                log.info("wallet backed up to: '{}', took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, watch);
+            else
+                log.info("wallet backup '{}' is up to date, took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF,
+                        watch);
         } catch (final IOException x) {
             log.error("problem writing wallet backup", x);
         }
     }
 
+    private static synchronized WalletKeyBackup keyBackup(final Context context) {
+        if (keyBackup == null)
+            keyBackup = new WalletKeyBackup(context.getFileStreamPath(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF));
+        return keyBackup;
+    }
+
     public static Wallet restoreWalletFromAutoBackup(final Context context) {
         try (final InputStream is = context.openFileInput(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF)) {
             final Wallet wallet = new WalletProtobufSerializer().readWallet(is, true, null);
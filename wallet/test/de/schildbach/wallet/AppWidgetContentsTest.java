@@ -0,0 +1,73 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class AppWidgetContentsTest {
+    private AppWidgetContents contents;
+
+    @Before
+    public void setUp() {
+        contents = new AppWidgetContents();
+    }
+
+    @Test
+    public void unchangedSkipped() {
+        assertTrue(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+        assertFalse(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+    }
+
+    @Test
+    public void changedPushed() {
+        contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false);
+        assertTrue(contents.update(1, AppWidgetContents.of("BTC", "2.00", null, 250), false));
+        assertTrue(contents.update(1, AppWidgetContents.of("mBTC", "2.00", null, 250), false));
+        assertTrue(contents.update(1, AppWidgetContents.of("mBTC", "2.00", "≈€20", 250), false));
+        assertTrue(contents.update(1, AppWidgetContents.of("mBTC", "2.00", "≈€20", 350), false));
+        assertFalse(contents.update(1, AppWidgetContents.of("mBTC", "2.00", "≈€20", 350), false));
+    }
+
+    @Test
+    public void forcePushed() {
+        contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false);
+        assertTrue(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), true));
+        assertFalse(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+    }
+
+    @Test
+    public void perWidget() {
+        contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false);
+        assertTrue(contents.update(2, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+        assertFalse(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+    }
+
+    @Test
+    public void removedPushedAgain() {
+        contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false);
+        contents.remove(1);
+        assertTrue(contents.update(1, AppWidgetContents.of("BTC", "1.00", null, 250), false));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WalletLoaderTest {
+    private ListeningExecutorService executor;
+    private final AtomicInteger numWordlistLoads = new AtomicInteger();
+    private final AtomicInteger numWalletParses = new AtomicInteger();
+    private final List<String> published = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void warmUpWordlistOnly() throws Exception {
+        final WalletLoader<String> loader = new WalletLoader<>(executor, numWordlistLoads::incrementAndGet,
+                () -> "wallet" + numWalletParses.incrementAndGet(), published::add);
+        loader.loadWordlist().get(1, TimeUnit.SECONDS);
+        assertEquals(1, numWordlistLoads.get());
+        assertEquals(0, numWalletParses.get());
+        assertTrue(published.isEmpty());
+
+        loader.loadWallet().get(1, TimeUnit.SECONDS);
+        assertEquals(1, numWordlistLoads.get());
+        assertEquals(1, numWalletParses.get());
+        assertEquals(Collections.singletonList("wallet1"), published);
+    }
+
+    @Test
+    public void loadWalletOnce() throws Exception {
+        final WalletLoader<String> loader = new WalletLoader<>(executor, numWordlistLoads::incrementAndGet,
+                () -> "wallet" + numWalletParses.incrementAndGet(), published::add);
+        final ListenableFuture<?> loaded = loader.loadWallet();
+        assertSame(loaded, loader.loadWallet());
+        loaded.get(1, TimeUnit.SECONDS);
+        loader.loadWordlist().get(1, TimeUnit.SECONDS);
+        assertEquals(1, numWordlistLoads.get());
+        assertEquals(1, numWalletParses.get());
+        assertEquals(Collections.singletonList("wallet1"), published);
+    }
+
+    @Test
+    public void publishAfterWordlist() throws Exception {
+        final SettableFuture<Void> wordlistRelease = SettableFuture.create();
+        final WalletLoader<String> loader = new WalletLoader<>(executor, () -> {
+            try {
+                wordlistRelease.get();
+            } catch (final InterruptedException | ExecutionException x) {
+                throw new RuntimeException(x);
+            }
+        }, () -> "wallet", published::add);
+        final ListenableFuture<?> loaded = loader.loadWallet();
+        Thread.sleep(100);
+        assertFalse(loaded.isDone());
+        assertTrue(published.isEmpty());
+        wordlistRelease.set(null);
+        loaded.get(1, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("wallet"), published);
+    }
+
+    @Test
+    public void parseProblemIsRethrown() throws Exception {
+        final WalletLoader<String> loader = new WalletLoader<>(executor, () -> {
+        }, () -> {
+            throw new IllegalStateException("unreadable");
+        }, published::add);
+        try {
+            loader.loadWallet().get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException x) {
+            // expected
+        }
+        assertTrue(published.isEmpty());
+    }
+}
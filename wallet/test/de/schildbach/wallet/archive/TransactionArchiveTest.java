@@ -0,0 +1,246 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.archive;
+
+import androidx.lifecycle.LiveData;
+import com.google.common.collect.ImmutableSet;
+import com.google.protobuf.ByteString;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.SegwitAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionArchiveTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+    private static final int MIN_DEPTH = 1000;
+
+    private Wallet wallet;
+    private Transaction old, spent, unspent, funding, fundingSpender, payment, paymentSpender;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+
+        // a change chain: only the start is buried deep enough, including its spender
+        old = fundingTransaction(Sha256Hash.of(new byte[] { 1 }), 100);
+        spent = spendingTransaction(old, 0, true, 110);
+        unspent = spendingTransaction(spent, 0, true, 2000);
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, old));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, spent));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.UNSPENT, unspent));
+
+        // deep, but funded by a transaction that is still unspent
+        funding = fundingTransaction(Sha256Hash.of(new byte[] { 2 }), 100);
+        funding.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        fundingSpender = spendingTransaction(funding, 0, false, 105);
+        wallet.addWalletTransaction(new WalletTransaction(Pool.UNSPENT, funding));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, fundingSpender));
+
+        // deep payment away from the wallet
+        payment = fundingTransaction(Sha256Hash.of(new byte[] { 3 }), 100);
+        paymentSpender = spendingTransaction(payment, 0, false, 101);
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, payment));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, paymentSpender));
+
+        wallet.setLastBlockSeenHash(Sha256Hash.of(new byte[] { 4 }));
+        wallet.setLastBlockSeenHeight(2500);
+        assertTrue(wallet.isConsistent());
+    }
+
+    @Test
+    public void select() {
+        final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
+        assertEquals(ImmutableSet.of(hash(old), hash(payment), hash(paymentSpender)),
+                TransactionArchive.select(walletProto, Collections.emptySet(), MIN_DEPTH));
+        assertEquals(ImmutableSet.of(hash(payment), hash(paymentSpender)),
+                TransactionArchive.select(walletProto, ImmutableSet.of(hash(old)), MIN_DEPTH));
+    }
+
+    @Test
+    public void withoutAndMergedBack() throws Exception {
+        final Coin balance = wallet.getBalance();
+        final Coin spentValue = spent.getValue(wallet);
+        final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
+        final Set<ByteString> eligible = TransactionArchive.select(walletProto, Collections.emptySet(), MIN_DEPTH);
+        final Set<Sha256Hash> txIds = new HashSet<>();
+        final List<ArchivedTransactionEntry> entries = new ArrayList<>();
+        for (final Protos.Transaction tx : walletProto.getTransactionList()) {
+            if (eligible.contains(tx.getHash())) {
+                final Sha256Hash txId = WalletProtobufSerializer.byteStringToHash(tx.getHash());
+                txIds.add(txId);
+                entries.add(new ArchivedTransactionEntry(txId.toString(), tx.getUpdatedAt(),
+                        tx.getConfidence().getAppearedAtHeight(), tx.toByteArray()));
+            }
+        }
+
+        final Wallet live = new WalletProtobufSerializer().readWallet(PARAMS, null,
+                TransactionArchive.withoutTransactions(walletProto, txIds));
+        assertEquals(4, live.getTransactions(true).size());
+        assertTrue(live.isConsistent());
+        assertEquals(balance, live.getBalance());
+        assertNull(live.getTransaction(spent.getTxId()).getInput(0).getConnectedOutput());
+
+        final ArchivedTransactions archived = ArchivedTransactions.parse(PARAMS, entries);
+        assertEquals(3, archived.size());
+        final Transaction liveSpent = archived.getTransaction(live, spent.getTxId());
+        assertEquals(spentValue, liveSpent.getValue(archived.transactionBag(live)));
+        assertEquals(paymentSpender.getValue(wallet),
+                archived.get(paymentSpender.getTxId()).getValue(archived.transactionBag(live)));
+    }
+
+    @Test
+    public void commitOnlyWrites() throws Exception {
+        final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
+        final FakeArchivedTransactionDao dao = new FakeArchivedTransactionDao();
+        final TransactionArchive archive = new TransactionArchive(dao);
+
+        // an inconsistent wallet doesn't get committed, and leaves nothing behind
+        assertTrue(archive.prepare(walletProto, MIN_DEPTH).getArchivedTxIds().isEmpty());
+        assertTrue(dao.entries.isEmpty());
+
+        final TransactionArchive.Archiving archiving = archive.prepare(walletProto, MIN_DEPTH);
+        final Set<Sha256Hash> txIds = archiving.commit();
+        assertEquals(ImmutableSet.of(old.getTxId(), payment.getTxId(), paymentSpender.getTxId()), txIds);
+        assertEquals(3, dao.entries.size());
+        assertTrue(archiving.getArchivedTxIds().isEmpty());
+
+        // left out of the wallet the next time it is loaded
+        assertEquals(txIds, archive.prepare(walletProto, MIN_DEPTH).getArchivedTxIds());
+    }
+
+    @Test
+    public void parseOnDemand() throws Exception {
+        final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
+        final FakeArchivedTransactionDao dao = new FakeArchivedTransactionDao();
+        final Set<Sha256Hash> txIds = new TransactionArchive(dao).archive(walletProto, MIN_DEPTH);
+        final Wallet live = new WalletProtobufSerializer().readWallet(PARAMS, null,
+                TransactionArchive.withoutTransactions(walletProto, txIds));
+
+        final List<Sha256Hash> evicted = new ArrayList<>();
+        final ArchivedTransactionCache cache = new ArchivedTransactionCache(new TransactionArchive(dao), PARAMS, 2,
+                evicted::add);
+        cache.load();
+        assertEquals(txIds, cache.getTxIds());
+        assertNull(cache.get(unspent.getTxId()));
+        assertEquals(0, dao.numLookups);
+
+        // the funding transaction is parsed on demand as well
+        final Transaction archivedPaymentSpender = cache.get(paymentSpender.getTxId());
+        assertEquals(paymentSpender.getValue(wallet), archivedPaymentSpender.getValue(cache.transactionBag(live)));
+        assertEquals(spent.getValue(wallet), live.getTransaction(spent.getTxId()).getValue(cache.transactionBag(live)));
+        assertEquals(3, dao.numLookups);
+        assertEquals(Collections.singletonList(paymentSpender.getTxId()), evicted);
+        assertTrue(cache.get(old.getTxId()) != null);
+        assertEquals(3, dao.numLookups);
+    }
+
+    private Transaction fundingTransaction(final Sha256Hash from, final int height) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0], new TransactionOutPoint(PARAMS, 0, from)));
+        tx.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        tx.getConfidence().setAppearedAtChainHeight(height);
+        return tx;
+    }
+
+    private Transaction spendingTransaction(final Transaction parent, final int index, final boolean toSelf,
+            final int height) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(parent.getOutput(index));
+        parent.getOutput(index).markAsSpent(tx.getInput(0));
+        tx.addOutput(Coin.COIN, toSelf ? wallet.freshReceiveAddress()
+                : SegwitAddress.fromKey(PARAMS, new ECKey()));
+        tx.getConfidence().setAppearedAtChainHeight(height);
+        return tx;
+    }
+
+    private static ByteString hash(final Transaction tx) {
+        return WalletProtobufSerializer.hashToByteString(tx.getTxId());
+    }
+
+    private static class FakeArchivedTransactionDao implements ArchivedTransactionDao {
+        final Map<String, ArchivedTransactionEntry> entries = new LinkedHashMap<>();
+        int numLookups = 0;
+
+        @Override
+        public void insertOrUpdate(final List<ArchivedTransactionEntry> entries) {
+            for (final ArchivedTransactionEntry entry : entries)
+                this.entries.put(entry.getTxId(), entry);
+        }
+
+        @Override
+        public List<String> getTxIds() {
+            return new ArrayList<>(entries.keySet());
+        }
+
+        @Override
+        public List<ArchivedTransactionEntry> getAll() {
+            return new ArrayList<>(entries.values());
+        }
+
+        @Override
+        public ArchivedTransactionEntry findByTxId(final String txId) {
+            numLookups++;
+            return entries.get(txId);
+        }
+
+        @Override
+        public LiveData<List<ArchivedTransactionEntry>> findAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int count() {
+            return entries.size();
+        }
+
+        @Override
+        public void deleteAll() {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import org.bitcoinj.core.CheckpointManager;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class CheckpointsAssetTest {
+    @Test
+    public void testnet() throws Exception {
+        roundTrip(TestNet3Params.get(), new File("assets/checkpoints.txt"));
+    }
+
+    @Test
+    public void mainnet() throws Exception {
+        roundTrip(MainNetParams.get(), new File("assets-prod/checkpoints.txt"));
+    }
+
+    @Test(expected = IOException.class)
+    public void unexpectedMagic() throws Exception {
+        CheckpointsAsset.compile(new ByteArrayInputStream("TXT CHECKPOINTS 2\n0\n0\n".getBytes(
+                StandardCharsets.US_ASCII)), new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class)
+    public void unexpectedBinaryMagic() throws Exception {
+        new CheckpointsAsset(ByteBuffer.wrap("WORD\0\0\0\1\0\0\0\0".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static void roundTrip(final NetworkParameters params, final File textFile) throws Exception {
+        Context.propagate(new Context(params));
+        final CheckpointManager manager;
+        try (final InputStream is = new FileInputStream(textFile)) {
+            manager = new CheckpointManager(params, is);
+        }
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (final InputStream is = new FileInputStream(textFile)) {
+            CheckpointsAsset.compile(is, binary);
+        }
+        final CheckpointsAsset asset = new CheckpointsAsset(ByteBuffer.wrap(binary.toByteArray()));
+        assertTrue(asset.size() >= manager.numCheckpoints());
+
+        final long genesisTime = params.getGenesisBlock().getTimeSeconds();
+        for (int i = 0; i < asset.size(); i++) {
+            final long time = asset.getTimeSecs(i);
+            if (i > 0)
+                assertTrue(time >= asset.getTimeSecs(i - 1));
+            for (final long t : new long[] { time - 1, time, time + 1 })
+                if (t > genesisTime)
+                    assertEquals(manager.getCheckpointBefore(t), asset.getCheckpointBefore(params, t));
+        }
+        final StoredBlock genesis = asset.getCheckpointBefore(params, genesisTime + 1);
+        assertEquals(manager.getCheckpointBefore(genesisTime + 1), genesis);
+        final long future = asset.getTimeSecs(asset.size() - 1) + 86400;
+        assertEquals(manager.getCheckpointBefore(future), asset.getCheckpointBefore(params, future));
+    }
+}
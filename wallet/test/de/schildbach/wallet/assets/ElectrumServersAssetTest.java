@@ -0,0 +1,90 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ElectrumServersAssetTest {
+    @Test
+    public void roundTrip() throws Exception {
+        for (final File textFile : new File[] { new File("assets/electrum-servers.txt"),
+                new File("assets-prod/electrum-servers.txt") }) {
+            final List<String> expected = new ArrayList<>();
+            for (final String line : Files.readAllLines(textFile.toPath(), StandardCharsets.UTF_8))
+                if (!line.trim().isEmpty() && !line.startsWith("#"))
+                    expected.add(line.trim().toLowerCase(Locale.US));
+            final ElectrumServersAsset asset = compile(Files.readAllBytes(textFile.toPath()));
+            final List<String> actual = new ArrayList<>();
+            for (int i = 0; i < asset.size(); i++) {
+                final int port = asset.getPort(i);
+                final String fingerprint = asset.getCertificateFingerprint(i);
+                actual.add(asset.getType(i) + ":" + asset.getHost(i) + ":" + (port != 0 ? port : "") + ":"
+                        + (fingerprint != null ? fingerprint : ""));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void optionalFields() throws Exception {
+        final ElectrumServersAsset asset = compile("# comment\nTCP:example.com\n\ntls:example.org:50002\n"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, asset.size());
+        assertEquals("tcp", asset.getType(0));
+        assertEquals("example.com", asset.getHost(0));
+        assertEquals(0, asset.getPort(0));
+        assertNull(asset.getCertificateFingerprint(0));
+        assertEquals("tls", asset.getType(1));
+        assertEquals("example.org", asset.getHost(1));
+        assertEquals(50002, asset.getPort(1));
+        assertNull(asset.getCertificateFingerprint(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedType() throws Exception {
+        compile("udp:example.com:50001\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFingerprint() throws Exception {
+        compile("tls:example.com:50002:d1741a0d\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ElectrumServersAsset compile(final byte[] text) throws IOException {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ElectrumServersAsset.compile(new ByteArrayInputStream(text), binary);
+        return new ElectrumServersAsset(ByteBuffer.wrap(binary.toByteArray()));
+    }
+}
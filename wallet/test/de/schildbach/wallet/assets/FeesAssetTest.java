@@ -0,0 +1,85 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class FeesAssetTest {
+    @Test
+    public void roundTrip() throws Exception {
+        for (final File textFile : new File[] { new File("assets/fees.txt"), new File("assets-prod/fees.txt") }) {
+            final byte[] text = Files.readAllBytes(textFile.toPath());
+            final Map<String, Long> expected = new LinkedHashMap<>();
+            for (final String line : new String(text, StandardCharsets.US_ASCII).split("\n")) {
+                if (line.trim().isEmpty() || line.startsWith("#"))
+                    continue;
+                final String[] fields = line.trim().split("=");
+                expected.put(fields[0], Long.parseLong(fields[1]));
+            }
+            assertEquals(expected, toMap(compile(text)));
+        }
+    }
+
+    @Test
+    public void names() throws Exception {
+        final FeesAsset asset = compile(" A = 1\n#B=2\n\nSIXTEEN_CHARS_XX=3\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, asset.size());
+        assertEquals("A", asset.getName(0));
+        assertEquals(1, asset.getRate(0));
+        assertEquals("SIXTEEN_CHARS_XX", asset.getName(1));
+        assertEquals(3, asset.getRate(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void nameTooLong() throws Exception {
+        compile("SEVENTEEN_CHARS_X=1\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IOException.class)
+    public void unparsableRate() throws Exception {
+        compile("NORMAL=lots\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Map<String, Long> toMap(final FeesAsset asset) {
+        final Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < asset.size(); i++)
+            map.put(asset.getName(i), asset.getRate(i));
+        return map;
+    }
+
+    private static FeesAsset compile(final byte[] text) throws IOException {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        FeesAsset.compile(new ByteArrayInputStream(text), binary);
+        return new FeesAsset(ByteBuffer.wrap(binary.toByteArray()));
+    }
+}
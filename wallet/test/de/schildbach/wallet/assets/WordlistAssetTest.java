@@ -0,0 +1,88 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.assets;
+
+import com.google.common.io.ByteStreams;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WordlistAssetTest {
+    private static final File WORDLIST_FILE = new File("assets/bip39-wordlist.txt");
+    private static final String BIP39_ENGLISH_SHA256 =
+            "ad90bf3beb7b0eb7e5acd74727dc0da96e0a280a258354e7293fb7e211ac03db";
+
+    private List<String> words;
+    private WordlistAsset asset;
+
+    @Before
+    public void setUp() throws Exception {
+        words = Files.readAllLines(WORDLIST_FILE.toPath(), StandardCharsets.UTF_8);
+        asset = compile(Files.readAllBytes(WORDLIST_FILE.toPath()));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        assertEquals(words.size(), asset.size());
+    }
+
+    @Test
+    public void text() throws Exception {
+        final byte[] text = ByteStreams.toByteArray(asset.openText());
+        assertArrayEquals((String.join("\n", words) + "\n").getBytes(StandardCharsets.UTF_8), text);
+        final MnemonicCode mnemonicCode = new MnemonicCode(asset.openText(), BIP39_ENGLISH_SHA256);
+        assertEquals(words, mnemonicCode.getWordList());
+    }
+
+    @Test
+    public void small() throws Exception {
+        final WordlistAsset small = compile("one\ntwo\n\n three \n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(3, small.size());
+        assertArrayEquals("one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8),
+                ByteStreams.toByteArray(small.openText()));
+        final WordlistAsset empty = compile(new byte[0]);
+        assertEquals(0, empty.size());
+        assertEquals(-1, empty.openText().read());
+    }
+
+    @Test(expected = IOException.class)
+    public void duplicate() throws Exception {
+        compile("one\ntwo\none\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static WordlistAsset compile(final byte[] text) throws IOException {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        WordlistAsset.compile(new ByteArrayInputStream(text), binary);
+        return new WordlistAsset(ByteBuffer.wrap(binary.toByteArray()));
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import android.content.SharedPreferences;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.utils.ExchangeRate;
+import org.bitcoinj.utils.Fiat;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class BalanceSnapshotTest {
+    private static final ExchangeRate RATE = new ExchangeRate(Fiat.parseFiat("EUR", "20000"));
+
+    private FakeSharedPreferences prefs;
+    private BalanceSnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        prefs = new FakeSharedPreferences();
+        snapshot = new BalanceSnapshot(prefs);
+    }
+
+    @Test
+    public void empty() {
+        assertNull(snapshot.getBalance(BalanceType.ESTIMATED));
+        assertEquals(0, snapshot.getBalanceTime());
+        assertNull(snapshot.getExchangeRate("EUR"));
+    }
+
+    @Test
+    public void roundTrip() {
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.MILLICOIN);
+        snapshot.putExchangeRate(RATE);
+
+        final BalanceSnapshot reread = new BalanceSnapshot(prefs);
+        assertEquals(Coin.COIN, reread.getBalance(BalanceType.ESTIMATED));
+        assertEquals(Coin.CENT, reread.getBalance(BalanceType.ESTIMATED_SPENDABLE));
+        assertEquals(Coin.MILLICOIN, reread.getBalance(BalanceType.AVAILABLE_SPENDABLE));
+        assertTrue(reread.getBalanceTime() > 0);
+        assertEquals(RATE, reread.getExchangeRate("EUR"));
+        assertNull(reread.getExchangeRate("USD"));
+    }
+
+    @Test
+    public void zeroBalance() {
+        snapshot.putBalances(Coin.ZERO, Coin.ZERO, Coin.ZERO);
+        assertEquals(Coin.ZERO, snapshot.getBalance(BalanceType.ESTIMATED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notSnapshotted() {
+        snapshot.putBalances(Coin.COIN, Coin.COIN, Coin.COIN);
+        snapshot.getBalance(BalanceType.AVAILABLE);
+    }
+
+    @Test
+    public void unchangedNotWritten() {
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.MILLICOIN);
+        snapshot.putExchangeRate(RATE);
+        assertEquals(2, prefs.numWrites.get());
+
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.MILLICOIN);
+        snapshot.putExchangeRate(new ExchangeRate(Fiat.parseFiat("EUR", "20000")));
+        assertEquals(2, prefs.numWrites.get());
+
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.ZERO);
+        assertEquals(3, prefs.numWrites.get());
+        assertEquals(Coin.ZERO, snapshot.getBalance(BalanceType.AVAILABLE_SPENDABLE));
+    }
+
+    @Test
+    public void exchangeRateRemoved() {
+        snapshot.putExchangeRate(RATE);
+        snapshot.putExchangeRate(null);
+        assertNull(snapshot.getExchangeRate("EUR"));
+        snapshot.putExchangeRate(null);
+        assertEquals(2, prefs.numWrites.get());
+    }
+
+    @Test
+    public void clear() {
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.MILLICOIN);
+        snapshot.putExchangeRate(RATE);
+        snapshot.clear();
+        assertNull(snapshot.getBalance(BalanceType.ESTIMATED));
+        assertEquals(0, snapshot.getBalanceTime());
+        assertNull(snapshot.getExchangeRate("EUR"));
+    }
+
+    @Test
+    public void walletNotLoadedIfSnapshotted() {
+        snapshot.putBalances(Coin.COIN, Coin.CENT, Coin.MILLICOIN);
+        assertEquals(Coin.CENT, snapshot.getBalance(BalanceType.ESTIMATED_SPENDABLE, () -> {
+            fail("wallet loaded");
+            return null;
+        }));
+    }
+
+    @Test
+    public void walletLoadedIfNotSnapshotted() {
+        Context.propagate(new Context(TestNet3Params.get()));
+        final Wallet wallet = Wallet.createDeterministic(TestNet3Params.get(), Script.ScriptType.P2WPKH);
+        final AtomicInteger numLoads = new AtomicInteger();
+        assertEquals(Coin.ZERO, snapshot.getBalance(BalanceType.ESTIMATED_SPENDABLE, () -> {
+            numLoads.incrementAndGet();
+            return wallet;
+        }));
+        assertEquals(1, numLoads.get());
+    }
+
+    private static class FakeSharedPreferences implements SharedPreferences {
+        private final Map<String, Object> values = new HashMap<>();
+        private final AtomicInteger numWrites = new AtomicInteger();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(final String key, final String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(final String key, final Set<String> defValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(final String key, final int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(final String key, final long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(final String key, final float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(final String key, final boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(final String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                private final Map<String, Object> puts = new HashMap<>();
+                private boolean clear = false;
+
+                @Override
+                public Editor putString(final String key, final String value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putStringSet(final String key, final Set<String> values) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Editor putInt(final String key, final int value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putLong(final String key, final long value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putFloat(final String key, final float value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putBoolean(final String key, final boolean value) {
+                    puts.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor remove(final String key) {
+                    puts.put(key, null);
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    clear = true;
+                    return this;
+                }
+
+                @Override
+                public boolean commit() {
+                    if (clear)
+                        values.clear();
+                    for (final Map.Entry<String, Object> put : puts.entrySet()) {
+                        if (put.getValue() != null)
+                            values.put(put.getKey(), put.getValue());
+                        else
+                            values.remove(put.getKey());
+                    }
+                    numWrites.incrementAndGet();
+                    return true;
+                }
+
+                @Override
+                public void apply() {
+                    commit();
+                }
+            };
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
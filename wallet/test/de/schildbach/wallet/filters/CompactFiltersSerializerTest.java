@@ -0,0 +1,101 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Ping;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.UnknownMessage;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class CompactFiltersSerializerTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+    private static final Sha256Hash HASH1 = Sha256Hash.of(new byte[] { 1 });
+    private static final Sha256Hash HASH2 = Sha256Hash.of(new byte[] { 2 });
+
+    private final CompactFiltersSerializer serializer = new CompactFiltersSerializer(PARAMS);
+
+    @Test
+    public void getCFilters() throws Exception {
+        final GetCFiltersMessage message = (GetCFiltersMessage) roundTrip(
+                new GetCFiltersMessage(PARAMS, BlockFilter.TYPE_BASIC, 100000, HASH1));
+        assertEquals(BlockFilter.TYPE_BASIC, message.getFilterType());
+        assertEquals(100000, message.getStartHeight());
+        assertEquals(HASH1, message.getStopHash());
+    }
+
+    @Test
+    public void getCFHeaders() throws Exception {
+        final GetCFHeadersMessage message = (GetCFHeadersMessage) roundTrip(
+                new GetCFHeadersMessage(PARAMS, BlockFilter.TYPE_BASIC, 2000, HASH2));
+        assertEquals(2000, message.getStartHeight());
+        assertEquals(HASH2, message.getStopHash());
+    }
+
+    @Test
+    public void cfilter() throws Exception {
+        final byte[] filter = { 1, (byte) 0x9d, (byte) 0xfc, (byte) 0xa8 };
+        final CFilterMessage message = (CFilterMessage) roundTrip(
+                new CFilterMessage(PARAMS, BlockFilter.TYPE_BASIC, HASH1, filter));
+        assertEquals(HASH1, message.getBlockHash());
+        assertArrayEquals(filter, message.getFilter());
+        assertEquals(1, message.toBlockFilter().size());
+    }
+
+    @Test
+    public void cfheaders() throws Exception {
+        final CFHeadersMessage message = (CFHeadersMessage) roundTrip(
+                new CFHeadersMessage(PARAMS, BlockFilter.TYPE_BASIC, HASH1, Sha256Hash.ZERO_HASH,
+                        Arrays.asList(HASH1, HASH2)));
+        assertEquals(HASH1, message.getStopHash());
+        assertEquals(Sha256Hash.ZERO_HASH, message.getPrevFilterHeader());
+        assertEquals(Arrays.asList(HASH1, HASH2), message.getFilterHashes());
+        final Sha256Hash filterHeader = BlockFilter.filterHeader(HASH1, Sha256Hash.ZERO_HASH);
+        assertEquals(Arrays.asList(filterHeader, BlockFilter.filterHeader(HASH2, filterHeader)),
+                message.getFilterHeaders());
+    }
+
+    @Test
+    public void otherMessages() throws Exception {
+        assertTrue(roundTrip(new Ping(42)) instanceof Ping);
+        // without our serializer, the messages are unknown
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(new GetCFiltersMessage(PARAMS, BlockFilter.TYPE_BASIC, 0, HASH1), out);
+        assertTrue(PARAMS.getDefaultSerializer().deserialize(ByteBuffer.wrap(out.toByteArray()))
+                instanceof UnknownMessage);
+    }
+
+    private Message roundTrip(final Message message) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(message, out);
+        return serializer.deserialize(ByteBuffer.wrap(out.toByteArray()));
+    }
+}
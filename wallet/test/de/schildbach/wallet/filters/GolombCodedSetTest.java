@@ -0,0 +1,132 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.filters;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class GolombCodedSetTest {
+    private static final long K0 = 0x0706050403020100L;
+    private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+    @Test
+    public void sipHash() {
+        final Random random = new Random(0);
+        for (int length = 0; length < 64; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertEquals(Hashing.sipHash24(K0, K1).hashBytes(data).asLong(),
+                    GolombCodedSet.sipHash24(K0, K1, data));
+        }
+    }
+
+    @Test
+    public void multiplyHighUnsigned() {
+        assertEquals(0, GolombCodedSet.multiplyHighUnsigned(0xffffffffffffffffL, 0));
+        assertEquals(0xfffffffffffffffeL,
+                GolombCodedSet.multiplyHighUnsigned(0xffffffffffffffffL, 0xffffffffffffffffL));
+        assertEquals(1, GolombCodedSet.multiplyHighUnsigned(0x8000000000000000L, 2));
+    }
+
+    @Test
+    public void testnetGenesisFilter() {
+        // test vector of BIP158
+        Context.propagate(new Context(TestNet3Params.get()));
+        final Block genesis = TestNet3Params.get().getGenesisBlock();
+        final BlockFilter filter = BlockFilter.build(genesis, Collections.emptyList());
+        assertArrayEquals(Utils.HEX.decode("019dfca8"), filter.getFilter());
+        assertEquals(Sha256Hash.wrap("21584579b7eb08997773e5aeff3a7f932700042d0ed2a6129012b7d7ae81b750"),
+                BlockFilter.filterHeader(filter.getFilterHash(), Sha256Hash.ZERO_HASH));
+    }
+
+    @Test
+    public void match() {
+        final List<byte[]> elements = elements(0, 1000);
+        final GolombCodedSet set = set(elements);
+        assertEquals(1000, set.size());
+        for (final byte[] element : elements)
+            assertTrue(set.match(element));
+        int falsePositives = 0;
+        for (final byte[] element : elements(1000, 10000))
+            if (set.match(element))
+                falsePositives++;
+        // false positive rate is 1/M
+        assertTrue(falsePositives < 5);
+    }
+
+    @Test
+    public void matchAny() {
+        final GolombCodedSet set = set(elements(0, 1000));
+        final List<byte[]> others = elements(1000, 2000);
+        assertFalse(set.matchAny(others));
+        final List<byte[]> withOne = new ArrayList<>(others);
+        withOne.add(500, Ints.toByteArray(999));
+        assertTrue(set.matchAny(withOne));
+        assertTrue(set.matchAny(Collections.singletonList(Ints.toByteArray(0))));
+        assertFalse(set.matchAny(Collections.emptyList()));
+    }
+
+    @Test
+    public void duplicates() {
+        final List<byte[]> elements = elements(0, 10);
+        elements.addAll(elements(0, 10));
+        final GolombCodedSet set = set(elements);
+        assertEquals(10, set.size());
+        assertTrue(set.match(Ints.toByteArray(9)));
+    }
+
+    @Test
+    public void empty() {
+        final GolombCodedSet set = set(Collections.emptyList());
+        assertEquals(0, set.size());
+        assertArrayEquals(new byte[] { 0 }, set.getEncoded());
+        assertFalse(set.match(Ints.toByteArray(0)));
+        assertFalse(set.matchAny(elements(0, 10)));
+    }
+
+    private static GolombCodedSet set(final List<byte[]> elements) {
+        return new GolombCodedSet(GolombCodedSet.encode(elements, K0, K1, BlockFilter.BASIC_P, BlockFilter.BASIC_M),
+                K0, K1, BlockFilter.BASIC_P, BlockFilter.BASIC_M);
+    }
+
+    private static List<byte[]> elements(final int from, final int to) {
+        final List<byte[]> elements = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            elements.add(Ints.toByteArray(i));
+        return elements;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.BlockLocator;
+import org.bitcoinj.core.BloomFilter;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.RegTestParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.DeterministicSeed;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the catch-up against a synthetic regtest chain, served in-process by sources standing in for peers.
+ *
+ * @author Andreas Schildbach
+ */
+public class CatchUpSyncTest {
+    private static final NetworkParameters PARAMS = RegTestParams.get();
+    private static final byte[] ENTROPY = new byte[16];
+    private static final int CHAIN_HEIGHT = 1500;
+    private static final int ANCHOR_INTERVAL = 300;
+    private static final int FIRST_BODY_HEIGHT = 1000;
+    private static final List<Integer> PAYMENT_HEIGHTS = Arrays.asList(500, 1100, 1400);
+    private static final long BLOCK_INTERVAL_SECS = 600;
+    private static final long TIMEOUT_MS = 1000;
+
+    private static List<Block> chain;
+    private static long keyCreationTimeSecs;
+
+    private ListeningExecutorService executor;
+    private Wallet wallet;
+    private BlockChain blockChain;
+
+    @BeforeClass
+    public static void setUpChain() {
+        Context.propagate(new Context(PARAMS));
+        final Address address = newWallet(0).currentReceiveAddress();
+        chain = new ArrayList<>();
+        chain.add(PARAMS.getGenesisBlock());
+        chain.addAll(buildChain(PARAMS.getGenesisBlock(), 0, CHAIN_HEIGHT, address, 0));
+        // safety margin of the key creation time is a week
+        keyCreationTimeSecs = chain.get(FIRST_BODY_HEIGHT).getTimeSeconds() + TimeUnit.DAYS.toSeconds(7);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        wallet = newWallet(keyCreationTimeSecs);
+        blockChain = new BlockChain(PARAMS, wallet, new MemoryBlockStore(PARAMS));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void catchUp() throws Exception {
+        final List<ChainSource> sources = Arrays.asList(new ChainSource(chain), new ChainSource(chain),
+                new ChainSource(chain));
+        final List<CatchUpSync.Progress> progress = new ArrayList<>();
+        final boolean caughtUp = new CatchUpSync(blockChain, wallet, TIMEOUT_MS).run(sources, anchors(),
+                progress::add);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+        for (final ChainSource source : sources) {
+            assertTrue(source.headersRequests > 0);
+            assertTrue(source.lowestFilteredHeight >= FIRST_BODY_HEIGHT);
+        }
+        assertEquals(CatchUpSync.Phase.HEADERS, progress.get(0).phase);
+        final CatchUpSync.Progress last = progress.get(progress.size() - 1);
+        assertEquals(CatchUpSync.Phase.BLOCKS, last.phase);
+        assertEquals(CHAIN_HEIGHT, last.height);
+        assertEquals(CHAIN_HEIGHT, last.targetHeight);
+    }
+
+    @Test
+    public void withoutAnchors() throws Exception {
+        final boolean caughtUp = new CatchUpSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Collections.singletonList(new ChainSource(chain)), Collections.emptyList(), null);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+    }
+
+    @Test
+    public void failingAndUnresponsiveSources() throws Exception {
+        final ChainSource failing = new ChainSource(chain);
+        failing.failing = true;
+        final ChainSource unresponsive = new ChainSource(chain);
+        unresponsive.unresponsive = true;
+        final boolean caughtUp = new CatchUpSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Arrays.asList(failing, unresponsive, new ChainSource(chain)), anchors(), null);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+    }
+
+    @Test
+    public void sourceOnFork() throws Exception {
+        final List<Block> fork = new ArrayList<>(chain.subList(0, 101));
+        fork.addAll(buildChain(chain.get(100), 100, CHAIN_HEIGHT, null, 1));
+        final ChainSource onFork = new ChainSource(fork);
+        final boolean caughtUp = new CatchUpSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Arrays.asList(onFork, new ChainSource(chain)), anchors(), null);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+    }
+
+    @Test
+    public void noSourcesLeft() throws Exception {
+        final ChainSource failing = new ChainSource(chain);
+        failing.failing = true;
+        final boolean caughtUp = new CatchUpSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Collections.singletonList(failing), anchors(), null);
+
+        assertFalse(caughtUp);
+        assertEquals(0, blockChain.getBestChainHeight());
+    }
+
+    @Test
+    public void cancelled() throws Exception {
+        final CatchUpSync catchUpSync = new CatchUpSync(blockChain, wallet, TIMEOUT_MS);
+        final int cancelHeight = CHAIN_HEIGHT - 50;
+        blockChain.addNewBestBlockListener(Threading.SAME_THREAD, block -> {
+            if (block.getHeight() == cancelHeight)
+                catchUpSync.cancel();
+        });
+        final boolean caughtUp = catchUpSync.run(Collections.singletonList(new ChainSource(chain)), anchors(), null);
+
+        assertFalse(caughtUp);
+        // not a single block is added after cancelling
+        assertEquals(cancelHeight, blockChain.getBestChainHeight());
+    }
+
+    @Test
+    public void cancelledWhileWaiting() throws Exception {
+        final ChainSource unresponsive = new ChainSource(chain);
+        unresponsive.unresponsive = true;
+        final CatchUpSync catchUpSync = new CatchUpSync(blockChain, wallet, TimeUnit.MINUTES.toMillis(1));
+        executor.submit(() -> {
+            Thread.sleep(500);
+            catchUpSync.cancel();
+            return null;
+        });
+        final long startedAt = System.currentTimeMillis();
+        final boolean caughtUp = catchUpSync.run(Collections.singletonList(unresponsive), anchors(), null);
+
+        assertFalse(caughtUp);
+        assertTrue(System.currentTimeMillis() - startedAt < TIMEOUT_MS * 5);
+        assertStalledCancelled(unresponsive);
+    }
+
+    @Test
+    public void interruptedWhileWaiting() throws Exception {
+        final ChainSource unresponsive = new ChainSource(chain);
+        unresponsive.unresponsive = true;
+        final CatchUpSync catchUpSync = new CatchUpSync(blockChain, wallet, TimeUnit.MINUTES.toMillis(1));
+        final Thread thread = Thread.currentThread();
+        executor.submit(() -> {
+            Thread.sleep(500);
+            thread.interrupt();
+            return null;
+        });
+        try {
+            catchUpSync.run(Collections.singletonList(unresponsive), anchors(), null);
+            fail("not interrupted");
+        } catch (final InterruptedException x) {
+            // expected
+        }
+
+        assertStalledCancelled(unresponsive);
+    }
+
+    private static void assertStalledCancelled(final ChainSource source) {
+        assertFalse(source.stalled.isEmpty());
+        for (final SettableFuture<?> future : source.stalled)
+            assertTrue(future.isCancelled());
+    }
+
+    private void assertCaughtUp() {
+        assertEquals(CHAIN_HEIGHT, blockChain.getBestChainHeight());
+        assertEquals(chain.get(CHAIN_HEIGHT).getHash(), blockChain.getChainHead().getHeader().getHash());
+        assertEquals(CHAIN_HEIGHT, wallet.getLastBlockSeenHeight());
+        // the payment before the key creation time is not fetched
+        final List<Integer> heights = new ArrayList<>();
+        for (final Transaction tx : wallet.getTransactions(false))
+            heights.add(tx.getConfidence().getAppearedAtChainHeight());
+        Collections.sort(heights);
+        assertEquals(PAYMENT_HEIGHTS.subList(1, PAYMENT_HEIGHTS.size()), heights);
+    }
+
+    private static List<StoredBlock> anchors() {
+        final List<StoredBlock> anchors = new ArrayList<>();
+        for (int height = ANCHOR_INTERVAL; height < CHAIN_HEIGHT; height += ANCHOR_INTERVAL)
+            anchors.add(new StoredBlock(chain.get(height).cloneAsHeader(), BigInteger.ZERO, height));
+        return anchors;
+    }
+
+    private static Wallet newWallet(final long creationTimeSecs) {
+        return Wallet.fromSeed(PARAMS, new DeterministicSeed(ENTROPY, "", creationTimeSecs),
+                Script.ScriptType.P2PKH);
+    }
+
+    private static List<Block> buildChain(final Block start, final int startHeight, final int endHeight,
+            final Address address, final long timeOffsetSecs) {
+        final List<Block> blocks = new ArrayList<>(endHeight - startHeight);
+        Block block = start;
+        for (int height = startHeight + 1; height <= endHeight; height++) {
+            final Address to = address != null && PAYMENT_HEIGHTS.contains(height) ? address : null;
+            block = block.createNextBlock(to, Block.BLOCK_VERSION_GENESIS,
+                    block.getTimeSeconds() + BLOCK_INTERVAL_SECS + timeOffsetSecs, height);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    /**
+     * Serves a chain like a peer would, with the wallet's bloom filter loaded.
+     */
+    private class ChainSource implements CatchUpSync.Source {
+        private final List<Block> blocks;
+        private final Map<Sha256Hash, Integer> heights = new HashMap<>();
+        private final BloomFilter filter = wallet.getBloomFilter(0.0001);
+        boolean failing = false;
+        boolean unresponsive = false;
+        int headersRequests = 0;
+        int lowestFilteredHeight = Integer.MAX_VALUE;
+        final List<SettableFuture<?>> stalled = new CopyOnWriteArrayList<>();
+
+        ChainSource(final List<Block> blocks) {
+            this.blocks = blocks;
+            for (int height = 0; height < blocks.size(); height++)
+                heights.put(blocks.get(height).getHash(), height);
+        }
+
+        @Override
+        public int getBestHeight() {
+            return blocks.size() - 1;
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getHeaders(final BlockLocator locator, final Sha256Hash stopHash) {
+            synchronized (this) {
+                headersRequests++;
+            }
+            return serve(() -> {
+                int height = 0;
+                for (final Sha256Hash hash : locator.getHashes()) {
+                    if (heights.containsKey(hash)) {
+                        height = heights.get(hash);
+                        break;
+                    }
+                }
+                final List<Block> headers = new ArrayList<>();
+                while (++height < blocks.size() && headers.size() < HeadersMessage.MAX_HEADERS) {
+                    final Block header = blocks.get(height).cloneAsHeader();
+                    headers.add(header);
+                    if (header.getHash().equals(stopHash))
+                        break;
+                }
+                return headers;
+            });
+        }
+
+        @Override
+        public ListenableFuture<List<FilteredBlock>> getFilteredBlocks(final List<Sha256Hash> blockHashes) {
+            return serve(() -> {
+                final List<FilteredBlock> filteredBlocks = new ArrayList<>(blockHashes.size());
+                for (final Sha256Hash hash : blockHashes) {
+                    final int height = heights.get(hash);
+                    synchronized (this) {
+                        lowestFilteredHeight = Math.min(lowestFilteredHeight, height);
+                    }
+                    filteredBlocks.add(filter.applyAndUpdate(blocks.get(height)));
+                }
+                return filteredBlocks;
+            });
+        }
+
+        private <T> ListenableFuture<T> serve(final Callable<T> response) {
+            if (unresponsive) {
+                final SettableFuture<T> future = SettableFuture.create();
+                stalled.add(future);
+                return future;
+            }
+            if (failing)
+                return Futures.immediateFailedFuture(new IOException("connection reset"));
+            return executor.submit(response);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.schildbach.wallet.filters.BlockFilter;
+import de.schildbach.wallet.filters.CFHeadersMessage;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.BlockLocator;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.HeadersMessage;
+import org.bitcoinj.core.LegacyAddress;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.params.RegTestParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.DeterministicSeed;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the compact filter sync against a synthetic regtest chain, served in-process by sources standing in for peers
+ * serving compact filters.
+ *
+ * @author Andreas Schildbach
+ */
+public class CompactFilterSyncTest {
+    private static final NetworkParameters PARAMS = RegTestParams.get();
+    private static final byte[] ENTROPY = new byte[16];
+    private static final int CHAIN_HEIGHT = 1500;
+    private static final int ANCHOR_INTERVAL = 300;
+    private static final int FIRST_BODY_HEIGHT = 1000;
+    /** Paid to the first receive address, before the key creation time. */
+    private static final int EARLY_PAYMENT_HEIGHT = 500;
+    /** Paid to a receive address within the initial lookahead. */
+    private static final int PAYMENT_HEIGHT = 1100;
+    /** Spends the payment, to a foreign address. */
+    private static final int SPEND_HEIGHT = 1200;
+    /** Paid to a receive address only known to the wallet once the lookahead moved on. */
+    private static final int LATE_PAYMENT_HEIGHT = 1400;
+    private static final long BLOCK_INTERVAL_SECS = 600;
+    private static final long TIMEOUT_MS = 1000;
+
+    private static List<Block> chain;
+    private static List<BlockFilter> filters;
+    private static List<Sha256Hash> filterHeaders;
+    private static long keyCreationTimeSecs;
+
+    private ListeningExecutorService executor;
+    private Wallet wallet;
+    private BlockChain blockChain;
+
+    @BeforeClass
+    public static void setUpChain() {
+        Context.propagate(new Context(PARAMS));
+        final Wallet addresses = newWallet(0);
+        final Map<Integer, Address> payments = new HashMap<>();
+        for (int i = 0; i <= 200; i++) {
+            final Address address = addresses.freshReceiveAddress();
+            if (i == 0)
+                payments.put(EARLY_PAYMENT_HEIGHT, address);
+            else if (i == 120)
+                payments.put(PAYMENT_HEIGHT, address);
+            else if (i == 200)
+                payments.put(LATE_PAYMENT_HEIGHT, address);
+        }
+        final Address foreign = LegacyAddress.fromKey(PARAMS, ECKey.fromPrivate(BigInteger.TEN));
+
+        chain = new ArrayList<>();
+        filters = new ArrayList<>();
+        filterHeaders = new ArrayList<>();
+        final Map<TransactionOutPoint, byte[]> outputScripts = new HashMap<>();
+        Block block = PARAMS.getGenesisBlock();
+        Sha256Hash filterHeader = Sha256Hash.ZERO_HASH;
+        for (int height = 0; height <= CHAIN_HEIGHT; height++) {
+            if (height > 0) {
+                block = block.createNextBlock(payments.get(height), Block.BLOCK_VERSION_GENESIS,
+                        block.getTimeSeconds() + BLOCK_INTERVAL_SECS, height);
+                if (height == SPEND_HEIGHT) {
+                    final Transaction payment = chain.get(PAYMENT_HEIGHT).getTransactions().get(1);
+                    final Transaction spend = new Transaction(PARAMS);
+                    spend.addInput(new TransactionInput(PARAMS, spend, new byte[0],
+                            new TransactionOutPoint(PARAMS, 0, payment.getTxId())));
+                    spend.addOutput(Coin.COIN, foreign);
+                    block.addTransaction(spend);
+                    block.solve();
+                }
+            }
+            final List<byte[]> spentScripts = new ArrayList<>();
+            for (final Transaction tx : block.getTransactions()) {
+                // the inputs of payments spend outputs not part of the chain
+                for (final TransactionInput input : tx.getInputs())
+                    if (outputScripts.containsKey(input.getOutpoint()))
+                        spentScripts.add(outputScripts.get(input.getOutpoint()));
+                for (final TransactionOutput output : tx.getOutputs())
+                    outputScripts.put(output.getOutPointFor(), output.getScriptBytes());
+            }
+            final BlockFilter filter = BlockFilter.build(block, spentScripts);
+            filterHeader = BlockFilter.filterHeader(filter.getFilterHash(), filterHeader);
+            chain.add(block);
+            filters.add(filter);
+            filterHeaders.add(filterHeader);
+        }
+        // safety margin of the key creation time is a week
+        keyCreationTimeSecs = chain.get(FIRST_BODY_HEIGHT).getTimeSeconds() + TimeUnit.DAYS.toSeconds(7);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        wallet = newWallet(keyCreationTimeSecs);
+        blockChain = new BlockChain(PARAMS, wallet, new MemoryBlockStore(PARAMS));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void catchUp() throws Exception {
+        final List<FilterSource> sources = Arrays.asList(new FilterSource(), new FilterSource(), new FilterSource());
+        final List<CatchUpSync.Progress> progress = new ArrayList<>();
+        final boolean caughtUp = new CompactFilterSync(blockChain, wallet, TIMEOUT_MS).run(sources, anchors(),
+                progress::add);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+        final TreeSet<Integer> blockHeights = new TreeSet<>();
+        for (final FilterSource source : sources) {
+            assertTrue(source.lowestFilterHeight >= FIRST_BODY_HEIGHT);
+            blockHeights.addAll(source.blockHeights);
+        }
+        // only matching blocks are downloaded, give or take a false positive
+        assertTrue(blockHeights.containsAll(Arrays.asList(PAYMENT_HEIGHT, SPEND_HEIGHT, LATE_PAYMENT_HEIGHT)));
+        assertTrue(blockHeights.toString(), blockHeights.size() <= 5);
+        final CatchUpSync.Progress last = progress.get(progress.size() - 1);
+        assertEquals(CatchUpSync.Phase.BLOCKS, last.phase);
+        assertEquals(CHAIN_HEIGHT, last.height);
+        assertEquals(CHAIN_HEIGHT, last.targetHeight);
+    }
+
+    @Test
+    public void cancelled() throws Exception {
+        final CompactFilterSync compactFilterSync = new CompactFilterSync(blockChain, wallet, TIMEOUT_MS);
+        final int cancelHeight = CHAIN_HEIGHT - 50;
+        blockChain.addNewBestBlockListener(Threading.SAME_THREAD, block -> {
+            if (block.getHeight() == cancelHeight)
+                compactFilterSync.cancel();
+        });
+        final boolean caughtUp = compactFilterSync.run(Collections.singletonList(new FilterSource()), anchors(), null);
+
+        assertFalse(caughtUp);
+        // not a single block is added after cancelling
+        assertEquals(cancelHeight, blockChain.getBestChainHeight());
+    }
+
+    @Test
+    public void singleSource() throws Exception {
+        final boolean caughtUp = new CompactFilterSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Collections.singletonList(new FilterSource()), Collections.emptyList(), null);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+    }
+
+    @Test
+    public void failingAndLyingSources() throws Exception {
+        final FilterSource failing = new FilterSource();
+        failing.failing = true;
+        final FilterSource corruptFilters = new FilterSource();
+        corruptFilters.corruptFilters = true;
+        final FilterSource withholdingBlocks = new FilterSource();
+        withholdingBlocks.withholdBlocks = true;
+        final boolean caughtUp = new CompactFilterSync(blockChain, wallet, TIMEOUT_MS).run(Arrays.asList(failing,
+                corruptFilters, withholdingBlocks, new FilterSource(), new FilterSource()), anchors(), null);
+
+        assertTrue(caughtUp);
+        assertCaughtUp();
+    }
+
+    @Test
+    public void disagreeingFilterHeaders() throws Exception {
+        final FilterSource lying = new FilterSource();
+        lying.corruptFilterHeaders = true;
+        final boolean caughtUp = new CompactFilterSync(blockChain, wallet, TIMEOUT_MS)
+                .run(Arrays.asList(lying, new FilterSource()), anchors(), null);
+
+        // can't tell who is right, so the gap is left to the regular download
+        assertFalse(caughtUp);
+        assertTrue(blockChain.getBestChainHeight() < FIRST_BODY_HEIGHT);
+        assertEquals(0, wallet.getTransactions(false).size());
+    }
+
+    private void assertCaughtUp() {
+        assertEquals(CHAIN_HEIGHT, blockChain.getBestChainHeight());
+        assertEquals(chain.get(CHAIN_HEIGHT).getHash(), blockChain.getChainHead().getHeader().getHash());
+        assertEquals(CHAIN_HEIGHT, wallet.getLastBlockSeenHeight());
+        // the payment before the key creation time is not fetched
+        final List<Integer> heights = new ArrayList<>();
+        for (final Transaction tx : wallet.getTransactions(false))
+            heights.add(tx.getConfidence().getAppearedAtChainHeight());
+        Collections.sort(heights);
+        assertEquals(Arrays.asList(PAYMENT_HEIGHT, SPEND_HEIGHT, LATE_PAYMENT_HEIGHT), heights);
+        // only the late payment is left unspent
+        assertEquals(chain.get(LATE_PAYMENT_HEIGHT).getTransactions().get(1).getOutput(0).getValue(),
+                wallet.getBalance(Wallet.BalanceType.ESTIMATED));
+    }
+
+    private static List<StoredBlock> anchors() {
+        final List<StoredBlock> anchors = new ArrayList<>();
+        for (int height = ANCHOR_INTERVAL; height < CHAIN_HEIGHT; height += ANCHOR_INTERVAL)
+            anchors.add(new StoredBlock(chain.get(height).cloneAsHeader(), BigInteger.ZERO, height));
+        return anchors;
+    }
+
+    private static Wallet newWallet(final long creationTimeSecs) {
+        return Wallet.fromSeed(PARAMS, new DeterministicSeed(ENTROPY, "", creationTimeSecs),
+                Script.ScriptType.P2PKH);
+    }
+
+    private static int heightOf(final Sha256Hash hash) {
+        for (int height = 0; height < chain.size(); height++)
+            if (chain.get(height).getHash().equals(hash))
+                return height;
+        throw new IllegalArgumentException(hash.toString());
+    }
+
+    /**
+     * Serves the chain like a peer serving compact filters would.
+     */
+    private class FilterSource implements CompactFilterSync.Source {
+        boolean failing = false;
+        boolean corruptFilterHeaders = false;
+        boolean corruptFilters = false;
+        boolean withholdBlocks = false;
+        int lowestFilterHeight = Integer.MAX_VALUE;
+        final List<Integer> blockHeights = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public int getBestHeight() {
+            return CHAIN_HEIGHT;
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getHeaders(final BlockLocator locator, final Sha256Hash stopHash) {
+            return serve(() -> {
+                int height = heightOf(locator.getHashes().get(0));
+                final List<Block> headers = new ArrayList<>();
+                while (++height < chain.size() && headers.size() < HeadersMessage.MAX_HEADERS) {
+                    final Block header = chain.get(height).cloneAsHeader();
+                    headers.add(header);
+                    if (header.getHash().equals(stopHash))
+                        break;
+                }
+                return headers;
+            });
+        }
+
+        @Override
+        public ListenableFuture<CFHeadersMessage> getFilterHeaders(final int startHeight, final Sha256Hash stopHash) {
+            return serve(() -> {
+                final List<Sha256Hash> filterHashes = new ArrayList<>();
+                for (int height = startHeight; height <= heightOf(stopHash); height++)
+                    filterHashes.add(corruptFilterHeaders && height == LATE_PAYMENT_HEIGHT ? Sha256Hash.ZERO_HASH
+                            : filters.get(height).getFilterHash());
+                return new CFHeadersMessage(PARAMS, BlockFilter.TYPE_BASIC, stopHash,
+                        filterHeaders.get(startHeight - 1), filterHashes);
+            });
+        }
+
+        @Override
+        public ListenableFuture<List<BlockFilter>> getFilters(final int startHeight, final Sha256Hash stopHash) {
+            synchronized (this) {
+                lowestFilterHeight = Math.min(lowestFilterHeight, startHeight);
+            }
+            return serve(() -> {
+                final List<BlockFilter> response = new ArrayList<>();
+                for (int height = startHeight; height <= heightOf(stopHash); height++) {
+                    final BlockFilter filter = filters.get(height);
+                    response.add(corruptFilters ? new BlockFilter(filter.getBlockHash(), new byte[] { 0 }) : filter);
+                }
+                return response;
+            });
+        }
+
+        @Override
+        public ListenableFuture<List<Block>> getBlocks(final List<Sha256Hash> blockHashes) {
+            if (withholdBlocks)
+                return Futures.immediateFailedFuture(new IOException("peer does not have requested blocks"));
+            return serve(() -> {
+                final List<Block> blocks = new ArrayList<>(blockHashes.size());
+                for (final Sha256Hash hash : blockHashes) {
+                    final int height = heightOf(hash);
+                    blockHeights.add(height);
+                    // a copy, as if received from the network
+                    blocks.add(PARAMS.getDefaultSerializer().makeBlock(chain.get(height).bitcoinSerialize()));
+                }
+                return blocks;
+            });
+        }
+
+        private <T> ListenableFuture<T> serve(final Callable<T> response) {
+            if (failing)
+                return Futures.immediateFailedFuture(new IOException("connection reset"));
+            return executor.submit(response);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.BlockStoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class IndexedBlockStoreTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private IndexedBlockStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        file = new File(folder.getRoot(), "headers");
+        store = new IndexedBlockStore(PARAMS, file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void newStore() throws Exception {
+        final StoredBlock genesis = store.getChainHead();
+        assertEquals(PARAMS.getGenesisBlock().getHash(), genesis.getHeader().getHash());
+        assertEquals(genesis, store.get(0));
+        assertEquals(genesis, store.get(genesis.getHeader().getHash()));
+        assertNull(store.get(1));
+        assertNull(store.get(Sha256Hash.ZERO_HASH));
+    }
+
+    @Test
+    public void extendAndReopen() throws Exception {
+        final List<StoredBlock> chain = extend(store.getChainHead(), 5000, 0);
+        assertEquals(chain.get(chain.size() - 1), store.getChainHead());
+        for (final StoredBlock block : chain) {
+            assertEquals(block, store.get(block.getHeight()));
+            assertEquals(block, store.get(block.getHeader().getHash()));
+        }
+        final StoredBlock side = put(chain.get(10), 1);
+
+        store.close();
+        store = new IndexedBlockStore(PARAMS, file);
+        assertEquals(chain.get(chain.size() - 1), store.getChainHead());
+        assertEquals(0, store.getBaseHeight());
+        for (final StoredBlock block : chain)
+            assertEquals(block, store.get(block.getHeight()));
+        assertEquals(side, store.get(side.getHeader().getHash()));
+        assertEquals(chain.get(11), store.get(11));
+    }
+
+    @Test
+    public void reorganize() throws Exception {
+        final List<StoredBlock> chain = extend(store.getChainHead(), 10, 0);
+        final List<StoredBlock> fork = new ArrayList<>();
+        StoredBlock block = chain.get(4);
+        for (int i = 0; i < 3; i++) {
+            block = put(block, 1);
+            fork.add(block);
+        }
+        store.setChainHead(block);
+        assertEquals(chain.get(4), store.get(4));
+        for (final StoredBlock forkBlock : fork)
+            assertEquals(forkBlock, store.get(forkBlock.getHeight()));
+        assertNull(store.get(8));
+
+        // and back
+        store.setChainHead(chain.get(chain.size() - 1));
+        for (final StoredBlock chainBlock : chain)
+            assertEquals(chainBlock, store.get(chainBlock.getHeight()));
+    }
+
+    @Test
+    public void checkpoint() throws Exception {
+        // parent is not stored
+        final Block header = PARAMS.getGenesisBlock().createNextBlock(null).createNextBlock(null).cloneAsHeader();
+        final StoredBlock checkpoint = new StoredBlock(header, BigInteger.valueOf(1000000), 1000);
+        store.put(checkpoint);
+        store.setChainHead(checkpoint);
+        final List<StoredBlock> chain = extend(checkpoint, 10, 0);
+        assertEquals(1000, store.getBaseHeight());
+        assertNull(store.get(0));
+        assertNull(store.get(999));
+        assertEquals(checkpoint, store.get(1000));
+        assertEquals(chain.get(chain.size() - 1), store.get(1010));
+
+        store.close();
+        store = new IndexedBlockStore(PARAMS, file);
+        assertEquals(1000, store.getBaseHeight());
+        assertEquals(chain.get(5), store.get(chain.get(5).getHeight()));
+    }
+
+    @Test
+    public void tornHeadWriteFallsBackToPreviousHead() throws Exception {
+        final List<StoredBlock> chain = extend(store.getChainHead(), 3, 0);
+        final StoredBlock last = chain.get(chain.size() - 1);
+        store.close();
+
+        // damage the head slot with the higher sequence number
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            final long sequence0 = raf.readLong();
+            raf.seek(64 + 4);
+            final long sequence1 = raf.readLong();
+            raf.seek((sequence0 > sequence1 ? 0 : 64) + 20);
+            raf.writeByte(raf.readByte() ^ 1);
+        }
+
+        store = new IndexedBlockStore(PARAMS, file);
+        assertEquals(chain.get(chain.size() - 2), store.getChainHead());
+        assertNull(store.get(last.getHeight()));
+        assertEquals(last, store.get(last.getHeader().getHash()));
+    }
+
+    @Test(expected = BlockStoreException.class)
+    public void chainHeadMustBeStored() throws Exception {
+        final Block header = PARAMS.getGenesisBlock().createNextBlock(null, 1, 1, 1).cloneAsHeader();
+        store.setChainHead(store.getChainHead().build(header));
+    }
+
+    private List<StoredBlock> extend(final StoredBlock from, final int numBlocks, final int time)
+            throws BlockStoreException {
+        final List<StoredBlock> blocks = new ArrayList<>(numBlocks + 1);
+        if (from.getHeight() == 0)
+            blocks.add(from);
+        StoredBlock block = from;
+        for (int i = 0; i < numBlocks; i++) {
+            block = put(block, time);
+            store.setChainHead(block);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    // blocks with different times fork from each other
+    private StoredBlock put(final StoredBlock prev, final int time) throws BlockStoreException {
+        final StoredBlock block = prev.build(prev.getHeader().createNextBlock(null, 1, time, 1).cloneAsHeader());
+        store.put(block);
+        return block;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.GetDataMessage;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Ping;
+import org.bitcoinj.core.Pong;
+import org.bitcoinj.core.VersionMessage;
+import org.bitcoinj.params.UnitTestParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class PeerTelemetryTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+    private static final int STALL_PERIOD_SECS = 20;
+    private static final int STALL_MIN_BYTES_PER_SEC = Block.HEADER_SIZE * 10;
+
+    private PeerTelemetry telemetry;
+    private Peer peer;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        telemetry = new PeerTelemetry(STALL_PERIOD_SECS, STALL_MIN_BYTES_PER_SEC);
+        peer = new Peer(PARAMS, new VersionMessage(PARAMS, 0),
+                new PeerAddress(PARAMS, InetAddress.getByName("192.0.2.1"), 8333), null);
+        telemetry.onConnected(peer, 0);
+    }
+
+    @Test
+    public void bytesAndBlocks() {
+        final Block block = serialized(PARAMS.getGenesisBlock().cloneAsHeader());
+        telemetry.onMessageReceived(peer, block, 100);
+        final Ping ping = serialized(new Ping(1));
+        telemetry.onMessageSent(peer, ping, 200);
+
+        final PeerTelemetry.PeerStats stats = single(telemetry.getStats());
+        assertTrue(stats.isConnected());
+        assertEquals(1, stats.blocks);
+        assertEquals(0, stats.filteredBlocks);
+        assertEquals(1, stats.messagesIn);
+        assertEquals(24 + block.getMessageSize(), stats.bytesIn);
+        assertEquals(1, stats.messagesOut);
+        assertEquals(24 + ping.getMessageSize(), stats.bytesOut);
+    }
+
+    @Test
+    public void blockLatency() {
+        final Block block = serialized(PARAMS.getGenesisBlock().cloneAsHeader());
+        final GetDataMessage getData = new GetDataMessage(PARAMS);
+        getData.addBlock(block.getHash(), true);
+        telemetry.onMessageSent(peer, serialized(getData), 1000);
+        telemetry.onMessageReceived(peer, block, 1250);
+        telemetry.onMessageReceived(peer, block, 1500); // not requested
+
+        final PeerTelemetry.PeerStats stats = single(telemetry.getStats());
+        assertEquals(2, stats.blocks);
+        assertEquals(1, stats.blockLatencyCount);
+        assertEquals(250, stats.averageBlockLatencyMs());
+        assertEquals(250, stats.maxBlockLatencyMs);
+    }
+
+    @Test
+    public void pingHistogram() {
+        ping(1, 0, 20);
+        ping(2, 1000, 1120);
+        ping(3, 2000, 2150);
+        ping(4, 3000, 8000);
+        telemetry.onMessageReceived(peer, serialized(new Pong(5)), 9000); // unsolicited
+
+        final PeerTelemetry.PeerStats stats = single(telemetry.getStats());
+        assertArrayEquals(new int[] { 1, 0, 2, 0, 0, 0, 1 }, stats.pingHistogram);
+    }
+
+    @Test
+    public void stalledDownload() {
+        telemetry.onChainDownloadStarted(peer, 1000, 0);
+        telemetry.onDisconnected(peer, 40000);
+
+        final PeerTelemetry.PeerStats stats = single(telemetry.getStats());
+        assertFalse(stats.isConnected());
+        assertEquals(PeerTelemetry.DisconnectReason.STALLED, stats.disconnectReason);
+    }
+
+    @Test
+    public void fastDownload() {
+        telemetry.onChainDownloadStarted(peer, 1000, 0);
+        final Block block = serialized(PARAMS.getGenesisBlock());
+        for (long time = 0; time < 40000; time += 10)
+            telemetry.onMessageReceived(peer, block, time);
+        telemetry.onDisconnected(peer, 40000);
+
+        assertEquals(PeerTelemetry.DisconnectReason.LOST, single(telemetry.getStats()).disconnectReason);
+    }
+
+    @Test
+    public void closedAndCompletedDownload() {
+        telemetry.onChainDownloadStarted(peer, 1000, 0);
+        telemetry.onBlocksDownloaded(peer, 0);
+        telemetry.expectDisconnects();
+        telemetry.onDisconnected(peer, 40000);
+
+        assertEquals(PeerTelemetry.DisconnectReason.CLOSED, single(telemetry.getStats()).disconnectReason);
+        assertTrue(PeerTelemetry.toText(telemetry.getStats()).contains("disconnected: closed"));
+    }
+
+    private void ping(final long nonce, final long sentAt, final long receivedAt) {
+        telemetry.onMessageSent(peer, serialized(new Ping(nonce)), sentAt);
+        telemetry.onMessageReceived(peer, serialized(new Pong(nonce)), receivedAt);
+    }
+
+    private static <T extends Message> T serialized(final T message) {
+        message.bitcoinSerialize(); // determines the message size
+        return message;
+    }
+
+    private static PeerTelemetry.PeerStats single(final List<PeerTelemetry.PeerStats> stats) {
+        assertEquals(1, stats.size());
+        return stats.get(0);
+    }
+}
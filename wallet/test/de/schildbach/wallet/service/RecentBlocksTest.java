@@ -0,0 +1,121 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.BlockStore;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class RecentBlocksTest {
+    private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+    private BlockStore blockStore;
+    private StoredBlock genesis;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        blockStore = new MemoryBlockStore(PARAMS);
+        genesis = blockStore.getChainHead();
+    }
+
+    @Test
+    public void fillAndFollow() throws Exception {
+        final List<StoredBlock> chain = extend(genesis, 5, 0);
+        final RecentBlocks recentBlocks = new RecentBlocks(3);
+        recentBlocks.fill(chain.get(chain.size() - 1), blockStore);
+        assertEquals(descending(chain, 3), recentBlocks.get());
+
+        final List<StoredBlock> next = extend(chain.get(chain.size() - 1), 2, 0);
+        final List<StoredBlock> snapshot = recentBlocks.get();
+        for (final StoredBlock block : next)
+            recentBlocks.notifyNewBestBlock(block);
+        chain.addAll(next);
+        assertEquals(descending(chain, 3), recentBlocks.get());
+        // earlier snapshots are not affected
+        assertEquals(chain.get(5), snapshot.get(0));
+    }
+
+    @Test
+    public void fillShortChain() throws Exception {
+        final RecentBlocks recentBlocks = new RecentBlocks(10);
+        recentBlocks.fill(genesis, blockStore);
+        assertEquals(Collections.singletonList(genesis), recentBlocks.get());
+    }
+
+    @Test
+    public void reorganize() throws Exception {
+        final List<StoredBlock> chain = extend(genesis, 6, 0);
+        final RecentBlocks recentBlocks = new RecentBlocks(4);
+        recentBlocks.fill(chain.get(chain.size() - 1), blockStore);
+
+        final StoredBlock splitPoint = chain.get(3);
+        final List<StoredBlock> fork = extend(splitPoint, 3, 1);
+        final List<StoredBlock> newBlocks = new ArrayList<>(fork);
+        Collections.reverse(newBlocks);
+        recentBlocks.reorganize(splitPoint, descending(chain.subList(4, 6), 2), newBlocks);
+
+        final List<StoredBlock> expected = new ArrayList<>(chain.subList(0, 4));
+        expected.addAll(fork);
+        assertEquals(descending(expected, 4), recentBlocks.get());
+    }
+
+    @Test
+    public void disconnectedBlockStartsOver() throws Exception {
+        final List<StoredBlock> chain = extend(genesis, 3, 0);
+        final RecentBlocks recentBlocks = new RecentBlocks(4);
+        recentBlocks.fill(chain.get(chain.size() - 1), blockStore);
+        final StoredBlock other = extend(chain.get(0), 1, 1).get(0);
+        recentBlocks.notifyNewBestBlock(other);
+        assertEquals(Collections.singletonList(other), recentBlocks.get());
+    }
+
+    private List<StoredBlock> extend(final StoredBlock from, final int numBlocks, final int nonce) throws Exception {
+        final List<StoredBlock> blocks = new ArrayList<>();
+        if (from == genesis && nonce == 0)
+            blocks.add(genesis);
+        StoredBlock block = from;
+        for (int i = 0; i < numBlocks; i++) {
+            block = block.build(block.getHeader().createNextBlock(null, 1, nonce, 1).cloneAsHeader());
+            blockStore.put(block);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private static List<StoredBlock> descending(final List<StoredBlock> blocks, final int max) {
+        final List<StoredBlock> list = new ArrayList<>(blocks);
+        Collections.reverse(list);
+        return list.subList(0, Math.min(max, list.size()));
+    }
+}
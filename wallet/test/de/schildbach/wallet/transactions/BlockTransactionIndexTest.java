@@ -0,0 +1,109 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import com.google.common.primitives.Ints;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class BlockTransactionIndexTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+    private static final Sha256Hash BLOCK_1 = Sha256Hash.of(Ints.toByteArray(1));
+    private static final Sha256Hash BLOCK_2 = Sha256Hash.of(Ints.toByteArray(2));
+
+    private BlockTransactionIndex index;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        index = new BlockTransactionIndex();
+    }
+
+    @Test
+    public void rebuild() {
+        final Transaction tx1 = transaction(1, BLOCK_1);
+        final Transaction tx2 = transaction(2, BLOCK_1);
+        final Transaction tx3 = transaction(3, BLOCK_2);
+        final Transaction pending = transaction(4);
+        index.rebuild(Arrays.asList(tx1, tx2, tx3, pending));
+        assertEquals(3, index.size());
+        assertEquals(2, index.get(BLOCK_1).size());
+        assertTrue(index.get(BLOCK_1).containsAll(Arrays.asList(tx1, tx2)));
+        assertEquals(Collections.singletonList(tx3), index.get(BLOCK_2));
+        assertTrue(index.get(Sha256Hash.ZERO_HASH).isEmpty());
+
+        index.rebuild(Collections.singletonList(tx3));
+        assertEquals(1, index.size());
+        assertTrue(index.get(BLOCK_1).isEmpty());
+    }
+
+    @Test
+    public void update() {
+        final Transaction tx = transaction(1);
+        assertFalse(index.update(tx));
+        assertEquals(0, index.size());
+
+        tx.addBlockAppearance(BLOCK_1, 0);
+        assertTrue(index.update(tx));
+        assertFalse(index.update(tx));
+        assertEquals(Collections.singletonList(tx), index.get(BLOCK_1));
+
+        // appears in a side chain block, too
+        tx.addBlockAppearance(BLOCK_2, 0);
+        assertTrue(index.update(tx));
+        assertEquals(Collections.singletonList(tx), index.get(BLOCK_1));
+        assertEquals(Collections.singletonList(tx), index.get(BLOCK_2));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void remove() {
+        final Transaction tx1 = transaction(1, BLOCK_1);
+        final Transaction tx2 = transaction(2, BLOCK_1);
+        index.rebuild(Arrays.asList(tx1, tx2));
+        index.remove(tx1.getTxId());
+        assertEquals(Collections.singletonList(tx2), index.get(BLOCK_1));
+        index.remove(tx2.getTxId());
+        assertTrue(index.get(BLOCK_1).isEmpty());
+        assertEquals(0, index.size());
+        index.remove(tx2.getTxId());
+    }
+
+    private static Transaction transaction(final int lockTime, final Sha256Hash... blockHashes) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.setLockTime(lockTime);
+        for (final Sha256Hash blockHash : blockHashes)
+            tx.addBlockAppearance(blockHash, 0);
+        return tx;
+    }
+}
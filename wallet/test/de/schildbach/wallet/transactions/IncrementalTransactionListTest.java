@@ -0,0 +1,130 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import com.google.common.collect.ImmutableSet;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.SegwitAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class IncrementalTransactionListTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    private IncrementalTransactionList<Sha256Hash> list;
+    private final List<Sha256Hash> built = new ArrayList<>();
+    private Transaction tx1, tx2, tx3;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        list = new IncrementalTransactionList<>(6, 100);
+        tx1 = transaction(1, 1000);
+        tx2 = transaction(2, 2000);
+        tx3 = transaction(3, 3000);
+        tx1.getConfidence().setAppearedAtChainHeight(10);
+        tx2.getConfidence().setAppearedAtChainHeight(20);
+    }
+
+    @Test
+    public void builtOnce() {
+        list.setTransactions(Arrays.asList(tx1, tx2, tx3));
+        assertEquals(ImmutableSet.of(tx3.getTxId(), tx2.getTxId(), tx1.getTxId()), update());
+        assertEquals(3, built.size());
+
+        built.clear();
+        list.setTransactions(Arrays.asList(tx1, tx2, tx3));
+        list.invalidate(Arrays.asList(tx1.getTxId(), tx2.getTxId()));
+        assertEquals(ImmutableSet.of(tx3.getTxId(), tx2.getTxId(), tx1.getTxId()), update());
+        assertEquals(0, built.size());
+    }
+
+    @Test
+    public void confidenceChangeRebuildsOnlyAffected() {
+        list.setTransactions(Arrays.asList(tx1, tx2, tx3));
+        update();
+        built.clear();
+
+        tx1.getConfidence().setConfidenceType(ConfidenceType.PENDING);
+        list.invalidate(Collections.singleton(tx1.getTxId()));
+        assertEquals(ImmutableSet.of(tx1.getTxId(), tx3.getTxId(), tx2.getTxId()), update());
+        assertEquals(Collections.singletonList(tx1.getTxId()), built);
+    }
+
+    @Test
+    public void depthBeyondMaximumIsIgnored() {
+        tx1.getConfidence().setDepthInBlocks(6);
+        list.setTransactions(Arrays.asList(tx1, tx2));
+        update();
+        built.clear();
+
+        tx1.getConfidence().setDepthInBlocks(7);
+        tx2.getConfidence().setDepthInBlocks(2);
+        list.invalidate(Arrays.asList(tx1.getTxId(), tx2.getTxId()));
+        update();
+        assertEquals(Collections.singletonList(tx2.getTxId()), built);
+    }
+
+    @Test
+    public void addedAndRemoved() {
+        list.setTransactions(Arrays.asList(tx1, tx2));
+        update();
+        built.clear();
+
+        list.setTransactions(Arrays.asList(tx2, tx3));
+        assertEquals(ImmutableSet.of(tx3.getTxId(), tx2.getTxId()), update());
+        assertEquals(Collections.singletonList(tx3.getTxId()), built);
+    }
+
+    private Set<Sha256Hash> update() {
+        return ImmutableSet.copyOf(list.update(tx -> {
+            built.add(tx.getTxId());
+            return tx.getTxId();
+        }));
+    }
+
+    private static Transaction transaction(final int index, final long time) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { (byte) index }))));
+        tx.addOutput(Coin.COIN, SegwitAddress.fromKey(PARAMS, new ECKey()));
+        tx.setUpdateTime(new Date(time));
+        return tx;
+    }
+}
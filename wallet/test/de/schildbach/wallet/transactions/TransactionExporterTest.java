@@ -0,0 +1,109 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import de.schildbach.wallet.addressbook.AddressBookEntry;
+import okio.Buffer;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.utils.ExchangeRate;
+import org.bitcoinj.utils.Fiat;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionExporterTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    private Wallet wallet;
+    private Transaction tx;
+    private TransactionEntry entry;
+    private Map<String, AddressBookEntry> addressBook;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { 1 }))));
+        tx.addOutput(Coin.COIN, wallet.currentReceiveAddress());
+        tx.setMemo("=cmd, \"quoted\"");
+        tx.setExchangeRate(new ExchangeRate(Fiat.parseFiat("EUR", "20000")));
+        final String address = wallet.currentReceiveAddress().toString();
+        entry = new TransactionEntry(tx.getTxId().toString(), 1500000000000L, true,
+                TransactionEntry.DIRECTION_RECEIVED, Coin.COIN.value, "PENDING", 0, 0, address,
+                tx.getMemo());
+        addressBook = AddressBookEntry.asMap(Arrays.asList(new AddressBookEntry(address, "Savings")));
+    }
+
+    @Test
+    public void csv() throws IOException {
+        final Buffer buffer = new Buffer();
+        final TransactionExporter exporter = new TransactionExporter(buffer, TransactionExporter.Format.CSV, true,
+                addressBook);
+        exporter.begin();
+        exporter.write(entry, tx, TransactionInfo.of(tx, wallet, wallet));
+        exporter.end();
+        assertEquals("date,txid,direction,value,fee,counterparty,label,memo,confirmations,fiat_value,fiat_currency"
+                + "\r\n2017-07-14T02:40:00Z," + tx.getTxId() + ",received,1," + ","
+                + wallet.currentReceiveAddress() + ",Savings,\"'=cmd, \"\"quoted\"\"\",0,20000,EUR\r\n",
+                buffer.readUtf8());
+    }
+
+    @Test
+    public void json() throws IOException {
+        final Buffer buffer = new Buffer();
+        final TransactionExporter exporter = new TransactionExporter(buffer, TransactionExporter.Format.JSON, false,
+                null);
+        exporter.begin();
+        exporter.write(entry, tx, TransactionInfo.of(tx, wallet, wallet));
+        exporter.write(entry, tx, TransactionInfo.of(tx, wallet, wallet));
+        exporter.end();
+        final String object = "{\"date\":\"2017-07-14T02:40:00Z\",\"txid\":\"" + tx.getTxId()
+                + "\",\"direction\":\"received\",\"value\":1,\"fee\":null,\"counterparty\":\""
+                + wallet.currentReceiveAddress()
+                + "\",\"label\":null,\"memo\":\"=cmd, \\\"quoted\\\"\",\"confirmations\":0}";
+        assertEquals("[" + object + "," + object + "]", buffer.readUtf8());
+    }
+
+    @Test
+    public void csvText() {
+        assertNull(TransactionExporter.csvText(null));
+        assertEquals("Rent", TransactionExporter.csvText("Rent"));
+        assertEquals("'-1", TransactionExporter.csvText("-1"));
+        assertEquals("'@SUM(A1)", TransactionExporter.csvText("@SUM(A1)"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionInfoCacheTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    private Wallet wallet;
+    private TransactionInfoCache cache;
+    private Transaction tx;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        cache = new TransactionInfoCache(wallet, wallet);
+        tx = transaction(1);
+    }
+
+    @Test
+    public void derivedOnce() {
+        final TransactionInfo info = cache.get(tx);
+        assertEquals(Coin.COIN, info.value);
+        assertFalse(info.sent);
+        assertEquals(wallet.currentReceiveAddress(), info.address);
+        assertSame(info, cache.get(tx));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidate() {
+        final Transaction otherTx = transaction(2);
+        cache.get(tx);
+        cache.get(otherTx);
+        cache.invalidate(tx.getTxId());
+        cache.get(tx);
+        cache.get(otherTx);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        cache.invalidateAll();
+        cache.get(tx);
+        cache.get(otherTx);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void otherInstanceOfSameTransaction() {
+        cache.get(tx);
+        cache.get(new Transaction(PARAMS, tx.bitcoinSerialize()));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    private Transaction transaction(final int index) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { (byte) index }))));
+        tx.addOutput(Coin.COIN, wallet.currentReceiveAddress());
+        return tx;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.transactions;
+
+import androidx.lifecycle.LiveData;
+import androidx.paging.DataSource;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionRowsTest {
+    private FakeTransactionDao dao;
+    private TransactionRows rows;
+
+    @Before
+    public void setUp() {
+        dao = new FakeTransactionDao();
+        dao.insertOrUpdate(Arrays.asList(entry("aa", 1), entry("bb", 2)));
+        rows = new TransactionRows(dao);
+        rows.load();
+        dao.numUpdates = 0;
+    }
+
+    @Test
+    public void reconcileByContent() {
+        final TransactionEntry a = entry("aa", 1);
+        final TransactionEntry c = entry("cc", 3);
+        final TransactionRows.Diff diff = rows.update(Arrays.asList(a, c));
+        assertTrue(diff.first);
+        assertEquals(Collections.singletonList(c), diff.changed);
+        assertEquals(ImmutableSet.of("bb"), diff.removed);
+        assertEquals(ImmutableSet.of("aa", "cc"), dao.rows.keySet());
+
+        // nothing changed, not even written
+        final TransactionRows.Diff unchanged = rows.update(Arrays.asList(a, c));
+        assertFalse(unchanged.first);
+        assertTrue(unchanged.isEmpty());
+        assertEquals(1, dao.numUpdates);
+    }
+
+    @Test
+    public void compareByIdentityOnceReconciled() {
+        final TransactionEntry a = entry("aa", 1);
+        rows.update(Collections.singletonList(a));
+        final TransactionEntry rebuilt = entry("aa", 1);
+        final TransactionRows.Diff diff = rows.update(Collections.singletonList(rebuilt));
+        assertEquals(Collections.singletonList(rebuilt), diff.changed);
+        assertTrue(diff.removed.isEmpty());
+    }
+
+    @Test
+    public void releaseRemovedRowsOneRoundLater() {
+        final TransactionEntry a = entry("aa", 1);
+        final TransactionEntry b = entry("bb", 2);
+        TransactionRows.Diff diff = rows.update(Collections.singletonList(a));
+        assertEquals(ImmutableSet.of("bb"), diff.removed);
+        assertTrue(diff.released.isEmpty());
+        diff = rows.update(Collections.singletonList(a));
+        assertEquals(ImmutableSet.of("bb"), diff.released);
+        diff = rows.update(Collections.singletonList(a));
+        assertTrue(diff.released.isEmpty());
+
+        // a row coming back within the grace round is not released
+        rows.update(Arrays.asList(a, b));
+        diff = rows.update(Collections.singletonList(a));
+        assertEquals(ImmutableSet.of("bb"), diff.removed);
+        diff = rows.update(Arrays.asList(a, b));
+        assertTrue(diff.released.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("aa", "bb")), dao.rows.keySet());
+    }
+
+    private static TransactionEntry entry(final String txId, final long updateTime) {
+        return new TransactionEntry(txId, updateTime, false, TransactionEntry.DIRECTION_RECEIVED, 100, "BUILDING", 1,
+                0, null, null);
+    }
+
+    private static class FakeTransactionDao implements TransactionDao {
+        final Map<String, TransactionEntry> rows = new LinkedHashMap<>();
+        int numUpdates = 0;
+
+        @Override
+        public void insertOrUpdate(final List<TransactionEntry> entries) {
+            for (final TransactionEntry entry : entries)
+                rows.put(entry.getTxId(), entry);
+        }
+
+        @Override
+        public void delete(final List<String> txIds) {
+            rows.keySet().removeAll(txIds);
+        }
+
+        @Override
+        public void update(final List<TransactionEntry> changed, final List<String> removedTxIds) {
+            numUpdates++;
+            TransactionDao.super.update(changed, removedTxIds);
+        }
+
+        @Override
+        public List<TransactionEntry> getAll() {
+            return new ArrayList<>(rows.values());
+        }
+
+        @Override
+        public DataSource.Factory<Integer, TransactionEntry> findAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataSource.Factory<Integer, TransactionEntry> findByDirection(final int direction) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LiveData<Integer> findCount() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int count() {
+            return rows.size();
+        }
+
+        @Override
+        public List<TransactionEntry> getPageAfter(final long updateTime, final String txId, final int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteAll() {
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package de.schildbach.wallet.transactions;
+
+import de.schildbach.wallet.addressbook.AddressBookEntry;
+import org.bitcoinj.utils.MonetaryFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionSearchIndexTest {
+    private static final String ADDRESS_1 = "tb1qfrgf6xqkz79tauahnfqyqqsq8rfnsa0m9wqqhw";
+    private static final String ADDRESS_2 = "mkhWFqhQ1mBaABaJBr85b7HMzwNGRVJ1Wm";
+    private static final MonetaryFormat FORMAT = MonetaryFormat.BTC;
+
+    private TransactionSearchIndex index;
+    private Map<String, AddressBookEntry> addressBook;
+
+    @Before
+    public void setUp() {
+        index = new TransactionSearchIndex();
+        index.put(entry("aa01", 1000, false, TransactionEntry.DIRECTION_RECEIVED, 50000000, ADDRESS_1,
+                "Rent for March"));
+        index.put(entry("bb02", 2000, false, TransactionEntry.DIRECTION_SENT, -53000000, ADDRESS_2,
+                "Coffee, croissant"));
+        index.put(entry("cc03", 500, true, TransactionEntry.DIRECTION_RECEIVED, 120000000, ADDRESS_2, null));
+        addressBook = AddressBookEntry.asMap(Arrays.asList(new AddressBookEntry(ADDRESS_2, "Corner Café")));
+    }
+
+    @Test
+    public void memoWordPrefix() {
+        assertEquals(Collections.singletonList("aa01"), search("ren"));
+        assertEquals(Collections.singletonList("bb02"), search("CROISS"));
+        assertEquals(Collections.emptyList(), search("ent"));
+    }
+
+    @Test
+    public void txIdAndAddressPrefix() {
+        assertEquals(Collections.singletonList("bb02"), search("bb0"));
+        assertEquals(Collections.singletonList("aa01"), search("TB1QFRG"));
+    }
+
+    @Test
+    public void label() {
+        assertEquals(Arrays.asList("cc03", "bb02"), search("café"));
+        assertEquals(Arrays.asList("cc03", "bb02"), search("ner"));
+    }
+
+    @Test
+    public void allTermsMustMatch() {
+        assertEquals(Collections.singletonList("bb02"), search("corner coffee"));
+        assertEquals(Collections.emptyList(), search("corner rent"));
+    }
+
+    @Test
+    public void direction() {
+        assertEquals(Collections.singletonList("cc03"),
+                ids(index.search("corner", TransactionEntry.DIRECTION_RECEIVED, addressBook, FORMAT, null)));
+    }
+
+    @Test
+    public void amounts() {
+        assertEquals(Collections.singletonList("aa01"), search("0.50"));
+        assertEquals(Arrays.asList("bb02", "aa01"), search("0.5"));
+        assertEquals(Collections.singletonList("cc03"), search(">0.53"));
+        assertEquals(Collections.singletonList("aa01"), search("<0.53"));
+        assertEquals(Arrays.asList("bb02", "aa01"), search("0.1-0.6"));
+    }
+
+    @Test
+    public void amountRange() {
+        assertArrayEquals(new long[] { 50000000, 60000000 }, TransactionSearchIndex.amountRange("0.5", FORMAT));
+        assertArrayEquals(new long[] { 100000000, 200000000 }, TransactionSearchIndex.amountRange("1", FORMAT));
+        assertArrayEquals(new long[] { 1, 2 }, TransactionSearchIndex.amountRange("0.00000001", FORMAT));
+        assertNull(TransactionSearchIndex.amountRange("rent", FORMAT));
+        assertNull(TransactionSearchIndex.amountRange("-1", FORMAT));
+    }
+
+    @Test
+    public void removeAndReplace() {
+        index.remove("aa01");
+        assertEquals(Collections.emptyList(), search("rent"));
+        index.put(entry("bb02", 2000, false, TransactionEntry.DIRECTION_SENT, -53000000, ADDRESS_2, "Tea"));
+        assertEquals(Collections.emptyList(), search("coffee"));
+        assertEquals(Collections.singletonList("bb02"), search("tea"));
+        assertEquals(2, index.size());
+    }
+
+    private List<String> search(final String query) {
+        return ids(index.search(query, null, addressBook, FORMAT, null));
+    }
+
+    private static List<String> ids(final List<TransactionEntry> entries) {
+        final List<String> ids = new ArrayList<>(entries.size());
+        for (final TransactionEntry entry : entries)
+            ids.add(entry.getTxId());
+        return ids;
+    }
+
+    private static TransactionEntry entry(final String txId, final long updateTime, final boolean pending,
+            final int direction, final long value, final String address, final String memo) {
+        return new TransactionEntry(txId, updateTime, pending, direction, value, "BUILDING", 1, 0, address, memo);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Wallet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Date;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class TransactionConfidenceStateTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+    private static final long DELAYED_THRESHOLD_MS = 60 * 60 * 1000;
+
+    private Wallet wallet;
+    private Transaction tx;
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+        wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { 1 }))));
+        tx.addOutput(Coin.COIN, wallet.currentReceiveAddress());
+        tx.setUpdateTime(new Date(1_600_000_000_000L));
+        wallet.setLastBlockSeenTimeSecs(1_600_000_000L);
+    }
+
+    @Test
+    public void unchanged() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        markBroadcastBy(2);
+        assertUnchanged(state(), state());
+    }
+
+    @Test
+    public void depthOnly() {
+        tx.getConfidence().setAppearedAtChainHeight(100);
+        tx.getConfidence().setDepthInBlocks(1);
+        final TransactionConfidenceState built = state();
+        tx.getConfidence().setDepthInBlocks(2);
+        assertPatched(built, state());
+    }
+
+    @Test
+    public void peerCountOnly() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        tx.getConfidence().setSource(TransactionConfidence.Source.SELF);
+        markBroadcastBy(1);
+        final TransactionConfidenceState built = state();
+        markBroadcastBy(2);
+        assertPatched(built, state());
+    }
+
+    @Test
+    public void firstPeer() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        final TransactionConfidenceState built = state();
+        markBroadcastBy(1);
+        assertRebuilt(built, state());
+    }
+
+    @Test
+    public void type() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        markBroadcastBy(1);
+        final TransactionConfidenceState built = state();
+        tx.getConfidence().setAppearedAtChainHeight(100);
+        tx.getConfidence().setDepthInBlocks(1);
+        assertRebuilt(built, state());
+    }
+
+    @Test
+    public void selectability() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        markBroadcastBy(1);
+        final TransactionConfidenceState built = state();
+        tx.getConfidence().setSource(TransactionConfidence.Source.SELF);
+        final TransactionConfidenceState state = state();
+        assertFalse(built.selectable);
+        assertTrue(state.selectable);
+        assertRebuilt(built, state);
+    }
+
+    @Test
+    public void delayed() {
+        tx.getConfidence().setConfidenceType(TransactionConfidence.ConfidenceType.PENDING);
+        markBroadcastBy(1);
+        final TransactionConfidenceState built = state();
+        wallet.setLastBlockSeenTimeSecs(1_600_000_000L + DELAYED_THRESHOLD_MS / 1000 + 1);
+        final TransactionConfidenceState state = state();
+        assertFalse(built.delayed);
+        assertTrue(state.delayed);
+        assertRebuilt(built, state);
+    }
+
+    private TransactionConfidenceState state() {
+        return TransactionConfidenceState.of(tx, wallet, DELAYED_THRESHOLD_MS);
+    }
+
+    private void markBroadcastBy(final int numPeers) {
+        for (int i = 0; i < numPeers; i++)
+            tx.getConfidence().markBroadcastBy(new PeerAddress(PARAMS, InetAddress.getLoopbackAddress(), 8333 + i));
+    }
+
+    private static void assertUnchanged(final TransactionConfidenceState built,
+            final TransactionConfidenceState state) {
+        assertTrue(state.affectsSameFieldsAs(built));
+        assertTrue(state.isSameAs(built));
+    }
+
+    private static void assertPatched(final TransactionConfidenceState built,
+            final TransactionConfidenceState state) {
+        assertTrue(state.affectsSameFieldsAs(built));
+        assertFalse(state.isSameAs(built));
+    }
+
+    private static void assertRebuilt(final TransactionConfidenceState built,
+            final TransactionConfidenceState state) {
+        assertFalse(state.affectsSameFieldsAs(built));
+        assertFalse(state.isSameAs(built));
+    }
+}
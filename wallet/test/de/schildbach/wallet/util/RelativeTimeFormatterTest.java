@@ -0,0 +1,86 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class RelativeTimeFormatterTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long NOON = LocalDate.of(2024, 3, 1).atTime(12, 0).atZone(ZoneId.systemDefault())
+            .toInstant().toEpochMilli();
+
+    private int numTimesRendered, numAgesRendered;
+    private RelativeTimeFormatter formatter;
+
+    @Before
+    public void setUp() {
+        formatter = new RelativeTimeFormatter((timeMs, nowMs) -> {
+            numTimesRendered++;
+            return "time " + timeMs;
+        }, (timeMs, nowMs) -> {
+            numAgesRendered++;
+            return "age " + (nowMs - timeMs);
+        });
+        formatter.tick(NOON);
+    }
+
+    @Test
+    public void cachedPerMinute() {
+        assertEquals("time " + (NOON - 5 * MINUTE), formatter.formatTime(NOON - 5 * MINUTE + 1000));
+        assertEquals("time " + (NOON - 5 * MINUTE), formatter.formatTime(NOON - 5 * MINUTE + 59000));
+        assertEquals("time " + (NOON - 6 * MINUTE), formatter.formatTime(NOON - 5 * MINUTE - 1000));
+        assertEquals(2, numTimesRendered);
+    }
+
+    @Test
+    public void timesSurviveTicksOfSameDay() {
+        formatter.formatTime(NOON - 5 * MINUTE);
+        assertFalse(formatter.tick(NOON + MINUTE));
+        formatter.formatTime(NOON - 5 * MINUTE);
+        assertEquals(1, numTimesRendered);
+    }
+
+    @Test
+    public void timesExpireOnNextDay() {
+        formatter.formatTime(NOON - 5 * MINUTE);
+        assertTrue(formatter.tick(NOON + TimeUnit.HOURS.toMillis(12)));
+        formatter.formatTime(NOON - 5 * MINUTE);
+        assertEquals(2, numTimesRendered);
+    }
+
+    @Test
+    public void agesExpireOnEveryTick() {
+        assertEquals("age " + 5 * MINUTE, formatter.formatAge(NOON - 5 * MINUTE));
+        assertEquals("age " + 5 * MINUTE, formatter.formatAge(NOON - 5 * MINUTE));
+        formatter.tick(NOON + MINUTE);
+        assertEquals("age " + 6 * MINUTE, formatter.formatAge(NOON - 5 * MINUTE));
+        assertEquals(2, numAgesRendered);
+    }
+}
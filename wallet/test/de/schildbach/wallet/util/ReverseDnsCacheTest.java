@@ -0,0 +1,225 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ReverseDnsCacheTest {
+    private static final InetAddress ADDRESS_1 = InetAddresses.forString("192.0.2.1");
+    private static final InetAddress ADDRESS_2 = InetAddresses.forString("2001:db8::2");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandInResolver resolver;
+    private MutableClock clock;
+    private Map<InetAddress, String> resolved;
+
+    @Before
+    public void setUp() {
+        resolver = new StandInResolver();
+        resolver.hostnames.put(ADDRESS_1, "node.example.com");
+        clock = new MutableClock();
+        resolved = new HashMap<>();
+    }
+
+    @Test
+    public void cachesHostnamesAndMissingHostnames() {
+        final ReverseDnsCache cache = new ReverseDnsCache(resolver, MoreExecutors.directExecutor(), null, clock);
+        resolve(cache, ADDRESS_1);
+        resolve(cache, ADDRESS_2);
+        assertEquals("node.example.com", resolved.get(ADDRESS_1));
+        assertTrue(resolved.containsKey(ADDRESS_2));
+        assertNull(resolved.get(ADDRESS_2));
+        assertEquals(2, resolver.numLookups.get());
+
+        resolve(cache, ADDRESS_1);
+        resolve(cache, ADDRESS_2);
+        assertEquals(2, resolver.numLookups.get());
+
+        // missing hostnames expire earlier
+        clock.advance(ReverseDnsCache.NEGATIVE_TTL_MS);
+        resolve(cache, ADDRESS_1);
+        resolve(cache, ADDRESS_2);
+        assertEquals(3, resolver.numLookups.get());
+
+        clock.advance(ReverseDnsCache.TTL_MS);
+        resolve(cache, ADDRESS_1);
+        assertEquals(4, resolver.numLookups.get());
+    }
+
+    @Test
+    public void failedLookupCountsAsMissing() {
+        resolver.failing = true;
+        final ReverseDnsCache cache = new ReverseDnsCache(resolver, MoreExecutors.directExecutor(), null, clock);
+        resolve(cache, ADDRESS_1);
+        assertTrue(resolved.containsKey(ADDRESS_1));
+        assertNull(resolved.get(ADDRESS_1));
+        resolve(cache, ADDRESS_1);
+        assertEquals(1, resolver.numLookups.get());
+    }
+
+    @Test
+    public void sharesPendingLookups() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ReverseDnsCache cache = new ReverseDnsCache(resolver, tasks::add, null, clock);
+        final AtomicInteger numCallbacks = new AtomicInteger();
+        cache.resolve(ADDRESS_1, (address, hostname) -> numCallbacks.incrementAndGet());
+        cache.resolve(ADDRESS_1, (address, hostname) -> numCallbacks.incrementAndGet());
+        assertEquals(1, tasks.size());
+        assertEquals(0, numCallbacks.get());
+        tasks.get(0).run();
+        assertEquals(1, resolver.numLookups.get());
+        assertEquals(2, numCallbacks.get());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final ReverseDnsCache cache = new ReverseDnsCache(resolver, MoreExecutors.directExecutor(), null, clock);
+        resolve(cache, ADDRESS_1);
+        for (int i = 0; i < ReverseDnsCache.MAX_ENTRIES; i++) {
+            resolve(cache, InetAddresses.fromInteger(i));
+            resolve(cache, ADDRESS_1); // keep it used
+        }
+        assertEquals(1 + ReverseDnsCache.MAX_ENTRIES, resolver.numLookups.get());
+        resolve(cache, InetAddresses.fromInteger(0));
+        assertEquals(2 + ReverseDnsCache.MAX_ENTRIES, resolver.numLookups.get());
+    }
+
+    @Test
+    public void persistsAcrossSessions() {
+        final File file = new File(folder.getRoot(), "reverse-dns-cache.txt");
+        final ReverseDnsCache cache = new ReverseDnsCache(resolver, MoreExecutors.directExecutor(), file, clock);
+        resolve(cache, ADDRESS_1);
+        resolve(cache, ADDRESS_2);
+        assertTrue(file.exists());
+
+        final StandInResolver otherResolver = new StandInResolver();
+        final ReverseDnsCache otherCache = new ReverseDnsCache(otherResolver, MoreExecutors.directExecutor(), file,
+                clock);
+        resolved.clear();
+        resolve(otherCache, ADDRESS_1);
+        resolve(otherCache, ADDRESS_2);
+        assertEquals("node.example.com", resolved.get(ADDRESS_1));
+        assertNull(resolved.get(ADDRESS_2));
+        assertEquals(0, otherResolver.numLookups.get());
+
+        // expired entries are not loaded
+        clock.advance(ReverseDnsCache.NEGATIVE_TTL_MS);
+        final ReverseDnsCache laterCache = new ReverseDnsCache(otherResolver, MoreExecutors.directExecutor(), file,
+                clock);
+        resolve(laterCache, ADDRESS_1);
+        resolve(laterCache, ADDRESS_2);
+        assertEquals(1, otherResolver.numLookups.get());
+    }
+
+    @Test
+    public void boundsConcurrentLookups() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final int numAddresses = ReverseDnsCache.MAX_CONCURRENT_LOOKUPS * 3;
+        final CountDownLatch done = new CountDownLatch(numAddresses);
+        final ReverseDnsCache.Resolver slowResolver = address -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (final InterruptedException x) {
+                throw new IOException(x);
+            } finally {
+                running.decrementAndGet();
+            }
+            return null;
+        };
+        final ThreadPoolExecutor executor = ReverseDnsCache.newExecutor();
+        final ReverseDnsCache cache = new ReverseDnsCache(slowResolver, executor, null, clock);
+        for (int i = 0; i < numAddresses; i++)
+            cache.resolve(InetAddresses.fromInteger(i), (address, hostname) -> done.countDown());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= ReverseDnsCache.MAX_CONCURRENT_LOOKUPS);
+        executor.shutdown();
+    }
+
+    private void resolve(final ReverseDnsCache cache, final InetAddress address) {
+        cache.resolve(address, resolved::put);
+    }
+
+    private static class StandInResolver implements ReverseDnsCache.Resolver {
+        private final Map<InetAddress, String> hostnames = new HashMap<>();
+        private final AtomicInteger numLookups = new AtomicInteger();
+        private boolean failing = false;
+
+        @Override
+        public String reverseLookup(final InetAddress address) throws IOException {
+            numLookups.incrementAndGet();
+            if (failing)
+                throw new IOException("no response");
+            return hostnames.get(address);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private long millis = 1500000000000L;
+
+        private void advance(final long millis) {
+            this.millis += millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
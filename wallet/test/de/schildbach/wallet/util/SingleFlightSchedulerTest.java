@@ -0,0 +1,141 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class SingleFlightSchedulerTest {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor manualExecutor = tasks::add;
+    private final List<String> results = new ArrayList<>();
+    private final List<String> computed = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        tasks.clear();
+        results.clear();
+        computed.clear();
+    }
+
+    @Test
+    public void burstComputesOnlyLatest() {
+        final SingleFlightScheduler<String> scheduler = new SingleFlightScheduler<>(manualExecutor, results::add);
+        scheduler.schedule(computation("a"));
+        scheduler.schedule(computation("b"));
+        scheduler.schedule(computation("c"));
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(Arrays.asList("c"), computed);
+        assertEquals(Arrays.asList("c"), results);
+        assertEquals(0, scheduler.getNumDropped());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void supersededResultIsDropped() {
+        final SingleFlightScheduler<String> scheduler = new SingleFlightScheduler<>(manualExecutor, results::add);
+        final SingleFlightScheduler.Computation<String> next = computation("b");
+        scheduler.schedule(generation -> {
+            // does not check, so it completes
+            scheduler.schedule(next);
+            computed.add("a");
+            return "a";
+        });
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(Arrays.asList("a", "b"), computed);
+        assertEquals(Arrays.asList("b"), results);
+        assertEquals(1, scheduler.getNumDropped());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void staleComputationAborts() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final List<Integer> numItems = new ArrayList<>();
+        final SingleFlightScheduler<String> scheduler = new SingleFlightScheduler<>(executor, result -> {
+            results.add(result);
+            delivered.countDown();
+        });
+        scheduler.schedule(generation -> {
+            started.countDown();
+            int i = 0;
+            try {
+                while (i < 1000) {
+                    generation.check();
+                    Thread.sleep(5);
+                    i++;
+                }
+            } catch (final InterruptedException x) {
+                throw new RuntimeException(x);
+            } finally {
+                numItems.add(i);
+            }
+            return "slow";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.schedule(computation("fast"));
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("fast"), results);
+        assertTrue(numItems.get(0) < 1000);
+        assertEquals(1, scheduler.getNumDropped());
+    }
+
+    @Test
+    public void failureDoesNotBlockLaterComputations() {
+        final SingleFlightScheduler<String> scheduler = new SingleFlightScheduler<>(manualExecutor, results::add);
+        scheduler.schedule(generation -> {
+            throw new IllegalStateException();
+        });
+        tasks.poll().run();
+        scheduler.schedule(computation("b"));
+        tasks.poll().run();
+        assertEquals(Arrays.asList("b"), results);
+        assertEquals(1, scheduler.getNumDropped());
+    }
+
+    private SingleFlightScheduler.Computation<String> computation(final String result) {
+        return generation -> {
+            generation.check();
+            computed.add(result);
+            return result;
+        };
+    }
+}
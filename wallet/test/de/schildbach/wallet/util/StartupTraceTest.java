@@ -0,0 +1,89 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class StartupTraceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nestedSpans() throws Exception {
+        final File file = new File(folder.getRoot(), "startup-traces");
+        StartupTrace.init(file, 3);
+        StartupTrace.setLabel("wallet 1.0");
+        final StartupTrace.Span outer = StartupTrace.begin("outer");
+        StartupTrace.begin("inner").end();
+        final Thread thread = new Thread(() -> StartupTrace.begin("background").end(), "worker");
+        thread.start();
+        thread.join();
+        StartupTrace.record("blocked", 5, TimeUnit.MILLISECONDS);
+        outer.end();
+        StartupTrace.beginDetached("never ends");
+
+        final StringBuilder inProgress = new StringBuilder();
+        StartupTrace.appendTraces(inProgress);
+        assertTrue(inProgress.toString(), inProgress.toString().contains("in progress"));
+
+        StartupTrace.finish();
+        StartupTrace.begin("after finish").end();
+
+        final String rendered = render();
+        assertFalse(rendered, rendered.contains("in progress"));
+        assertFalse(rendered, rendered.contains("after finish"));
+        assertTrue(rendered, rendered.contains("wallet 1.0"));
+        assertTrue(rendered, rendered.contains("   inner\n"));
+        assertTrue(rendered, rendered.contains(" worker           background\n"));
+        assertTrue(rendered, rendered.contains("   blocked\n"));
+        assertTrue(rendered, rendered.contains("open  "));
+    }
+
+    @Test
+    public void keepsLastTraces() throws Exception {
+        final File file = new File(folder.getRoot(), "startup-traces");
+        for (int i = 0; i < 5; i++) {
+            StartupTrace.init(file, 3);
+            StartupTrace.setLabel("run " + i);
+            StartupTrace.finish();
+        }
+
+        final String rendered = render();
+        assertEquals(3, rendered.split("--- startup").length - 1);
+        assertTrue(rendered.indexOf("run 4") < rendered.indexOf("run 2"));
+        assertFalse(rendered.contains("run 1"));
+    }
+
+    private static String render() throws Exception {
+        final StringBuilder out = new StringBuilder();
+        StartupTrace.appendTraces(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WalletHistoryTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+    }
+
+    @Test
+    public void splitAndInflate() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+
+        // only unspent is needed up front, everything else is history
+        final Transaction old = fundingTransaction(wallet, Sha256Hash.of(new byte[] { 1 }), 0);
+        final Transaction spent = spendingTransaction(wallet, old);
+        final Transaction unspent = spendingTransaction(wallet, spent);
+        final Transaction history = fundingTransaction(wallet, Sha256Hash.of(new byte[] { 2 }), 0);
+        final Transaction historySpender = spendingTransaction(wallet, history);
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, old));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, spent));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.UNSPENT, unspent));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, history));
+        wallet.addWalletTransaction(new WalletTransaction(Pool.DEAD, historySpender));
+        assertTrue(wallet.isConsistent());
+        final Coin balance = wallet.getBalance();
+
+        final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
+        Context.propagate(new Context(PARAMS)); // fresh confidence objects, without listeners of the original wallet
+        final WalletHistory split = WalletHistory.split(walletProto);
+        assertEquals(4, split.size());
+        final Wallet phaseOne = new WalletProtobufSerializer().readWallet(PARAMS, null, split.getPhaseOne());
+        assertEquals(balance, phaseOne.getBalance());
+        assertNotNull(phaseOne.getTransaction(unspent.getTxId()));
+        assertNull(phaseOne.getTransaction(spent.getTxId()));
+
+        split.inflateInto(phaseOne);
+        assertEquals(5, phaseOne.getTransactions(true).size());
+        assertEquals(balance, phaseOne.getBalance());
+        assertTrue(phaseOne.isConsistent());
+        final Transaction inflatedSpent = phaseOne.getTransaction(spent.getTxId());
+        assertEquals(phaseOne.getTransaction(unspent.getTxId()).getInput(0),
+                inflatedSpent.getOutput(0).getSpentBy());
+        // only the live wallet listens to the confidence of the history
+        for (final Transaction tx : phaseOne.getTransactions(true))
+            assertEquals(1, numListeners(tx.getConfidence()));
+    }
+
+    private static int numListeners(final TransactionConfidence confidence) throws Exception {
+        final Field field = TransactionConfidence.class.getDeclaredField("listeners");
+        field.setAccessible(true);
+        return ((List<?>) field.get(confidence)).size();
+    }
+
+    private static Transaction fundingTransaction(final Wallet wallet, final Sha256Hash from, final long index) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0], new TransactionOutPoint(PARAMS, index, from)));
+        tx.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        return tx;
+    }
+
+    private static Transaction spendingTransaction(final Wallet wallet, final Transaction parent) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(parent.getOutput(0));
+        parent.getOutput(0).markAsSpent(tx.getInput(0));
+        tx.addOutput(Coin.COIN, wallet.freshReceiveAddress());
+        return tx;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import com.google.protobuf.ByteString;
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.DeterministicKeyChain;
+import org.bitcoinj.wallet.AllowUnconfirmedCoinSelector;
+import org.bitcoinj.wallet.KeyChain.KeyPurpose;
+import org.bitcoinj.wallet.SendRequest;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WalletJournalTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File walletFile;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        Context.propagate(new Context(PARAMS));
+        walletFile = folder.newFile("wallet-protobuf");
+        journalFile = new File(folder.getRoot(), "wallet-journal");
+    }
+
+    @Test
+    public void replayDeltas() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        journal.saveNow();
+        final long snapshotLength = walletFile.length();
+
+        final ECKey importedKey = new ECKey();
+        wallet.importKey(importedKey);
+        final Transaction tx = receivingTransaction(wallet);
+        wallet.receivePending(tx, null);
+        wallet.setLastBlockSeenHash(Sha256Hash.of(new byte[] { 1 }));
+        wallet.setLastBlockSeenHeight(1000);
+        journal.saveLater();
+        journal.shutdownAndWait();
+
+        assertEquals("snapshot must not be rewritten", snapshotLength, walletFile.length());
+        assertTrue(journalFile.length() > 0);
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertNotNull(replayed.getTransactionPool(Pool.PENDING).get(tx.getTxId()));
+        assertTrue(replayed.hasKey(importedKey));
+        assertEquals(1000, replayed.getLastBlockSeenHeight());
+        assertEquals(Coin.COIN, replayed.getBalance(Wallet.BalanceType.ESTIMATED));
+    }
+
+    @Test
+    public void replayIssuedKeys() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        journal.saveNow();
+
+        final Set<Address> issued = new HashSet<>();
+        for (int i = 0; i < 4; i++)
+            issued.add(wallet.freshReceiveAddress());
+        issued.add(wallet.freshAddress(KeyPurpose.CHANGE));
+        wallet.setDescription("savings");
+        wallet.setTag("test", ByteString.copyFromUtf8("value"));
+        journal.saveLater();
+        journal.shutdownAndWait();
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        final DeterministicKeyChain chain = wallet.getActiveKeyChain();
+        final DeterministicKeyChain replayedChain = replayed.getActiveKeyChain();
+        assertEquals(chain.getIssuedExternalKeys(), replayedChain.getIssuedExternalKeys());
+        assertEquals(chain.getIssuedInternalKeys(), replayedChain.getIssuedInternalKeys());
+        assertEquals("savings", replayed.getDescription());
+        assertEquals(ByteString.copyFromUtf8("value"), replayed.maybeGetTag("test"));
+        assertNotNull(replayed.maybeGetTag(WalletJournal.TAG_JOURNAL_ID));
+        assertFalse(issued.contains(replayed.freshReceiveAddress()));
+    }
+
+    @Test
+    public void tornTail() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        final Transaction tx = receivingTransaction(wallet);
+        wallet.receivePending(tx, null);
+        journal.shutdownAndWait();
+
+        try (final FileOutputStream os = new FileOutputStream(journalFile, true)) {
+            os.write(new byte[] { 0, 0, 1, 0, 1, 42, 42 });
+        }
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertNotNull(replayed.getTransaction(tx.getTxId()));
+    }
+
+    @Test
+    public void compressedSnapshot() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, true);
+        journal.saveNow();
+        journal.shutdownAndWait();
+
+        try (final FileInputStream is = new FileInputStream(walletFile)) {
+            assertEquals(0x1f, is.read());
+            assertEquals(0x8b, is.read());
+        }
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertEquals(wallet.getKeyChainSeed(), replayed.getKeyChainSeed());
+    }
+
+    @Test
+    public void replaySpend() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        final Transaction fundingTx = receivingTransaction(wallet);
+        wallet.receivePending(fundingTx, null);
+        journal.saveNow();
+
+        final SendRequest sendRequest = SendRequest.to(Address.fromKey(PARAMS, new ECKey(),
+                Script.ScriptType.P2WPKH), Coin.CENT);
+        sendRequest.coinSelector = AllowUnconfirmedCoinSelector.get();
+        wallet.completeTx(sendRequest);
+        wallet.commitTx(sendRequest.tx);
+        journal.shutdownAndWait();
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertNotNull(replayed.getTransactionPool(Pool.PENDING).get(sendRequest.tx.getTxId()));
+        assertEquals(sendRequest.tx.getTxId(),
+                replayed.getTransaction(fundingTx.getTxId()).getOutput(0).getSpentBy().getParentTransaction()
+                        .getTxId());
+        assertEquals(wallet.getBalance(Wallet.BalanceType.ESTIMATED),
+                replayed.getBalance(Wallet.BalanceType.ESTIMATED));
+    }
+
+    @Test
+    public void transactionInNoPoolNotRemoved() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        final Transaction tx = receivingTransaction(wallet);
+        wallet.receivePending(tx, null);
+        journal.saveNow();
+
+        // as if caught moving between pools
+        wallet.getTransactionPool(Pool.PENDING).remove(tx.getTxId());
+        journal.onTransactionConfidenceChanged(wallet, tx);
+        wallet.getTransactionPool(Pool.PENDING).put(tx.getTxId(), tx);
+        journal.shutdownAndWait();
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertNotNull(replayed.getTransactionPool(Pool.PENDING).get(tx.getTxId()));
+    }
+
+    @Test
+    public void transactionsRemoved() throws Exception {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final WalletJournal journal = new WalletJournal(wallet, walletFile, journalFile, 0, TimeUnit.MILLISECONDS,
+                Long.MAX_VALUE, false);
+        final Transaction tx = receivingTransaction(wallet);
+        wallet.receivePending(tx, null);
+        journal.saveNow();
+
+        journal.transactionsRemoved(Collections.singleton(tx.getTxId()));
+        journal.shutdownAndWait();
+
+        final Wallet replayed = WalletJournal.readWallet(walletFile, journalFile);
+        assertNull(replayed.getTransaction(tx.getTxId()));
+    }
+
+    private static Transaction receivingTransaction(final Wallet wallet) {
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { 42 }))));
+        tx.addOutput(Coin.COIN, wallet.currentReceiveAddress());
+        return tx;
+    }
+}
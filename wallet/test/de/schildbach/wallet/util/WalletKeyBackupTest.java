@@ -0,0 +1,100 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Context;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WalletKeyBackupTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Context.propagate(new Context(PARAMS));
+    }
+
+    @Test
+    public void skipsUnchanged() throws Exception {
+        final File file = new File(folder.getRoot(), "key-backup-protobuf");
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        final Address address = wallet.currentReceiveAddress();
+
+        assertTrue(new WalletKeyBackup(file).write(wallet));
+        final WalletKeyBackup backup = new WalletKeyBackup(file);
+        assertFalse(backup.write(wallet));
+
+        final Transaction tx = new Transaction(PARAMS);
+        tx.addInput(new TransactionInput(PARAMS, tx, new byte[0],
+                new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(new byte[] { 42 }))));
+        tx.addOutput(Coin.COIN, address);
+        wallet.addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
+        assertFalse("transactions are not key relevant", backup.write(wallet));
+
+        final ECKey key = new ECKey();
+        wallet.importKey(key);
+        assertTrue(backup.write(wallet));
+
+        try (final InputStream is = new FileInputStream(file)) {
+            final Wallet restored = new WalletProtobufSerializer().readWallet(is, true, null);
+            assertTrue(restored.hasKey(key));
+            assertEquals(wallet.getKeyChainSeed(), restored.getKeyChainSeed());
+            assertTrue(restored.getTransactions(true).isEmpty());
+        }
+    }
+
+    @Test
+    public void matchesFullSerializationWithoutTransactions() {
+        final Wallet wallet = Wallet.createDeterministic(PARAMS, Script.ScriptType.P2WPKH);
+        wallet.setDescription("test");
+        final Protos.Wallet expected = new WalletProtobufSerializer().walletToProto(wallet).toBuilder()
+                .clearTransaction().clearLastSeenBlockHash().setLastSeenBlockHeight(-1).clearLastSeenBlockTimeSecs()
+                .build();
+        assertEquals(expected, WalletKeyBackup.keysToProto(wallet));
+    }
+}